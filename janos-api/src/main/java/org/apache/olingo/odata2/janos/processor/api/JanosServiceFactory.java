@@ -22,6 +22,7 @@ import org.apache.olingo.odata2.api.ODataService;
 import org.apache.olingo.odata2.api.edm.provider.EdmProvider;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
@@ -161,6 +162,48 @@ public abstract class JanosServiceFactory {
      */
     JanosServiceFactoryBuilder with(DataSource dataSource);
 
+    /**
+     * Sets the default server side paging policy for all entity sets without an own policy
+     * (if not set pages contain {@link PagingPolicy#DEFAULT_PAGE_SIZE} entities).
+     *
+     * @param pagingPolicy default paging policy
+     * @return this builder (fluent builder)
+     */
+    JanosServiceFactoryBuilder paging(PagingPolicy pagingPolicy);
+
+    /**
+     * Sets the server side paging policy for the given entity set
+     * (takes precedence over a {@link org.apache.olingo.odata2.janos.processor.api.data.Paging} annotation).
+     *
+     * @param entitySetName name of the entity set
+     * @param pagingPolicy paging policy for the entity set
+     * @return this builder (fluent builder)
+     */
+    JanosServiceFactoryBuilder paging(String entitySetName, PagingPolicy pagingPolicy);
+
+    /**
+     * Enables a cache for the responses of entity set reads (without <code>$expand</code>) whose data sources
+     * track modifications (see {@link org.apache.olingo.odata2.janos.processor.api.data.store.DataStore#getVersion()}).
+     * A cached response is served with a strong ETag and a request with a matching <code>If-None-Match</code>
+     * header is answered with <code>304 Not Modified</code>. Least recently used responses are evicted.
+     * DataStores for JPA entities only track modifications if this is enabled via
+     * {@link org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager#TRACK_VERSION}.
+     *
+     * @param maxBytes maximal total size of the cached responses in bytes (<code>0</code> for no cache)
+     * @return this builder (fluent builder)
+     */
+    JanosServiceFactoryBuilder responseCache(long maxBytes);
+
+    /**
+     * Enables the writing of JSON feeds and entries directly from the data objects
+     * (without intermediate value maps). Responses with <code>$select</code> or <code>$expand</code>,
+     * media link entries and values which are not written in the same way for sure
+     * are still written by the entity provider of Olingo.
+     *
+     * @param enabled <code>true</code> to enable the direct JSON writer (disabled by default)
+     * @return this builder (fluent builder)
+     */
+    JanosServiceFactoryBuilder directJsonWriter(boolean enabled);
 
     /**
      * Set classes which have with @Extension annotated methods.
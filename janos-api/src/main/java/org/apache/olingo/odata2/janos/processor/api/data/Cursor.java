@@ -0,0 +1,57 @@
+package org.apache.olingo.odata2.janos.processor.api.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Position within an ordered entity set for keyset ($skiptoken) pagination.
+ *
+ * A cursor holds the values of the order expressions and of the key properties of the last entity
+ * of the previous page. The next page starts with the first entity which is ordered after this position
+ * (ordered by the order expressions followed by the key properties as tie breaker).
+ * Hence a data store can seek the start of a page (e.g. via an index) instead of scanning all
+ * entities before it.
+ *
+ * Values are given in their normalized java types (<code>Long</code> for integral numbers,
+ * <code>Double</code>, <code>BigDecimal</code>, <code>Calendar</code>, <code>Boolean</code>,
+ * <code>String</code> for strings and guids, <code>byte[]</code>) and can be <code>null</code>.
+ */
+public final class Cursor {
+  private final List<Object> orderValues;
+  private final List<Object> keyValues;
+
+  /**
+   * Instantiates a new cursor.
+   *
+   * @param orderValues the values of the order expressions (empty for the default order)
+   * @param keyValues the values of the key properties
+   */
+  public Cursor(List<Object> orderValues, List<Object> keyValues) {
+    this.orderValues = Collections.unmodifiableList(new ArrayList<>(orderValues));
+    this.keyValues = Collections.unmodifiableList(new ArrayList<>(keyValues));
+  }
+
+  /**
+   * Gets the values of the order expressions (in order of the expressions).
+   *
+   * @return the order values
+   */
+  public List<Object> getOrderValues() {
+    return orderValues;
+  }
+
+  /**
+   * Gets the values of the key properties (in order of the key properties).
+   *
+   * @return the key values
+   */
+  public List<Object> getKeyValues() {
+    return keyValues;
+  }
+
+  @Override
+  public String toString() {
+    return "Cursor{orderValues=" + orderValues + ", keyValues=" + keyValues + '}';
+  }
+}
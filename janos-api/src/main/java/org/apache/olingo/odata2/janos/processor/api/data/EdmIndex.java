@@ -0,0 +1,32 @@
+package org.apache.olingo.odata2.janos.processor.api.data;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a secondary index on the annotated (<code>@EdmProperty</code>) field which is used by
+ * data stores supporting it (e.g. the in memory data store) for <code>$filter</code> conditions
+ * which compare the property with a literal (combined with <code>and</code>).
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface EdmIndex {
+  /**
+   * Kind of an index.
+   */
+  enum Kind {
+    /** index for equality (<code>eq</code>) conditions */
+    HASH,
+    /** ordered index for equality and range (<code>lt</code>, <code>le</code>, <code>gt</code>, <code>ge</code>) conditions */
+    SORTED
+  }
+
+  /**
+   * Kind of the index.
+   *
+   * @return the kind
+   */
+  Kind kind() default Kind.HASH;
+}
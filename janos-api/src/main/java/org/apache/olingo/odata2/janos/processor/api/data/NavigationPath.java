@@ -0,0 +1,115 @@
+package org.apache.olingo.odata2.janos.processor.api.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Navigation from a start object over one or more navigation fields (e.g. for
+ * <code>Buildings('1')/nb_Rooms('3')/nr_Employees</code>) so that a data store can read
+ * the target objects of the whole path at once (e.g. via a single join query).
+ *
+ * The start object and the (optional) keys of each step are given as instances with the key fields set.
+ * Each step navigates via the field with given name of the object(s) of the previous step.
+ */
+public final class NavigationPath {
+  private final Object start;
+  private final List<Step> steps;
+
+  private NavigationPath(Object start, List<Step> steps) {
+    this.start = start;
+    this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+  }
+
+  /**
+   * Start a navigation path at given object.
+   *
+   * @param start instance with the key fields of the start object set
+   * @return builder for the navigation path
+   */
+  public static Builder start(Object start) {
+    return new Builder(start);
+  }
+
+  /**
+   * Gets the start object (instance with the key fields set).
+   *
+   * @return the start object
+   */
+  public Object getStart() {
+    return start;
+  }
+
+  /**
+   * Gets the navigation steps (in order of the navigation).
+   *
+   * @return the steps
+   */
+  public List<Step> getSteps() {
+    return steps;
+  }
+
+  @Override
+  public String toString() {
+    return "NavigationPath{start=" + start + ", steps=" + steps + '}';
+  }
+
+  /**
+   * One navigation step of a navigation path.
+   */
+  public static final class Step {
+    private final String fieldName;
+    private final Object keys;
+
+    private Step(String fieldName, Object keys) {
+      this.fieldName = fieldName;
+      this.keys = keys;
+    }
+
+    /**
+     * Gets the name of the navigation field (of the object(s) of the previous step).
+     *
+     * @return the field name
+     */
+    public String getFieldName() {
+      return fieldName;
+    }
+
+    /**
+     * Gets the instance with the key fields set which selects a single object of this step
+     * (or <code>null</code> if all navigated objects are selected).
+     *
+     * @return the keys instance or <code>null</code>
+     */
+    public Object getKeys() {
+      return keys;
+    }
+
+    @Override
+    public String toString() {
+      return fieldName + (keys == null ? "" : "(" + keys + ")");
+    }
+  }
+
+  public static class Builder {
+    private final Object start;
+    private final List<Step> steps = new ArrayList<>();
+
+    private Builder(Object start) {
+      this.start = start;
+    }
+
+    public Builder navigate(String fieldName) {
+      return navigate(fieldName, null);
+    }
+
+    public Builder navigate(String fieldName, Object keys) {
+      steps.add(new Step(fieldName, keys));
+      return this;
+    }
+
+    public NavigationPath build() {
+      return new NavigationPath(start, steps);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package org.apache.olingo.odata2.janos.processor.api.data;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines the server side {@link PagingPolicy} of the entity set of the annotated entity class.
+ * A policy which is set for the entity set at the <code>JanosServiceFactoryBuilder</code>
+ * takes precedence over this annotation.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Paging {
+  /**
+   * Maximal number of entities per page.
+   *
+   * @return the page size
+   */
+  int pageSize() default PagingPolicy.DEFAULT_PAGE_SIZE;
+
+  /**
+   * Maximal estimated serialized size of a page in bytes (<code>0</code> for no byte budget).
+   *
+   * @return the byte budget
+   */
+  long maxPageBytes() default 0;
+}
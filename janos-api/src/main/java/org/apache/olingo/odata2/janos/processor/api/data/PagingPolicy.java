@@ -0,0 +1,79 @@
+package org.apache.olingo.odata2.janos.processor.api.data;
+
+/**
+ * Server side paging policy of an entity set.
+ *
+ * A page contains at most <code>pageSize</code> entities. If a byte budget is set the page is cut
+ * earlier as soon as the estimated serialized size of its entities exceeds the budget
+ * (but a page always contains at least one entity), so that entity sets with large binary or
+ * text properties do not produce huge pages.
+ */
+public final class PagingPolicy {
+  /** Page size which is used if no policy is configured for an entity set. */
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  /** Policy with the default page size and without byte budget. */
+  public static final PagingPolicy DEFAULT = new PagingPolicy(DEFAULT_PAGE_SIZE, 0);
+
+  private final int pageSize;
+  private final long maxPageBytes;
+
+  private PagingPolicy(int pageSize, long maxPageBytes) {
+    if(pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be positive but was " + pageSize + ".");
+    }
+    this.pageSize = pageSize;
+    this.maxPageBytes = Math.max(maxPageBytes, 0);
+  }
+
+  /**
+   * Create a policy with given page size (and without byte budget).
+   *
+   * @param pageSize maximal number of entities per page
+   * @return the paging policy
+   */
+  public static PagingPolicy pageSize(int pageSize) {
+    return new PagingPolicy(pageSize, 0);
+  }
+
+  /**
+   * Create a policy with the page size of this policy and given byte budget.
+   *
+   * @param maxPageBytes maximal estimated serialized size of a page in bytes (<code>0</code> for no budget)
+   * @return the paging policy
+   */
+  public PagingPolicy maxPageBytes(long maxPageBytes) {
+    return new PagingPolicy(pageSize, maxPageBytes);
+  }
+
+  /**
+   * Gets the maximal number of entities per page.
+   *
+   * @return the page size
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Gets the maximal estimated serialized size of a page in bytes.
+   *
+   * @return the byte budget (or <code>0</code> if pages are not cut by size)
+   */
+  public long getMaxPageBytes() {
+    return maxPageBytes;
+  }
+
+  /**
+   * Whether pages are (also) cut by their estimated serialized size.
+   *
+   * @return <code>true</code> if a byte budget is set
+   */
+  public boolean hasByteBudget() {
+    return maxPageBytes > 0;
+  }
+
+  @Override
+  public String toString() {
+    return "PagingPolicy{pageSize=" + pageSize + ", maxPageBytes=" + maxPageBytes + '}';
+  }
+}
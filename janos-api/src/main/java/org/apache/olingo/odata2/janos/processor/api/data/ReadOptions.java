@@ -3,6 +3,11 @@ package org.apache.olingo.odata2.janos.processor.api.data;
 import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
 import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * Optimized read options.
  *
@@ -12,8 +17,11 @@ public final class ReadOptions {
   private FilterExpression filter;
   private OrderByExpression orderBy;
   private String skipToken;
+  private Cursor cursor;
   private Integer skip;
   private Integer top;
+  private boolean totalCountRequested;
+  private Set<String> select;
 
   /**
    * None read options.
@@ -110,6 +118,17 @@ public final class ReadOptions {
     return skipToken;
   }
 
+  /**
+   * Gets the cursor which was decoded from the skip token
+   * (or <code>null</code> if no skip token was given or it is no cursor).
+   * A data store which seeks the start of the page based on the cursor marks the skip as applied.
+   *
+   * @return the cursor
+   */
+  public Cursor getCursor() {
+    return cursor;
+  }
+
   /**
    * Gets topApplied.
    *
@@ -119,6 +138,29 @@ public final class ReadOptions {
     return top;
   }
 
+  /**
+   * Whether the total count of all entities which apply to the filter (independent of skip token, skip and top)
+   * is requested (e.g. for <code>$inlinecount=allpages</code>).
+   * A data store which can provide the count sets it as total count of the read result.
+   *
+   * @return <code>true</code> if the total count is requested
+   */
+  public boolean isTotalCountRequested() {
+    return totalCountRequested;
+  }
+
+  /**
+   * Gets the names of the (structural) properties which are required of each read entity
+   * (e.g. because of <code>$select</code>), which include the key properties.
+   * A data store can read only these properties (e.g. via a projection query) instead of complete entities,
+   * but only if nothing else (e.g. the filter) is left to be done by the processor.
+   *
+   * @return the names of the selected properties or <code>null</code> if all properties are required
+   */
+  public Set<String> getSelect() {
+    return select;
+  }
+
   /**
    * The type Builder.
    */
@@ -169,6 +211,17 @@ public final class ReadOptions {
       return this;
     }
 
+    /**
+     * Cursor builder.
+     *
+     * @param cursor the cursor (decoded skip token)
+     * @return the builder
+     */
+    public Builder cursor(Cursor cursor) {
+      options.cursor = cursor;
+      return this;
+    }
+
     /**
      * Top builder.
      *
@@ -179,5 +232,27 @@ public final class ReadOptions {
       options.top = top;
       return this;
     }
+
+    /**
+     * Total count builder.
+     *
+     * @param totalCountRequested whether the total count is requested
+     * @return the builder
+     */
+    public Builder totalCount(boolean totalCountRequested) {
+      options.totalCountRequested = totalCountRequested;
+      return this;
+    }
+
+    /**
+     * Select builder.
+     *
+     * @param select names of the selected properties (or <code>null</code> for all properties)
+     * @return the builder
+     */
+    public Builder select(Collection<String> select) {
+      options.select = select == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(select));
+      return this;
+    }
   }
 }
@@ -3,31 +3,51 @@ package org.apache.olingo.odata2.janos.processor.api.data;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by mibo on 04.09.15.
  * @param <T>  the type parameter
  */
 public final class ReadResult<T> {
-  private final Collection<T> result;
+  private Collection<T> result;
   private boolean appliedSkip = false;
   private boolean appliedTop = false;
   private boolean appliedOrder = false;
   private boolean appliedFilter = false;
+  private Long totalCount;
 
   private ReadResult(Collection<T> result) {
-    this.result = new ArrayList<>(result);
+    this.result = result;
   }
 
   /**
    * Gets result.
+   * The result is not copied, hence it is only a read only view on the collection given to the builder.
    *
    * @return the result
    */
   public Collection<T> getResult() {
+    if(result instanceof List) {
+      return Collections.unmodifiableList((List<T>) result);
+    }
     return Collections.unmodifiableCollection(result);
   }
 
+  /**
+   * Gets the result as list which may be modified by the caller (e.g. to apply filter and paging in place).
+   * A result given as <code>ArrayList</code> to the builder is handed over as is (hence it must not be used
+   * by the data store afterwards), any other collection is copied once.
+   *
+   * @return the result as modifiable list
+   */
+  public List<T> getModifiableResult() {
+    if(result instanceof ArrayList) {
+      return (List<T>) result;
+    }
+    return new ArrayList<>(result);
+  }
+
   /**
    * Get first result from results collection
    * or <code>null</code> if result collection is empty.
@@ -78,6 +98,16 @@ public final class ReadResult<T> {
     return appliedFilter;
   }
 
+  /**
+   * Gets the total count of all entities which apply to the filter (independent of skip token, skip and top)
+   * as provided by the data store.
+   *
+   * @return the total count or <code>null</code> if it was not provided
+   */
+  public Long getTotalCount() {
+    return totalCount;
+  }
+
   /**
    * For result.
    *
@@ -185,6 +215,7 @@ public final class ReadResult<T> {
 
     /**
      * Set order to applied.
+     * If no order was requested this marks the result as already sorted in a stable default (key) order.
      *
      * @return the builder
      */
@@ -193,11 +224,25 @@ public final class ReadResult<T> {
       return this;
     }
 
+    /**
+     * Set the total count of all entities which apply to the filter (independent of skip token, skip and top).
+     *
+     * @param totalCount the total count
+     * @return the builder
+     */
+    public Builder<T> totalCount(long totalCount) {
+      readResult.totalCount = totalCount;
+      return this;
+    }
+
+    /**
+     * Set the result values (the collection is used as is and not copied).
+     *
+     * @param values the result values
+     * @return the builder
+     */
     public Builder<T> values(Collection<T> values) {
-      if(!readResult.result.isEmpty()) {
-        readResult.result.clear();
-      }
-      readResult.result.addAll(values);
+      readResult.result = values;
       return this;
     }
 
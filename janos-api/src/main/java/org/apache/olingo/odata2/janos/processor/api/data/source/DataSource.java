@@ -23,10 +23,14 @@ import org.apache.olingo.odata2.api.edm.EdmException;
 import org.apache.olingo.odata2.api.exception.ODataApplicationException;
 import org.apache.olingo.odata2.api.exception.ODataNotFoundException;
 import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.NavigationSegment;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -59,6 +63,45 @@ public interface DataSource {
   ReadResult<?> readData(EdmEntitySet entitySet, ReadOptions readOptions)
       throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException;
 
+  /**
+   * Counts all data objects of the specified entity set which apply to the filter of the read options
+   * (all other read options are ignored).
+   * By default counting is not supported.
+   * @param entitySet the requested
+   * @param readOptions the read options
+   * @return the number of data objects or <code>null</code> if the data source can not count them
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws ODataNotFoundException the o data not found exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default Long countData(EdmEntitySet entitySet, ReadOptions readOptions)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+    return null;
+  }
+
+  /**
+   * Gets the modification version of the data objects of the specified entity set
+   * which changes with each create, update or delete of one of them.
+   * By default modifications are not tracked.
+   * @param entitySet the requested
+   * @return the modification version or <code>null</code> if modifications are not tracked
+   * @throws EdmException the edm exception
+   */
+  default Long getVersion(EdmEntitySet entitySet) throws EdmException {
+    return null;
+  }
+
+  /**
+   * Opens a snapshot of the data which is used by all reads of the current thread until it is closed,
+   * so that all entity sets read by a request (e.g. via <code>$expand</code>) are read in a consistent state.
+   * By default no snapshot is opened.
+   * @return the snapshot (to be closed at the end of the request)
+   */
+  default Snapshot openSnapshot() {
+    return () -> { };
+  }
+
   /**
    * Retrieves a single data object for the specified entity set and key.
    * @param entitySet the requested
@@ -91,6 +134,60 @@ public interface DataSource {
       Map<String, Object> targetKeys) throws ODataNotImplementedException, ODataNotFoundException, EdmException,
       ODataApplicationException;
 
+  /**
+   * <p>Retrieves the related data for all of the specified source data objects at once
+   * (e.g. for an <code>$expand</code> of a feed) instead of calling
+   * {@link #readRelatedData(EdmEntitySet, Object, EdmEntitySet, Map)} for each single source data object.</p>
+   * <p>The related data of a source data object is (as for a single source data object)
+   * a list of related data or a single data object (or <code>null</code>).
+   * By default the related data is read for each source data object separately.</p>
+   * @param sourceEntitySet the EdmEntitySet of the source entities
+   * @param sourceData the source data objects
+   * @param targetEntitySet the EdmEntitySet of the target (related) entities
+   * @return map of each source data object (identity) to its related data
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws ODataNotFoundException the o data not found exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default Map<Object, Object> readRelatedData(EdmEntitySet sourceEntitySet, Collection<?> sourceData,
+      EdmEntitySet targetEntitySet)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+    Map<Object, Object> relatedData = new IdentityHashMap<>();
+    for (Object source : sourceData) {
+      try {
+        relatedData.put(source, readRelatedData(sourceEntitySet, source, targetEntitySet,
+            Collections.<String, Object>emptyMap()));
+      } catch (ODataNotFoundException e) {
+        relatedData.put(source, null);
+      }
+    }
+    return relatedData;
+  }
+
+  /**
+   * <p>Retrieves the data which is reached from the source entity with given key via all given
+   * navigation segments (e.g. <code>Buildings('1')/nb_Rooms('3')/nr_Employees</code>) at once
+   * and which applies to the given read options (instead of reading the related data segment by segment).</p>
+   * <p>If the last navigation segment has target multiplicity '*' and no key the read result contains
+   * all related data, otherwise at most a single data object.
+   * By default this is not supported.</p>
+   * @param sourceEntitySet the EdmEntitySet of the source entity
+   * @param sourceKeys the key of the source entity as map of key names to key values
+   * @param navigationSegments the navigation segments (with optional key predicates)
+   * @param readOptions the read options
+   * @return the read result or <code>null</code> if not supported
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws ODataNotFoundException the o data not found exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default ReadResult<?> readRelatedData(EdmEntitySet sourceEntitySet, Map<String, Object> sourceKeys,
+      List<NavigationSegment> navigationSegments, ReadOptions readOptions)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+    return null;
+  }
+
   /**
    * Retrieves the binary data and the MIME type for the media resource
    * associated to the specified media-link entry.
@@ -198,6 +295,14 @@ public interface DataSource {
       Map<String, Object> targetKeys) throws ODataNotImplementedException, ODataNotFoundException, EdmException,
       ODataApplicationException;
 
+  /**
+   * Snapshot of the data which is opened by {@link #openSnapshot()}.
+   */
+  interface Snapshot extends AutoCloseable {
+    @Override
+    void close();
+  }
+
   /**
    * Container to store binary data (as byte array) and the associated MIME type.
    */
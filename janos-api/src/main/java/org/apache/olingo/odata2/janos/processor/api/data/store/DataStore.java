@@ -16,10 +16,13 @@
 
 package org.apache.olingo.odata2.janos.processor.api.data.store;
 
+import org.apache.olingo.odata2.janos.processor.api.data.NavigationPath;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * The DataStore interface for a given class handles all read/write operations.
@@ -67,6 +70,41 @@ public interface DataStore<T> {
    */
   T read(final T object) throws DataStoreException;
 
+  /**
+   * Read all objects which are key equal to one of the given objects (based on #isKeyEqualChecked method).
+   * Objects for which no according object can be found are skipped.
+   * By default each object is read separately.
+   *
+   * @param objects objects with key fields set
+   * @return all according objects
+   * @throws DataStoreException the data store exception
+   */
+  default Collection<T> readAll(final Collection<T> objects) throws DataStoreException {
+    List<T> result = new ArrayList<>();
+    for (T object : objects) {
+      T read = read(object);
+      if (read != null) {
+        result.add(read);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read all objects whose field with given name references (is key equal to) one of the given objects.
+   * This is used to resolve the (reverse) navigation for many source objects at once.
+   * By default this is not supported.
+   *
+   * @param fieldName name of the (navigation) field of the objects of this DataStore
+   * @param referencedObjects the referenced objects
+   * @return all referencing objects or <code>null</code> if not supported by this DataStore
+   * @throws DataStoreException the data store exception
+   */
+  default Collection<T> readReferencing(final String fieldName, final Collection<?> referencedObjects)
+      throws DataStoreException {
+    return null;
+  }
+
   /**
    * Read all object of this DataStore.
    *
@@ -82,6 +120,38 @@ public interface DataStore<T> {
    */
   ReadResult<T> read(ReadOptions readOptions) throws DataStoreException;
 
+  /**
+   * Read all objects of this DataStore which are reached via the given navigation path
+   * (and apply to the given read options) at once, e.g. via a single join query.
+   * By default this is not supported.
+   *
+   * @param navigationPath the navigation path (whose last step leads to objects of this DataStore)
+   * @param readOptions the read options
+   * @return the read result or <code>null</code> if not supported by this DataStore
+   * @throws DataStoreException the data store exception
+   */
+  default ReadResult<T> read(final NavigationPath navigationPath, final ReadOptions readOptions)
+      throws DataStoreException {
+    return null;
+  }
+
+  /**
+   * Count all objects which apply to the filter of given read options
+   * (all other read options are ignored).
+   * By default all objects which apply to the filter are read and counted.
+   *
+   * @param readOptions the read options
+   * @return the number of objects or <code>null</code> if the filter can not be applied by this DataStore
+   * @throws DataStoreException the data store exception
+   */
+  default Long count(ReadOptions readOptions) throws DataStoreException {
+    ReadResult<T> result = read(ReadOptions.start(readOptions.getFilter()).build());
+    if(readOptions.getFilter() != null && !result.isFilterApplied()) {
+      return null;
+    }
+    return (long) result.getResult().size();
+  }
+
   /**
    * Update object which is key equal to given object (based on #isKeyEqualChecked method).
    * If no according object can be found <code>null</code> is returned and nothing is updated.
@@ -100,6 +170,17 @@ public interface DataStore<T> {
    */
   T delete(final T object) throws DataStoreException;
 
+  /**
+   * Gets the modification version of this DataStore which is incremented by each create, update and delete
+   * (after the modification is visible to reads), so that e.g. responses can be cached until the next modification.
+   * By default modifications are not tracked.
+   *
+   * @return the modification version or <code>-1</code> if modifications are not tracked
+   */
+  default long getVersion() {
+    return -1;
+  }
+
   /**
    * Are the key values equal for both instances.
    * If all compared key values are <code>null</code> this also means equal.
@@ -26,6 +26,25 @@ public interface DataStoreManager {
    * The KEEP _ pERSISTENT.
    */
   String KEEP_PERSISTENT = "KEEP_PERSISTENT";
+  /**
+   * Property which selects the kind of DataStore (e.g. {@link #COLUMNAR}), either for all DataStores or,
+   * with the name of a DataStore as suffix (e.g. <code>STORE_TYPE.Rooms</code>), for one DataStore.
+   * Without this property the DataStoreManager chooses the kind of DataStore.
+   */
+  String STORE_TYPE = "STORE_TYPE";
+  /**
+   * Value of {@link #STORE_TYPE} for a columnar (off heap) DataStore for large and read mostly entity sets
+   * (if supported by the DataStoreManager).
+   */
+  String COLUMNAR = "COLUMNAR";
+  /**
+   * Property which enables (with value <code>true</code>) the modification version
+   * (see {@link DataStore#getVersion()}) of DataStores which only see the modifications done via themselves
+   * (e.g. DataStores for JPA entities). It must only be set if the data is modified exclusively via
+   * these DataStores, otherwise e.g. cached responses become stale.
+   * Without this property such DataStores do not track modifications (and their responses are not cached).
+   */
+  String TRACK_VERSION = "TRACK_VERSION";
 
   /**
    * Set default properties which are used for all methods without explicit properties parameter.
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of a response (status, headers and the completely read body)
+ * from which any number of equal responses can be created.
+ */
+final class CachedResponse {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  /** number of hash bytes used for an ETag */
+  private static final int ETAG_BYTES = 16;
+
+  private final HttpStatusCodes status;
+  private final String contentHeader;
+  private final Map<String, String> headers = new LinkedHashMap<>();
+  private final byte[] body;
+  private volatile String eTag;
+
+  /**
+   * Copy the given response. Its body is read completely, hence the response must not be used afterwards.
+   *
+   * @param response the response
+   * @throws ODataException if the response body can not be read
+   */
+  CachedResponse(final ODataResponse response) throws ODataException {
+    status = response.getStatus();
+    contentHeader = response.getContentHeader();
+    for (String name : response.getHeaderNames()) {
+      headers.put(name, response.getHeader(name));
+    }
+    try (InputStream content = response.getEntityAsStream()) {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      byte[] chunk = new byte[8192];
+      for (int read = content.read(chunk); read >= 0; read = content.read(chunk)) {
+        buffer.write(chunk, 0, read);
+      }
+      body = buffer.toByteArray();
+    } catch (IOException e) {
+      throw new ODataException("Unable to read response for caching.", e);
+    }
+  }
+
+  /**
+   * Gets the (strong) ETag which is derived from the given data (e.g. a response body or a cache key).
+   *
+   * @param data the data
+   * @return the quoted ETag
+   */
+  static String getETag(final byte[] data) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+      StringBuilder eTag = new StringBuilder(ETAG_BYTES * 2 + 2).append('"');
+      for (int i = 0; i < ETAG_BYTES; i++) {
+        eTag.append(HEX[(hash[i] >> 4) & 0xF]).append(HEX[hash[i] & 0xF]);
+      }
+      return eTag.append('"').toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 is supported by every Java platform
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Gets the (strong) ETag of the body of this response.
+   *
+   * @return the quoted ETag
+   */
+  String getETag() {
+    if (eTag == null) {
+      eTag = getETag(body);
+    }
+    return eTag;
+  }
+
+  /**
+   * Gets the size of the body of this response.
+   *
+   * @return the size in bytes
+   */
+  int getSize() {
+    return body.length;
+  }
+
+  /**
+   * Create a new response which is equal to this response.
+   *
+   * @param eTag the ETag of the response
+   * @return the response
+   */
+  ODataResponse toResponse(final String eTag) {
+    ODataResponse.ODataResponseBuilder builder = ODataResponse.status(status);
+    if (contentHeader != null) {
+      builder.contentHeader(contentHeader);
+    }
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      builder.header(header.getKey(), header.getValue());
+    }
+    return builder.eTag(eTag).entity(new ByteArrayInputStream(body)).build();
+  }
+}
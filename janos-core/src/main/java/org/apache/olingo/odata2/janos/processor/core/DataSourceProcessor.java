@@ -23,6 +23,7 @@ import org.apache.olingo.odata2.api.batch.BatchHandler;
 import org.apache.olingo.odata2.api.batch.BatchRequestPart;
 import org.apache.olingo.odata2.api.batch.BatchResponsePart;
 import org.apache.olingo.odata2.api.commons.HttpContentType;
+import org.apache.olingo.odata2.api.commons.HttpHeaders;
 import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
 import org.apache.olingo.odata2.api.commons.InlineCount;
 import org.apache.olingo.odata2.api.edm.*;
@@ -38,14 +39,21 @@ import org.apache.olingo.odata2.api.processor.ODataSingleProcessor;
 import org.apache.olingo.odata2.api.uri.*;
 import org.apache.olingo.odata2.api.uri.expression.*;
 import org.apache.olingo.odata2.api.uri.info.*;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
+import org.apache.olingo.odata2.janos.processor.core.data.query.CompiledFilter;
+import org.apache.olingo.odata2.janos.processor.core.data.query.CursorCodec;
+import org.apache.olingo.odata2.janos.processor.core.data.query.ExpressionEvaluator;
+import org.apache.olingo.odata2.janos.processor.core.data.query.Sorter;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.util.*;
 
 /**
@@ -57,12 +65,20 @@ import java.util.*;
  */
 public class DataSourceProcessor extends ODataSingleProcessor implements ODataProcessor {
 
-  // TODO: Paging size should be configurable.
-  private static final int SERVER_PAGING_SIZE = 100;
+  /** rough estimate of the serialized size of the metadata and markup of one entity (or property) */
+  private static final int ENTITY_OVERHEAD_BYTES = 256;
+  private static final int PROPERTY_OVERHEAD_BYTES = 16;
 
   protected final DataSource dataSource;
   protected final ValueAccess valueAccess;
   protected final FunctionSource functionSource;
+  private final ExpressionEvaluator expressionEvaluator;
+  private final PagingPolicy defaultPaging;
+  private final Map<String, PagingPolicy> entitySetPaging;
+  private final ValueMapPlan.Cache valueMapPlans;
+  private final ResponseCache responseCache;
+  private final DocumentCache documents;
+  private final DirectJsonWriter directJsonWriter;
 
   /**
    * Initialize a {@link DataSourceProcessor} in combination with given {@link DataSource} (providing data objects)
@@ -90,33 +106,212 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
    * @param functionSource used for execution of function imports
    */
   public DataSourceProcessor(final DataSource dataSource, final ValueAccess valueAccess, final FunctionSource functionSource) {
+    this(dataSource, valueAccess, functionSource, PagingPolicy.DEFAULT, Collections.emptyMap());
+  }
+
+  /**
+   * Initialize a {@link DataSourceProcessor} in combination with given {@link DataSource} (providing data objects)
+   * and {@link ValueAccess} (accessing values of data objects).
+   *
+   * @param dataSource used for accessing the data objects
+   * @param valueAccess for accessing the values provided by the data objects
+   * @param functionSource used for execution of function imports
+   * @param defaultPaging server paging policy for all entity sets without an own policy
+   * @param entitySetPaging server paging policies per entity set name
+   */
+  public DataSourceProcessor(final DataSource dataSource, final ValueAccess valueAccess,
+      final FunctionSource functionSource, final PagingPolicy defaultPaging,
+      final Map<String, PagingPolicy> entitySetPaging) {
+    this(dataSource, valueAccess, functionSource, defaultPaging, entitySetPaging, new ValueMapPlan.Cache(), null,
+        new DocumentCache(), null);
+  }
+
+  /**
+   * Initialize a {@link DataSourceProcessor} which shares the value map plans and the caches of a service
+   * (see {@link #DataSourceProcessor(DataSource, ValueAccess, FunctionSource, PagingPolicy, Map)}).
+   *
+   * @param valueMapPlans value map plans per structural type
+   * @param responseCache cache for the responses of entity set reads (or <code>NULL</code> for no caching)
+   * @param documents cache for the metadata and service documents
+   * @param directJsonWriter writer for JSON feeds and entries without value maps (or <code>NULL</code>)
+   */
+  DataSourceProcessor(final DataSource dataSource, final ValueAccess valueAccess,
+      final FunctionSource functionSource, final PagingPolicy defaultPaging,
+      final Map<String, PagingPolicy> entitySetPaging, final ValueMapPlan.Cache valueMapPlans,
+      final ResponseCache responseCache, final DocumentCache documents, final DirectJsonWriter directJsonWriter) {
     this.dataSource = dataSource;
     this.valueAccess = valueAccess;
     this.functionSource = functionSource;
+    this.expressionEvaluator = new ExpressionEvaluator(valueAccess);
+    this.defaultPaging = defaultPaging;
+    this.entitySetPaging = entitySetPaging;
+    this.valueMapPlans = valueMapPlans;
+    this.responseCache = responseCache;
+    this.documents = documents;
+    this.directJsonWriter = directJsonWriter;
+  }
+
+  private PagingPolicy getPagingPolicy(final EdmEntitySet entitySet) throws EdmException {
+    final PagingPolicy pagingPolicy = entitySetPaging.get(entitySet.getName());
+    return pagingPolicy == null ? defaultPaging : pagingPolicy;
+  }
+
+  /**
+   * Names of the structural properties which are written for the given (<code>$select</code>) tree node:
+   * the selected properties, the key properties and the properties of the ETag.
+   *
+   * @return the property names or <code>NULL</code> if all properties are written
+   */
+  private Set<String> getSelectedPropertyNames(final EdmEntityType entityType,
+      final ExpandSelectTreeNode expandSelectTree) throws EdmException {
+    if (expandSelectTree == null || expandSelectTree.isAll()) {
+      return null;
+    }
+    Set<String> propertyNames = new LinkedHashSet<>();
+    for (final EdmProperty property : expandSelectTree.getProperties()) {
+      propertyNames.add(property.getName());
+    }
+    propertyNames.addAll(entityType.getKeyPropertyNames());
+    for (final String propertyName : entityType.getPropertyNames()) {
+      final EdmProperty property = (EdmProperty) entityType.getProperty(propertyName);
+      if (property.getFacets() != null && property.getFacets().getConcurrencyMode() == EdmConcurrencyMode.Fixed) {
+        propertyNames.add(propertyName);
+      }
+    }
+    return propertyNames;
+  }
+
+  /**
+   * Names of the structural properties which a data store has to read for the given request: the written
+   * properties (see {@link #getSelectedPropertyNames(EdmEntityType, ExpandSelectTreeNode)}) and the properties
+   * of the order (which are required for the skip token of the next page).
+   *
+   * @return the property names or <code>NULL</code> if complete entities are required
+   *          (e.g. because of <code>$expand</code> or a not property based order)
+   */
+  private Set<String> getRequiredPropertyNames(final GetEntitySetUriInfo uriInfo) throws ODataException {
+    if (!uriInfo.getExpand().isEmpty()) {
+      return null;
+    }
+    final Set<String> propertyNames = getSelectedPropertyNames(uriInfo.getTargetEntitySet().getEntityType(),
+        UriParser.createExpandSelectTree(uriInfo.getSelect(), uriInfo.getExpand()));
+    if (propertyNames != null && uriInfo.getOrderBy() != null) {
+      for (final OrderExpression order : uriInfo.getOrderBy().getOrders()) {
+        CommonExpression expression = order.getExpression();
+        while (expression.getKind() == ExpressionKind.MEMBER) {
+          expression = ((MemberExpression) expression).getPath();
+        }
+        if (expression.getKind() != ExpressionKind.PROPERTY) {
+          return null;
+        }
+        propertyNames.add(((PropertyExpression) expression).getEdmProperty().getName());
+      }
+    }
+    return propertyNames;
+  }
+
+  @Override
+  public ODataResponse readMetadata(final GetMetadataUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    return documents.get("$metadata\n" + contentType, getContext().getRequestHeader(HttpHeaders.IF_NONE_MATCH),
+        () -> super.readMetadata(uriInfo, contentType));
+  }
+
+  @Override
+  public ODataResponse readServiceDocument(final GetServiceDocumentUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    // the service document contains the service root (as base URI)
+    final String key = contentType + '\n' + getContext().getPathInfo().getServiceRoot();
+    return documents.get(key, getContext().getRequestHeader(HttpHeaders.IF_NONE_MATCH),
+        () -> super.readServiceDocument(uriInfo, contentType));
+  }
+
+  /**
+   * Cache key of the response of an entity set read: the request URI (with sorted query options),
+   * the content type and the modification versions of all read entity sets.
+   *
+   * @return the cache key or <code>NULL</code> if the response is not cached
+   */
+  private String getResponseCacheKey(final GetEntitySetUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    if (responseCache == null || uriInfo.getFunctionImport() != null || !uriInfo.getExpand().isEmpty()) {
+      return null;
+    }
+    final URI requestUri = getContext().getPathInfo().getRequestUri();
+    StringBuilder key = new StringBuilder(contentType).append('\n')
+        .append(requestUri.getScheme()).append("://").append(requestUri.getRawAuthority())
+        .append(requestUri.getRawPath());
+    if (requestUri.getRawQuery() != null) {
+      String[] queryOptions = requestUri.getRawQuery().split("&");
+      Arrays.sort(queryOptions);
+      key.append('?').append(String.join("&", queryOptions));
+    }
+
+    List<EdmEntitySet> entitySets = new ArrayList<>();
+    entitySets.add(uriInfo.getStartEntitySet());
+    for (final NavigationSegment navigationSegment : uriInfo.getNavigationSegments()) {
+      entitySets.add(navigationSegment.getEntitySet());
+    }
+    for (final EdmEntitySet entitySet : entitySets) {
+      final Long version = dataSource.getVersion(entitySet);
+      if (version == null || version < 0) {
+        // modifications are not tracked (a data store without version reports -1)
+        return null;
+      }
+      key.append('\n').append(entitySet.getName()).append('=').append(version);
+    }
+    return key.toString();
   }
 
   @Override
   public ODataResponse readEntitySet(final GetEntitySetUriInfo uriInfo, final String contentType)
       throws ODataException {
-    ArrayList<Object> data = new ArrayList<>();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      final String cacheKey = getResponseCacheKey(uriInfo, contentType);
+      if (cacheKey == null) {
+        return writeEntitySet(uriInfo, contentType);
+      }
+      final String eTag = responseCache.getETag(cacheKey);
+      if (ResponseCache.matches(getContext().getRequestHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+        return ODataResponse.status(HttpStatusCodes.NOT_MODIFIED).eTag(eTag).build();
+      }
+      final ODataResponse response = responseCache.get(cacheKey, eTag);
+      return response == null ? responseCache.put(cacheKey, eTag, writeEntitySet(uriInfo, contentType)) : response;
+    }
+  }
+
+  private ODataResponse writeEntitySet(final GetEntitySetUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
+    final PagingPolicy paging = getPagingPolicy(entitySet);
+    List<Object> data;
     ReadResult result;
     try {
-      result = retrieveData(uriInfo,
+      result = retrieveData(uriInfo, paging.getPageSize(),
           uriInfo.getStartEntitySet(),
           uriInfo.getKeyPredicates(),
           uriInfo.getFunctionImport(),
           mapFunctionParameters(uriInfo.getFunctionImportParameters()),
           uriInfo.getNavigationSegments());
-      data.addAll(result.getResult());
+      data = getModifiableResult(result);
     } catch (final ODataNotFoundException e) {
-      data.clear();
+      data = new ArrayList<>();
       result = ReadResult.empty();
     }
 
-    final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
     final InlineCount inlineCountType = uriInfo.getInlineCount();
-    final Integer count = applySystemQueryOptions(entitySet, data,
-        new QueryOptionsHolder(uriInfo), result);
+    Integer count = applySystemQueryOptions(entitySet, data,
+        new QueryOptionsHolder(uriInfo, paging.getPageSize()), result);
+    if (inlineCountType == InlineCount.ALLPAGES) {
+      if (result.getTotalCount() != null) {
+        // the data store already counted all entities (also for a read of a navigation path)
+        count = (int) Math.min(result.getTotalCount(), Integer.MAX_VALUE);
+      } else if ((result.isSkipApplied() || result.isTopApplied()) && isEntitySetRead(
+          uriInfo.getNavigationSegments(), uriInfo.getKeyPredicates(), uriInfo.getFunctionImport())) {
+        // the data store did not return all entities
+        count = (int) Math.min(countEntities(entitySet, uriInfo.getFilter()), Integer.MAX_VALUE);
+      }
+    }
 
     ODataContext context = getContext();
     String nextLink = null;
@@ -126,47 +321,165 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     // Almost all system query options in the current request must be carried
     // over to the URI for the "next" link, with the exception of $skiptoken
     // and $skipApplied.
-    if (data.size() > SERVER_PAGING_SIZE) {
-      if (uriInfo.getOrderBy() == null
-          && uriInfo.getSkipToken() == null
-          && uriInfo.getSkip() == null
-          && uriInfo.getTop() == null) {
-        sortInDefaultOrder(entitySet, data);
+    final Sorter sorter = expressionEvaluator.getSorter(uriInfo.getOrderBy(), entitySet.getEntityType());
+    boolean unordered = !result.isOrderApplied()
+        && uriInfo.getOrderBy() == null
+        && uriInfo.getSkipToken() == null
+        && uriInfo.getSkip() == null
+        && uriInfo.getTop() == null;
+    int pageEnd = data.size();
+    if (data.size() > paging.getPageSize() || paging.hasByteBudget() && data.size() > 1) {
+      if (unordered) {
+        // only the page and the first entity of the next page are required
+        sort(sorter, data, paging.getPageSize() + 1);
       }
-
+      pageEnd = getPageEnd(paging, data, entitySet.getEntityType());
+    }
+    if (pageEnd < data.size()) {
+      // the skip token is a cursor which points to the last entity of this page
+      final Cursor cursor = sorter.getCursor(data.get(pageEnd - 1));
       nextLink = context.getPathInfo().getServiceRoot().relativize(context.getPathInfo().getRequestUri()).toString();
       nextLink = percentEncodeNextLink(nextLink);
       nextLink += (nextLink.contains("?") ? "&" : "?")
-          + "$skiptoken=" + getSkipToken(entitySet, data.get(SERVER_PAGING_SIZE));
+          + "$skiptoken=" + CursorCodec.encode(cursor, uriInfo.getOrderBy());
 
-      while (data.size() > SERVER_PAGING_SIZE) {
-        data.remove(SERVER_PAGING_SIZE);
-      }
+      limit(data, 0, pageEnd);
     }
 
     final EdmEntityType entityType = entitySet.getEntityType();
-    List<Map<String, Object>> values = new ArrayList<>();
-    for (final Object entryData : data) {
-      values.add(getStructuralTypeValueMap(entryData, entityType));
+    final ExpandSelectTreeNode expandSelectTree =
+        UriParser.createExpandSelectTree(uriInfo.getSelect(), uriInfo.getExpand());
+    if (isDirectJson(expandSelectTree, contentType)) {
+      final int directHandle = context.startRuntimeMeasurement("DirectJsonWriter", "writeFeed");
+      final ODataResponse response = directJsonWriter.writeFeed(entitySet, data,
+          context.getPathInfo().getServiceRoot(),
+          inlineCountType == InlineCount.ALLPAGES ? (count == null ? Integer.valueOf(0) : count) : null,
+          nextLink, contentType);
+      context.stopRuntimeMeasurement(directHandle);
+      if (response != null) {
+        return response;
+      }
     }
+    final List<Map<String, Object>> values =
+        new ValueMapList(data, entityType, getSelectedPropertyNames(entityType, expandSelectTree));
 
     final EntityProviderWriteProperties feedProperties = EntityProviderWriteProperties
         .serviceRoot(context.getPathInfo().getServiceRoot())
         .inlineCountType(inlineCountType)
         .inlineCount(count)
-        .expandSelectTree(UriParser.createExpandSelectTree(uriInfo.getSelect(), uriInfo.getExpand()))
+        .expandSelectTree(expandSelectTree)
         .callbacks(getCallbacks(data, entityType))
         .nextLink(nextLink)
         .build();
 
     final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeFeed");
-    final ODataResponse response = EntityProvider.writeFeed(contentType, entitySet, values, feedProperties);
+    final ODataResponse response;
+    try {
+      response = EntityProvider.writeFeed(contentType, entitySet, values, feedProperties);
+    } catch (final ValueMapException e) {
+      throw e.getCause();
+    }
 
     context.stopRuntimeMeasurement(timingHandle);
 
     return ODataResponse.fromResponse(response).build();
   }
 
+  /**
+   * List view of the value maps (see {@link #getStructuralTypeValueMap(Object, EdmStructuralType, Set)})
+   * of data objects for the entity provider.
+   * The value map of an entity is only created when the entity provider accesses it (i.e. just before the entity
+   * is written), so that not the value maps of all entities of a feed are in memory at the same time.
+   */
+  private class ValueMapList extends AbstractList<Map<String, Object>> {
+    private final List<?> data;
+    private final EdmStructuralType type;
+    private final Set<String> propertyNames;
+
+    private ValueMapList(final List<?> data, final EdmStructuralType type, final Set<String> propertyNames) {
+      this.data = data;
+      this.type = type;
+      this.propertyNames = propertyNames;
+    }
+
+    @Override
+    public Map<String, Object> get(final int index) {
+      try {
+        return getStructuralTypeValueMap(data.get(index), type, propertyNames);
+      } catch (final ODataException e) {
+        throw new ValueMapException(e);
+      }
+    }
+
+    @Override
+    public int size() {
+      return data.size();
+    }
+  }
+
+  /**
+   * Exception of the creation of a value map within a {@link ValueMapList}.
+   */
+  private static class ValueMapException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private ValueMapException(final ODataException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ODataException getCause() {
+      return (ODataException) super.getCause();
+    }
+  }
+
+  /**
+   * Number of (first) entities of the given data which are written as page: at most the page size of the policy
+   * and, if the policy has a byte budget, only as many entities as fit into the budget (but at least one).
+   */
+  private int getPageEnd(final PagingPolicy paging, final List<Object> data, final EdmEntityType entityType)
+      throws ODataException {
+    final int pageEnd = Math.min(data.size(), paging.getPageSize());
+    if (!paging.hasByteBudget()) {
+      return pageEnd;
+    }
+    long pageBytes = 0;
+    for (int i = 0; i < pageEnd; i++) {
+      pageBytes += estimateSize(data.get(i), entityType);
+      if (pageBytes > paging.getMaxPageBytes()) {
+        return Math.max(i, 1);
+      }
+    }
+    return pageEnd;
+  }
+
+  /**
+   * Rough estimate of the serialized size (in bytes) of the given data object (only its structural properties).
+   */
+  private long estimateSize(final Object data, final EdmStructuralType type) throws ODataException {
+    long size = ENTITY_OVERHEAD_BYTES;
+    for (final String propertyName : type.getPropertyNames()) {
+      final EdmProperty property = (EdmProperty) type.getProperty(propertyName);
+      final Object value = valueAccess.getPropertyValue(data, property);
+      size += PROPERTY_OVERHEAD_BYTES + propertyName.length();
+      if (value == null) {
+        continue;
+      } else if (property.isSimple()) {
+        if (value instanceof byte[]) {
+          // base64 encoded
+          size += ((byte[]) value).length * 4L / 3;
+        } else if (value instanceof String) {
+          size += ((String) value).length();
+        } else {
+          size += String.valueOf(value).length();
+        }
+      } else {
+        size += estimateSize(value, (EdmStructuralType) property.getType());
+      }
+    }
+    return size;
+  }
+
   String percentEncodeNextLink(final String link) {
     if (link == null) {
       return null;
@@ -180,71 +493,120 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse countEntitySet(final GetEntitySetCountUriInfo uriInfo, final String contentType)
       throws ODataException {
-    ArrayList<Object> data = new ArrayList<>();
-    try {
-      ReadResult<?> result = retrieveData(
-          uriInfo.getStartEntitySet(),
-          uriInfo.getKeyPredicates(),
-          uriInfo.getFunctionImport(),
-          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-          uriInfo.getNavigationSegments());
-      data.addAll(result.getResult());
-    } catch (final ODataNotFoundException e) {
-      data.clear();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      if (isEntitySetRead(uriInfo.getNavigationSegments(), uriInfo.getKeyPredicates(), uriInfo.getFunctionImport())) {
+        // count without reading the entities (if supported by the data source); skip and top reduce the count
+        long count = countEntities(uriInfo.getTargetEntitySet(), uriInfo.getFilter());
+        if (uriInfo.getSkip() != null && uriInfo.getSkip() > 0) {
+          count = Math.max(count - uriInfo.getSkip(), 0);
+        }
+        if (uriInfo.getTop() != null && uriInfo.getTop() > 0) {
+          count = Math.min(count, uriInfo.getTop());
+        }
+        return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(count))).build();
+      }
+
+      List<Object> data;
+      try {
+        data = getModifiableResult(retrieveData(
+            uriInfo.getStartEntitySet(),
+            uriInfo.getKeyPredicates(),
+            uriInfo.getFunctionImport(),
+            mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+            uriInfo.getNavigationSegments()));
+      } catch (final ODataNotFoundException e) {
+        data = new ArrayList<>();
+      }
+
+      applySystemQueryOptions(
+          uriInfo.getTargetEntitySet(),
+          data, new QueryOptionsHolder(uriInfo));
+
+      return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(data.size()))).build();
     }
+  }
 
-    applySystemQueryOptions(
-        uriInfo.getTargetEntitySet(),
-        data, new QueryOptionsHolder(uriInfo));
+  /**
+   * Whether the request reads an entity set directly (without key, navigation or function import).
+   */
+  private static boolean isEntitySetRead(final List<NavigationSegment> navigationSegments,
+      final List<KeyPredicate> keyPredicates, final EdmFunctionImport functionImport) {
+    return navigationSegments.isEmpty() && keyPredicates.isEmpty() && functionImport == null;
+  }
 
-    return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(data.size()))).build();
+  /**
+   * Count all entities of the given entity set which apply to the given filter.
+   * The count is done by the data source if supported, otherwise all entities are read (and filtered).
+   */
+  private long countEntities(final EdmEntitySet entitySet, final FilterExpression filter) throws ODataException {
+    ODataContext context = getContext();
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "countEntities");
+    try {
+      final ReadOptions readOptions = ReadOptions.start(filter).build();
+      final Long count = dataSource.countData(entitySet, readOptions);
+      if (count != null) {
+        return count;
+      }
+      final ReadResult<?> result = dataSource.readData(entitySet, readOptions);
+      final List<Object> data = getModifiableResult(result);
+      if (!result.isFilterApplied() && filter != null) {
+        filter(data, filter);
+      }
+      return data.size();
+    } catch (final ODataNotFoundException e) {
+      return 0;
+    } finally {
+      context.stopRuntimeMeasurement(timingHandle);
+    }
   }
 
   @Override
   public ODataResponse readEntityLinks(final GetEntitySetLinksUriInfo uriInfo, final String contentType)
       throws ODataException {
-    ArrayList<Object> data = new ArrayList<>();
-    try {
-      data.addAll(retrieveData(
-          uriInfo.getStartEntitySet(),
-          uriInfo.getKeyPredicates(),
-          uriInfo.getFunctionImport(),
-          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-          uriInfo.getNavigationSegments()).getResult());
-    } catch (final ODataNotFoundException e) {
-      data.clear();
-    }
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      List<Object> data;
+      try {
+        data = getModifiableResult(retrieveData(
+            uriInfo.getStartEntitySet(),
+            uriInfo.getKeyPredicates(),
+            uriInfo.getFunctionImport(),
+            mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+            uriInfo.getNavigationSegments()));
+      } catch (final ODataNotFoundException e) {
+        data = new ArrayList<>();
+      }
 
-    final Integer count = applySystemQueryOptions(
-        uriInfo.getTargetEntitySet(),
-        data,
-        new QueryOptionsHolder(uriInfo));
+      final Integer count = applySystemQueryOptions(
+          uriInfo.getTargetEntitySet(),
+          data,
+          new QueryOptionsHolder(uriInfo));
 
-    final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
+      final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
 
-    List<Map<String, Object>> values = new ArrayList<>();
-    for (final Object entryData : data) {
-      Map<String, Object> entryValues = new HashMap<>();
-      for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
-        entryValues.put(property.getName(), valueAccess.getPropertyValue(entryData, property));
+      List<Map<String, Object>> values = new ArrayList<>();
+      for (final Object entryData : data) {
+        Map<String, Object> entryValues = new HashMap<>();
+        for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
+          entryValues.put(property.getName(), valueAccess.getPropertyValue(entryData, property));
+        }
+        values.add(entryValues);
       }
-      values.add(entryValues);
-    }
 
-    ODataContext context = getContext();
-    final EntityProviderWriteProperties entryProperties = EntityProviderWriteProperties
-        .serviceRoot(context.getPathInfo().getServiceRoot())
-        .inlineCountType(uriInfo.getInlineCount())
-        .inlineCount(count)
-        .build();
+      ODataContext context = getContext();
+      final EntityProviderWriteProperties entryProperties = EntityProviderWriteProperties
+          .serviceRoot(context.getPathInfo().getServiceRoot())
+          .inlineCountType(uriInfo.getInlineCount())
+          .inlineCount(count)
+          .build();
 
-    final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeLinks");
+      final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeLinks");
 
-    final ODataResponse response = EntityProvider.writeLinks(contentType, entitySet, values, entryProperties);
+      final ODataResponse response = EntityProvider.writeLinks(contentType, entitySet, values, entryProperties);
 
-    context.stopRuntimeMeasurement(timingHandle);
+      context.stopRuntimeMeasurement(timingHandle);
 
-    return ODataResponse.fromResponse(response).build();
+      return ODataResponse.fromResponse(response).build();
+    }
   }
 
   @Override
@@ -255,37 +617,41 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
   @Override
   public ODataResponse readEntity(final GetEntityUriInfo uriInfo, final String contentType) throws ODataException {
-    final Object data = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments()).getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      final Object data = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments()).getFirst();
 
-    if (!appliesFilter(data, uriInfo.getFilter())) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      if (!appliesFilter(data, uriInfo.getFilter())) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final ExpandSelectTreeNode expandSelectTreeNode =
-        UriParser.createExpandSelectTree(uriInfo.getSelect(), uriInfo.getExpand());
+      final ExpandSelectTreeNode expandSelectTreeNode =
+          UriParser.createExpandSelectTree(uriInfo.getSelect(), uriInfo.getExpand());
 
-    return ODataResponse.fromResponse(
-        writeEntry(uriInfo.getTargetEntitySet(), expandSelectTreeNode, data, contentType)).build();
+      return ODataResponse.fromResponse(
+          writeEntry(uriInfo.getTargetEntitySet(), expandSelectTreeNode, data, contentType)).build();
+    }
   }
 
   @Override
   public ODataResponse existsEntity(final GetEntityCountUriInfo uriInfo, final String contentType)
       throws ODataException {
-    final ReadResult result = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments());
-    final Object data = result.getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      final ReadResult result = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments());
+      final Object data = result.getFirst();
 
-    return ODataResponse.fromResponse(EntityProvider.writeText(appliesFilter(data, uriInfo.getFilter()) ? "1" : "0"))
-        .build();
+      return ODataResponse.fromResponse(EntityProvider.writeText(appliesFilter(data, uriInfo.getFilter()) ? "1" : "0"))
+          .build();
+    }
   }
 
   @Override
@@ -376,37 +742,39 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse readEntityLink(final GetEntityLinkUriInfo uriInfo, final String contentType)
       throws ODataException {
-    final Object data = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments()).getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      final Object data = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments()).getFirst();
 
-    // if (!appliesFilter(data, uriInfo.getFilter()))
-    if (data == null) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      // if (!appliesFilter(data, uriInfo.getFilter()))
+      if (data == null) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
+      final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
 
-    Map<String, Object> values = new HashMap<>();
-    for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
-      values.put(property.getName(), valueAccess.getPropertyValue(data, property));
-    }
+      Map<String, Object> values = new HashMap<>();
+      for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
+        values.put(property.getName(), valueAccess.getPropertyValue(data, property));
+      }
 
-    ODataContext context = getContext();
-    final EntityProviderWriteProperties entryProperties = EntityProviderWriteProperties
-        .serviceRoot(context.getPathInfo().getServiceRoot())
-        .build();
+      ODataContext context = getContext();
+      final EntityProviderWriteProperties entryProperties = EntityProviderWriteProperties
+          .serviceRoot(context.getPathInfo().getServiceRoot())
+          .build();
 
-    final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeLink");
+      final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeLink");
 
-    final ODataResponse response = EntityProvider.writeLink(contentType, entitySet, values, entryProperties);
+      final ODataResponse response = EntityProvider.writeLink(contentType, entitySet, values, entryProperties);
 
-    context.stopRuntimeMeasurement(timingHandle);
+      context.stopRuntimeMeasurement(timingHandle);
 
-    return ODataResponse.fromResponse(response).build();
+      return ODataResponse.fromResponse(response).build();
+    }
   }
 
   @Override
@@ -504,33 +872,35 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse readEntityComplexProperty(final GetComplexPropertyUriInfo uriInfo, final String contentType)
       throws ODataException {
-    Object data = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments()).getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      Object data = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments()).getFirst();
 
-    // if (!appliesFilter(data, uriInfo.getFilter()))
-    if (data == null) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      // if (!appliesFilter(data, uriInfo.getFilter()))
+      if (data == null) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
-    final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
-    final Object value = property.isSimple() ?
-        property.getMapping() == null || property.getMapping().getMediaResourceMimeTypeKey() == null ?
-            getPropertyValue(data, propertyPath) : getSimpleTypeValueMap(data, propertyPath) :
-        getStructuralTypeValueMap(getPropertyValue(data, propertyPath), (EdmStructuralType) property.getType());
+      final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
+      final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
+      final Object value = property.isSimple() ?
+          property.getMapping() == null || property.getMapping().getMediaResourceMimeTypeKey() == null ?
+              getPropertyValue(data, propertyPath) : getSimpleTypeValueMap(data, propertyPath) :
+          getStructuralTypeValueMap(getPropertyValue(data, propertyPath), (EdmStructuralType) property.getType());
 
-    ODataContext context = getContext();
-    final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeProperty");
+      ODataContext context = getContext();
+      final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeProperty");
 
-    final ODataResponse response = EntityProvider.writeProperty(contentType, property, value);
+      final ODataResponse response = EntityProvider.writeProperty(contentType, property, value);
 
-    context.stopRuntimeMeasurement(timingHandle);
+      context.stopRuntimeMeasurement(timingHandle);
 
-    return ODataResponse.fromResponse(response).eTag(constructETag(uriInfo.getTargetEntitySet(), data)).build();
+      return ODataResponse.fromResponse(response).eTag(constructETag(uriInfo.getTargetEntitySet(), data)).build();
+    }
   }
 
   @Override
@@ -542,25 +912,28 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse readEntitySimplePropertyValue(final GetSimplePropertyUriInfo uriInfo, final String contentType)
       throws ODataException {
-    Object data = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments()).getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      Object data = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments()).getFirst();
 
-    // if (!appliesFilter(data, uriInfo.getFilter()))
-    if (data == null) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      // if (!appliesFilter(data, uriInfo.getFilter()))
+      if (data == null) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
-    final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
-    final Object value = property.getMapping() == null || property.getMapping().getMediaResourceMimeTypeKey() == null ?
-        getPropertyValue(data, propertyPath) : getSimpleTypeValueMap(data, propertyPath);
+      final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
+      final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
+      final Object value =
+          property.getMapping() == null || property.getMapping().getMediaResourceMimeTypeKey() == null ?
+          getPropertyValue(data, propertyPath) : getSimpleTypeValueMap(data, propertyPath);
 
-    return ODataResponse.fromResponse(EntityProvider.writePropertyValue(property, value)).eTag(
-        constructETag(uriInfo.getTargetEntitySet(), data)).build();
+      return ODataResponse.fromResponse(EntityProvider.writePropertyValue(property, value)).eTag(
+          constructETag(uriInfo.getTargetEntitySet(), data)).build();
+    }
   }
 
   @Override
@@ -679,28 +1052,30 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse readEntityMedia(final GetMediaResourceUriInfo uriInfo, final String contentType)
       throws ODataException {
-    final Object data = retrieveData(
-        uriInfo.getStartEntitySet(),
-        uriInfo.getKeyPredicates(),
-        uriInfo.getFunctionImport(),
-        mapFunctionParameters(uriInfo.getFunctionImportParameters()),
-        uriInfo.getNavigationSegments()).getFirst();
+    try (DataSource.Snapshot snapshot = dataSource.openSnapshot()) {
+      final Object data = retrieveData(
+          uriInfo.getStartEntitySet(),
+          uriInfo.getKeyPredicates(),
+          uriInfo.getFunctionImport(),
+          mapFunctionParameters(uriInfo.getFunctionImportParameters()),
+          uriInfo.getNavigationSegments()).getFirst();
 
-    if (!appliesFilter(data, uriInfo.getFilter())) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      if (!appliesFilter(data, uriInfo.getFilter())) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
-    final BinaryData binaryData = dataSource.readBinaryData(entitySet, data);
-    if (binaryData == null) {
-      throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
-    }
+      final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
+      final BinaryData binaryData = dataSource.readBinaryData(entitySet, data);
+      if (binaryData == null) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
 
-    final String mimeType = binaryData.getMimeType() == null ?
-        HttpContentType.APPLICATION_OCTET_STREAM : binaryData.getMimeType();
+      final String mimeType = binaryData.getMimeType() == null ?
+          HttpContentType.APPLICATION_OCTET_STREAM : binaryData.getMimeType();
 
-    return ODataResponse.fromResponse(EntityProvider.writeBinary(mimeType, binaryData.getData())).eTag(
-        constructETag(entitySet, data)).build();
+      return ODataResponse.fromResponse(EntityProvider.writeBinary(mimeType, binaryData.getData())).eTag(
+          constructETag(entitySet, data)).build();
+    }
   }
 
   @Override
@@ -854,15 +1229,27 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   }
 
 
-  private ReadResult<?> retrieveData(final GetEntitySetUriInfo uriInfo, final EdmEntitySet startEntitySet,
+  private ReadResult<?> retrieveData(final GetEntitySetUriInfo uriInfo, final int pageSize,
+                              final EdmEntitySet startEntitySet,
                               final List<KeyPredicate> keyPredicates, final EdmFunctionImport functionImport,
                               final Map<String, Object> functionImportParameters, final List<NavigationSegment> navigationSegments)
       throws ODataException {
+    final Cursor cursor = CursorCodec.decode(uriInfo.getSkipToken(), uriInfo.getOrderBy());
+    Integer top = uriInfo.getTop();
+    if (isEntitySetRead(navigationSegments, keyPredicates, functionImport)
+        && (uriInfo.getSkipToken() == null || cursor != null)) {
+      // only the (first) page and the first entity of the next page (to know whether there is a next page)
+      // are required from the data store
+      top = top == null || top <= 0 ? pageSize + 1 : Math.min(top, pageSize + 1);
+    }
     ReadOptions readOptions = ReadOptions.start()
         .filter(uriInfo.getFilter())
         .order(uriInfo.getOrderBy())
         .skip(uriInfo.getSkipToken(), uriInfo.getSkip())
-        .top(uriInfo.getTop()).build();
+        .cursor(cursor)
+        .top(top)
+        .totalCount(uriInfo.getInlineCount() == InlineCount.ALLPAGES)
+        .select(getRequiredPropertyNames(uriInfo)).build();
 
     return retrieveData(readOptions, startEntitySet, keyPredicates,
         functionImport, functionImportParameters, navigationSegments);
@@ -890,6 +1277,15 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
         data = functionSource.executeFunction(functionImport, functionImportParameters, keys);
       }
 
+      if (functionImport == null && !keys.isEmpty() && !navigationSegments.isEmpty()) {
+        // the whole navigation path at once (the start entity is read anyway so that it must exist)
+        final ReadResult<?> navigationResult =
+            dataSource.readRelatedData(startEntitySet, keys, navigationSegments, readOptions);
+        if (navigationResult != null) {
+          return getNavigationResult(navigationResult, navigationSegments.get(navigationSegments.size() - 1));
+        }
+      }
+
       EdmEntitySet currentEntitySet =
           functionImport == null ? startEntitySet : functionImport.getEntitySet();
       Object innerData = data instanceof ReadResult ? ((ReadResult) data).getResult(): data;
@@ -915,6 +1311,29 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
   }
 
+  /**
+   * The data of the given read result as list which is filtered and paged in place
+   * (without copying the result if the data source handed over its list).
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Object> getModifiableResult(final ReadResult<?> result) {
+    return ((ReadResult<Object>) result).getModifiableResult();
+  }
+
+  /**
+   * The result of a navigation path is a single data object (or <code>NULL</code>) unless the last
+   * navigation segment leads to many entities and has no key.
+   */
+  private ReadResult<?> getNavigationResult(final ReadResult<?> navigationResult,
+      final NavigationSegment lastSegment) throws EdmException {
+    if (lastSegment.getNavigationProperty().getMultiplicity() == EdmMultiplicity.MANY
+        && lastSegment.getKeyPredicates().isEmpty()) {
+      return navigationResult;
+    }
+    final Iterator<?> iterator = navigationResult.getResult().iterator();
+    return ReadResult.forResult(Collections.singleton(iterator.hasNext() ? iterator.next() : null)).build();
+  }
+
   private <T> String constructETag(final EdmEntitySet entitySet, final T data) throws ODataException {
     final EdmEntityType entityType = entitySet.getEntityType();
     String eTag = null;
@@ -947,6 +1366,10 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
   private class WriteCallback implements OnWriteEntryContent, OnWriteFeedContent {
     private final Object data;
+    /** related data of all entries of a feed per navigation property (read once for all entries) */
+    private final Map<String, Map<Object, Object>> relatedDataCache = new HashMap<>();
+    /** entries of a feed per key values (see {@link #readEntryData(List, EdmEntityType, Map)}) */
+    private Map<Map<String, Object>, Object> entryDataByKey;
 
     private <T> WriteCallback(final T data) {
       this.data = data;
@@ -958,15 +1381,16 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       try {
         final EdmEntityType entityType =
             context.getSourceEntitySet().getRelatedEntitySet(context.getNavigationProperty()).getEntityType();
-        List<Map<String, Object>> values = new ArrayList<>();
+        List<Map<String, Object>> values = Collections.emptyList();
         Object relatedData = null;
         try {
           relatedData = readRelatedData(context);
-          for (final Object entryData : (List<?>) relatedData) {
-            values.add(getStructuralTypeValueMap(entryData, entityType));
+          if (relatedData != null) {
+            values = new ValueMapList((List<?>) relatedData, entityType,
+                getSelectedPropertyNames(entityType, context.getCurrentExpandSelectTreeNode()));
           }
         } catch (final ODataNotFoundException e) {
-          values.clear();
+          values = Collections.emptyList();
         }
         WriteFeedCallbackResult result = new WriteFeedCallbackResult();
         result.setFeedData(values);
@@ -998,7 +1422,8 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
         if (relatedData == null) {
           result.setEntryData(Collections.<String, Object> emptyMap());
         } else {
-          result.setEntryData(getStructuralTypeValueMap(relatedData, entityType));
+          result.setEntryData(getStructuralTypeValueMap(relatedData, entityType,
+              getSelectedPropertyNames(entityType, context.getCurrentExpandSelectTreeNode())));
 
           EntityProviderWriteProperties inlineProperties =
               EntityProviderWriteProperties.serviceRoot(getContext().getPathInfo().getServiceRoot()).callbacks(
@@ -1014,38 +1439,66 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
     private Object readRelatedData(final WriteCallbackContext context) throws ODataException {
       final EdmEntitySet entitySet = context.getSourceEntitySet();
-      return dataSource.readRelatedData(
-          entitySet,
-          data instanceof List ? readEntryData((List<?>) data, entitySet.getEntityType(), context
-              .extractKeyFromEntryData()) : data,
-          entitySet.getRelatedEntitySet(context.getNavigationProperty()),
-          Collections.<String, Object> emptyMap());
+      final EdmEntitySet targetEntitySet = entitySet.getRelatedEntitySet(context.getNavigationProperty());
+      if (!(data instanceof List)) {
+        return dataSource.readRelatedData(entitySet, data, targetEntitySet, Collections.<String, Object> emptyMap());
+      }
+
+      // the related data of all entries of the feed is read at once (instead of once per entry)
+      final String navigationPropertyName = context.getNavigationProperty().getName();
+      Map<Object, Object> relatedData = relatedDataCache.get(navigationPropertyName);
+      if (relatedData == null) {
+        final int timingHandle = getContext().startRuntimeMeasurement(getClass().getSimpleName(), "readRelatedData");
+        try {
+          relatedData = dataSource.readRelatedData(entitySet, (List<?>) data, targetEntitySet);
+        } finally {
+          getContext().stopRuntimeMeasurement(timingHandle);
+        }
+        relatedDataCache.put(navigationPropertyName, relatedData);
+      }
+      return relatedData.get(readEntryData((List<?>) data, entitySet.getEntityType(),
+          context.extractKeyFromEntryData()));
     }
 
-    private <T> T readEntryData(final List<T> data, final EdmEntityType entityType, final Map<String, Object> key)
+    /**
+     * Find the entry data with given key in the feed data.
+     * The entries are looked up in a map of their key values which is created on first use
+     * (and then used for all entries and navigation properties of the feed).
+     */
+    private Object readEntryData(final List<?> data, final EdmEntityType entityType, final Map<String, Object> key)
         throws ODataException {
-      for (final T entryData : data) {
-        boolean found = true;
-        for (final EdmProperty keyProperty : entityType.getKeyProperties()) {
-          if (!valueAccess.getPropertyValue(entryData, keyProperty).equals(key.get(keyProperty.getName()))) {
-            found = false;
-            break;
+      if (entryDataByKey == null) {
+        final List<EdmProperty> keyProperties = entityType.getKeyProperties();
+        entryDataByKey = new HashMap<>(data.size() * 4 / 3 + 1);
+        for (final Object entryData : data) {
+          Map<String, Object> entryKey = new HashMap<>(keyProperties.size() * 4 / 3 + 1);
+          for (final EdmProperty keyProperty : keyProperties) {
+            entryKey.put(keyProperty.getName(), valueAccess.getPropertyValue(entryData, keyProperty));
           }
-        }
-        if (found) {
-          return entryData;
+          entryDataByKey.putIfAbsent(entryKey, entryData);
         }
       }
-      return null;
+      return entryDataByKey.get(key);
     }
   }
 
   private <T> ODataResponse writeEntry(final EdmEntitySet entitySet, final ExpandSelectTreeNode expandSelectTree,
       final T data, final String contentType) throws ODataException {
+    ODataContext context = getContext();
+    if (isDirectJson(expandSelectTree, contentType)) {
+      final int directHandle = context.startRuntimeMeasurement("DirectJsonWriter", "writeEntry");
+      final ODataResponse response = directJsonWriter.writeEntry(entitySet, data,
+          context.getPathInfo().getServiceRoot(), contentType);
+      context.stopRuntimeMeasurement(directHandle);
+      if (response != null) {
+        return response;
+      }
+    }
+
     final EdmEntityType entityType = entitySet.getEntityType();
-    final Map<String, Object> values = getStructuralTypeValueMap(data, entityType);
+    final Map<String, Object> values = getStructuralTypeValueMap(data, entityType,
+        getSelectedPropertyNames(entityType, expandSelectTree));
 
-    ODataContext context = getContext();
     EntityProviderWriteProperties writeProperties = EntityProviderWriteProperties
         .serviceRoot(context.getPathInfo().getServiceRoot())
         .expandSelectTree(expandSelectTree)
@@ -1061,6 +1514,15 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     return response;
   }
 
+  /**
+   * Whether the response can be written by the {@link DirectJsonWriter}
+   * (all properties, no expanded navigation properties and the JSON format).
+   */
+  private boolean isDirectJson(final ExpandSelectTreeNode expandSelectTree, final String contentType) {
+    return directJsonWriter != null && expandSelectTree.isAll() && expandSelectTree.getLinks().isEmpty()
+        && DirectJsonWriter.isJson(contentType);
+  }
+
   private ODataEntry parseEntry(final EdmEntitySet entitySet, final InputStream content,
       final String requestContentType, final EntityProviderReadProperties properties) throws ODataBadRequestException {
     ODataContext context = getContext();
@@ -1164,16 +1626,21 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final InlineCount inlineCount;
     final OrderByExpression orderBy;
     final String skipToken;
+    final Cursor cursor;
     final Integer skip;
     final Integer top;
+    /** size of a page if the result is paged by the server */
+    final Integer pageSize;
 
-    public QueryOptionsHolder(GetEntitySetUriInfo uriInfo) {
+    public QueryOptionsHolder(GetEntitySetUriInfo uriInfo, int pageSize) {
       this.filter = uriInfo.getFilter();
       this.inlineCount = uriInfo.getInlineCount();
       this.orderBy = uriInfo.getOrderBy();
       this.skipToken = uriInfo.getSkipToken();
+      this.cursor = CursorCodec.decode(uriInfo.getSkipToken(), uriInfo.getOrderBy());
       this.skip = uriInfo.getSkip();
       this.top = uriInfo.getTop();
+      this.pageSize = pageSize;
     }
     //GetEntitySetCountUriInfo
     public QueryOptionsHolder(GetEntitySetCountUriInfo uriInfo) {
@@ -1181,8 +1648,10 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       this.inlineCount = null;
       this.orderBy = null;
       this.skipToken = null;
+      this.cursor = null;
       this.skip = uriInfo.getSkip();
       this.top = uriInfo.getTop();
+      this.pageSize = null;
     }
     //GetEntitySetLinksUriInfo//
     public QueryOptionsHolder(GetEntitySetLinksUriInfo uriInfo) {
@@ -1190,8 +1659,10 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       this.inlineCount = uriInfo.getInlineCount();
       this.orderBy = null;
       this.skipToken = uriInfo.getSkipToken();
+      this.cursor = CursorCodec.decode(uriInfo.getSkipToken(), null);
       this.skip = uriInfo.getSkip();
       this.top = uriInfo.getTop();
+      this.pageSize = null;
     }
   }
 
@@ -1208,309 +1679,141 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applySystemQueryOptions");
 
     if (!readResult.isFilterApplied() && queryOptions.filter != null) {
-      // Remove all elements the filterApplied does not apply for.
-      // A for-each loop would not work with "remove", see Java documentation.
-      for (Iterator iterator = data.iterator(); iterator.hasNext();) {
-        if (!appliesFilter(iterator.next(), queryOptions.filter)) {
-          iterator.remove();
-        }
-      }
+      filter(data, queryOptions.filter);
     }
 
     final Integer count = queryOptions.inlineCount == InlineCount.ALLPAGES ? data.size() : null;
 
-    if (!readResult.isOrderApplied() && queryOptions.orderBy != null) {
-      sort(data, queryOptions.orderBy);
-    } else if (queryOptions.skipToken != null || queryOptions.skip != null || queryOptions.top != null) {
-      sortInDefaultOrder(entitySet, data);
+    final Sorter sorter = expressionEvaluator.getSorter(queryOptions.orderBy, entitySet.getEntityType());
+    final Cursor cursor = queryOptions.cursor != null && sorter.accepts(queryOptions.cursor) ?
+        queryOptions.cursor : null;
+    if (cursor != null && !readResult.isSkipApplied()) {
+      // keyset pagination: only entities after the cursor are relevant (in the order of the processor)
+      sorter.retainAfter(data, cursor);
+      sort(sorter, data, getSortLimit(queryOptions, cursor, readResult));
+    } else if (!readResult.isOrderApplied()) {
+      // if order was applied data is already in requested (or default) order
+      if (queryOptions.orderBy != null
+          || queryOptions.skipToken != null || queryOptions.skip != null || queryOptions.top != null) {
+        sort(sorter, data, getSortLimit(queryOptions, cursor, readResult));
+      }
     }
 
-    if(!readResult.isSkipApplied()) {
-      if (queryOptions.skipToken != null) {
-        while (!data.isEmpty() && !getSkipToken(entitySet, data.get(0)).equals(queryOptions.skipToken)) {
-          data.remove(0);
+    // skip token, skip and top define the window [from, to) of the (sorted) data which is kept;
+    // everything outside is removed at once (instead of element by element)
+    int from = 0;
+    if (!readResult.isSkipApplied()) {
+      if (queryOptions.skipToken != null && cursor == null) {
+        // skip token which is no cursor (the key of the first entity of the page)
+        while (from < data.size() && !getSkipToken(entitySet, data.get(from)).equals(queryOptions.skipToken)) {
+          from++;
         }
       }
 
       if (queryOptions.skip != null && queryOptions.skip > 0) {
-        if (queryOptions.skip >= data.size()) {
-          data.clear();
-        } else {
-          for (int i = 0; i < queryOptions.skip; i++) {
-            data.remove(0);
-          }
-        }
+        from = (int) Math.min((long) from + queryOptions.skip, data.size());
       }
     }
 
+    int to = data.size();
     if (!readResult.isTopApplied() && queryOptions.top != null && queryOptions.top > 0) {
-      while (data.size() > queryOptions.top) {
-        data.remove(queryOptions.top.intValue());
-      }
+      to = (int) Math.min((long) from + queryOptions.top, data.size());
     }
+    limit(data, from, to);
 
     context.stopRuntimeMeasurement(timingHandle);
 
     return count;
   }
 
-  private <T> void sort(final List<T> data, final OrderByExpression orderBy) {
-    Collections.sort(data, (entity1, entity2) -> {
-      try {
-        int result = 0;
-        for (final OrderExpression expression : orderBy.getOrders()) {
-          String first = evaluateExpression(entity1, expression.getExpression());
-          String second = evaluateExpression(entity2, expression.getExpression());
-
-          if (first != null && second != null) {
-            result = first.compareTo(second);
-          } else if (first == null && second != null) {
-            result = 1;
-          } else if (first != null) {
-            result = -1;
-          }
-
-          if (expression.getSortOrder() == SortOrder.desc) {
-            result = -result;
-          }
-
-          if (result != 0) {
-            break;
-          }
-        }
-        return result;
-      } catch (final ODataException e) {
-        return 0;
+  /**
+   * Remove all elements the filter does not apply for (compiled once for all elements);
+   * the retained elements are compacted in place instead of removing each single element.
+   */
+  private void filter(final List<Object> data, final FilterExpression filterExpression) throws ODataException {
+    final CompiledFilter filter = compileFilter(filterExpression);
+    int retained = 0;
+    for (int i = 0; i < data.size(); i++) {
+      final Object element = data.get(i);
+      if (filter.appliesTo(element)) {
+        data.set(retained++, element);
       }
-    });
+    }
+    data.subList(retained, data.size()).clear();
   }
 
-  private <T> void sortInDefaultOrder(final EdmEntitySet entitySet, final List<T> data) {
-    Collections.sort(data, (first, second) -> {
-      try {
-        return getSkipToken(entitySet, first).compareTo(getSkipToken(entitySet, second));
-      } catch (final ODataException e) {
-        return 0;
-      }
-    });
+  /**
+   * Reduce the given data to the window <code>[from, to)</code>; both parts outside of the window are
+   * removed as a whole (in <code>O(n)</code>).
+   */
+  private static <T> void limit(final List<T> data, final int from, final int to) {
+    if (to < data.size()) {
+      data.subList(to, data.size()).clear();
+    }
+    if (from > 0) {
+      data.subList(0, from).clear();
+    }
   }
 
-  private <T> boolean appliesFilter(final T data, final FilterExpression filter) throws ODataException {
+  /**
+   * Number of (first) entities which are required after sorting: if the result is bounded by $top
+   * or by server paging only the skipped entities and the (first) page must be sorted.
+   */
+  private static int getSortLimit(final QueryOptionsHolder queryOptions, final Cursor cursor,
+      final ReadResult readResult) {
+    if (queryOptions.skipToken != null && cursor == null) {
+      // position of the skip token (and hence the start of the page) is not known before sorting
+      return Integer.MAX_VALUE;
+    }
+    Integer window = null;
+    if (!readResult.isTopApplied() && queryOptions.top != null && queryOptions.top > 0) {
+      window = queryOptions.top;
+    }
+    if (queryOptions.pageSize != null) {
+      // the first entity of the next page is required to know whether there is a next page
+      window = window == null ? queryOptions.pageSize + 1 : Math.min(window, queryOptions.pageSize + 1);
+    }
+    if (window == null) {
+      return Integer.MAX_VALUE;
+    }
+    final long skip = !readResult.isSkipApplied() && queryOptions.skip != null ? Math.max(queryOptions.skip, 0) : 0;
+    return (int) Math.min(skip + window, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Sort the given data by the order expressions followed by the key properties (as tie breaker;
+   * without order expressions this is the default order) and keep only the first <code>limit</code> entities.
+   */
+  private <T> void sort(final Sorter sorter, final List<T> data, final int limit) throws ODataException {
     ODataContext context = getContext();
-    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "appliesFilter");
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "sort");
 
     try {
-      return data != null && (filter == null || evaluateExpression(data, filter.getExpression()).equals("true"));
-    } catch (final RuntimeException e) {
-      return false;
+      sorter.sortTop(data, limit);
     } finally {
       context.stopRuntimeMeasurement(timingHandle);
     }
   }
 
-  private <T> String evaluateExpression(final T data, final CommonExpression expression) throws ODataException {
-    switch (expression.getKind()) {
-    case UNARY:
-      final UnaryExpression unaryExpression = (UnaryExpression) expression;
-      final String operand = evaluateExpression(data, unaryExpression.getOperand());
-
-      switch (unaryExpression.getOperator()) {
-      case NOT:
-        return Boolean.toString(!Boolean.parseBoolean(operand));
-      case MINUS:
-        return operand.startsWith("-") ? operand.substring(1) : "-" + operand;
-      default:
-        throw new ODataNotImplementedException();
-      }
+  private CompiledFilter compileFilter(final FilterExpression filter) throws ODataException {
+    ODataContext context = getContext();
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "compileFilter");
 
-    case BINARY:
-      final BinaryExpression binaryExpression = (BinaryExpression) expression;
-      final EdmSimpleType type = (EdmSimpleType) binaryExpression.getLeftOperand().getEdmType();
-      final String left = evaluateExpression(data, binaryExpression.getLeftOperand());
-      final String right = evaluateExpression(data, binaryExpression.getRightOperand());
-
-      switch (binaryExpression.getOperator()) {
-      case ADD:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) + Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) + Long.valueOf(right));
-        }
-      case SUB:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) - Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) - Long.valueOf(right));
-        }
-      case MUL:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) * Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) * Long.valueOf(right));
-        }
-      case DIV:
-        final String number = Double.toString(Double.valueOf(left) / Double.valueOf(right));
-        return number.endsWith(".0") ? number.replace(".0", "") : number;
-      case MODULO:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) % Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) % Long.valueOf(right));
-        }
-      case AND:
-        return Boolean.toString(left.equals("true") && right.equals("true"));
-      case OR:
-        return Boolean.toString(left.equals("true") || right.equals("true"));
-      case EQ:
-        return Boolean.toString(left.equals(right));
-      case NE:
-        return Boolean.toString(!left.equals(right));
-      case LT:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) < 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) < Double.valueOf(right));
-        }
-      case LE:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) <= 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) <= Double.valueOf(right));
-        }
-      case GT:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) > 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) > Double.valueOf(right));
-        }
-      case GE:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) >= 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) >= Double.valueOf(right));
-        }
-      case PROPERTY_ACCESS:
-        throw new ODataNotImplementedException();
-      default:
-        throw new ODataNotImplementedException();
-      }
+    try {
+      return expressionEvaluator.compile(filter);
+    } finally {
+      context.stopRuntimeMeasurement(timingHandle);
+    }
+  }
 
-    case PROPERTY:
-      final EdmProperty property = (EdmProperty) ((PropertyExpression) expression).getEdmProperty();
-      final EdmSimpleType propertyType = (EdmSimpleType) property.getType();
-      return propertyType.valueToString(valueAccess.getPropertyValue(data, property), EdmLiteralKind.DEFAULT,
-          property.getFacets());
-
-    case MEMBER:
-      final MemberExpression memberExpression = (MemberExpression) expression;
-      final PropertyExpression propertyExpression = (PropertyExpression) memberExpression.getProperty();
-      final EdmProperty memberProperty = (EdmProperty) propertyExpression.getEdmProperty();
-      final EdmSimpleType memberType = (EdmSimpleType) memberExpression.getEdmType();
-      List<EdmProperty> propertyPath = new ArrayList<>();
-      CommonExpression currentExpression = memberExpression;
-      while (currentExpression != null) {
-        final PropertyExpression currentPropertyExpression =
-            (PropertyExpression) (currentExpression.getKind() == ExpressionKind.MEMBER ?
-                ((MemberExpression) currentExpression).getProperty() : currentExpression);
-        final EdmTyped currentProperty = currentPropertyExpression.getEdmProperty();
-        final EdmTypeKind kind = currentProperty.getType().getKind();
-        if (kind == EdmTypeKind.SIMPLE || kind == EdmTypeKind.COMPLEX) {
-          propertyPath.add(0, (EdmProperty) currentProperty);
-        } else {
-          throw new ODataNotImplementedException();
-        }
-        currentExpression =
-            currentExpression.getKind() == ExpressionKind.MEMBER ? ((MemberExpression) currentExpression).getPath()
-                : null;
-      }
-      return memberType.valueToString(getPropertyValue(data, propertyPath), EdmLiteralKind.DEFAULT, memberProperty
-          .getFacets());
-
-    case LITERAL:
-      final LiteralExpression literal = (LiteralExpression) expression;
-      final EdmSimpleType literalType = (EdmSimpleType) literal.getEdmType();
-      return literalType.valueToString(literalType.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null,
-          literalType.getDefaultType()),
-          EdmLiteralKind.DEFAULT, null);
-
-    case METHOD:
-      final MethodExpression methodExpression = (MethodExpression) expression;
-      final String first = evaluateExpression(data, methodExpression.getParameters().get(0));
-      final String second = methodExpression.getParameterCount() > 1 ?
-          evaluateExpression(data, methodExpression.getParameters().get(1)) : null;
-      final String third = methodExpression.getParameterCount() > 2 ?
-          evaluateExpression(data, methodExpression.getParameters().get(2)) : null;
-
-      switch (methodExpression.getMethod()) {
-      case ENDSWITH:
-        return Boolean.toString(first.endsWith(second));
-      case INDEXOF:
-        return Integer.toString(first.indexOf(second));
-      case STARTSWITH:
-        return Boolean.toString(first.startsWith(second));
-      case TOLOWER:
-        return first.toLowerCase(Locale.ROOT);
-      case TOUPPER:
-        return first.toUpperCase(Locale.ROOT);
-      case TRIM:
-        return first.trim();
-      case SUBSTRING:
-        final int offset = Integer.parseInt(second);
-        return first.substring(offset, offset + Integer.parseInt(third));
-      case SUBSTRINGOF:
-        return Boolean.toString(second.contains(first));
-      case CONCAT:
-        return first + second;
-      case LENGTH:
-        return Integer.toString(first.length());
-      case YEAR:
-        return String.valueOf(Integer.parseInt(first.substring(0, 4)));
-      case MONTH:
-        return String.valueOf(Integer.parseInt(first.substring(5, 7)));
-      case DAY:
-        return String.valueOf(Integer.parseInt(first.substring(8, 10)));
-      case HOUR:
-        return String.valueOf(Integer.parseInt(first.substring(11, 13)));
-      case MINUTE:
-        return String.valueOf(Integer.parseInt(first.substring(14, 16)));
-      case SECOND:
-        return String.valueOf(Integer.parseInt(first.substring(17, 19)));
-      case ROUND:
-        return Long.toString(Math.round(Double.valueOf(first)));
-      case FLOOR:
-        return Long.toString(Math.round(Math.floor(Double.valueOf(first))));
-      case CEILING:
-        return Long.toString(Math.round(Math.ceil(Double.valueOf(first))));
-      default:
-        throw new ODataNotImplementedException();
-      }
+  private <T> boolean appliesFilter(final T data, final FilterExpression filter) throws ODataException {
+    ODataContext context = getContext();
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "appliesFilter");
 
-    default:
-      throw new ODataNotImplementedException();
+    try {
+      return data != null && compileFilter(filter).appliesTo(data);
+    } finally {
+      context.stopRuntimeMeasurement(timingHandle);
     }
   }
 
@@ -1525,13 +1828,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   }
 
   private <T> Object getPropertyValue(final T data, final List<EdmProperty> propertyPath) throws ODataException {
-    Object dataObject = data;
-    for (final EdmProperty property : propertyPath) {
-      if (dataObject != null) {
-        dataObject = valueAccess.getPropertyValue(dataObject, property);
-      }
-    }
-    return dataObject;
+    return expressionEvaluator.getPropertyValue(data, propertyPath);
   }
 
   private void handleMimeType(final Object data, final EdmMapping mapping, final Map<String, Object> valueMap)
@@ -1555,31 +1852,23 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
   private <T> Map<String, Object> getStructuralTypeValueMap(final T data, final EdmStructuralType type)
       throws ODataException {
+    return getStructuralTypeValueMap(data, type, null);
+  }
+
+  /**
+   * Get the values of the given properties (or of all properties) of the data object.
+   *
+   * @param data data object
+   * @param type structural type of the data object
+   * @param propertyNames names of the properties (or <code>NULL</code> for all properties)
+   * @return map of property names to values
+   */
+  private <T> Map<String, Object> getStructuralTypeValueMap(final T data, final EdmStructuralType type,
+      final Set<String> propertyNames) throws ODataException {
     ODataContext context = getContext();
     final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "getStructuralTypeValueMap");
 
-    Map<String, Object> valueMap = new HashMap<>();
-
-    EdmMapping mapping = type.getMapping();
-    if (mapping != null) {
-      handleMimeType(data, mapping, valueMap);
-    }
-
-    for (final String propertyName : type.getPropertyNames()) {
-      final EdmProperty property = (EdmProperty) type.getProperty(propertyName);
-      final Object value = valueAccess.getPropertyValue(data, property);
-
-      if (property.isSimple()) {
-        if (property.getMapping() == null || property.getMapping().getMediaResourceMimeTypeKey() == null) {
-          valueMap.put(propertyName, value);
-        } else {
-          // TODO: enable MIME type mapping outside the current subtree
-          valueMap.put(propertyName, getSimpleTypeValueMap(data, Collections.singletonList(property)));
-        }
-      } else {
-        valueMap.put(propertyName, getStructuralTypeValueMap(value, (EdmStructuralType) property.getType()));
-      }
-    }
+    final Map<String, Object> valueMap = valueMapPlans.get(type).extract(data, valueAccess, propertyNames);
 
     context.stopRuntimeMeasurement(timingHandle);
 
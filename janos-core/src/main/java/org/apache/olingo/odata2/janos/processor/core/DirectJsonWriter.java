@@ -0,0 +1,552 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.edm.*;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writer of JSON (verbose format) feeds and entries which serializes the data objects directly
+ * (via the {@link ValueMapPlan}s of their types) instead of creating value maps for the
+ * <code>EntityProvider</code> of Olingo. The output is the same as the one of the <code>EntityProvider</code>
+ * (<code>__metadata</code>, deferred navigation links, <code>__count</code> and <code>__next</code>).
+ *
+ * Only entity sets and values which are written in the same way for sure are supported
+ * (no media link entries, MIME type mappings, multiple ETag properties or key values which require URI encoding);
+ * for all others <code>null</code> is returned and the <code>EntityProvider</code> has to be used.
+ */
+final class DirectJsonWriter {
+  /** maximal size of the (per thread) reused buffer which is kept after writing */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 20;
+  private static final ThreadLocal<JsonBuffer> BUFFERS = ThreadLocal.withInitial(JsonBuffer::new);
+
+  private final ValueMapPlan.Cache valueMapPlans;
+  private final ValueAccess valueAccess;
+  /** plans per qualified entity set name (empty for not supported entity sets) */
+  private final Map<String, Optional<EntityPlan>> entityPlans = new ConcurrentHashMap<>();
+
+  DirectJsonWriter(final ValueMapPlan.Cache valueMapPlans, final ValueAccess valueAccess) {
+    this.valueMapPlans = valueMapPlans;
+    this.valueAccess = valueAccess;
+  }
+
+  /**
+   * Whether the content type is the (verbose) JSON format which is written by this writer.
+   */
+  static boolean isJson(final String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    final String[] parts = contentType.split(";");
+    if (!parts[0].trim().equalsIgnoreCase("application/json")) {
+      return false;
+    }
+    for (int i = 1; i < parts.length; i++) {
+      final String parameter = parts[i].replace(" ", "");
+      if (!parameter.equalsIgnoreCase("charset=utf-8") && !parameter.equalsIgnoreCase("odata=verbose")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write a feed of all properties and deferred navigation links of the given data objects.
+   *
+   * @param entitySet entity set of the data objects
+   * @param data data objects
+   * @param serviceRoot service root
+   * @param inlineCount inline count (or <code>NULL</code> if no inline count is written)
+   * @param nextLink next link (or <code>NULL</code>)
+   * @param contentType content type
+   * @return the response or <code>NULL</code> if the feed can not be written by this writer
+   */
+  ODataResponse writeFeed(final EdmEntitySet entitySet, final List<?> data, final URI serviceRoot,
+      final Integer inlineCount, final String nextLink, final String contentType) throws ODataException {
+    final EntityPlan plan = getEntityPlan(entitySet);
+    if (plan == null) {
+      return null;
+    }
+    JsonBuffer out = BUFFERS.get().reset();
+    final String root = serviceRoot.toASCIIString();
+    try {
+      out.raw("{\"d\":{");
+      if (inlineCount != null) {
+        out.raw("\"__count\":\"").raw(inlineCount.toString()).raw("\",");
+      }
+      out.raw("\"results\":[");
+      for (int i = 0; i < data.size(); i++) {
+        if (i > 0) {
+          out.raw(",");
+        }
+        final Object[] values = getValues(plan, data.get(i));
+        writeEntry(out, plan, values, getLocation(plan, values, root), getETag(plan, values));
+      }
+      out.raw("]");
+      if (nextLink != null) {
+        out.raw(",\"__next\":").string(nextLink);
+      }
+      out.raw("}}");
+    } catch (UnsupportedValueException | EdmSimpleTypeException e) {
+      return null;
+    }
+    return createResponse(out, contentType);
+  }
+
+  /**
+   * Write an entry with all properties and deferred navigation links of the given data object.
+   *
+   * @param entitySet entity set of the data object
+   * @param data data object
+   * @param serviceRoot service root
+   * @param contentType content type
+   * @return the response or <code>NULL</code> if the entry can not be written by this writer
+   */
+  ODataResponse writeEntry(final EdmEntitySet entitySet, final Object data, final URI serviceRoot,
+      final String contentType) throws ODataException {
+    final EntityPlan plan = getEntityPlan(entitySet);
+    if (plan == null) {
+      return null;
+    }
+    JsonBuffer out = BUFFERS.get().reset();
+    final String location;
+    final String eTag;
+    try {
+      final Object[] values = getValues(plan, data);
+      location = getLocation(plan, values, serviceRoot.toASCIIString());
+      eTag = getETag(plan, values);
+      out.raw("{\"d\":");
+      writeEntry(out, plan, values, location, eTag);
+      out.raw("}");
+    } catch (UnsupportedValueException | EdmSimpleTypeException e) {
+      return null;
+    }
+    // the ETag and the location (e.g. for the header of a created entity) like in the response of Olingo
+    return ODataResponse.fromResponse(createResponse(out, contentType)).eTag(eTag).idLiteral(location).build();
+  }
+
+  private ODataResponse createResponse(final JsonBuffer out, final String contentType) {
+    final byte[] content = out.toByteArray();
+    out.release();
+    return ODataResponse.status(HttpStatusCodes.OK).contentHeader(contentType)
+        .entity(new ByteArrayInputStream(content)).build();
+  }
+
+  private Object[] getValues(final EntityPlan plan, final Object data) throws ODataException {
+    Object[] values = new Object[plan.properties.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = valueAccess.getPropertyValue(data, plan.valueMapPlan.getProperty(i));
+    }
+    return values;
+  }
+
+  private String getLocation(final EntityPlan plan, final Object[] values, final String root)
+      throws EdmSimpleTypeException, UnsupportedValueException {
+    return root + plan.entitySetPrefix + getKey(plan, values) + ')';
+  }
+
+  /** the weak ETag (or <code>NULL</code> if the type has no ETag property) */
+  private String getETag(final EntityPlan plan, final Object[] values)
+      throws EdmSimpleTypeException, UnsupportedValueException {
+    if (plan.eTagIndex < 0) {
+      return null;
+    } else if (values[plan.eTagIndex] == null) {
+      throw new UnsupportedValueException();
+    }
+    final PropertyWriter eTagProperty = plan.properties[plan.eTagIndex];
+    return "W/\"" + eTagProperty.type.valueToString(values[plan.eTagIndex], EdmLiteralKind.DEFAULT,
+        eTagProperty.facets) + '"';
+  }
+
+  private void writeEntry(final JsonBuffer out, final EntityPlan plan, final Object[] values, final String location,
+      final String eTag) throws ODataException, UnsupportedValueException {
+    out.raw("{\"__metadata\":{\"id\":").string(location).raw(",\"uri\":").string(location).raw(plan.typeMember);
+    if (eTag != null) {
+      out.raw(",\"etag\":").string(eTag);
+    }
+    out.raw("}");
+    for (int i = 0; i < values.length; i++) {
+      out.raw(plan.properties[i].member);
+      writeValue(out, plan.properties[i], values[i]);
+    }
+    for (String navigationPropertyName : plan.navigationPropertyNames) {
+      out.raw(",\"").raw(navigationPropertyName).raw("\":{\"__deferred\":{\"uri\":")
+          .string(location + '/' + navigationPropertyName).raw("}}");
+    }
+    out.raw("}");
+  }
+
+  private String getKey(final EntityPlan plan, final Object[] values)
+      throws EdmSimpleTypeException, UnsupportedValueException {
+    StringBuilder key = new StringBuilder();
+    for (final int index : plan.keyIndexes) {
+      if (key.length() > 0) {
+        key.append(',');
+      }
+      final PropertyWriter keyProperty = plan.properties[index];
+      if (plan.keyIndexes.length > 1) {
+        key.append(keyProperty.name).append('=');
+      }
+      if (values[index] == null) {
+        throw new UnsupportedValueException();
+      }
+      final String literal = keyProperty.type.valueToString(values[index], EdmLiteralKind.URI, keyProperty.facets);
+      if (!isUnencoded(literal)) {
+        throw new UnsupportedValueException();
+      }
+      key.append(literal);
+    }
+    return key.toString();
+  }
+
+  private void writeValue(final JsonBuffer out, final PropertyWriter property, final Object value)
+      throws ODataException, UnsupportedValueException {
+    if (property.complexPlan != null) {
+      final ValueMapPlan complexPlan = property.complexPlan;
+      out.raw(property.typeMember);
+      for (int i = 0; i < complexPlan.size(); i++) {
+        out.raw(property.children[i].member);
+        writeValue(out, property.children[i], valueAccess.getPropertyValue(value, complexPlan.getProperty(i)));
+      }
+      out.raw("}");
+      return;
+    }
+
+    final String literal = property.type.valueToString(value, EdmLiteralKind.JSON, property.facets);
+    if (literal == null) {
+      out.raw("null");
+    } else if (property.kind == EdmSimpleTypeKind.String) {
+      out.string(literal);
+    } else if (property.kind == EdmSimpleTypeKind.Boolean || property.kind == EdmSimpleTypeKind.Byte
+        || property.kind == EdmSimpleTypeKind.SByte || property.kind == EdmSimpleTypeKind.Int16
+        || property.kind == EdmSimpleTypeKind.Int32) {
+      out.raw(literal);
+    } else if (property.kind == EdmSimpleTypeKind.DateTime || property.kind == EdmSimpleTypeKind.DateTimeOffset) {
+      // the forward slash is escaped for the OData date format (not required by JSON)
+      out.raw("\"").raw(literal.replace("/", "\\/")).raw("\"");
+    } else {
+      out.raw("\"").raw(literal).raw("\"");
+    }
+  }
+
+  /**
+   * Whether the value is not changed by the URI encoding of Olingo
+   * (only the characters which are unreserved by RFC 3986 and the single quote).
+   */
+  private static boolean isUnencoded(final String value) {
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+          || c == '-' || c == '.' || c == '_' || c == '~' || c == '\'')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private EntityPlan getEntityPlan(final EdmEntitySet entitySet) throws ODataException {
+    final EdmEntityContainer container = entitySet.getEntityContainer();
+    final String name = container.getName() + '.' + entitySet.getName();
+    Optional<EntityPlan> plan = entityPlans.get(name);
+    if (plan == null) {
+      plan = Optional.ofNullable(createEntityPlan(entitySet, container));
+      entityPlans.put(name, plan);
+    }
+    return plan.orElse(null);
+  }
+
+  private EntityPlan createEntityPlan(final EdmEntitySet entitySet, final EdmEntityContainer container)
+      throws ODataException {
+    final EdmEntityType entityType = entitySet.getEntityType();
+    final ValueMapPlan valueMapPlan = valueMapPlans.get(entityType);
+    if (entityType.hasStream() || valueMapPlan.hasMimeTypeMappings()
+        || !isUnencoded(entitySet.getName())
+        || !container.isDefaultEntityContainer() && !isUnencoded(container.getName())) {
+      return null;
+    }
+    final PropertyWriter[] properties = createPropertyWriters(valueMapPlan);
+    if (properties == null) {
+      return null;
+    }
+
+    final List<String> keyPropertyNames = entityType.getKeyPropertyNames();
+    int[] keyIndexes = new int[keyPropertyNames.size()];
+    int eTagIndex = -1;
+    for (int i = 0; i < properties.length; i++) {
+      final int keyIndex = keyPropertyNames.indexOf(properties[i].name);
+      if (keyIndex >= 0) {
+        if (properties[i].type == null || !isUnencoded(properties[i].name)) {
+          return null;
+        }
+        keyIndexes[keyIndex] = i;
+      }
+      final EdmFacets facets = properties[i].facets;
+      if (facets != null && facets.getConcurrencyMode() == EdmConcurrencyMode.Fixed) {
+        if (eTagIndex >= 0 || properties[i].type == null) {
+          // ETags of several properties are not supported
+          return null;
+        }
+        eTagIndex = i;
+      }
+    }
+    for (String navigationPropertyName : entityType.getNavigationPropertyNames()) {
+      if (!isUnencoded(navigationPropertyName)) {
+        return null;
+      }
+    }
+
+    final String entitySetPrefix = (container.isDefaultEntityContainer() ? "" : container.getName() + '.')
+        + entitySet.getName() + '(';
+    return new EntityPlan(valueMapPlan, properties, getTypeMember(entityType), entitySetPrefix, keyIndexes,
+        eTagIndex, new ArrayList<>(entityType.getNavigationPropertyNames()));
+  }
+
+  private PropertyWriter[] createPropertyWriters(final ValueMapPlan plan) throws EdmException {
+    PropertyWriter[] writers = new PropertyWriter[plan.size()];
+    for (int i = 0; i < writers.length; i++) {
+      final EdmProperty property = plan.getProperty(i);
+      if (plan.getComplexPlan(i) == null) {
+        final EdmSimpleType type = (EdmSimpleType) property.getType();
+        if (!EdmSimpleType.EDM_NAMESPACE.equals(type.getNamespace())) {
+          return null;
+        }
+        writers[i] = new PropertyWriter(plan.getName(i), property.getFacets(), type,
+            EdmSimpleTypeKind.valueOf(type.getName()));
+      } else {
+        final PropertyWriter[] children = createPropertyWriters(plan.getComplexPlan(i));
+        if (children == null) {
+          return null;
+        }
+        final String typeMember = "{\"__metadata\":{" + getTypeMember((EdmStructuralType) property.getType())
+            .substring(1) + "}";
+        writers[i] = new PropertyWriter(plan.getName(i), property.getFacets(), plan.getComplexPlan(i), typeMember,
+            children);
+      }
+    }
+    return writers;
+  }
+
+  private static String getTypeMember(final EdmStructuralType type) throws EdmException {
+    return ",\"type\":\"" + type.getNamespace() + Edm.DELIMITER + type.getName() + '"';
+  }
+
+  /**
+   * Pre-rendered parts of the entries of an entity set.
+   */
+  private static final class EntityPlan {
+    private final ValueMapPlan valueMapPlan;
+    private final PropertyWriter[] properties;
+    /** <code>,"type":"Namespace.Name"</code> */
+    private final String typeMember;
+    private final String entitySetPrefix;
+    private final int[] keyIndexes;
+    /** index of the ETag property (or <code>-1</code>) */
+    private final int eTagIndex;
+    private final List<String> navigationPropertyNames;
+
+    private EntityPlan(final ValueMapPlan valueMapPlan, final PropertyWriter[] properties, final String typeMember,
+        final String entitySetPrefix, final int[] keyIndexes, final int eTagIndex,
+        final List<String> navigationPropertyNames) {
+      this.valueMapPlan = valueMapPlan;
+      this.properties = properties;
+      this.typeMember = typeMember;
+      this.entitySetPrefix = entitySetPrefix;
+      this.keyIndexes = keyIndexes;
+      this.eTagIndex = eTagIndex;
+      this.navigationPropertyNames = navigationPropertyNames;
+    }
+  }
+
+  /**
+   * Pre-rendered parts of a (simple or complex) property.
+   */
+  private static final class PropertyWriter {
+    private final String name;
+    /** <code>,"Name":</code> */
+    private final String member;
+    private final EdmFacets facets;
+    private final EdmSimpleType type;
+    private final EdmSimpleTypeKind kind;
+    private final ValueMapPlan complexPlan;
+    /** <code>{"__metadata":{"type":"Namespace.Name"}</code> of a complex property */
+    private final String typeMember;
+    private final PropertyWriter[] children;
+
+    private PropertyWriter(final String name, final EdmFacets facets, final EdmSimpleType type,
+        final EdmSimpleTypeKind kind) {
+      this(name, facets, type, kind, null, null, null);
+    }
+
+    private PropertyWriter(final String name, final EdmFacets facets, final ValueMapPlan complexPlan,
+        final String typeMember, final PropertyWriter[] children) {
+      this(name, facets, null, null, complexPlan, typeMember, children);
+    }
+
+    private PropertyWriter(final String name, final EdmFacets facets, final EdmSimpleType type,
+        final EdmSimpleTypeKind kind, final ValueMapPlan complexPlan, final String typeMember,
+        final PropertyWriter[] children) {
+      this.name = name;
+      this.member = ",\"" + name + "\":";
+      this.facets = facets;
+      this.type = type;
+      this.kind = kind;
+      this.complexPlan = complexPlan;
+      this.typeMember = typeMember;
+      this.children = children;
+    }
+  }
+
+  /**
+   * Signals a value which is not written in the same way as by the <code>EntityProvider</code> for sure.
+   */
+  private static final class UnsupportedValueException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private UnsupportedValueException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Growable buffer of UTF-8 encoded JSON.
+   */
+  private static final class JsonBuffer {
+    private byte[] bytes = new byte[8192];
+    private int size;
+
+    JsonBuffer reset() {
+      size = 0;
+      return this;
+    }
+
+    /** drop a too large buffer so that it is not kept by the thread */
+    void release() {
+      if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+        bytes = new byte[8192];
+      }
+      size = 0;
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+    /** append characters which need no escaping */
+    JsonBuffer raw(final String value) {
+      ensureCapacity(value.length() * 3);
+      for (int i = 0; i < value.length(); i++) {
+        append(value, i, value.charAt(i));
+        if (Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length()) {
+          i++;
+        }
+      }
+      return this;
+    }
+
+    /** append a quoted and escaped string */
+    JsonBuffer string(final String value) throws UnsupportedValueException {
+      ensureCapacity(value.length() * 6 + 2);
+      bytes[size++] = '"';
+      for (int i = 0; i < value.length(); i++) {
+        final char c = value.charAt(i);
+        switch (c) {
+        case '"':
+        case '\\':
+          bytes[size++] = '\\';
+          bytes[size++] = (byte) c;
+          break;
+        case '\b':
+          escaped('b');
+          break;
+        case '\f':
+          escaped('f');
+          break;
+        case '\n':
+          escaped('n');
+          break;
+        case '\r':
+          escaped('r');
+          break;
+        case '\t':
+          escaped('t');
+          break;
+        default:
+          if (c < ' ' || c == '\u2028' || c == '\u2029') {
+            throw new UnsupportedValueException();
+          }
+          append(value, i, c);
+          if (Character.isHighSurrogate(c) && i + 1 < value.length()) {
+            i++;
+          }
+        }
+      }
+      bytes[size++] = '"';
+      return this;
+    }
+
+    private void escaped(final char c) {
+      bytes[size++] = '\\';
+      bytes[size++] = (byte) c;
+    }
+
+    /** append the UTF-8 encoding of the character at given index (and its low surrogate) */
+    private void append(final String value, final int index, final char c) {
+      if (c < 0x80) {
+        bytes[size++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[size++] = (byte) (0xC0 | c >> 6);
+        bytes[size++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && index + 1 < value.length()
+            && Character.isLowSurrogate(value.charAt(index + 1))) {
+          final int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+          bytes[size++] = (byte) (0xF0 | codePoint >> 18);
+          bytes[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+          bytes[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+          bytes[size++] = (byte) (0x80 | codePoint & 0x3F);
+        } else {
+          // malformed surrogate (replaced like by the UTF-8 encoder of the platform)
+          bytes[size++] = '?';
+        }
+      } else {
+        bytes[size++] = (byte) (0xE0 | c >> 12);
+        bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+        bytes[size++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+
+    private void ensureCapacity(final int additional) {
+      if (size + additional > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the documents of a service which only depend on its (immutable) EDM,
+ * i.e. the <code>$metadata</code> document and the service document (per content type and service root).
+ * Each document is rendered once and then served with the ETag of its content.
+ */
+final class DocumentCache {
+  /** maximal number of cached documents (the service root of a request depends e.g. on its host header) */
+  private static final int MAX_DOCUMENTS = 64;
+
+  /**
+   * Renders a document.
+   */
+  interface Renderer {
+    ODataResponse render() throws ODataException;
+  }
+
+  private final Map<String, CachedResponse> documents = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the document with given key which is rendered by the given renderer if it is not cached yet.
+   *
+   * @param key key of the document (e.g. content type and service root)
+   * @param ifNoneMatch value of the <code>If-None-Match</code> header of the request (or <code>NULL</code>)
+   * @param renderer renderer of the document
+   * @return the document or a <code>304 Not Modified</code> response if the ETag of the document matches
+   * @throws ODataException if the document can not be rendered
+   */
+  ODataResponse get(final String key, final String ifNoneMatch, final Renderer renderer) throws ODataException {
+    CachedResponse document = documents.get(key);
+    if (document == null) {
+      document = new CachedResponse(renderer.render());
+      if (documents.size() < MAX_DOCUMENTS) {
+        documents.putIfAbsent(key, document);
+      }
+    }
+    final String eTag = document.getETag();
+    if (ResponseCache.matches(ifNoneMatch, eTag)) {
+      return ODataResponse.status(HttpStatusCodes.NOT_MODIFIED).eTag(eTag).build();
+    }
+    return document.toResponse(eTag);
+  }
+}
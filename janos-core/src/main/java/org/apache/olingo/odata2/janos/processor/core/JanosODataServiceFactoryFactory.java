@@ -4,12 +4,17 @@ import org.apache.olingo.odata2.api.ODataService;
 import org.apache.olingo.odata2.api.edm.provider.EdmProvider;
 import org.apache.olingo.odata2.api.processor.ODataContext;
 import org.apache.olingo.odata2.janos.processor.api.JanosServiceFactory;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
 import org.apache.olingo.odata2.janos.processor.core.extension.ExtensionProcessor;
 import org.apache.olingo.odata2.janos.processor.core.extension.ExtensionRegistry;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A {@link JanosServiceFactory} is used to create thread safe {@link ODataService} ({@link JanosServiceFactory )} instances.
  */
@@ -19,19 +24,61 @@ public class JanosODataServiceFactoryFactory extends JanosServiceFactory {
   private final ValueAccess valueAccess;
   private final FunctionSource functionSource;
   private final ExtensionRegistry extensionRegistry;
+  private final PagingPolicy defaultPaging;
+  private final Map<String, PagingPolicy> entitySetPaging;
+  private final ValueMapPlan.Cache valueMapPlans = new ValueMapPlan.Cache();
+  private final ResponseCache responseCache;
+  private final DocumentCache documents = new DocumentCache();
+  private final DirectJsonWriter directJsonWriter;
 
   public JanosODataServiceFactoryFactory(EdmProvider edmProvider, DataSource dataSource, ValueAccess valueAccess,
                                          FunctionSource functionSource, ExtensionRegistry extensionRegistry) {
+    this(edmProvider, dataSource, valueAccess, functionSource, extensionRegistry,
+        PagingPolicy.DEFAULT, Collections.emptyMap());
+  }
+
+  public JanosODataServiceFactoryFactory(EdmProvider edmProvider, DataSource dataSource, ValueAccess valueAccess,
+                                         FunctionSource functionSource, ExtensionRegistry extensionRegistry,
+                                         PagingPolicy defaultPaging, Map<String, PagingPolicy> entitySetPaging) {
+    this(edmProvider, dataSource, valueAccess, functionSource, extensionRegistry, defaultPaging, entitySetPaging, 0);
+  }
+
+  /**
+   * @param responseCacheBytes maximal total size of cached entity set responses in bytes
+   *                           (<code>0</code> for no response cache)
+   */
+  public JanosODataServiceFactoryFactory(EdmProvider edmProvider, DataSource dataSource, ValueAccess valueAccess,
+                                         FunctionSource functionSource, ExtensionRegistry extensionRegistry,
+                                         PagingPolicy defaultPaging, Map<String, PagingPolicy> entitySetPaging,
+                                         long responseCacheBytes) {
+    this(edmProvider, dataSource, valueAccess, functionSource, extensionRegistry, defaultPaging, entitySetPaging,
+        responseCacheBytes, false);
+  }
+
+  /**
+   * @param responseCacheBytes maximal total size of cached entity set responses in bytes
+   *                           (<code>0</code> for no response cache)
+   * @param directJsonWriter whether JSON feeds and entries are written directly from the data objects
+   */
+  public JanosODataServiceFactoryFactory(EdmProvider edmProvider, DataSource dataSource, ValueAccess valueAccess,
+                                         FunctionSource functionSource, ExtensionRegistry extensionRegistry,
+                                         PagingPolicy defaultPaging, Map<String, PagingPolicy> entitySetPaging,
+                                         long responseCacheBytes, boolean directJsonWriter) {
     this.edmProvider = edmProvider;
     this.dataSource = dataSource;
     this.valueAccess = valueAccess;
     this.functionSource = functionSource;
     this.extensionRegistry = extensionRegistry;
+    this.defaultPaging = defaultPaging;
+    this.entitySetPaging = new HashMap<>(entitySetPaging);
+    this.responseCache = responseCacheBytes > 0 ? new ResponseCache(responseCacheBytes) : null;
+    this.directJsonWriter = directJsonWriter ? new DirectJsonWriter(valueMapPlans, valueAccess) : null;
   }
 
   @Override
   public ODataService createService(ODataContext context) {
-    DataSourceProcessor dsProcessor = new DataSourceProcessor(dataSource, valueAccess, functionSource);
+    DataSourceProcessor dsProcessor = new DataSourceProcessor(dataSource, valueAccess, functionSource,
+        defaultPaging, entitySetPaging, valueMapPlans, responseCache, documents, directJsonWriter);
     ODataProcessor wrappedProcessor = ExtensionProcessor.wrap(dsProcessor).extensions(extensionRegistry).finish(context);
     return new JanosODataService(this.edmProvider, wrappedProcessor);
   }
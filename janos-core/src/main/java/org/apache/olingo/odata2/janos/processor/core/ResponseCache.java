@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Size bounded (least recently used) cache of complete responses of a service.
+ *
+ * A cache key has to contain everything the response depends on, in particular the modification versions
+ * of the read data (see {@link org.apache.olingo.odata2.janos.processor.api.data.store.DataStore#getVersion()}),
+ * so that entries never have to be invalidated. The strong ETag of a response is derived from its cache key
+ * (and an id of this cache instance) and hence can be checked without reading or writing any data.
+ */
+final class ResponseCache {
+  private final long maxBytes;
+  /** id of this cache so that ETags of a restarted service (with maybe other data) do not match */
+  private final String id = UUID.randomUUID().toString();
+  private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+
+  /**
+   * Create a cache for responses with at most given total size of their bodies.
+   *
+   * @param maxBytes maximal total size of the cached response bodies in bytes
+   */
+  ResponseCache(final long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Gets the (strong) ETag of the response with given cache key.
+   *
+   * @param key the cache key
+   * @return the quoted ETag
+   */
+  String getETag(final String key) {
+    return CachedResponse.getETag((id + key).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Whether the value of an <code>If-None-Match</code> header matches the given ETag
+   * (weak comparison, as required for <code>If-None-Match</code>).
+   *
+   * @param ifNoneMatch header value (or <code>NULL</code>)
+   * @param eTag the quoted ETag
+   * @return <code>true</code> if the header matches
+   */
+  static boolean matches(final String ifNoneMatch, final String eTag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(eTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets a copy of the cached response with given cache key.
+   *
+   * @param key the cache key
+   * @param eTag the ETag of the response (see {@link #getETag(String)})
+   * @return the response or <code>NULL</code> if it is not cached
+   */
+  ODataResponse get(final String key, final String eTag) {
+    final CachedResponse entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+    }
+    return entry == null ? null : entry.toResponse(eTag);
+  }
+
+  /**
+   * Caches the given response with given cache key. The body of the response is read completely,
+   * hence the response must not be used afterwards but the returned copy of it instead.
+   *
+   * @param key the cache key
+   * @param eTag the ETag of the response (see {@link #getETag(String)})
+   * @param response the response
+   * @return copy of the response with ETag
+   * @throws ODataException if the response body can not be read
+   */
+  ODataResponse put(final String key, final String eTag, final ODataResponse response) throws ODataException {
+    final CachedResponse entry = new CachedResponse(response);
+    if (entry.getSize() <= maxBytes) {
+      synchronized (entries) {
+        final CachedResponse previous = entries.put(key, entry);
+        bytes += entry.getSize() - (previous == null ? 0 : previous.getSize());
+        Iterator<CachedResponse> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+          bytes -= eldest.next().getSize();
+          eldest.remove();
+        }
+      }
+    }
+    return entry.toResponse(eTag);
+  }
+}
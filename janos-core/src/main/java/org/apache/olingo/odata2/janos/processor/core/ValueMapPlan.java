@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmMapping;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmStructuralType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Extraction plan for the value maps (property name to value) of the data objects of one structural type.
+ * The properties, MIME type mappings and plans of complex properties are resolved once from the EDM,
+ * so that extracting the values of a page of data objects is a loop without EDM lookups.
+ */
+final class ValueMapPlan {
+  private final String[] names;
+  private final EdmProperty[] properties;
+  /** MIME type mapping of a simple property (or <code>null</code>) */
+  private final EdmMapping[] mimeTypeMappings;
+  /** plan of a complex property (or <code>null</code> for a simple property) */
+  private final ValueMapPlan[] complexPlans;
+  private final EdmMapping mimeTypeMapping;
+  private final int capacity;
+
+  private ValueMapPlan(final EdmStructuralType type, final Cache cache) throws EdmException {
+    final List<String> propertyNames = type.getPropertyNames();
+    final int size = propertyNames.size();
+    names = new String[size];
+    properties = new EdmProperty[size];
+    mimeTypeMappings = new EdmMapping[size];
+    complexPlans = new ValueMapPlan[size];
+    for (int i = 0; i < size; i++) {
+      final EdmProperty property = (EdmProperty) type.getProperty(propertyNames.get(i));
+      names[i] = propertyNames.get(i);
+      properties[i] = property;
+      if (property.isSimple()) {
+        mimeTypeMappings[i] = getMimeTypeMapping(property.getMapping());
+      } else {
+        complexPlans[i] = cache.get((EdmStructuralType) property.getType());
+      }
+    }
+    mimeTypeMapping = getMimeTypeMapping(type.getMapping());
+    capacity = getCapacity(size + (mimeTypeMapping == null ? 0 : 1));
+  }
+
+  private static EdmMapping getMimeTypeMapping(final EdmMapping mapping) {
+    return mapping == null || mapping.getMediaResourceMimeTypeKey() == null ? null : mapping;
+  }
+
+  /** initial capacity of a {@link HashMap} which holds the given number of entries without rehashing */
+  private static int getCapacity(final int entries) {
+    return entries * 4 / 3 + 1;
+  }
+
+  /** number of properties of the type */
+  int size() {
+    return names.length;
+  }
+
+  String getName(final int index) {
+    return names[index];
+  }
+
+  EdmProperty getProperty(final int index) {
+    return properties[index];
+  }
+
+  /**
+   * Gets the plan of a complex property.
+   *
+   * @return the plan or <code>null</code> for a simple property
+   */
+  ValueMapPlan getComplexPlan(final int index) {
+    return complexPlans[index];
+  }
+
+  /**
+   * Whether values of this type (or of one of its complex properties) are written with a MIME type
+   * (see {@link EdmMapping#getMediaResourceMimeTypeKey()}).
+   */
+  boolean hasMimeTypeMappings() {
+    if (mimeTypeMapping != null) {
+      return true;
+    }
+    for (int i = 0; i < names.length; i++) {
+      if (mimeTypeMappings[i] != null || complexPlans[i] != null && complexPlans[i].hasMimeTypeMappings()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Extracts the values of the given properties (or of all properties) of the data object.
+   *
+   * @param data data object
+   * @param valueAccess access to the values of the data object
+   * @param propertyNames names of the properties (or <code>NULL</code> for all properties)
+   * @return map of property names to values
+   */
+  Map<String, Object> extract(final Object data, final ValueAccess valueAccess, final Set<String> propertyNames)
+      throws ODataException {
+    Map<String, Object> valueMap = new HashMap<>(capacity);
+    if (mimeTypeMapping != null) {
+      valueMap.put(mimeTypeMapping.getMediaResourceMimeTypeKey(), valueAccess.getMappingValue(data, mimeTypeMapping));
+    }
+
+    for (int i = 0; i < names.length; i++) {
+      if (propertyNames != null && !propertyNames.contains(names[i])) {
+        continue;
+      }
+      final Object value = valueAccess.getPropertyValue(data, properties[i]);
+      if (complexPlans[i] != null) {
+        valueMap.put(names[i], complexPlans[i].extract(value, valueAccess, null));
+      } else if (mimeTypeMappings[i] == null) {
+        valueMap.put(names[i], value);
+      } else {
+        // TODO: enable MIME type mapping outside the current subtree
+        Map<String, Object> valueWithMimeType = new HashMap<>(getCapacity(2));
+        valueWithMimeType.put(names[i], value);
+        valueWithMimeType.put(mimeTypeMappings[i].getMediaResourceMimeTypeKey(),
+            valueAccess.getMappingValue(data, mimeTypeMappings[i]));
+        valueMap.put(names[i], valueWithMimeType);
+      }
+    }
+    return valueMap;
+  }
+
+  /**
+   * Thread safe cache of the plans per structural type (by its qualified name, so that it can be
+   * shared by the processors of all requests of a service).
+   */
+  static final class Cache {
+    private final Map<String, ValueMapPlan> plans = new ConcurrentHashMap<>();
+
+    ValueMapPlan get(final EdmStructuralType type) throws EdmException {
+      final String name = type.getNamespace() + '.' + type.getName();
+      ValueMapPlan plan = plans.get(name);
+      if (plan == null) {
+        plan = new ValueMapPlan(type, this);
+        final ValueMapPlan existing = plans.putIfAbsent(name, plan);
+        if (existing != null) {
+          plan = existing;
+        }
+      }
+      return plan;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.exception.ODataException;
+
+/**
+ * A $filter expression which was compiled (once per request) into a typed predicate
+ * (see {@link ExpressionEvaluator#compile(org.apache.olingo.odata2.api.uri.expression.FilterExpression)}).
+ */
+public final class CompiledFilter {
+
+  /** filter which applies to all (not <code>NULL</code>) data objects */
+  static final CompiledFilter ALL = new CompiledFilter(ExpressionCompiler.Constant.TRUE);
+
+  private final Operand predicate;
+
+  CompiledFilter(final Operand predicate) {
+    this.predicate = predicate;
+  }
+
+  /**
+   * Check whether the given data object applies to this filter.
+   *
+   * @param data data object
+   * @return <code>true</code> if the filter applies to the data object
+   * @throws ODataException if a value of the data object could not be accessed
+   */
+  public boolean appliesTo(final Object data) throws ODataException {
+    try {
+      return data != null && ExpressionCompiler.isTrue(predicate.evaluate(data));
+    } catch (final RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Whether this filter applies to all data objects (e.g. because the filter expression was
+   * folded into a constant <code>true</code>).
+   *
+   * @return <code>true</code> if this filter applies to all data objects
+   */
+  public boolean isAll() {
+    return predicate instanceof ExpressionCompiler.Constant
+        && ExpressionCompiler.isTrue(((ExpressionCompiler.Constant) predicate).value);
+  }
+}
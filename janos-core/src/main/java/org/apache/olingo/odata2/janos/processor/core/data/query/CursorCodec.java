@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Encodes a {@link Cursor} into an opaque (URL safe) skip token and decodes it again.
+ *
+ * The token contains a version, a hash of the $orderby expression (a cursor is only valid for the
+ * order it was created for), the number of order values and all (typed) values.
+ * Each value is written as type tag, length and text, so that values of composite keys and
+ * arbitrary strings can not be mixed up.
+ */
+public final class CursorCodec {
+
+  private static final String VERSION = "1";
+  private static final char SEPARATOR = ';';
+  private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+  private CursorCodec() {}
+
+  /**
+   * Encode the given cursor for given order.
+   *
+   * @param cursor the cursor
+   * @param orderBy the order the cursor was created for (or <code>NULL</code> for the default order)
+   * @return opaque skip token
+   */
+  public static String encode(final Cursor cursor, final OrderByExpression orderBy) {
+    StringBuilder payload = new StringBuilder(VERSION).append(SEPARATOR)
+        .append(getOrderHash(orderBy)).append(SEPARATOR)
+        .append(cursor.getOrderValues().size()).append(SEPARATOR);
+    for (Object value : cursor.getOrderValues()) {
+      appendValue(value, payload);
+    }
+    for (Object value : cursor.getKeyValues()) {
+      appendValue(value, payload);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decode the given skip token.
+   *
+   * @param skipToken the skip token (can be <code>NULL</code>)
+   * @param orderBy the order of the current request (or <code>NULL</code> for the default order)
+   * @return the cursor or <code>NULL</code> if the skip token is no (valid) cursor for given order
+   */
+  public static Cursor decode(final String skipToken, final OrderByExpression orderBy) {
+    if (skipToken == null || skipToken.isEmpty()) {
+      return null;
+    }
+    try {
+      final String payload = new String(Base64.getUrlDecoder().decode(skipToken), StandardCharsets.UTF_8);
+      int position = 0;
+      int end = payload.indexOf(SEPARATOR, position);
+      if (end < 0 || !VERSION.equals(payload.substring(position, end))) {
+        return null;
+      }
+      position = end + 1;
+      end = payload.indexOf(SEPARATOR, position);
+      if (end < 0 || !getOrderHash(orderBy).equals(payload.substring(position, end))) {
+        return null;
+      }
+      position = end + 1;
+      end = payload.indexOf(SEPARATOR, position);
+      final int orderValueCount = Integer.parseInt(payload.substring(position, end));
+      position = end + 1;
+
+      List<Object> values = new ArrayList<>();
+      while (position < payload.length()) {
+        final char type = payload.charAt(position);
+        end = payload.indexOf(':', position);
+        final int length = Integer.parseInt(payload.substring(position + 1, end));
+        values.add(parseValue(type, payload.substring(end + 1, end + 1 + length)));
+        position = end + 1 + length;
+      }
+      if (orderValueCount > values.size()) {
+        return null;
+      }
+      return new Cursor(values.subList(0, orderValueCount), values.subList(orderValueCount, values.size()));
+    } catch (final RuntimeException e) {
+      // no (valid) cursor, e.g. a skip token of an older version
+      return null;
+    }
+  }
+
+  private static String getOrderHash(final OrderByExpression orderBy) {
+    return orderBy == null ? "" : Integer.toHexString(orderBy.getExpressionString().hashCode());
+  }
+
+  private static void appendValue(final Object value, final StringBuilder payload) {
+    final char type;
+    final String text;
+    if (value == null) {
+      type = 'n';
+      text = "";
+    } else if (value instanceof Long) {
+      type = 'l';
+      text = value.toString();
+    } else if (value instanceof Double) {
+      type = 'd';
+      text = value.toString();
+    } else if (value instanceof BigDecimal) {
+      type = 'm';
+      text = value.toString();
+    } else if (value instanceof Boolean) {
+      type = 'b';
+      text = value.toString();
+    } else if (value instanceof Calendar) {
+      type = 't';
+      text = Long.toString(((Calendar) value).getTimeInMillis());
+    } else if (value instanceof byte[]) {
+      type = 'x';
+      text = Base64.getEncoder().encodeToString((byte[]) value);
+    } else {
+      type = 's';
+      text = String.valueOf(value);
+    }
+    payload.append(type).append(text.length()).append(':').append(text);
+  }
+
+  private static Object parseValue(final char type, final String text) {
+    switch (type) {
+    case 'n':
+      return null;
+    case 'l':
+      return Long.valueOf(text);
+    case 'd':
+      return Double.valueOf(text);
+    case 'm':
+      return new BigDecimal(text);
+    case 'b':
+      return Boolean.valueOf(text);
+    case 't':
+      Calendar calendar = Calendar.getInstance(GMT);
+      calendar.setTimeInMillis(Long.parseLong(text));
+      return calendar;
+    case 'x':
+      return Base64.getDecoder().decode(text);
+    case 's':
+      return text;
+    default:
+      throw new IllegalArgumentException("Unknown cursor value type '" + type + "'.");
+    }
+  }
+}
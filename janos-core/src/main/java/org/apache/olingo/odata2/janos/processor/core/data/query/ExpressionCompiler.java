@@ -0,0 +1,457 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmTyped;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.expression.BinaryExpression;
+import org.apache.olingo.odata2.api.uri.expression.BinaryOperator;
+import org.apache.olingo.odata2.api.uri.expression.CommonExpression;
+import org.apache.olingo.odata2.api.uri.expression.ExpressionKind;
+import org.apache.olingo.odata2.api.uri.expression.LiteralExpression;
+import org.apache.olingo.odata2.api.uri.expression.MemberExpression;
+import org.apache.olingo.odata2.api.uri.expression.MethodExpression;
+import org.apache.olingo.odata2.api.uri.expression.PropertyExpression;
+import org.apache.olingo.odata2.api.uri.expression.UnaryExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntPredicate;
+
+/**
+ * Compiles $filter (and $orderby) expressions into a tree of typed {@link Operand}s.
+ *
+ * Each expression is compiled once and afterwards evaluated for each data object without any
+ * further conversion of values into their string representation.
+ * Sub expressions which only consist of literals are folded into constants and
+ * <code>and</code>/<code>or</code> are evaluated with short-circuit.
+ * Conditions follow the three-valued logic of SQL: a comparison with a <code>NULL</code> value is unknown
+ * (<code>NULL</code>), as is its negation, and only conditions which are true apply.
+ */
+class ExpressionCompiler {
+
+  private final ValueAccess valueAccess;
+
+  ExpressionCompiler(final ValueAccess valueAccess) {
+    this.valueAccess = valueAccess;
+  }
+
+  /**
+   * Compile given expression.
+   *
+   * @param expression expression to compile
+   * @return compiled operand
+   * @throws ODataException if the expression (or a part of it) is not supported
+   */
+  Operand compile(final CommonExpression expression) throws ODataException {
+    switch (expression.getKind()) {
+    case UNARY:
+      return compileUnary((UnaryExpression) expression);
+    case BINARY:
+      return compileBinary((BinaryExpression) expression);
+    case PROPERTY:
+      return compileProperty((EdmProperty) ((PropertyExpression) expression).getEdmProperty());
+    case MEMBER:
+      return compileMember((MemberExpression) expression);
+    case LITERAL:
+      final LiteralExpression literal = (LiteralExpression) expression;
+      final EdmSimpleType literalType = (EdmSimpleType) literal.getEdmType();
+      return new Constant(TypedValues.normalize(literalType.valueOfString(literal.getUriLiteral(),
+          EdmLiteralKind.URI, null, literalType.getDefaultType())));
+    case METHOD:
+      return compileMethod((MethodExpression) expression);
+    default:
+      throw new ODataNotImplementedException();
+    }
+  }
+
+  /**
+   * Category of the values the compiled expression results in; only (member) properties result in values
+   * normalized for their EDM type, all other expressions are of category {@link TypedValues.Category#OTHER}.
+   *
+   * @param expression the expression
+   * @return category of the expression results
+   */
+  static TypedValues.Category getCategory(final CommonExpression expression) {
+    if (expression.getKind() == ExpressionKind.PROPERTY || expression.getKind() == ExpressionKind.MEMBER) {
+      return TypedValues.getCategory(expression.getEdmType());
+    }
+    return TypedValues.Category.OTHER;
+  }
+
+  /**
+   * Compile the access of given (simple) property.
+   *
+   * @param property the property
+   * @return compiled operand
+   * @throws ODataException if the type of the property is not available
+   */
+  Operand compileProperty(final EdmProperty property) throws ODataException {
+    final TypedValues.Category category = TypedValues.getCategory(property.getType());
+    return data -> TypedValues.normalize(valueAccess.getPropertyValue(data, property), category);
+  }
+
+  private Operand compileUnary(final UnaryExpression expression) throws ODataException {
+    final Operand operand = compile(expression.getOperand());
+    switch (expression.getOperator()) {
+    case NOT:
+      return fold(data -> {
+        final Object value = operand.evaluate(data);
+        return value == null ? null : !((Boolean) value);
+      }, operand);
+    case MINUS:
+      return fold(data -> {
+        final Object value = operand.evaluate(data);
+        return value == null ? null : TypedValues.negate((Number) value);
+      }, operand);
+    default:
+      throw new ODataNotImplementedException();
+    }
+  }
+
+  private Operand compileBinary(final BinaryExpression expression) throws ODataException {
+    final Operand left = compile(expression.getLeftOperand());
+    final Operand right = compile(expression.getRightOperand());
+
+    switch (expression.getOperator()) {
+    case AND:
+      if (isKnownConstant(left)) {
+        return isTrue(((Constant) left).value) ? right : Constant.FALSE;
+      } else if (isKnownConstant(right)) {
+        return isTrue(((Constant) right).value) ? left : Constant.FALSE;
+      }
+      return fold(data -> {
+        final Object first = left.evaluate(data);
+        if (isFalse(first)) {
+          return Boolean.FALSE;
+        }
+        final Object second = right.evaluate(data);
+        return isFalse(second) ? Boolean.FALSE : first == null || second == null ? null : Boolean.TRUE;
+      }, left, right);
+    case OR:
+      if (isKnownConstant(left)) {
+        return isTrue(((Constant) left).value) ? Constant.TRUE : right;
+      } else if (isKnownConstant(right)) {
+        return isTrue(((Constant) right).value) ? Constant.TRUE : left;
+      }
+      return fold(data -> {
+        final Object first = left.evaluate(data);
+        if (isTrue(first)) {
+          return Boolean.TRUE;
+        }
+        final Object second = right.evaluate(data);
+        return isTrue(second) ? Boolean.TRUE : first == null || second == null ? null : Boolean.FALSE;
+      }, left, right);
+    case EQ:
+      return fold(equality(left, right, true), left, right);
+    case NE:
+      return fold(equality(left, right, false), left, right);
+    case LT:
+      return fold(compare(left, right, result -> result < 0), left, right);
+    case LE:
+      return fold(compare(left, right, result -> result <= 0), left, right);
+    case GT:
+      return fold(compare(left, right, result -> result > 0), left, right);
+    case GE:
+      return fold(compare(left, right, result -> result >= 0), left, right);
+    case ADD:
+    case SUB:
+    case MUL:
+    case DIV:
+    case MODULO:
+      final BinaryOperator operator = expression.getOperator();
+      return fold(data -> {
+        final Object first = left.evaluate(data);
+        final Object second = right.evaluate(data);
+        return first == null || second == null ? null : calculate(operator, (Number) first, (Number) second);
+      }, left, right);
+    default:
+      throw new ODataNotImplementedException();
+    }
+  }
+
+  /**
+   * (In)equality of the results of both operands. A comparison with the <code>null</code> literal tests for
+   * <code>NULL</code>, otherwise a comparison with a <code>NULL</code> result is unknown (see
+   * {@link #compare(Operand, Operand, IntPredicate)}).
+   */
+  private static Operand equality(final Operand left, final Operand right, final boolean equal) {
+    if (isNullConstant(left) || isNullConstant(right)) {
+      return data -> TypedValues.isEqual(left.evaluate(data), right.evaluate(data)) == equal;
+    }
+    return data -> {
+      final Object first = left.evaluate(data);
+      final Object second = right.evaluate(data);
+      return first == null || second == null ? null : TypedValues.isEqual(first, second) == equal;
+    };
+  }
+
+  /**
+   * Comparison of the results of both operands; a comparison with <code>NULL</code> is unknown
+   * (<code>NULL</code>) and never applies, also not if negated (three-valued logic as in SQL,
+   * so that a filter applies to the same entities as its JPQL translation).
+   */
+  private static Operand compare(final Operand left, final Operand right, final IntPredicate applies) {
+    return data -> {
+      final Object first = left.evaluate(data);
+      final Object second = right.evaluate(data);
+      return first == null || second == null ? null : applies.test(TypedValues.compare(first, second));
+    };
+  }
+
+  private static Number calculate(final BinaryOperator operator, final Number first, final Number second) {
+    switch (operator) {
+    case ADD:
+      return TypedValues.add(first, second);
+    case SUB:
+      return TypedValues.subtract(first, second);
+    case MUL:
+      return TypedValues.multiply(first, second);
+    case DIV:
+      return TypedValues.divide(first, second);
+    default:
+      return TypedValues.modulo(first, second);
+    }
+  }
+
+  private Operand compileMember(final MemberExpression expression) throws ODataException {
+    final List<EdmProperty> propertyPath = new ArrayList<>();
+    CommonExpression currentExpression = expression;
+    while (currentExpression != null) {
+      final PropertyExpression currentPropertyExpression =
+          (PropertyExpression) (currentExpression.getKind() == ExpressionKind.MEMBER ?
+              ((MemberExpression) currentExpression).getProperty() : currentExpression);
+      final EdmTyped currentProperty = currentPropertyExpression.getEdmProperty();
+      final EdmTypeKind kind = currentProperty.getType().getKind();
+      if (kind == EdmTypeKind.SIMPLE || kind == EdmTypeKind.COMPLEX) {
+        propertyPath.add(0, (EdmProperty) currentProperty);
+      } else {
+        throw new ODataNotImplementedException();
+      }
+      currentExpression =
+          currentExpression.getKind() == ExpressionKind.MEMBER ? ((MemberExpression) currentExpression).getPath()
+              : null;
+    }
+    final TypedValues.Category category = TypedValues.getCategory(expression.getEdmType());
+    return data -> {
+      Object value = data;
+      for (final EdmProperty property : propertyPath) {
+        if (value == null) {
+          return null;
+        }
+        value = valueAccess.getPropertyValue(value, property);
+      }
+      return TypedValues.normalize(value, category);
+    };
+  }
+
+  private Operand compileMethod(final MethodExpression expression) throws ODataException {
+    final List<CommonExpression> parameters = expression.getParameters();
+    final Operand[] operands = new Operand[parameters.size()];
+    for (int i = 0; i < operands.length; i++) {
+      operands[i] = compile(parameters.get(i));
+    }
+    final Operand first = operands[0];
+    final Operand second = operands.length > 1 ? operands[1] : null;
+    final Operand third = operands.length > 2 ? operands[2] : null;
+
+    final Operand method;
+    switch (expression.getMethod()) {
+    case ENDSWITH:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        final String suffix = (String) second.evaluate(data);
+        return value == null || suffix == null ? null : value.endsWith(suffix);
+      };
+      break;
+    case STARTSWITH:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        final String prefix = (String) second.evaluate(data);
+        return value == null || prefix == null ? null : value.startsWith(prefix);
+      };
+      break;
+    case SUBSTRINGOF:
+      method = data -> {
+        final String part = (String) first.evaluate(data);
+        final String value = (String) second.evaluate(data);
+        return value == null || part == null ? null : value.contains(part);
+      };
+      break;
+    case INDEXOF:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        final String part = (String) second.evaluate(data);
+        return value == null || part == null ? null : (long) value.indexOf(part);
+      };
+      break;
+    case TOLOWER:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+      };
+      break;
+    case TOUPPER:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        return value == null ? null : value.toUpperCase(Locale.ROOT);
+      };
+      break;
+    case TRIM:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        return value == null ? null : value.trim();
+      };
+      break;
+    case SUBSTRING:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        final Number offset = (Number) second.evaluate(data);
+        final Number length = third == null ? null : (Number) third.evaluate(data);
+        if (value == null || offset == null || (third != null && length == null)) {
+          return null;
+        }
+        return length == null ? value.substring(offset.intValue())
+            : value.substring(offset.intValue(), offset.intValue() + length.intValue());
+      };
+      break;
+    case CONCAT:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        final String other = (String) second.evaluate(data);
+        return value == null || other == null ? null : value + other;
+      };
+      break;
+    case LENGTH:
+      method = data -> {
+        final String value = (String) first.evaluate(data);
+        return value == null ? null : (long) value.length();
+      };
+      break;
+    case YEAR:
+      method = calendarField(first, Calendar.YEAR);
+      break;
+    case MONTH:
+      method = data -> {
+        final Calendar value = (Calendar) first.evaluate(data);
+        return value == null ? null : (long) value.get(Calendar.MONTH) + 1;
+      };
+      break;
+    case DAY:
+      method = calendarField(first, Calendar.DAY_OF_MONTH);
+      break;
+    case HOUR:
+      method = calendarField(first, Calendar.HOUR_OF_DAY);
+      break;
+    case MINUTE:
+      method = calendarField(first, Calendar.MINUTE);
+      break;
+    case SECOND:
+      method = calendarField(first, Calendar.SECOND);
+      break;
+    case ROUND:
+      method = round(first, RoundingMode.HALF_UP);
+      break;
+    case FLOOR:
+      method = round(first, RoundingMode.FLOOR);
+      break;
+    case CEILING:
+      method = round(first, RoundingMode.CEILING);
+      break;
+    default:
+      throw new ODataNotImplementedException();
+    }
+    return fold(method, operands);
+  }
+
+  private static Operand calendarField(final Operand operand, final int field) {
+    return data -> {
+      final Calendar value = (Calendar) operand.evaluate(data);
+      return value == null ? null : (long) value.get(field);
+    };
+  }
+
+  private static Operand round(final Operand operand, final RoundingMode mode) {
+    return data -> {
+      final Number value = (Number) operand.evaluate(data);
+      return value == null ? null : TypedValues.round(value, mode);
+    };
+  }
+
+  /**
+   * Fold given operand into a constant if all its sub operands are constants.
+   * If the evaluation fails it is kept as it is (and fails for each evaluation).
+   */
+  private static Operand fold(final Operand operand, final Operand... subOperands) {
+    for (Operand subOperand : subOperands) {
+      if (!(subOperand instanceof Constant)) {
+        return operand;
+      }
+    }
+    try {
+      return new Constant(operand.evaluate(null));
+    } catch (final ODataException | RuntimeException e) {
+      return operand;
+    }
+  }
+
+  static boolean isTrue(final Object value) {
+    return Boolean.TRUE.equals(value);
+  }
+
+  private static boolean isFalse(final Object value) {
+    return Boolean.FALSE.equals(value);
+  }
+
+  private static boolean isNullConstant(final Operand operand) {
+    return operand instanceof Constant && ((Constant) operand).value == null;
+  }
+
+  private static boolean isKnownConstant(final Operand operand) {
+    return operand instanceof Constant && ((Constant) operand).value != null;
+  }
+
+  /**
+   * Operand with a constant value (a literal or a folded sub expression).
+   */
+  static final class Constant implements Operand {
+    static final Constant TRUE = new Constant(Boolean.TRUE);
+    static final Constant FALSE = new Constant(Boolean.FALSE);
+
+    final Object value;
+
+    Constant(final Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public Object evaluate(final Object data) {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderExpression;
+import org.apache.olingo.odata2.api.uri.expression.SortOrder;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evaluates $filter and $orderby expressions (compiled into typed predicates and sort keys) on data objects
+ * whose values are accessed via a {@link ValueAccess}.
+ * Used by the processor for all options which were not applied by the data source and by data stores
+ * which apply the options themselves (e.g. the in memory data store).
+ */
+public class ExpressionEvaluator {
+
+  private final ValueAccess valueAccess;
+  private final ExpressionCompiler compiler;
+
+  public ExpressionEvaluator(final ValueAccess valueAccess) {
+    this.valueAccess = valueAccess;
+    this.compiler = new ExpressionCompiler(valueAccess);
+  }
+
+  /**
+   * Compile the given filter into a typed predicate which is then used for all data objects of a request.
+   * A <code>NULL</code> filter results in a predicate which applies to all (not <code>NULL</code>) data objects.
+   *
+   * @param filter filter expression
+   * @return compiled filter
+   * @throws ODataException if the filter expression is not supported
+   */
+  public CompiledFilter compile(final FilterExpression filter) throws ODataException {
+    if (filter == null) {
+      return CompiledFilter.ALL;
+    }
+    return new CompiledFilter(compiler.compile(filter.getExpression()));
+  }
+
+  /**
+   * Check whether the given data object applies to the given filter.
+   * A <code>NULL</code> filter applies to all (not <code>NULL</code>) data objects.
+   * The filter is compiled with each call; loops over data objects should {@link #compile(FilterExpression)}
+   * it once and use the {@link CompiledFilter} for all of them.
+   *
+   * @param data data object
+   * @param filter filter expression
+   * @return <code>true</code> if the filter applies to the data object
+   * @throws ODataException if the filter expression is not supported
+   */
+  public boolean appliesFilter(final Object data, final FilterExpression filter) throws ODataException {
+    return data != null && compile(filter).appliesTo(data);
+  }
+
+  /**
+   * Create a sorter which orders data objects as defined by given order expression.
+   * An order expression which is not supported does not influence the order (as before the
+   * introduction of typed sort keys).
+   *
+   * @param orderBy order by expression
+   * @return sorter for given order by expression
+   */
+  public Sorter getSorter(final OrderByExpression orderBy) {
+    return createSorter(orderBy, Collections.<EdmProperty>emptyList());
+  }
+
+  /**
+   * Create a sorter which orders data objects as defined by given order expression followed by the
+   * key properties of given entity type (as tie breaker, so that the order is total and stable over pages).
+   * Without order expression data objects are ordered by their key properties (the default order).
+   *
+   * @param orderBy order by expression (or <code>NULL</code>)
+   * @param entityType entity type of the data objects
+   * @return sorter for given order by expression and key properties
+   * @throws ODataException if the key properties are not available
+   */
+  public Sorter getSorter(final OrderByExpression orderBy, final EdmEntityType entityType) throws ODataException {
+    return createSorter(orderBy, entityType.getKeyProperties());
+  }
+
+  private Sorter createSorter(final OrderByExpression orderBy, final List<EdmProperty> keyProperties) {
+    final List<OrderExpression> orders =
+        orderBy == null ? Collections.<OrderExpression>emptyList() : orderBy.getOrders();
+    final int size = orders.size() + keyProperties.size();
+    final Operand[] expressions = new Operand[size];
+    @SuppressWarnings("unchecked")
+    final Comparator<Object>[] comparators = new Comparator[size];
+    final boolean[] descending = new boolean[size];
+    for (int i = 0; i < orders.size(); i++) {
+      final OrderExpression order = orders.get(i);
+      try {
+        expressions[i] = compiler.compile(order.getExpression());
+        comparators[i] = TypedValues.getComparator(ExpressionCompiler.getCategory(order.getExpression()));
+      } catch (final ODataException e) {
+        expressions[i] = new ExpressionCompiler.Constant(null);
+        comparators[i] = TypedValues.getComparator(TypedValues.Category.OTHER);
+      }
+      descending[i] = order.getSortOrder() == SortOrder.desc;
+    }
+    for (int i = orders.size(); i < size; i++) {
+      final EdmProperty property = keyProperties.get(i - orders.size());
+      try {
+        expressions[i] = compiler.compileProperty(property);
+        comparators[i] = TypedValues.getComparator(TypedValues.getCategory(property.getType()));
+      } catch (final ODataException e) {
+        expressions[i] = new ExpressionCompiler.Constant(null);
+        comparators[i] = TypedValues.getComparator(TypedValues.Category.OTHER);
+      }
+    }
+    return new Sorter(expressions, orders.size(), comparators, descending);
+  }
+
+  /**
+   * Get the value at the end of the given property path (starting at given data object).
+   *
+   * @param data data object
+   * @param propertyPath path of (complex) properties
+   * @return the value or <code>NULL</code> if any value on the path is <code>NULL</code>
+   * @throws ODataException if a value could not be accessed
+   */
+  public Object getPropertyValue(final Object data, final List<EdmProperty> propertyPath) throws ODataException {
+    Object dataObject = data;
+    for (final EdmProperty property : propertyPath) {
+      if (dataObject != null) {
+        dataObject = valueAccess.getPropertyValue(dataObject, property);
+      }
+    }
+    return dataObject;
+  }
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.exception.ODataException;
+
+/**
+ * A compiled (sub) expression which is evaluated for a data object.
+ * The result is a typed value as normalized by {@link TypedValues} or <code>NULL</code>.
+ */
+interface Operand {
+
+  /**
+   * Evaluate this operand for given data object.
+   *
+   * @param data data object (<code>NULL</code> for constant operands)
+   * @return typed result value or <code>NULL</code>
+   * @throws ODataException if a value of the data object could not be accessed
+   */
+  Object evaluate(Object data) throws ODataException;
+}
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmTyped;
+import org.apache.olingo.odata2.api.uri.expression.BinaryExpression;
+import org.apache.olingo.odata2.api.uri.expression.BinaryOperator;
+import org.apache.olingo.odata2.api.uri.expression.CommonExpression;
+import org.apache.olingo.odata2.api.uri.expression.ExpressionKind;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.LiteralExpression;
+import org.apache.olingo.odata2.api.uri.expression.PropertyExpression;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Range of the values of a simple property to which a $filter expression restricts the data objects,
+ * derived from the conditions which compare the property with a literal (<code>eq</code>, <code>lt</code>,
+ * <code>le</code>, <code>gt</code>, <code>ge</code>) and are combined with <code>and</code> on the top level.
+ *
+ * The bounds are index keys (see {@link #getKey(Object)}) which are equal or ordered exactly as the values
+ * are by the compiled filter. A data store can look up the candidates of a range in an index but still
+ * has to apply the complete filter on them (for all other conditions).
+ */
+public final class PropertyRange {
+  private final TypedValues.Category category;
+  private Object lower;
+  private boolean lowerInclusive;
+  private Object upper;
+  private boolean upperInclusive;
+
+  private PropertyRange(final TypedValues.Category category) {
+    this.category = category;
+  }
+
+  /**
+   * Get the ranges of all properties to which the given filter restricts the data objects.
+   *
+   * @param filter filter expression (or <code>NULL</code>)
+   * @return ranges by property name (empty if the filter does not restrict any property to a range)
+   */
+  public static Map<String, PropertyRange> of(final FilterExpression filter) {
+    Map<String, PropertyRange> ranges = new LinkedHashMap<>();
+    if (filter != null) {
+      try {
+        collect(filter.getExpression(), ranges);
+      } catch (final EdmException e) {
+        // not restricted by an unsupported expression (which is reported on its evaluation)
+        ranges.clear();
+      }
+    }
+    return ranges;
+  }
+
+  private static void collect(final CommonExpression expression, final Map<String, PropertyRange> ranges)
+      throws EdmException {
+    if (expression.getKind() != ExpressionKind.BINARY) {
+      return;
+    }
+    final BinaryExpression binary = (BinaryExpression) expression;
+    BinaryOperator operator = binary.getOperator();
+    if (operator == BinaryOperator.AND) {
+      collect(binary.getLeftOperand(), ranges);
+      collect(binary.getRightOperand(), ranges);
+      return;
+    }
+    CommonExpression propertyExpression = binary.getLeftOperand();
+    CommonExpression literalExpression = binary.getRightOperand();
+    if (propertyExpression.getKind() == ExpressionKind.LITERAL) {
+      propertyExpression = binary.getRightOperand();
+      literalExpression = binary.getLeftOperand();
+      operator = mirror(operator);
+    }
+    if (operator == null || propertyExpression.getKind() != ExpressionKind.PROPERTY
+        || literalExpression.getKind() != ExpressionKind.LITERAL) {
+      return;
+    }
+    final EdmTyped typed = ((PropertyExpression) propertyExpression).getEdmProperty();
+    if (!(typed instanceof EdmProperty) || typed.getType().getKind() != EdmTypeKind.SIMPLE) {
+      return;
+    }
+    final EdmProperty property = (EdmProperty) typed;
+    final TypedValues.Category category = TypedValues.getCategory(property.getType());
+    final Object key = getLiteralKey((LiteralExpression) literalExpression, category);
+    if (key != null) {
+      PropertyRange range = ranges.get(property.getName());
+      if (range == null) {
+        range = new PropertyRange(category);
+        ranges.put(property.getName(), range);
+      }
+      range.restrict(operator, key);
+    }
+  }
+
+  /**
+   * Operator with swapped operands (or <code>NULL</code> for an operator which is no comparison).
+   */
+  private static BinaryOperator mirror(final BinaryOperator operator) {
+    switch (operator) {
+    case EQ:
+      return BinaryOperator.EQ;
+    case LT:
+      return BinaryOperator.GT;
+    case LE:
+      return BinaryOperator.GE;
+    case GT:
+      return BinaryOperator.LT;
+    case GE:
+      return BinaryOperator.LE;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Key of a literal (normalized as for its compilation) which is compared with properties of the given category,
+   * or <code>NULL</code> if the comparison of the normalized values differs from the comparison of the keys.
+   */
+  private static Object getLiteralKey(final LiteralExpression literal, final TypedValues.Category category) {
+    final Object value;
+    try {
+      final EdmSimpleType type = (EdmSimpleType) literal.getEdmType();
+      value = TypedValues.normalize(type.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null,
+          type.getDefaultType()));
+    } catch (final EdmException | RuntimeException e) {
+      return null;
+    }
+    switch (category) {
+    case STRING:
+      return value instanceof String ? value : null;
+    case INTEGRAL:
+      return value instanceof Long ? value : null;
+    case FLOATING:
+      return value instanceof Long || value instanceof Double ? ((Number) value).doubleValue() : null;
+    case DECIMAL:
+      return value instanceof Number ? TypedValues.toBigDecimal((Number) value).stripTrailingZeros() : null;
+    case BOOLEAN:
+      return value instanceof Boolean ? value : null;
+    case TEMPORAL:
+      return value instanceof Calendar ? new Date(((Calendar) value).getTimeInMillis()) : null;
+    default:
+      return null;
+    }
+  }
+
+  private void restrict(final BinaryOperator operator, final Object key) {
+    switch (operator) {
+    case EQ:
+      restrictLower(key, true);
+      restrictUpper(key, true);
+      break;
+    case GT:
+      restrictLower(key, false);
+      break;
+    case GE:
+      restrictLower(key, true);
+      break;
+    case LT:
+      restrictUpper(key, false);
+      break;
+    default:
+      restrictUpper(key, true);
+    }
+  }
+
+  private void restrictLower(final Object key, final boolean inclusive) {
+    final int result = lower == null ? 1 : compare(key, lower);
+    if (result > 0 || result == 0 && !inclusive) {
+      lower = key;
+      lowerInclusive = inclusive;
+    }
+  }
+
+  private void restrictUpper(final Object key, final boolean inclusive) {
+    final int result = upper == null ? -1 : compare(key, upper);
+    if (result < 0 || result == 0 && !inclusive) {
+      upper = key;
+      upperInclusive = inclusive;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(final Object first, final Object second) {
+    return ((Comparable<Object>) first).compareTo(second);
+  }
+
+  /**
+   * Get the index key of a value of the property: its normalized value (as for the compiled filter)
+   * with date/time values as {@link Date} and decimals without trailing zeros, so that keys are
+   * {@link Comparable} and equal exactly if the values are equal for the filter.
+   *
+   * @param value value of the property
+   * @return the key or <code>NULL</code> if the value is <code>NULL</code> or can not be normalized
+   */
+  public Object getKey(final Object value) {
+    final Object normalized;
+    try {
+      normalized = TypedValues.normalize(value, category);
+    } catch (final RuntimeException e) {
+      return null;
+    }
+    if (normalized instanceof Calendar) {
+      return new Date(((Calendar) normalized).getTimeInMillis());
+    } else if (normalized instanceof BigDecimal) {
+      return ((BigDecimal) normalized).stripTrailingZeros();
+    } else if (normalized instanceof byte[] || !(normalized instanceof Comparable)) {
+      return null;
+    }
+    return normalized;
+  }
+
+  /**
+   * Whether the given index key (see {@link #getKey(Object)}) is in this range.
+   *
+   * @param key the index key (or <code>NULL</code> which is in no range)
+   * @return <code>true</code> if the key is in this range
+   */
+  public boolean contains(final Object key) {
+    if (key == null) {
+      return false;
+    }
+    if (lower != null) {
+      final int result = compare(key, lower);
+      if (result < 0 || result == 0 && !lowerInclusive) {
+        return false;
+      }
+    }
+    if (upper != null) {
+      final int result = compare(key, upper);
+      if (result > 0 || result == 0 && !upperInclusive) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether no value is in this range (because of contradicting conditions).
+   */
+  public boolean isEmpty() {
+    if (lower == null || upper == null) {
+      return false;
+    }
+    final int result = compare(lower, upper);
+    return result > 0 || result == 0 && !(lowerInclusive && upperInclusive);
+  }
+
+  /**
+   * Whether this range consists of exactly one value (the lower bound).
+   */
+  public boolean isSingleValue() {
+    return lower != null && upper != null && lowerInclusive && upperInclusive && compare(lower, upper) == 0;
+  }
+
+  /** lower bound key (or <code>NULL</code> if not bounded) */
+  public Object getLower() {
+    return lower;
+  }
+
+  public boolean isLowerInclusive() {
+    return lowerInclusive;
+  }
+
+  /** upper bound key (or <code>NULL</code> if not bounded) */
+  public Object getUpper() {
+    return upper;
+  }
+
+  public boolean isUpperInclusive() {
+    return upperInclusive;
+  }
+}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Sorts data objects by typed sort keys (e.g. as defined by an $orderby expression).
+ *
+ * The sort key of each data object is extracted exactly once before sorting (decorate-sort-undecorate),
+ * so that a sort of <code>n</code> data objects does <code>n</code> (instead of <code>n log n</code>) value
+ * accesses. The sort keys are compared by a chain of comparators chosen by the EDM type of each
+ * order expression. <code>NULL</code> values are ordered after all other values
+ * (and before if the order is descending).
+ */
+public final class Sorter {
+
+  /**
+   * A bounded heap is only used if at most 1/PARTIAL_SORT_FRACTION of the data is selected;
+   * larger windows (e.g. because of a large $skip) are sorted completely.
+   */
+  private static final int PARTIAL_SORT_FRACTION = 4;
+
+  private final Operand[] expressions;
+  private final int orderCount;
+  private final Comparator<Object[]> keyComparator;
+
+  /**
+   * @param expressions compiled order expressions followed by the key properties (if any)
+   * @param orderCount number of order expressions (all further expressions are key properties)
+   * @param comparators comparator for each expression
+   * @param descending descending order for each expression
+   */
+  Sorter(final Operand[] expressions, final int orderCount, final Comparator<Object>[] comparators,
+      final boolean[] descending) {
+    this.expressions = expressions;
+    this.orderCount = orderCount;
+    this.keyComparator = createKeyComparator(comparators, descending);
+  }
+
+  private static Comparator<Object[]> createKeyComparator(final Comparator<Object>[] comparators,
+      final boolean[] descending) {
+    return (first, second) -> {
+      for (int i = 0; i < comparators.length; i++) {
+        final Object firstValue = first[i];
+        final Object secondValue = second[i];
+        int result;
+        if (firstValue == null || secondValue == null) {
+          result = firstValue == secondValue ? 0 : firstValue == null ? 1 : -1;
+        } else {
+          result = comparators[i].compare(firstValue, secondValue);
+        }
+        if (result != 0) {
+          return descending[i] ? -result : result;
+        }
+      }
+      return 0;
+    };
+  }
+
+  /**
+   * Extract the sort key of given data object.
+   * If a value of the sort key can not be evaluated (e.g. because of a wrong type) it is treated as
+   * <code>NULL</code>.
+   *
+   * @param data data object
+   * @return the sort key (one value per order expression)
+   * @throws ODataException if a value of the data object could not be accessed
+   */
+  public Object[] getSortKey(final Object data) throws ODataException {
+    final Object[] key = new Object[expressions.length];
+    for (int i = 0; i < expressions.length; i++) {
+      try {
+        key[i] = expressions[i].evaluate(data);
+      } catch (final RuntimeException e) {
+        key[i] = null;
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Create a cursor which points to the given data object (e.g. the last entity of a page).
+   *
+   * @param data data object
+   * @return cursor with the order and key values of the data object
+   * @throws ODataException if a value of the data object could not be accessed
+   */
+  public Cursor getCursor(final Object data) throws ODataException {
+    final List<Object> key = Arrays.asList(getSortKey(data));
+    return new Cursor(key.subList(0, orderCount), key.subList(orderCount, key.size()));
+  }
+
+  /**
+   * Whether the given cursor fits to this sorter (same number of order and key values).
+   *
+   * @param cursor the cursor
+   * @return <code>true</code> if the cursor can be used with this sorter
+   */
+  public boolean accepts(final Cursor cursor) {
+    return cursor.getOrderValues().size() == orderCount
+        && cursor.getOrderValues().size() + cursor.getKeyValues().size() == expressions.length;
+  }
+
+  /**
+   * Keep only the data objects which are ordered after the position of the given cursor
+   * (the order of the kept data objects is not changed).
+   *
+   * @param data data objects
+   * @param cursor the cursor (see {@link #accepts(Cursor)})
+   * @param <T> type of data objects
+   * @throws ODataException if a value of a data object could not be accessed
+   */
+  public <T> void retainAfter(final List<T> data, final Cursor cursor) throws ODataException {
+    final List<Object> position = new ArrayList<>(cursor.getOrderValues());
+    position.addAll(cursor.getKeyValues());
+    final Object[] positionKey = position.toArray();
+    int retained = 0;
+    for (int i = 0; i < data.size(); i++) {
+      final T element = data.get(i);
+      if (keyComparator.compare(getSortKey(element), positionKey) > 0) {
+        data.set(retained++, element);
+      }
+    }
+    data.subList(retained, data.size()).clear();
+  }
+
+  /**
+   * Create the order of the values of properties of given EDM types for data objects which are not accessed
+   * via the EDM (e.g. the key values in a data store). It is the same order as the one of a sorter for these
+   * properties, i.e. the order of the typed values (e.g. <code>2</code> before <code>10</code> for integral types
+   * and decimals independent of their scale) with <code>NULL</code> values ordered after all other values.
+   *
+   * @param types EDM types of the properties (a <code>NULL</code> type is compared by the java type of the values)
+   * @return order of the property values
+   */
+  public static ValueOrder getValueOrder(final EdmSimpleTypeKind... types) {
+    return new ValueOrder(types);
+  }
+
+  /**
+   * Comparator for sort keys as extracted by {@link #getSortKey(Object)}.
+   *
+   * @return comparator for sort keys
+   */
+  public Comparator<Object[]> getKeyComparator() {
+    return keyComparator;
+  }
+
+  /**
+   * Sort the given data (stable).
+   *
+   * @param data data objects to sort
+   * @param <T> type of data objects
+   * @throws ODataException if a value of a data object could not be accessed
+   */
+  public <T> void sort(final List<T> data) throws ODataException {
+    sort(data, null);
+  }
+
+  /**
+   * Sort the given data (stable) using the given comparator for all data objects with equal sort keys.
+   *
+   * @param data data objects to sort
+   * @param tieBreaker comparator for data objects with equal sort keys (or <code>NULL</code>)
+   * @param <T> type of data objects
+   * @throws ODataException if a value of a data object could not be accessed
+   */
+  public <T> void sort(final List<T> data, final Comparator<? super T> tieBreaker) throws ODataException {
+    if (data.size() < 2) {
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    final SortEntry<T>[] entries = new SortEntry[data.size()];
+    for (int i = 0; i < entries.length; i++) {
+      final T element = data.get(i);
+      entries[i] = new SortEntry<>(getSortKey(element), element);
+    }
+    Comparator<SortEntry<T>> comparator = (first, second) -> keyComparator.compare(first.key, second.key);
+    if (tieBreaker != null) {
+      comparator = comparator.thenComparing((first, second) -> tieBreaker.compare(first.data, second.data));
+    }
+    Arrays.sort(entries, comparator);
+    for (int i = 0; i < entries.length; i++) {
+      data.set(i, entries[i].data);
+    }
+  }
+
+  /**
+   * Sort the given data (stable) and keep only the first <code>limit</code> data objects.
+   * If only a small part of the data is selected the data objects are selected via a bounded heap
+   * (in <code>O(n log limit)</code> and <code>O(limit)</code> extra memory) instead of a complete sort.
+   *
+   * @param data data objects to sort
+   * @param limit maximal number of (first) data objects to keep
+   * @param <T> type of data objects
+   * @throws ODataException if a value of a data object could not be accessed
+   */
+  public <T> void sortTop(final List<T> data, final int limit) throws ODataException {
+    if (limit <= 0) {
+      data.clear();
+      return;
+    } else if ((long) limit * PARTIAL_SORT_FRACTION > data.size()) {
+      sort(data);
+      if (limit < data.size()) {
+        data.subList(limit, data.size()).clear();
+      }
+      return;
+    }
+
+    // the position is the last criterion so that the result is the same as for a stable sort
+    final Comparator<SortEntry<T>> order = (first, second) -> {
+      final int result = keyComparator.compare(first.key, second.key);
+      return result != 0 ? result : Integer.compare(first.position, second.position);
+    };
+    // max heap which contains the 'limit' smallest entries; its head is the largest of them
+    final PriorityQueue<SortEntry<T>> heap = new PriorityQueue<>(limit, order.reversed());
+    for (int i = 0; i < data.size(); i++) {
+      final T element = data.get(i);
+      final Object[] key = getSortKey(element);
+      if (heap.size() < limit) {
+        heap.add(new SortEntry<>(key, element, i));
+      } else if (keyComparator.compare(key, heap.peek().key) < 0) {
+        heap.poll();
+        heap.add(new SortEntry<>(key, element, i));
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    final SortEntry<T>[] entries = heap.toArray(new SortEntry[heap.size()]);
+    Arrays.sort(entries, order);
+    data.clear();
+    for (SortEntry<T> entry : entries) {
+      data.add(entry.data);
+    }
+  }
+
+  /**
+   * Sort the given data (stable) by a comparable key which is extracted exactly once per data object.
+   *
+   * @param data data objects to sort
+   * @param keyExtractor extracts the (not <code>NULL</code>) key of a data object
+   * @param <T> type of data objects
+   * @param <K> type of keys
+   */
+  public static <T, K extends Comparable<? super K>> void sortBy(final List<T> data,
+      final Function<? super T, K> keyExtractor) {
+    sortBy(data, keyExtractor, Comparator.<K>naturalOrder());
+  }
+
+  /**
+   * Sort the given data (stable) by a key which is extracted exactly once per data object.
+   *
+   * @param data data objects to sort
+   * @param keyExtractor extracts the key of a data object
+   * @param keyComparator comparator for the keys
+   * @param <T> type of data objects
+   * @param <K> type of keys
+   */
+  public static <T, K> void sortBy(final List<T> data, final Function<? super T, K> keyExtractor,
+      final Comparator<? super K> keyComparator) {
+    if (data.size() < 2) {
+      return;
+    }
+    @SuppressWarnings("unchecked")
+    final SortEntry<T>[] entries = new SortEntry[data.size()];
+    for (int i = 0; i < entries.length; i++) {
+      final T element = data.get(i);
+      entries[i] = new SortEntry<>(new Object[] { keyExtractor.apply(element) }, element);
+    }
+    Arrays.sort(entries, (first, second) -> {
+      @SuppressWarnings("unchecked")
+      final K firstKey = (K) first.key[0];
+      @SuppressWarnings("unchecked")
+      final K secondKey = (K) second.key[0];
+      return keyComparator.compare(firstKey, secondKey);
+    });
+    for (int i = 0; i < entries.length; i++) {
+      data.set(i, entries[i].data);
+    }
+  }
+
+  /**
+   * Order of the values of properties (see {@link #getValueOrder(EdmSimpleTypeKind...)}); values are compared
+   * after they are normalized for their type (e.g. the values of a cursor are already normalized).
+   */
+  public static final class ValueOrder implements Comparator<Object[]> {
+    private final TypedValues.Category[] categories;
+    private final Comparator<Object[]> comparator;
+
+    private ValueOrder(final EdmSimpleTypeKind[] types) {
+      categories = new TypedValues.Category[types.length];
+      @SuppressWarnings("unchecked")
+      final Comparator<Object>[] comparators = new Comparator[types.length];
+      for (int i = 0; i < types.length; i++) {
+        categories[i] = types[i] == null ? TypedValues.Category.OTHER : TypedValues.getCategory(types[i]);
+        comparators[i] = TypedValues.getComparator(categories[i]);
+      }
+      comparator = createKeyComparator(comparators, new boolean[types.length]);
+    }
+
+    /**
+     * Normalize the given values (in place) for the types of this order.
+     *
+     * @param values one value per type
+     * @return the normalized values
+     * @throws IllegalArgumentException if a value can not be normalized for its type
+     */
+    public Object[] normalize(final Object[] values) {
+      for (int i = 0; i < values.length; i++) {
+        values[i] = TypedValues.normalize(values[i], categories[i]);
+      }
+      return values;
+    }
+
+    /**
+     * Compare two arrays of normalized values (one value per type).
+     */
+    @Override
+    public int compare(final Object[] first, final Object[] second) {
+      return comparator.compare(first, second);
+    }
+  }
+
+  /**
+   * A data object decorated with its sort key.
+   */
+  static final class SortEntry<T> {
+    final Object[] key;
+    final T data;
+    final int position;
+
+    SortEntry(final Object[] key, final T data) {
+      this(key, data, 0);
+    }
+
+    SortEntry(final Object[] key, final T data, final int position) {
+      this.key = key;
+      this.data = data;
+      this.position = position;
+    }
+  }
+}
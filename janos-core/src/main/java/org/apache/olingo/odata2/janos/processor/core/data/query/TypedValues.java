@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Normalization, comparison and arithmetic of typed values used by the compiled expressions.
+ *
+ * All values are normalized into a small set of java types:
+ * integral numbers into <code>Long</code>, floating point numbers into <code>Double</code>,
+ * decimals into <code>BigDecimal</code>, date/time values into <code>Calendar</code>,
+ * guids and strings into <code>String</code> (booleans and binaries are kept).
+ */
+final class TypedValues {
+
+  private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+  /**
+   * Category of an EDM simple type which defines into which java type a value is normalized.
+   */
+  enum Category {
+    STRING, INTEGRAL, FLOATING, DECIMAL, BOOLEAN, TEMPORAL, BINARY, OTHER
+  }
+
+  private TypedValues() {}
+
+  static Category getCategory(final EdmType type) {
+    if (type == null) {
+      return Category.OTHER;
+    }
+    for (EdmSimpleTypeKind kind : EdmSimpleTypeKind.values()) {
+      if (kind.getEdmSimpleTypeInstance() == type) {
+        return getCategory(kind);
+      }
+    }
+    return Category.OTHER;
+  }
+
+  static Category getCategory(final EdmSimpleTypeKind kind) {
+    switch (kind) {
+    case String:
+    case Guid:
+      return Category.STRING;
+    case Byte:
+    case SByte:
+    case Int16:
+    case Int32:
+    case Int64:
+      return Category.INTEGRAL;
+    case Single:
+    case Double:
+      return Category.FLOATING;
+    case Decimal:
+      return Category.DECIMAL;
+    case Boolean:
+      return Category.BOOLEAN;
+    case DateTime:
+    case DateTimeOffset:
+    case Time:
+      return Category.TEMPORAL;
+    case Binary:
+      return Category.BINARY;
+    default:
+      return Category.OTHER;
+    }
+  }
+
+  /**
+   * Normalize a value of given category (e.g. the value of an EDM property).
+   */
+  static Object normalize(final Object value, final Category category) {
+    if (value == null) {
+      return null;
+    }
+    switch (category) {
+    case STRING:
+      return value instanceof String ? value : String.valueOf(value);
+    case INTEGRAL:
+      if (value instanceof Long) {
+        return value;
+      } else if (value instanceof Number) {
+        return ((Number) value).longValue();
+      }
+      return Long.valueOf(String.valueOf(value));
+    case FLOATING:
+      if (value instanceof Double) {
+        return value;
+      } else if (value instanceof Number) {
+        return ((Number) value).doubleValue();
+      }
+      return Double.valueOf(String.valueOf(value));
+    case DECIMAL:
+      if (value instanceof Number) {
+        return toBigDecimal((Number) value);
+      }
+      return new BigDecimal(String.valueOf(value));
+    case BOOLEAN:
+      return value instanceof Boolean ? value : Boolean.valueOf(String.valueOf(value));
+    case TEMPORAL:
+      return toCalendar(value);
+    default:
+      return normalize(value);
+    }
+  }
+
+  /**
+   * Normalize a value based on its java type (e.g. a parsed literal value).
+   */
+  static Object normalize(final Object value) {
+    if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Float) {
+      return ((Float) value).doubleValue();
+    } else if (value instanceof BigInteger) {
+      return new BigDecimal((BigInteger) value);
+    } else if (value instanceof Date) {
+      return toCalendar(value);
+    } else if (value instanceof UUID || value instanceof Character) {
+      return value.toString();
+    }
+    return value;
+  }
+
+  private static Calendar toCalendar(final Object value) {
+    if (value instanceof Calendar) {
+      return (Calendar) value;
+    }
+    Calendar calendar = Calendar.getInstance(GMT);
+    if (value instanceof Date) {
+      calendar.setTime((Date) value);
+    } else if (value instanceof Number) {
+      calendar.setTimeInMillis(((Number) value).longValue());
+    } else {
+      throw new IllegalArgumentException("Unsupported date/time value '" + value + "'.");
+    }
+    return calendar;
+  }
+
+  static BigDecimal toBigDecimal(final Number number) {
+    if (number instanceof BigDecimal) {
+      return (BigDecimal) number;
+    } else if (number instanceof BigInteger) {
+      return new BigDecimal((BigInteger) number);
+    } else if (number instanceof Double || number instanceof Float) {
+      return BigDecimal.valueOf(number.doubleValue());
+    }
+    return BigDecimal.valueOf(number.longValue());
+  }
+
+  /**
+   * Compare two normalized values which must not be <code>NULL</code>.
+   */
+  static int compare(final Object first, final Object second) {
+    if (first instanceof Number && second instanceof Number) {
+      if (first instanceof BigDecimal || second instanceof BigDecimal) {
+        return toBigDecimal((Number) first).compareTo(toBigDecimal((Number) second));
+      } else if (first instanceof Double || second instanceof Double) {
+        return Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+      }
+      return Long.compare(((Number) first).longValue(), ((Number) second).longValue());
+    } else if (first instanceof Calendar && second instanceof Calendar) {
+      return Long.compare(((Calendar) first).getTimeInMillis(), ((Calendar) second).getTimeInMillis());
+    } else if (first instanceof String && second instanceof String) {
+      return ((String) first).compareTo((String) second);
+    } else if (first instanceof Boolean && second instanceof Boolean) {
+      return ((Boolean) first).compareTo((Boolean) second);
+    } else if (first instanceof byte[] && second instanceof byte[]) {
+      return compareBytes((byte[]) first, (byte[]) second);
+    }
+    return String.valueOf(first).compareTo(String.valueOf(second));
+  }
+
+  /**
+   * Comparator for not <code>NULL</code> values of given category; values which are not normalized into the
+   * java type of the category (e.g. results of an arithmetic expression) must use {@link Category#OTHER}.
+   */
+  static Comparator<Object> getComparator(final Category category) {
+    switch (category) {
+    case STRING:
+      return (first, second) -> ((String) first).compareTo((String) second);
+    case INTEGRAL:
+      return (first, second) -> Long.compare((Long) first, (Long) second);
+    case FLOATING:
+      return (first, second) -> Double.compare((Double) first, (Double) second);
+    case DECIMAL:
+      return (first, second) -> ((BigDecimal) first).compareTo((BigDecimal) second);
+    case TEMPORAL:
+      return (first, second) -> Long.compare(((Calendar) first).getTimeInMillis(),
+          ((Calendar) second).getTimeInMillis());
+    default:
+      return TypedValues::compare;
+    }
+  }
+
+  private static int compareBytes(final byte[] first, final byte[] second) {
+    final int length = Math.min(first.length, second.length);
+    for (int i = 0; i < length; i++) {
+      int result = Integer.compare(first[i] & 0xff, second[i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(first.length, second.length);
+  }
+
+  /**
+   * Equality of two normalized values (two <code>NULL</code> values are equal).
+   */
+  static boolean isEqual(final Object first, final Object second) {
+    if (first == null || second == null) {
+      return first == second;
+    } else if (first instanceof byte[] && second instanceof byte[]) {
+      return Arrays.equals((byte[]) first, (byte[]) second);
+    }
+    return compare(first, second) == 0;
+  }
+
+  static Number add(final Number first, final Number second) {
+    if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).add(toBigDecimal(second));
+    } else if (first instanceof Double || second instanceof Double) {
+      return first.doubleValue() + second.doubleValue();
+    }
+    return first.longValue() + second.longValue();
+  }
+
+  static Number subtract(final Number first, final Number second) {
+    if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).subtract(toBigDecimal(second));
+    } else if (first instanceof Double || second instanceof Double) {
+      return first.doubleValue() - second.doubleValue();
+    }
+    return first.longValue() - second.longValue();
+  }
+
+  static Number multiply(final Number first, final Number second) {
+    if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).multiply(toBigDecimal(second));
+    } else if (first instanceof Double || second instanceof Double) {
+      return first.doubleValue() * second.doubleValue();
+    }
+    return first.longValue() * second.longValue();
+  }
+
+  /**
+   * Division which (as before) is never an integer division.
+   */
+  static Number divide(final Number first, final Number second) {
+    if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).divide(toBigDecimal(second), MathContext.DECIMAL128);
+    }
+    return first.doubleValue() / second.doubleValue();
+  }
+
+  static Number modulo(final Number first, final Number second) {
+    if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).remainder(toBigDecimal(second));
+    } else if (first instanceof Double || second instanceof Double) {
+      return first.doubleValue() % second.doubleValue();
+    }
+    return first.longValue() % second.longValue();
+  }
+
+  static Number negate(final Number number) {
+    if (number instanceof BigDecimal) {
+      return ((BigDecimal) number).negate();
+    } else if (number instanceof Double) {
+      return -number.doubleValue();
+    }
+    return -number.longValue();
+  }
+
+  static Number round(final Number number, final RoundingMode mode) {
+    if (number instanceof BigDecimal) {
+      return ((BigDecimal) number).setScale(0, mode);
+    } else if (number instanceof Double) {
+      return BigDecimal.valueOf(number.doubleValue()).setScale(0, mode).doubleValue();
+    }
+    return number;
+  }
+}
@@ -20,17 +20,25 @@ import org.apache.olingo.odata2.api.annotation.edm.EdmMediaResourceMimeType;
 import org.apache.olingo.odata2.api.annotation.edm.EdmNavigationProperty;
 import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
 import org.apache.olingo.odata2.api.edm.EdmMultiplicity;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
 import org.apache.olingo.odata2.api.exception.ODataApplicationException;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.exception.ODataNotFoundException;
 import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.KeyPredicate;
+import org.apache.olingo.odata2.api.uri.NavigationSegment;
+import org.apache.olingo.odata2.janos.processor.api.data.NavigationPath;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
+import org.apache.olingo.odata2.janos.processor.core.data.store.ColumnarDataStore;
+import org.apache.olingo.odata2.janos.processor.core.data.store.InMemorySnapshot;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
 import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
@@ -95,6 +103,32 @@ public class AnnotationDataSource implements DataSource {
     throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
   }
 
+  @Override
+  public Long countData(final EdmEntitySet entitySet, ReadOptions readOptions) throws ODataNotImplementedException,
+      ODataNotFoundException, EdmException, ODataApplicationException {
+
+    DataStore<Object> holder = getDataStore(entitySet);
+    if (holder != null) {
+      return holder.count(readOptions);
+    }
+
+    throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+  }
+
+  @Override
+  public Long getVersion(final EdmEntitySet entitySet) throws EdmException {
+    final long version = getDataStore(entitySet).getVersion();
+    return version < 0 ? null : version;
+  }
+
+  /**
+   * Opens an {@link InMemorySnapshot} (other data stores read their latest state).
+   */
+  @Override
+  public Snapshot openSnapshot() {
+    return InMemorySnapshot.open()::close;
+  }
+
   @Override
   public Object readData(final EdmEntitySet entitySet, final Map<String, Object> keys)
       throws ODataNotFoundException, EdmException, ODataApplicationException {
@@ -124,6 +158,130 @@ public class AnnotationDataSource implements DataSource {
 
     AnnotationHelper.AnnotatedNavInfo navInfo = ANNOTATION_HELPER.getCommonNavigationInfo(
         sourceStore.getDataTypeClass(), targetStore.getDataTypeClass());
+    final Field sourceField = getSourceField(navInfo, sourceStore, targetStore);
+
+    List<Object> resultData = readResultData(targetStore, sourceData, sourceField, navInfo);
+    return extractResultData(targetStore, targetKeys, navInfo, resultData);
+  }
+
+  /**
+   * Read the related data of all given source data objects at once.
+   * Instead of scanning the target store for each source data object all navigation targets are read together
+   * (via {@link DataStore#readAll(Collection)} or {@link DataStore#readReferencing(String, Collection)})
+   * and assigned to the source data objects via hash maps of their keys (hash join).
+   */
+  @Override
+  public Map<Object, Object> readRelatedData(final EdmEntitySet sourceEntitySet, final Collection<?> sourceData,
+      final EdmEntitySet targetEntitySet)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+
+    DataStore<Object> sourceStore = dataStoreManager.getDataStore(sourceEntitySet.getName());
+    DataStore<Object> targetStore = dataStoreManager.getDataStore(targetEntitySet.getName());
+
+    AnnotationHelper.AnnotatedNavInfo navInfo = ANNOTATION_HELPER.getCommonNavigationInfo(
+        sourceStore.getDataTypeClass(), targetStore.getDataTypeClass());
+    final Field sourceField = getSourceField(navInfo, sourceStore, targetStore);
+
+    Map<Object, Object> relatedData = new IdentityHashMap<>();
+    List<Object> referencedTargets = new ArrayList<>();
+    List<Object> referencingSources = new ArrayList<>();
+    for (Object source : sourceData) {
+      Object navigationInstance = getValue(sourceField, source);
+      if (navigationInstance == null) {
+        relatedData.put(source, extractResultData(targetStore, Collections.emptyMap(), navInfo,
+            Collections.emptyList()));
+      } else if (navigationInstance instanceof Collection) {
+        referencingSources.add(source);
+      } else {
+        referencedTargets.add(navigationInstance);
+      }
+    }
+
+    if (!referencedTargets.isEmpty()) {
+      // the source data objects reference their targets
+      Map<Map<String, Object>, Object> key2Target = new HashMap<>();
+      for (Object target : targetStore.readAll(referencedTargets)) {
+        key2Target.put(getKey(target), target);
+      }
+      for (Object source : sourceData) {
+        Object navigationInstance = getValue(sourceField, source);
+        if (navigationInstance != null && !(navigationInstance instanceof Collection)) {
+          Object target = key2Target.get(getKey(navigationInstance));
+          relatedData.put(source, extractResultData(targetStore, Collections.emptyMap(), navInfo,
+              target == null ? Collections.emptyList() : Collections.singletonList(target)));
+        }
+      }
+    }
+
+    if (!referencingSources.isEmpty()) {
+      // the targets reference their source data objects (via the back field)
+      Field toField = navInfo.getToField();
+      Collection<Object> targets = targetStore.readReferencing(toField.getName(), referencingSources);
+      if (targets == null) {
+        targets = targetStore.read();
+      }
+      Map<Map<String, Object>, List<Object>> sourceKey2Targets = new HashMap<>();
+      for (Object target : targets) {
+        Object backInstance = ClassHelper.getFieldValue(target, toField);
+        if (backInstance != null && !(backInstance instanceof Collection)) {
+          sourceKey2Targets.computeIfAbsent(getKey(backInstance), k -> new ArrayList<>()).add(target);
+        }
+      }
+      for (Object source : referencingSources) {
+        List<Object> resultData = sourceKey2Targets.getOrDefault(getKey(source), Collections.emptyList());
+        relatedData.put(source, extractResultData(targetStore, Collections.emptyMap(), navInfo, resultData));
+      }
+    }
+    return relatedData;
+  }
+
+  /**
+   * Read the data of a navigation path (over one or more navigation segments) at once via
+   * {@link DataStore#read(NavigationPath, ReadOptions)} of the target store (e.g. as single JPA join query).
+   * Returns <code>NULL</code> if the target store does not support navigation paths.
+   */
+  @Override
+  public ReadResult<?> readRelatedData(final EdmEntitySet sourceEntitySet, final Map<String, Object> sourceKeys,
+      final List<NavigationSegment> navigationSegments, final ReadOptions readOptions)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+
+    DataStore<Object> sourceStore = getDataStore(sourceEntitySet);
+    Object start = sourceStore.createInstance();
+    ANNOTATION_HELPER.setKeyFields(start, sourceKeys);
+    NavigationPath.Builder navigationPath = NavigationPath.start(start);
+
+    DataStore<Object> targetStore = sourceStore;
+    for (NavigationSegment navigationSegment : navigationSegments) {
+      targetStore = getDataStore(navigationSegment.getEntitySet());
+      AnnotationHelper.AnnotatedNavInfo navInfo = ANNOTATION_HELPER.getCommonNavigationInfo(
+          sourceStore.getDataTypeClass(), targetStore.getDataTypeClass());
+      if (navInfo == null) {
+        return null;
+      }
+      Object keys = null;
+      if (!navigationSegment.getKeyPredicates().isEmpty()) {
+        keys = targetStore.createInstance();
+        ANNOTATION_HELPER.setKeyFields(keys, mapKey(navigationSegment.getKeyPredicates()));
+      }
+      navigationPath.navigate(getSourceField(navInfo, sourceStore, targetStore).getName(), keys);
+      sourceStore = targetStore;
+    }
+    return targetStore.read(navigationPath.build(), readOptions);
+  }
+
+  private static Map<String, Object> mapKey(final List<KeyPredicate> keys) throws EdmException {
+    Map<String, Object> keyMap = new HashMap<>();
+    for (final KeyPredicate key : keys) {
+      final EdmProperty property = key.getProperty();
+      final EdmSimpleType type = (EdmSimpleType) property.getType();
+      keyMap.put(property.getName(), type.valueOfString(key.getLiteral(), EdmLiteralKind.DEFAULT, property.getFacets(),
+          type.getDefaultType()));
+    }
+    return keyMap;
+  }
+
+  private Field getSourceField(final AnnotationHelper.AnnotatedNavInfo navInfo, final DataStore<?> sourceStore,
+      final DataStore<?> targetStore) {
     final Field sourceField;
     if(navInfo.isBiDirectional()) {
       sourceField = navInfo.getToField();
@@ -134,9 +292,11 @@ public class AnnotationDataSource implements DataSource {
       throw new AnnotationRuntimeException("Missing source field for related data (sourceStore='" + sourceStore
           + "', targetStore='" + targetStore + "').");
     }
+    return sourceField;
+  }
 
-    List<Object> resultData = readResultData(targetStore, sourceData, sourceField, navInfo);
-    return extractResultData(targetStore, targetKeys, navInfo, resultData);
+  private Map<String, Object> getKey(final Object instance) {
+    return ANNOTATION_HELPER.getValueForAnnotatedFields(instance, EdmKey.class);
   }
 
   /**
@@ -156,18 +316,26 @@ public class AnnotationDataSource implements DataSource {
       return Collections.emptyList();
     }
     
+    @SuppressWarnings("unchecked")
+    DataStore<Object> store = (DataStore<Object>) targetStore;
+    if (!(navigationInstance instanceof Collection)) {
+      Object targetInstance = store.read(navigationInstance);
+      return targetInstance == null ? Collections.emptyList() : Collections.singletonList(targetInstance);
+    }
+
+    Map<String, Object> keyName2Value = 
+            ANNOTATION_HELPER.getValueForAnnotatedFields(sourceData, EdmKey.class);
+    Field toField = navInfo.getToField();
+    Collection<Object> targetInstances = store.readReferencing(toField.getName(),
+        Collections.singletonList(sourceData));
+    if (targetInstances == null) {
+      targetInstances = store.read();
+    }
     List<Object> resultData = new ArrayList<>();
-    for (Object targetInstance : targetStore.read()) {
-      if (navigationInstance instanceof Collection) {
-        Map<String, Object> keyName2Value = 
-                ANNOTATION_HELPER.getValueForAnnotatedFields(sourceData, EdmKey.class);
-        Field toField = navInfo.getToField();
-        Object backInstance = ClassHelper.getFieldValue(targetInstance, toField);
-        boolean keyMatch = ANNOTATION_HELPER.keyMatch(backInstance, keyName2Value);
-        if(keyMatch) {
-          resultData.add(targetInstance);
-        }
-      } else if (targetStore.isKeyEqualChecked(targetInstance, navigationInstance)) {
+    for (Object targetInstance : targetInstances) {
+      Object backInstance = ClassHelper.getFieldValue(targetInstance, toField);
+      boolean keyMatch = ANNOTATION_HELPER.keyMatch(backInstance, keyName2Value);
+      if(keyMatch) {
         resultData.add(targetInstance);
       }
     }
@@ -329,10 +497,24 @@ public class AnnotationDataSource implements DataSource {
 
     // set at source
     setValueAtNavigationField(sourceEntity, sourceField, targetEntity);
+    updateStored(sourceStore, sourceEntity);
     // set at target
     Field targetField = commonNavInfo.getToField();
     if (targetField != null) {
       setValueAtNavigationField(targetEntity, targetField, sourceEntity);
+      updateStored(targetStore, targetEntity);
+    }
+  }
+
+  /**
+   * Update the given instance in the data store if an entity with its keys is stored, so that the changed
+   * navigation field is persisted also by data stores which read copies (e.g. the {@link ColumnarDataStore})
+   * and the data store can maintain e.g. its navigation indexes.
+   * Instances which are not (yet) stored are left untouched.
+   */
+  private void updateStored(final DataStore<Object> store, final Object instance) throws DataStoreException {
+    if (instance != null && store.read(instance) != null) {
+      store.update(instance);
     }
   }
 
@@ -0,0 +1,1083 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmMapping;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
+import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
+import org.apache.olingo.odata2.janos.processor.core.data.query.CompiledFilter;
+import org.apache.olingo.odata2.janos.processor.core.data.query.ExpressionEvaluator;
+import org.apache.olingo.odata2.janos.processor.core.data.query.PropertyRange;
+import org.apache.olingo.odata2.janos.processor.core.data.query.Sorter;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar {@link DataStore} for large and read mostly entity sets which keeps the values of the entities
+ * in columns (one per field) of rows instead of as objects.
+ * The columns of <code>@EdmProperty</code> fields are stored off heap in direct {@link ByteBuffer} segments:
+ * fixed width for numbers, booleans, characters, dates and UUIDs, dictionary/offset encoded (UTF-8) for strings.
+ * All other fields (e.g. navigation properties) are kept on heap as references.
+ * The rows are found via an (off heap) open addressing hash table of the key values.
+ *
+ * Filters and orders are evaluated on lightweight row views which read the property values from the columns,
+ * entity objects are materialized only for the returned page. The conditions of a filter which compare a property
+ * with a literal (see {@link PropertyRange}) preselect the candidate rows on the columns.
+ * The default order is the typed order of the key values (as in the in memory data store).
+ * As the read objects are copies, each change must be written with {@link #update(Object)}
+ * (changes of a read object are not visible otherwise). Replaced strings are not reclaimed in the column.
+ * Reads and modifications are guarded by a read write lock; reads are not part of an {@link InMemorySnapshot}.
+ *
+ * It is selected by the {@link DataStoreManager#STORE_TYPE} property {@link DataStoreManager#COLUMNAR}.
+ */
+public class ColumnarDataStore<T> implements DataStore<T> {
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+  /** number of rows per segment of a column */
+  private static final int SEGMENT_ROWS = 1 << 14;
+  /** size of the segments for string bytes */
+  private static final int STRING_SEGMENT_BYTES = 1 << 20;
+  /** maximal number of different strings per column which are encoded only once */
+  private static final int DICTIONARY_LIMIT = 1 << 16;
+  /** key table slot which is not used */
+  private static final long EMPTY_SLOT = 0;
+  /** key table slot of a removed row */
+  private static final long REMOVED_SLOT = 0xFFFFFFFFL;
+
+  private final Class<T> dataTypeClass;
+  private final List<Column> columns = new ArrayList<>();
+  private final List<Column> keyColumns = new ArrayList<>();
+  /** columns of the <code>@EdmProperty</code> fields per property name */
+  private final Map<String, Column> propertyColumns = new HashMap<>();
+  /** typed order of the key values (default order) */
+  private final Sorter.ValueOrder keyOrder;
+  /** evaluates filters and orders on {@link Row} views */
+  private final ExpressionEvaluator rowEvaluator = new ExpressionEvaluator(new RowValueAccess());
+  private final KeyTable keyTable = new KeyTable();
+  /** rows which are not used (deleted) */
+  private final BitSet freeRows = new BitSet();
+  private int rowCount;
+  private int liveCount;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicInteger idCounter = new AtomicInteger(1);
+  private final AtomicLong version = new AtomicLong();
+
+  private ColumnarDataStore(final Class<T> clz) throws DataStoreException {
+    dataTypeClass = clz;
+    for (Class<?> current = clz; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+            || field.isSynthetic()) {
+          continue;
+        }
+        field.setAccessible(true);
+        final Column column = createColumn(field);
+        columns.add(column);
+        if (field.getAnnotation(EdmKey.class) != null) {
+          keyColumns.add(column);
+        }
+        if (field.getAnnotation(EdmProperty.class) != null) {
+          propertyColumns.put(ANNOTATION_HELPER.getPropertyName(field), column);
+        }
+      }
+    }
+    if (keyColumns.isEmpty()) {
+      throw new DataStoreException("No EdmKey annotated fields found for class " + clz);
+    }
+    final EdmSimpleTypeKind[] keyTypes = new EdmSimpleTypeKind[keyColumns.size()];
+    for (int i = 0; i < keyTypes.length; i++) {
+      try {
+        keyTypes[i] = ANNOTATION_HELPER.getSimpleTypeKind(keyColumns.get(i).field);
+      } catch (UnsupportedOperationException e) {
+        // compared by the java type of the key values
+        keyTypes[i] = null;
+      }
+    }
+    keyOrder = Sorter.getValueOrder(keyTypes);
+  }
+
+  public static <T> ColumnarDataStore<T> createColumnar(final Class<T> clazz) throws DataStoreException {
+    return new ColumnarDataStore<>(clazz);
+  }
+
+  private static Column createColumn(final Field field) {
+    if (field.getAnnotation(EdmProperty.class) != null) {
+      if (field.getType() == String.class) {
+        return new StringColumn(field);
+      }
+      final FixedType type = FixedType.of(field.getType());
+      if (type != null) {
+        return new FixedColumn(field, type);
+      }
+    }
+    return new ObjectColumn(field);
+  }
+
+  @Override
+  public Class<T> getDataTypeClass() {
+    return dataTypeClass;
+  }
+
+  @Override
+  public String getName() {
+    return ANNOTATION_HELPER.extractEntityTypeName(dataTypeClass);
+  }
+
+  @Override
+  public T createInstance() {
+    try {
+      return dataTypeClass.newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new AnnotationRuntimeException("Unable to create instance of class '" + dataTypeClass + "'.", e);
+    }
+  }
+
+  @Override
+  public T read(final T object) {
+    lock.readLock().lock();
+    try {
+      final int row = keyTable.find(getKeyValues(object));
+      return row < 0 ? null : materialize(row);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Collection<T> readAll(final Collection<T> objects) {
+    List<T> result = new ArrayList<>(objects.size());
+    lock.readLock().lock();
+    try {
+      for (T object : objects) {
+        final int row = keyTable.find(getKeyValues(object));
+        if (row >= 0) {
+          result.add(materialize(row));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  @Override
+  public Collection<T> read() {
+    lock.readLock().lock();
+    try {
+      return materialize(readCandidates(null));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Read all entities which apply to the filter of given read options in the requested order
+   * (or in default key order) and with applied skip and top (as the in memory data store does).
+   * Filter and order are evaluated on {@link Row} views of the columns, only the returned page is materialized.
+   *
+   * @param readOptions the read options
+   * @return the read result
+   */
+  @Override
+  public ReadResult<T> read(final ReadOptions readOptions) {
+    ReadResult.Builder<T> result = ReadResult.start();
+    lock.readLock().lock();
+    try {
+      List<Row> rows = readFiltered(readOptions.getFilter());
+      final boolean filterApplied = rows != null;
+      if (filterApplied) {
+        result.filterApplied();
+        if (readOptions.isTotalCountRequested()) {
+          result.totalCount(rows.size());
+        }
+      } else {
+        rows = getRows(readCandidates(null));
+      }
+      return result.values(materialize(sortAndPage(rows, filterApplied, readOptions, result))).build();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Read the rows of all entities which apply to given filter (evaluated on the candidate rows,
+   * see {@link #readCandidates(FilterExpression)}).
+   *
+   * @param filter the filter (or <code>NULL</code> for all entities)
+   * @return the rows of all entities which apply to the filter
+   *          or <code>NULL</code> if the filter is not supported by the {@link ExpressionEvaluator}
+   */
+  private List<Row> readFiltered(final FilterExpression filter) {
+    if (filter == null) {
+      return getRows(readCandidates(null));
+    }
+    try {
+      final CompiledFilter compiledFilter = rowEvaluator.compile(filter);
+      List<Row> filtered = new ArrayList<>();
+      for (int row : readCandidates(filter)) {
+        final Row view = new Row(row);
+        if (compiledFilter.appliesTo(view)) {
+          filtered.add(view);
+        }
+      }
+      return filtered;
+    } catch (ODataException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Sort the given rows and apply cursor, skip and top (if nothing is left to the caller).
+   */
+  private List<Row> sortAndPage(final List<Row> rows, final boolean filterApplied, final ReadOptions readOptions,
+      final ReadResult.Builder<T> result) {
+    boolean orderApplied = true;
+    Sorter sorter = null;
+    if (readOptions.getOrderBy() == null) {
+      Sorter.sortBy(rows, this::getKeyValues, keyOrder);
+    } else {
+      try {
+        sorter = rowEvaluator.getSorter(readOptions.getOrderBy());
+        sorter.sort(rows, (first, second) -> keyOrder.compare(getKeyValues(first), getKeyValues(second)));
+      } catch (ODataException e) {
+        orderApplied = false;
+      }
+    }
+    if (orderApplied) {
+      result.orderApplied();
+    }
+    if (!filterApplied || !orderApplied) {
+      return rows;
+    }
+
+    int from = 0;
+    boolean skipApplicable = readOptions.getSkipToken() == null;
+    final Cursor cursor = readOptions.getCursor();
+    if (cursor != null && isApplicable(cursor, readOptions.getOrderBy())) {
+      from = seek(rows, sorter, cursor);
+      skipApplicable = from >= 0;
+    }
+    if (!skipApplicable) {
+      return rows;
+    }
+    from = applySkip(from, rows.size(), readOptions.getSkip());
+    final int to = applyTop(from, rows.size(), readOptions.getTop(), result);
+    result.skipApplied();
+    return rows.subList(from, to);
+  }
+
+  private static int applySkip(final int from, final int to, final Integer skip) {
+    return skip == null ? from : (int) Math.min((long) from + Math.max(skip, 0), to);
+  }
+
+  private static int applyTop(final int from, final int to, final Integer top, final ReadResult.Builder<?> result) {
+    if (top != null && top > 0) {
+      result.topApplied();
+      return (int) Math.min((long) from + top, to);
+    }
+    return to;
+  }
+
+  private boolean isApplicable(final Cursor cursor, final OrderByExpression orderBy) {
+    final int orderCount = orderBy == null ? 0 : orderBy.getOrders().size();
+    return cursor.getOrderValues().size() == orderCount && cursor.getKeyValues().size() == keyColumns.size();
+  }
+
+  /**
+   * Seek the position of the first row after the given cursor in the given (sorted) rows via binary search.
+   *
+   * @return index of the first row after the cursor or <code>-1</code> if the seek is not possible
+   */
+  private int seek(final List<Row> rows, final Sorter sorter, final Cursor cursor) {
+    final Object[] orderValues = cursor.getOrderValues().toArray();
+    int low = 0;
+    int high = rows.size();
+    try {
+      final Object[] keyValues = keyOrder.normalize(cursor.getKeyValues().toArray());
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        final Row row = rows.get(middle);
+        int result = sorter == null ? 0 : sorter.getKeyComparator().compare(sorter.getSortKey(row), orderValues);
+        if (result == 0) {
+          result = keyOrder.compare(getKeyValues(row), keyValues);
+        }
+        if (result > 0) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+    } catch (ODataException | RuntimeException e) {
+      // values of the cursor which do not fit to the types of the order or keys
+      return -1;
+    }
+    return low;
+  }
+
+  /**
+   * Count all entities which apply to the filter of given read options
+   * (evaluated on {@link Row} views of the candidate rows).
+   *
+   * @return the number of entities or <code>NULL</code> if the filter is not supported
+   */
+  @Override
+  public Long count(final ReadOptions readOptions) {
+    final FilterExpression filter = readOptions.getFilter();
+    lock.readLock().lock();
+    try {
+      if (filter == null) {
+        return (long) liveCount;
+      }
+      final CompiledFilter compiledFilter = rowEvaluator.compile(filter);
+      long count = 0;
+      for (int row : readCandidates(filter)) {
+        if (compiledFilter.appliesTo(new Row(row))) {
+          count++;
+        }
+      }
+      return count;
+    } catch (ODataException e) {
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Read the rows which are in the ranges of all properties to which the given filter restricts the entities
+   * (see {@link PropertyRange}), evaluated on the columns without materializing the entities.
+   * The filter still has to be applied on the entities of all candidate rows.
+   *
+   * @param filter the filter (or <code>NULL</code> for all rows)
+   * @return the candidate rows in row order
+   */
+  private int[] readCandidates(final FilterExpression filter) {
+    List<Column> scanned = new ArrayList<>();
+    List<PropertyRange> ranges = new ArrayList<>();
+    for (Map.Entry<String, PropertyRange> entry : PropertyRange.of(filter).entrySet()) {
+      final Column column = propertyColumns.get(entry.getKey());
+      if (column != null) {
+        scanned.add(column);
+        ranges.add(entry.getValue());
+      }
+    }
+    int[] rows = new int[liveCount];
+    int count = 0;
+    rows:
+    for (int row = 0; row < rowCount; row++) {
+      if (freeRows.get(row)) {
+        continue;
+      }
+      for (int i = 0; i < scanned.size(); i++) {
+        final PropertyRange range = ranges.get(i);
+        if (!range.contains(range.getKey(scanned.get(i).get(row)))) {
+          continue rows;
+        }
+      }
+      rows[count++] = row;
+    }
+    return count == rows.length ? rows : Arrays.copyOf(rows, count);
+  }
+
+  @Override
+  public T create(final T object) {
+    lock.writeLock().lock();
+    try {
+      insert(object, getKeyValues(object));
+    } finally {
+      lock.writeLock().unlock();
+    }
+    version.incrementAndGet();
+    return object;
+  }
+
+  /**
+   * Store the object in a new (or reused) row. Missing key values are generated; keys which are already used
+   * by another entity are replaced by generated keys.
+   */
+  private void insert(final T object, final Object[] objectKeyValues) {
+    Object[] keyValues = objectKeyValues;
+    if (Arrays.asList(keyValues).contains(null)) {
+      keyValues = createKeyValues(object, false);
+    }
+    while (keyTable.find(keyValues) >= 0) {
+      keyValues = createKeyValues(object, true);
+    }
+    final int row = freeRows.isEmpty() ? rowCount++ : freeRows.nextSetBit(0);
+    freeRows.clear(row);
+    store(row, object);
+    keyTable.add(row, Arrays.hashCode(keyValues));
+    liveCount++;
+  }
+
+  @Override
+  public T update(final T object) {
+    lock.writeLock().lock();
+    try {
+      final Object[] keyValues = getKeyValues(object);
+      final int row = keyTable.find(keyValues);
+      if (row < 0) {
+        insert(object, keyValues);
+      } else {
+        store(row, object);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    version.incrementAndGet();
+    return object;
+  }
+
+  @Override
+  public T delete(final T object) {
+    final T removed;
+    lock.writeLock().lock();
+    try {
+      final Object[] keyValues = getKeyValues(object);
+      final int row = keyTable.find(keyValues);
+      if (row < 0) {
+        return null;
+      }
+      removed = materialize(row);
+      keyTable.remove(row, Arrays.hashCode(keyValues));
+      for (Column column : columns) {
+        column.set(row, null);
+      }
+      freeRows.set(row);
+      liveCount--;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    version.incrementAndGet();
+    return removed;
+  }
+
+  @Override
+  public long getVersion() {
+    return version.get();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean isKeyEqualChecked(final Object first, final Object second) throws DataStoreException {
+    if (first == null || second == null) {
+      throw new DataStoreException("Tried to compare null values which is not allowed.");
+    } else if (first.getClass() != dataTypeClass) {
+      throw new DataStoreException("First value is no instance from required class '" + dataTypeClass + "'.");
+    } else if (second.getClass() != dataTypeClass) {
+      throw new DataStoreException("Second value is no instance from required class '" + dataTypeClass + "'.");
+    }
+    return Arrays.equals(getKeyValues((T) first), getKeyValues((T) second));
+  }
+
+  private List<T> materialize(final int[] rows) {
+    List<T> entities = new ArrayList<>(rows.length);
+    for (int row : rows) {
+      entities.add(materialize(row));
+    }
+    return entities;
+  }
+
+  private List<T> materialize(final List<Row> rows) {
+    List<T> entities = new ArrayList<>(rows.size());
+    for (Row row : rows) {
+      entities.add(materialize(row.index));
+    }
+    return entities;
+  }
+
+  private T materialize(final int row) {
+    final T entity = createInstance();
+    try {
+      for (Column column : columns) {
+        column.field.set(entity, column.get(row));
+      }
+    } catch (IllegalAccessException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+    return entity;
+  }
+
+  private void store(final int row, final T object) {
+    try {
+      for (Column column : columns) {
+        column.set(row, column.field.get(object));
+      }
+    } catch (IllegalAccessException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+  }
+
+  private Object[] getKeyValues(final T object) {
+    Object[] keyValues = new Object[keyColumns.size()];
+    try {
+      for (int i = 0; i < keyValues.length; i++) {
+        keyValues[i] = keyColumns.get(i).field.get(object);
+      }
+    } catch (IllegalAccessException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+    return keyValues;
+  }
+
+  /**
+   * Set generated values for the missing (or all) key fields of the given object.
+   */
+  private Object[] createKeyValues(final T object, final boolean replaceKeys) {
+    Object[] keyValues = getKeyValues(object);
+    try {
+      for (int i = 0; i < keyValues.length; i++) {
+        if (keyValues[i] == null || replaceKeys) {
+          final Field field = keyColumns.get(i).field;
+          keyValues[i] = createKey(field);
+          field.set(object, keyValues[i]);
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+    return keyValues;
+  }
+
+  private Object createKey(final Field field) {
+    Class<?> type = field.getType();
+    if (type == String.class) {
+      return String.valueOf(idCounter.getAndIncrement());
+    } else if (type == Integer.class || type == int.class) {
+      return idCounter.getAndIncrement();
+    } else if (type == Long.class || type == long.class) {
+      return (long) idCounter.getAndIncrement();
+    } else if (type == UUID.class) {
+      return UUID.randomUUID();
+    }
+    throw new UnsupportedOperationException("Automated key generation for type '" + type
+        + "' is not supported (caused on field '" + field + "').");
+  }
+
+  private static List<Row> getRows(final int[] rows) {
+    List<Row> views = new ArrayList<>(rows.length);
+    for (int row : rows) {
+      views.add(new Row(row));
+    }
+    return views;
+  }
+
+  /**
+   * Get the normalized key values of the given row (in the order of the key columns) for the default order.
+   */
+  private Object[] getKeyValues(final Row row) {
+    if (row.keyValues == null) {
+      final Object[] keyValues = new Object[keyColumns.size()];
+      for (int i = 0; i < keyValues.length; i++) {
+        keyValues[i] = keyColumns.get(i).get(row.index);
+      }
+      row.keyValues = keyOrder.normalize(keyValues);
+    }
+    return row.keyValues;
+  }
+
+  /**
+   * Lightweight view of a row on which filters and orders are evaluated (see {@link RowValueAccess}),
+   * so that only the entities of the read rows are materialized.
+   */
+  private static final class Row {
+    final int index;
+    /** normalized key values (computed on first use) */
+    Object[] keyValues;
+
+    Row(final int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * Access to the property values of a {@link Row} on the columns (or on the materialized entity for a property
+   * without column), all other data objects (e.g. complex property values) are accessed via their annotations.
+   */
+  private final class RowValueAccess implements ValueAccess {
+    private final ValueAccess annotationAccess = new AnnotationValueAccess();
+
+    @Override
+    public <D> Object getPropertyValue(final D data, final org.apache.olingo.odata2.api.edm.EdmProperty property)
+        throws ODataException {
+      if (data instanceof Row) {
+        final Column column = propertyColumns.get(property.getName());
+        if (column != null) {
+          return column.get(((Row) data).index);
+        }
+      }
+      return annotationAccess.getPropertyValue(getObject(data), property);
+    }
+
+    @Override
+    public <D, V> void setPropertyValue(final D data, final org.apache.olingo.odata2.api.edm.EdmProperty property,
+        final V value) throws ODataException {
+      if (data instanceof Row) {
+        throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+      }
+      annotationAccess.setPropertyValue(data, property, value);
+    }
+
+    @Override
+    public <D> Class<?> getPropertyType(final D data, final org.apache.olingo.odata2.api.edm.EdmProperty property)
+        throws ODataException {
+      return annotationAccess.getPropertyType(getObject(data), property);
+    }
+
+    @Override
+    public <D> Object getMappingValue(final D data, final EdmMapping mapping) throws ODataException {
+      return annotationAccess.getMappingValue(getObject(data), mapping);
+    }
+
+    @Override
+    public <D, V> void setMappingValue(final D data, final EdmMapping mapping, final V value) throws ODataException {
+      if (data instanceof Row) {
+        throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+      }
+      annotationAccess.setMappingValue(data, mapping, value);
+    }
+
+    private Object getObject(final Object data) {
+      return data instanceof Row ? materialize(((Row) data).index) : data;
+    }
+  }
+
+  /**
+   * Open addressing hash table (off heap) from the key values to the rows.
+   * Each slot contains the hash code of the key values (upper 32 bits) and the row + 1 (lower 32 bits);
+   * the key values of a row are compared on its columns.
+   */
+  private final class KeyTable {
+    private LongBuffer slots = allocate(16);
+    /** number of slots which are not empty (also removed ones) */
+    private int usedSlots;
+
+    private LongBuffer allocate(final int capacity) {
+      return ByteBuffer.allocateDirect(capacity * Long.BYTES).asLongBuffer();
+    }
+
+    private int indexFor(final int hash) {
+      return (hash ^ (hash >>> 16)) & (slots.capacity() - 1);
+    }
+
+    /**
+     * Get the row with the given key values or <code>-1</code>.
+     */
+    int find(final Object[] keyValues) {
+      final int hash = Arrays.hashCode(keyValues);
+      final int mask = slots.capacity() - 1;
+      for (int index = indexFor(hash); ; index = (index + 1) & mask) {
+        final long slot = slots.get(index);
+        if (slot == EMPTY_SLOT) {
+          return -1;
+        }
+        final int row = (int) slot - 1;
+        if (slot != REMOVED_SLOT && (int) (slot >>> 32) == hash && keyEquals(row, keyValues)) {
+          return row;
+        }
+      }
+    }
+
+    private boolean keyEquals(final int row, final Object[] keyValues) {
+      for (int i = 0; i < keyValues.length; i++) {
+        if (!Objects.equals(keyColumns.get(i).get(row), keyValues[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Add the given row (whose key values are not yet in the table).
+     */
+    void add(final int row, final int hash) {
+      if ((usedSlots + 1) * 2L > slots.capacity()) {
+        resize();
+      }
+      if (insert(slots, row, hash)) {
+        usedSlots++;
+      }
+    }
+
+    /**
+     * Insert into the first empty or removed slot.
+     *
+     * @return whether an empty slot was used
+     */
+    private boolean insert(final LongBuffer target, final int row, final int hash) {
+      final int mask = target.capacity() - 1;
+      for (int index = (hash ^ (hash >>> 16)) & mask; ; index = (index + 1) & mask) {
+        final long slot = target.get(index);
+        if (slot == EMPTY_SLOT || slot == REMOVED_SLOT) {
+          target.put(index, ((long) hash << 32) | (row + 1));
+          return slot == EMPTY_SLOT;
+        }
+      }
+    }
+
+    void remove(final int row, final int hash) {
+      final int mask = slots.capacity() - 1;
+      for (int index = indexFor(hash); ; index = (index + 1) & mask) {
+        final long slot = slots.get(index);
+        if (slot == EMPTY_SLOT) {
+          return;
+        } else if (slot != REMOVED_SLOT && (int) slot - 1 == row) {
+          slots.put(index, REMOVED_SLOT);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Copy all rows into a table with at least four times as many slots as rows (without removed slots).
+     */
+    private void resize() {
+      final int capacity = Math.max(16, Integer.highestOneBit(Math.max(liveCount, 1) * 4) << 1);
+      final LongBuffer resized = allocate(capacity);
+      usedSlots = 0;
+      for (int index = 0; index < slots.capacity(); index++) {
+        final long slot = slots.get(index);
+        if (slot != EMPTY_SLOT && slot != REMOVED_SLOT) {
+          insert(resized, (int) slot - 1, (int) (slot >>> 32));
+          usedSlots++;
+        }
+      }
+      slots = resized;
+    }
+  }
+
+  /**
+   * Column with the values of one field for all rows.
+   */
+  private abstract static class Column {
+    final Field field;
+
+    Column(final Field field) {
+      this.field = field;
+    }
+
+    abstract Object get(int row);
+
+    abstract void set(int row, Object value);
+  }
+
+  /**
+   * Column of other (e.g. navigation) fields with the values on heap.
+   */
+  private static final class ObjectColumn extends Column {
+    private final List<Object[]> segments = new ArrayList<>();
+
+    ObjectColumn(final Field field) {
+      super(field);
+    }
+
+    @Override
+    Object get(final int row) {
+      return segments.get(row / SEGMENT_ROWS)[row % SEGMENT_ROWS];
+    }
+
+    @Override
+    void set(final int row, final Object value) {
+      while (segments.size() <= row / SEGMENT_ROWS) {
+        segments.add(new Object[SEGMENT_ROWS]);
+      }
+      segments.get(row / SEGMENT_ROWS)[row % SEGMENT_ROWS] = value;
+    }
+  }
+
+  /**
+   * Fixed width encoding of the values of a field type.
+   */
+  private enum FixedType {
+    BYTE(Byte.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.get(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.put(offset, (Byte) value);
+      }
+    },
+    SHORT(Short.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getShort(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putShort(offset, (Short) value);
+      }
+    },
+    INT(Integer.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getInt(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putInt(offset, (Integer) value);
+      }
+    },
+    LONG(Long.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getLong(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putLong(offset, (Long) value);
+      }
+    },
+    FLOAT(Float.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getFloat(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putFloat(offset, (Float) value);
+      }
+    },
+    DOUBLE(Double.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getDouble(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putDouble(offset, (Double) value);
+      }
+    },
+    BOOLEAN(1) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.get(offset) != 0;
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.put(offset, (byte) ((Boolean) value ? 1 : 0));
+      }
+    },
+    CHAR(Character.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return buffer.getChar(offset);
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putChar(offset, (Character) value);
+      }
+    },
+    DATE(Long.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return new Date(buffer.getLong(offset));
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putLong(offset, ((Date) value).getTime());
+      }
+    },
+    UUID_BITS(2 * Long.BYTES) {
+      Object read(final ByteBuffer buffer, final int offset) {
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES));
+      }
+
+      void write(final ByteBuffer buffer, final int offset, final Object value) {
+        buffer.putLong(offset, ((UUID) value).getMostSignificantBits());
+        buffer.putLong(offset + Long.BYTES, ((UUID) value).getLeastSignificantBits());
+      }
+    };
+
+    final int width;
+
+    FixedType(final int width) {
+      this.width = width;
+    }
+
+    abstract Object read(ByteBuffer buffer, int offset);
+
+    abstract void write(ByteBuffer buffer, int offset, Object value);
+
+    /**
+     * Get the encoding for the given field type (or <code>NULL</code> if it has no fixed width encoding).
+     */
+    static FixedType of(final Class<?> type) {
+      if (type == Integer.class || type == int.class) {
+        return INT;
+      } else if (type == Long.class || type == long.class) {
+        return LONG;
+      } else if (type == Short.class || type == short.class) {
+        return SHORT;
+      } else if (type == Byte.class || type == byte.class) {
+        return BYTE;
+      } else if (type == Double.class || type == double.class) {
+        return DOUBLE;
+      } else if (type == Float.class || type == float.class) {
+        return FLOAT;
+      } else if (type == Boolean.class || type == boolean.class) {
+        return BOOLEAN;
+      } else if (type == Character.class || type == char.class) {
+        return CHAR;
+      } else if (type == Date.class) {
+        return DATE;
+      } else if (type == UUID.class) {
+        return UUID_BITS;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Off heap segments of fixed width values (one per row).
+   */
+  private static final class FixedSegments {
+    private final int width;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    FixedSegments(final int width) {
+      this.width = width;
+    }
+
+    ByteBuffer segment(final int row) {
+      return segments.get(row / SEGMENT_ROWS);
+    }
+
+    ByteBuffer segmentForWrite(final int row) {
+      while (segments.size() <= row / SEGMENT_ROWS) {
+        segments.add(ByteBuffer.allocateDirect(SEGMENT_ROWS * width));
+      }
+      return segment(row);
+    }
+
+    int offset(final int row) {
+      return (row % SEGMENT_ROWS) * width;
+    }
+  }
+
+  /**
+   * Column of a number, boolean, character, date or UUID field with fixed width values off heap
+   * and a bit set of the rows with <code>NULL</code> values.
+   */
+  private static final class FixedColumn extends Column {
+    private final FixedType type;
+    private final FixedSegments values;
+    private final BitSet nulls = new BitSet();
+
+    FixedColumn(final Field field, final FixedType type) {
+      super(field);
+      this.type = type;
+      values = new FixedSegments(type.width);
+    }
+
+    @Override
+    Object get(final int row) {
+      return nulls.get(row) ? null : type.read(values.segment(row), values.offset(row));
+    }
+
+    @Override
+    void set(final int row, final Object value) {
+      final ByteBuffer segment = values.segmentForWrite(row);
+      if (value == null) {
+        nulls.set(row);
+      } else {
+        nulls.clear(row);
+        type.write(segment, values.offset(row), value);
+      }
+    }
+  }
+
+  /**
+   * Column of a string field: each row contains the code of its string (or <code>-1</code> for <code>NULL</code>),
+   * each code the position of the (length prefixed) UTF-8 bytes of its string in the string segments.
+   * Up to {@link #DICTIONARY_LIMIT} different strings get one code each, further strings a code per value.
+   */
+  private static final class StringColumn extends Column {
+    private final FixedSegments codes = new FixedSegments(Integer.BYTES);
+    /** position (segment index in upper 32 bits, offset in lower 32 bits) per code */
+    private final FixedSegments positions = new FixedSegments(Long.BYTES);
+    private final List<ByteBuffer> stringSegments = new ArrayList<>();
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private int codeCount;
+
+    StringColumn(final Field field) {
+      super(field);
+    }
+
+    @Override
+    Object get(final int row) {
+      final int code = codes.segment(row).getInt(codes.offset(row));
+      if (code < 0) {
+        return null;
+      }
+      final long position = positions.segment(code).getLong(positions.offset(code));
+      final ByteBuffer segment = stringSegments.get((int) (position >>> 32));
+      final int offset = (int) position + Integer.BYTES;
+      final byte[] bytes = new byte[segment.getInt(offset - Integer.BYTES)];
+      // absolute reads only: no position(int) which has no ByteBuffer override on Java 8
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = segment.get(offset + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    void set(final int row, final Object value) {
+      codes.segmentForWrite(row).putInt(codes.offset(row), value == null ? -1 : encode((String) value));
+    }
+
+    private int encode(final String value) {
+      Integer code = dictionary.get(value);
+      if (code != null) {
+        return code;
+      }
+      code = codeCount++;
+      if (dictionary.size() < DICTIONARY_LIMIT) {
+        dictionary.put(value, code);
+      }
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      final int length = Integer.BYTES + bytes.length;
+      ByteBuffer segment = stringSegments.isEmpty() ? null : stringSegments.get(stringSegments.size() - 1);
+      if (segment == null || segment.remaining() < length) {
+        segment = ByteBuffer.allocateDirect(Math.max(STRING_SEGMENT_BYTES, length));
+        stringSegments.add(segment);
+      }
+      final long position = ((long) (stringSegments.size() - 1) << 32) | segment.position();
+      segment.putInt(bytes.length).put(bytes);
+      positions.segmentForWrite(code).putLong(positions.offset(code), position);
+      return code;
+    }
+  }
+}
@@ -41,8 +41,12 @@ public class DualDataStoreManager implements DataStoreManager {
 
   @Override
   public <T> DataStore<T> createDataStore(Class<T> clz, Map<String, String> properties) throws DataStoreException {
+    if (COLUMNAR.equals(properties.get(STORE_TYPE))) {
+      return ColumnarDataStore.createColumnar(clz);
+    }
     boolean keepPersistent = Boolean.parseBoolean(properties.get(KEEP_PERSISTENT));
-    return createInstance(clz, keepPersistent);
+    boolean trackVersion = Boolean.parseBoolean(properties.get(TRACK_VERSION));
+    return createInstance(clz, keepPersistent, trackVersion);
   }
 
   @Override
@@ -54,12 +58,26 @@ public class DualDataStoreManager implements DataStoreManager {
   public <T> DataStore<T> grantDataStore(String name, Class<T> clz, Map<String, String> properties) throws DataStoreException {
     DataStore<T> ds = getDataStore(name, clz);
     if(ds == null) {
-      ds = createDataStore(clz);
+      ds = createDataStore(clz, getProperties(name, properties));
       dataStores.put(name, (DataStore<Object>) ds);
     }
     return ds;
   }
 
+  /**
+   * Properties for the DataStore with given name: a {@link #STORE_TYPE} property with the name as suffix
+   * overrides the general one.
+   */
+  private Map<String, String> getProperties(String name, Map<String, String> properties) {
+    String storeType = properties.get(STORE_TYPE + "." + name);
+    if(storeType == null) {
+      return properties;
+    }
+    Map<String, String> dataStoreProperties = new HashMap<>(properties);
+    dataStoreProperties.put(STORE_TYPE, storeType);
+    return dataStoreProperties;
+  }
+
   @Override
   public DataStore<Object> getDataStore(String name) {
     return dataStores.get(name);
@@ -80,12 +98,26 @@ public class DualDataStoreManager implements DataStoreManager {
   }
   
   public <T> DataStore<T>  createInstance(Class<T> clz, boolean keepPersistent) throws DataStoreException {
+    return createInstance(clz, keepPersistent, false);
+  }
+
+  /**
+   * Create a DataStore for given class.
+   *
+   * @param clz class for which the DataStore is created
+   * @param keepPersistent keep the data of an in memory DataStore
+   * @param trackVersion track the modifications of a JPA DataStore (see {@link #TRACK_VERSION})
+   * @return the created DataStore
+   * @throws DataStoreException if something goes wrong
+   */
+  public <T> DataStore<T>  createInstance(Class<T> clz, boolean keepPersistent, boolean trackVersion)
+      throws DataStoreException {
     if(isJpaAnnotated(clz)) {
       String persistenceName = System.getProperty(JpaAnnotationDataStore.PERSISTENCE_NAME);
       if(persistenceName == null) {
-        return JpaAnnotationDataStore.createInstance(clz);
+        persistenceName = JpaAnnotationDataStore.DEFAULT_PERSISTENCE_NAME;
       }
-      return JpaAnnotationDataStore.createInstance(clz, persistenceName);
+      return JpaAnnotationDataStore.createInstance(clz, persistenceName, trackVersion);
     }
     return InMemoryDataStore.createInMemory(clz, keepPersistent);
   }
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable hash map as hash array mapped trie: each node has up to 32 children selected by 5 bits of the hash
+ * of a key. A modification returns a new map which copies only the nodes on the path to the modified entry
+ * (at most 7 nodes with at most 32 children each) and shares all other nodes with this map.
+ * So a version of the map can be read without copying and without locks while newer versions are created.
+ * <code>NULL</code> keys and values are not supported.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+final class HashTrie<K, V> implements PersistentMap<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final HashTrie<?, ?> EMPTY = new HashTrie<>(null, 0);
+
+  /** an {@link Entry}, a {@link CollisionNode} or a {@link BitmapNode} (or <code>NULL</code> if empty) */
+  private final Object root;
+  private final int size;
+
+  private HashTrie(final Object root, final int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K, V> HashTrie<K, V> empty() {
+    return (HashTrie<K, V>) EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(final Object key) {
+    final int hash = hash(key);
+    Object node = root;
+    int shift = 0;
+    while (node instanceof BitmapNode) {
+      final BitmapNode bitmapNode = (BitmapNode) node;
+      final int bit = 1 << ((hash >>> shift) & MASK);
+      if ((bitmapNode.bitmap & bit) == 0) {
+        return null;
+      }
+      node = bitmapNode.children[Integer.bitCount(bitmapNode.bitmap & (bit - 1))];
+      shift += BITS;
+    }
+    if (node instanceof Entry) {
+      final Entry entry = (Entry) node;
+      return entry.hash == hash && entry.key.equals(key) ? (V) entry.value : null;
+    } else if (node instanceof CollisionNode) {
+      final CollisionNode collisionNode = (CollisionNode) node;
+      if (collisionNode.hash == hash) {
+        for (Entry entry : collisionNode.entries) {
+          if (entry.key.equals(key)) {
+            return (V) entry.value;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public HashTrie<K, V> put(final K key, final V value) {
+    final boolean[] added = new boolean[1];
+    final Object newRoot = put(root, 0, new Entry(hash(key), key, value), added);
+    return newRoot == root ? this : new HashTrie<>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  @Override
+  public HashTrie<K, V> remove(final Object key) {
+    final Object newRoot = remove(root, 0, hash(key), key);
+    return newRoot == root ? this : new HashTrie<>(newRoot, size - 1);
+  }
+
+  /**
+   * Get the values of this map (as unmodifiable view on this immutable version).
+   */
+  Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new ValueIterator<>(root);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static int hash(final Object key) {
+    final int hash = Objects.hashCode(key);
+    return hash ^ (hash >>> 16);
+  }
+
+  private static Object put(final Object node, final int shift, final Entry entry, final boolean[] added) {
+    if (node == null) {
+      added[0] = true;
+      return entry;
+    } else if (node instanceof Entry) {
+      final Entry existing = (Entry) node;
+      if (existing.hash == entry.hash && existing.key.equals(entry.key)) {
+        return existing.value == entry.value ? existing : entry;
+      }
+      added[0] = true;
+      return merge(existing, entry, shift);
+    } else if (node instanceof CollisionNode) {
+      final CollisionNode collisionNode = (CollisionNode) node;
+      if (collisionNode.hash != entry.hash) {
+        // the colliding entries are moved one level down
+        final BitmapNode parent = new BitmapNode(1 << ((collisionNode.hash >>> shift) & MASK), new Object[] { node });
+        return put(parent, shift, entry, added);
+      }
+      return collisionNode.put(entry, added);
+    }
+    final BitmapNode bitmapNode = (BitmapNode) node;
+    final int bit = 1 << ((entry.hash >>> shift) & MASK);
+    final int position = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+    if ((bitmapNode.bitmap & bit) == 0) {
+      added[0] = true;
+      return new BitmapNode(bitmapNode.bitmap | bit, insert(bitmapNode.children, position, entry));
+    }
+    final Object child = bitmapNode.children[position];
+    final Object newChild = put(child, shift + BITS, entry, added);
+    if (newChild == child) {
+      return node;
+    }
+    final Object[] children = bitmapNode.children.clone();
+    children[position] = newChild;
+    return new BitmapNode(bitmapNode.bitmap, children);
+  }
+
+  /**
+   * Create the node for two entries with different keys at the given level.
+   */
+  private static Object merge(final Entry first, final Entry second, final int shift) {
+    if (first.hash == second.hash) {
+      return new CollisionNode(first.hash, new Entry[] { first, second });
+    }
+    final int firstIndex = (first.hash >>> shift) & MASK;
+    final int secondIndex = (second.hash >>> shift) & MASK;
+    if (firstIndex == secondIndex) {
+      return new BitmapNode(1 << firstIndex, new Object[] { merge(first, second, shift + BITS) });
+    }
+    return new BitmapNode((1 << firstIndex) | (1 << secondIndex),
+        firstIndex < secondIndex ? new Object[] { first, second } : new Object[] { second, first });
+  }
+
+  private static Object remove(final Object node, final int shift, final int hash, final Object key) {
+    if (node == null) {
+      return null;
+    } else if (node instanceof Entry) {
+      final Entry entry = (Entry) node;
+      return entry.hash == hash && entry.key.equals(key) ? null : node;
+    } else if (node instanceof CollisionNode) {
+      final CollisionNode collisionNode = (CollisionNode) node;
+      return collisionNode.hash == hash ? collisionNode.remove(key) : node;
+    }
+    final BitmapNode bitmapNode = (BitmapNode) node;
+    final int bit = 1 << ((hash >>> shift) & MASK);
+    if ((bitmapNode.bitmap & bit) == 0) {
+      return node;
+    }
+    final int position = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+    final Object child = bitmapNode.children[position];
+    final Object newChild = remove(child, shift + BITS, hash, key);
+    if (newChild == child) {
+      return node;
+    } else if (newChild == null) {
+      if (bitmapNode.children.length == 1) {
+        return null;
+      } else if (bitmapNode.children.length == 2 && !(bitmapNode.children[1 - position] instanceof BitmapNode)) {
+        // a single entry (or collision node) is moved one level up
+        return bitmapNode.children[1 - position];
+      }
+      return new BitmapNode(bitmapNode.bitmap & ~bit, delete(bitmapNode.children, position));
+    } else if (bitmapNode.children.length == 1 && !(newChild instanceof BitmapNode)) {
+      return newChild;
+    }
+    final Object[] children = bitmapNode.children.clone();
+    children[position] = newChild;
+    return new BitmapNode(bitmapNode.bitmap, children);
+  }
+
+  private static Object[] insert(final Object[] array, final int position, final Object element) {
+    final Object[] copy = new Object[array.length + 1];
+    System.arraycopy(array, 0, copy, 0, position);
+    copy[position] = element;
+    System.arraycopy(array, position, copy, position + 1, array.length - position);
+    return copy;
+  }
+
+  private static Object[] delete(final Object[] array, final int position) {
+    final Object[] copy = new Object[array.length - 1];
+    System.arraycopy(array, 0, copy, 0, position);
+    System.arraycopy(array, position + 1, copy, position, copy.length - position);
+    return copy;
+  }
+
+  private static final class Entry {
+    final int hash;
+    final Object key;
+    final Object value;
+
+    Entry(final int hash, final Object key, final Object value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Inner node with one child (an entry or a node) per set bit of the bitmap.
+   */
+  private static final class BitmapNode {
+    final int bitmap;
+    final Object[] children;
+
+    BitmapNode(final int bitmap, final Object[] children) {
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+  }
+
+  /**
+   * Node for entries whose keys have the same hash.
+   */
+  private static final class CollisionNode {
+    final int hash;
+    final Entry[] entries;
+
+    CollisionNode(final int hash, final Entry[] entries) {
+      this.hash = hash;
+      this.entries = entries;
+    }
+
+    Object put(final Entry entry, final boolean[] added) {
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i].key.equals(entry.key)) {
+          if (entries[i].value == entry.value) {
+            return this;
+          }
+          final Entry[] copy = entries.clone();
+          copy[i] = entry;
+          return new CollisionNode(hash, copy);
+        }
+      }
+      added[0] = true;
+      final Entry[] copy = new Entry[entries.length + 1];
+      System.arraycopy(entries, 0, copy, 0, entries.length);
+      copy[entries.length] = entry;
+      return new CollisionNode(hash, copy);
+    }
+
+    Object remove(final Object key) {
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i].key.equals(key)) {
+          if (entries.length == 2) {
+            return entries[1 - i];
+          }
+          final Entry[] copy = new Entry[entries.length - 1];
+          System.arraycopy(entries, 0, copy, 0, i);
+          System.arraycopy(entries, i + 1, copy, i, copy.length - i);
+          return new CollisionNode(hash, copy);
+        }
+      }
+      return this;
+    }
+  }
+
+  /**
+   * Depth first iteration over the values of all entries below a node.
+   */
+  private static final class ValueIterator<V> implements Iterator<V> {
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    ValueIterator(final Object root) {
+      if (root != null) {
+        pending.push(root);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !pending.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V next() {
+      while (!pending.isEmpty()) {
+        final Object node = pending.pop();
+        if (node instanceof Entry) {
+          return (V) ((Entry) node).value;
+        } else if (node instanceof CollisionNode) {
+          final Entry[] entries = ((CollisionNode) node).entries;
+          for (int i = entries.length - 1; i > 0; i--) {
+            pending.push(entries[i]);
+          }
+          return (V) entries[0].value;
+        }
+        final Object[] children = ((BitmapNode) node).children;
+        for (int i = children.length - 1; i >= 0; i--) {
+          pending.push(children[i]);
+        }
+      }
+      throw new NoSuchElementException();
+    }
+  }
+}
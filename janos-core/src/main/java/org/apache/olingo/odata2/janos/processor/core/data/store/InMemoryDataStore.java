@@ -19,10 +19,22 @@
 package org.apache.olingo.odata2.janos.processor.core.data.store;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmNavigationProperty;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.EdmIndex;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
+import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
+import org.apache.olingo.odata2.janos.processor.core.data.query.CompiledFilter;
+import org.apache.olingo.odata2.janos.processor.core.data.query.ExpressionEvaluator;
+import org.apache.olingo.odata2.janos.processor.core.data.query.PropertyRange;
+import org.apache.olingo.odata2.janos.processor.core.data.query.Sorter;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
 import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
@@ -30,16 +42,32 @@ import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- *
+ * In memory {@link DataStore} based on immutable versions of a {@link HashTrie} (key values to entity)
+ * which are published by a reference per store and read via the {@link InMemorySnapshot} of the current thread.
+ * Reads use the snapshot of the current thread (or the latest version) without copying and without locks.
+ * The (on demand created) reverse navigation indexes and secondary property indexes (see {@link EdmIndex})
+ * are immutable as well and published with the entities,
+ * so that they are read without locks and always fit to the entities of the snapshot.
+ * Create, update and delete are serialized per store by a lock.
  */
 public class InMemoryDataStore<T> implements DataStore<T> {
 
   private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
-  private final Map<KeyElement, T> dataStore;
+  private static final ExpressionEvaluator EXPRESSION_EVALUATOR = new ExpressionEvaluator(new AnnotationValueAccess());
   private final Class<T> dataTypeClass;
   private final KeyAccess keyAccess;
+  /** fields with an {@link EdmIndex} annotation per property name */
+  private final Map<String, Field> indexedFields = new HashMap<>();
+  /** serializes the modifications */
+  private final Lock lock = new ReentrantLock();
+  /** latest published version of the entities */
+  private final AtomicReference<State> latest =
+      new AtomicReference<>(new State(0, HashTrie.empty(), HashTrie.empty(), HashTrie.empty()));
 
   private static class InMemoryDataStoreHolder {
     private static final Map<Class<?>, InMemoryDataStore<?>> c2ds = new HashMap<>();
@@ -67,14 +95,12 @@ public class InMemoryDataStore<T> implements DataStore<T> {
     return (InMemoryDataStore<T>) InMemoryDataStoreHolder.getInstance(clazz, !keepExisting);
   }
 
-  private InMemoryDataStore(final Map<KeyElement, T> wrapStore, final Class<T> clz) throws DataStoreException {
-    dataStore = Collections.synchronizedMap(wrapStore);
+  private InMemoryDataStore(final Class<T> clz) throws DataStoreException {
     dataTypeClass = clz;
     keyAccess = new KeyAccess(clz);
-  }
-
-  private InMemoryDataStore(final Class<T> clz) throws DataStoreException {
-    this(new HashMap<>(), clz);
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(clz, EdmIndex.class)) {
+      indexedFields.put(ANNOTATION_HELPER.getPropertyName(field), field);
+    }
   }
 
   @Override
@@ -96,58 +122,364 @@ public class InMemoryDataStore<T> implements DataStore<T> {
     }
   }
 
+  /**
+   * Get the entities (by their keys, see {@link KeyAccess#getKeys(Object)}) in the snapshot of the current thread.
+   */
+  private HashTrie<Object, T> entities() {
+    return InMemorySnapshot.get(latest).entities;
+  }
+
   @Override
   public T read(final T object) {
-    KeyElement objKeys = getKeys(object);
-    return dataStore.get(objKeys);
+    return entities().get(getKeys(object));
+  }
+
+  /**
+   * Read all entities which are key equal to one of the given objects via hash lookups of their keys.
+   *
+   * @param objects objects with key fields set
+   * @return all according entities
+   */
+  @Override
+  public Collection<T> readAll(final Collection<T> objects) {
+    final HashTrie<Object, T> entities = entities();
+    List<T> result = new ArrayList<>(objects.size());
+    for (T object : objects) {
+      T read = entities.get(getKeys(object));
+      if (read != null) {
+        result.add(read);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read all entities whose (to one) navigation field with given name references one of the given objects.
+   * The entities are looked up without locks in a reverse index of the navigation field (key values of the
+   * referenced object to referencing entities) which is part of the read version.
+   * The index is created on first read of the latest version and then maintained on create, update and delete;
+   * a snapshot of an older version without the index scans its entities.
+   *
+   * @param fieldName name of the navigation field
+   * @param referencedObjects the referenced objects
+   * @return all referencing entities or <code>NULL</code> if there is no such (to one) navigation field
+   */
+  @Override
+  public Collection<T> readReferencing(final String fieldName, final Collection<?> referencedObjects) {
+    final State state = InMemorySnapshot.get(latest);
+    Set<Map<String, Object>> keys = new LinkedHashSet<>();
+    for (Object referencedObject : referencedObjects) {
+      keys.add(ANNOTATION_HELPER.getValueForAnnotatedFields(referencedObject, EdmKey.class));
+    }
+    ReferenceIndex index = state.referenceIndexes.get(fieldName);
+    if (index == null) {
+      final Field field = getReferenceField(fieldName);
+      if (field == null) {
+        return null;
+      } else if (state != latest.get()) {
+        return new ReferenceIndex(field).scan(state.entities.values(), keys);
+      }
+      index = new ReferenceIndex(field).addAll(state.entities);
+      // if a modification was published in the meantime the index is created again on a later read
+      InMemorySnapshot.replace(latest, state, state.withReferenceIndex(fieldName, index));
+    }
+    return index.get(keys);
+  }
+
+  private Field getReferenceField(final String fieldName) {
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(dataTypeClass, EdmNavigationProperty.class)) {
+      if (field.getName().equals(fieldName)) {
+        final Class<?> type = field.getType();
+        return Collection.class.isAssignableFrom(type) || type.isArray() ? null : field;
+      }
+    }
+    return null;
   }
 
   @Override
   public Collection<T> read() {
-    return Collections.unmodifiableCollection(dataStore.values());
+    return entities().values();
   }
 
+  /**
+   * Read all entities which apply to the filter of given read options in the requested order
+   * (or in default key order) and with applied skip and top.
+   * The filter is evaluated in the same (single) pass over the stored entities in which the result list is
+   * created; order, skip and top are applied on that list.
+   * A skip token which is a cursor is applied by a binary search for the first entity after the cursor,
+   * any other skip token (and hence skip and top) is left to the caller.
+   * If requested the total count is set for an applied filter.
+   *
+   * @param readOptions the read options
+   * @return the read result
+   */
   @Override
   public ReadResult<T> read(ReadOptions readOptions) {
-    return ReadResult.forResult(new ArrayList<>(dataStore.values())).build();
+    final State state = InMemorySnapshot.get(latest);
+    ReadResult.Builder<T> result = ReadResult.start();
+    List<T> data = readFiltered(readOptions.getFilter(), state);
+    boolean filterApplied = data != null;
+    if (filterApplied) {
+      result.filterApplied();
+      if (readOptions.isTotalCountRequested()) {
+        result.totalCount(data.size());
+      }
+    } else {
+      data = new ArrayList<>(state.entities.values());
+    }
+
+    boolean orderApplied = true;
+    Sorter sorter = null;
+    if (readOptions.getOrderBy() == null) {
+      Sorter.sortBy(data, keyAccess::getKeyValues, keyAccess.keyOrder);
+    } else {
+      try {
+        // default order as tie breaker for a stable order over pages
+        sorter = EXPRESSION_EVALUATOR.getSorter(readOptions.getOrderBy());
+        sorter.sort(data, keyAccess.getDefaultOrder());
+      } catch (ODataException e) {
+        orderApplied = false;
+      }
+    }
+    if (orderApplied) {
+      result.orderApplied();
+    }
+
+    // skip and top are only applicable if nothing is left to be done by the caller
+    // (a skip token is only applicable if it is a cursor which fits to the order)
+    if (filterApplied && orderApplied) {
+      int from = 0;
+      boolean skipApplicable = readOptions.getSkipToken() == null;
+      final Cursor cursor = readOptions.getCursor();
+      if (cursor != null && isApplicable(cursor, readOptions.getOrderBy())) {
+        from = seek(data, sorter, cursor);
+        skipApplicable = from >= 0;
+      }
+      if (skipApplicable) {
+        final Integer skip = readOptions.getSkip();
+        final Integer top = readOptions.getTop();
+        int to = data.size();
+        if (skip != null) {
+          from = (int) Math.min((long) from + Math.max(skip, 0), to);
+        }
+        result.skipApplied();
+        if (top != null && top > 0) {
+          to = (int) Math.min((long) from + top, to);
+          result.topApplied();
+        }
+        data = data.subList(from, to);
+      }
+    }
+
+    return result.values(data).build();
+  }
+
+  private boolean isApplicable(final Cursor cursor, final OrderByExpression orderBy) {
+    final int orderCount = orderBy == null ? 0 : orderBy.getOrders().size();
+    return cursor.getOrderValues().size() == orderCount && cursor.getKeyValues().size() == keyAccess.keyFields.size();
+  }
+
+  /**
+   * Seek the position of the first entity after the given cursor in the given (sorted) data via binary search.
+   * The (decoded) values of the cursor are compared as typed values, as they are by the sorter of the processor
+   * (e.g. date/time values by their instant and decimals independent of their scale).
+   *
+   * @param data data sorted by the given sorter with the default order as tie breaker
+   * @param sorter sorter for the order expressions (or <code>NULL</code> for the default order)
+   * @param cursor the cursor
+   * @return index of the first entity after the cursor or <code>-1</code> if the seek is not possible
+   */
+  private int seek(final List<T> data, final Sorter sorter, final Cursor cursor) {
+    final Object[] orderValues = cursor.getOrderValues().toArray();
+    int low = 0;
+    int high = data.size();
+    try {
+      final Object[] keyValues = keyAccess.keyOrder.normalize(cursor.getKeyValues().toArray());
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        final T entity = data.get(middle);
+        int result = sorter == null ? 0 : sorter.getKeyComparator().compare(sorter.getSortKey(entity), orderValues);
+        if (result == 0) {
+          result = keyAccess.keyOrder.compare(keyAccess.getKeyValues(entity), keyValues);
+        }
+        if (result > 0) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+    } catch (ODataException | RuntimeException e) {
+      // values of the cursor which do not fit to the types of the order or keys
+      return -1;
+    }
+    return low;
+  }
+
+  /**
+   * Count all entities which apply to the filter of given read options.
+   * Without filter this is the size of the store, otherwise the entities are counted in one pass
+   * (without collecting them).
+   *
+   * @param readOptions the read options
+   * @return the number of entities or <code>NULL</code> if the filter is not supported
+   */
+  @Override
+  public Long count(ReadOptions readOptions) {
+    final State state = InMemorySnapshot.get(latest);
+    final FilterExpression filter = readOptions.getFilter();
+    if (filter == null) {
+      return (long) state.entities.size();
+    }
+    try {
+      final CompiledFilter compiledFilter = EXPRESSION_EVALUATOR.compile(filter);
+      long count = 0;
+      for (T entity : readCandidates(filter, state)) {
+        if (compiledFilter.appliesTo(entity)) {
+          count++;
+        }
+      }
+      return count;
+    } catch (ODataException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Read all entities which apply to given filter (in one pass over the entities
+   * or over the candidates of a secondary index, see {@link #readCandidates(FilterExpression, State)}).
+   *
+   * @param filter the filter (or <code>NULL</code> for all entities)
+   * @param state the version of the snapshot
+   * @return all entities which apply to the filter
+   *          or <code>NULL</code> if the filter is not supported by the {@link ExpressionEvaluator}
+   */
+  private List<T> readFiltered(final FilterExpression filter, final State state) {
+    if (filter == null) {
+      return new ArrayList<>(state.entities.values());
+    }
+    try {
+      final CompiledFilter compiledFilter = EXPRESSION_EVALUATOR.compile(filter);
+      List<T> filtered = new ArrayList<>();
+      for (T entity : readCandidates(filter, state)) {
+        if (compiledFilter.appliesTo(entity)) {
+          filtered.add(entity);
+        }
+      }
+      return filtered;
+    } catch (ODataException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Read the candidates for given filter: the entities in the (smallest) range of an indexed property
+   * to which the filter restricts the entities, or all entities if there is no such range.
+   * The indexes are looked up without locks in the read version. A missing index is created on a read
+   * of the latest version, a snapshot of an older version without the index reads all entities instead.
+   * The filter still has to be applied on all candidates.
+   *
+   * @param filter the filter
+   * @param state the version of the snapshot
+   * @return the candidates
+   */
+  private Collection<T> readCandidates(final FilterExpression filter, final State state) {
+    if (indexedFields.isEmpty()) {
+      return state.entities.values();
+    }
+    State indexed = state;
+    Collection<T> candidates = null;
+    for (Map.Entry<String, PropertyRange> entry : PropertyRange.of(filter).entrySet()) {
+      final String propertyName = entry.getKey();
+      final PropertyRange range = entry.getValue();
+      final Field field = indexedFields.get(propertyName);
+      if (field == null) {
+        continue;
+      }
+      PropertyIndex index = indexed.propertyIndexes.get(propertyName);
+      if (index == null) {
+        if (indexed != latest.get()) {
+          continue;
+        }
+        index = new PropertyIndex(propertyName, field, range).addAll(indexed.entities);
+        // if a modification was published in the meantime the index is created again on a later read
+        final State withIndex = indexed.withPropertyIndex(index);
+        if (InMemorySnapshot.replace(latest, indexed, withIndex)) {
+          indexed = withIndex;
+        }
+      }
+      final List<T> entities = index.get(range);
+      if (entities != null && (candidates == null || entities.size() < candidates.size())) {
+        candidates = entities;
+      }
+    }
+    return candidates == null ? state.entities.values() : candidates;
   }
 
   @Override
   public T create(final T object) throws DataStoreException {
-    KeyElement keyElement = getKeys(object);
+    Object keyElement = getKeys(object);
     return create(object, keyElement);
   }
 
-    private T create(final T object, final KeyElement keyElement) throws DataStoreException {
-      synchronized (dataStore) {
-        final boolean replaceKeys = dataStore.containsKey(keyElement);
-        if (keyElement.keyValuesMissing() || replaceKeys) {
-          KeyElement newKey = createSetAndGetKeys(object, replaceKeys);
-          return this.create(object, newKey);
-        }
-        dataStore.put(keyElement, object);
+  /**
+   * Store the object with given keys. Missing key values are generated; keys which are already used
+   * by another entity are replaced by generated keys.
+   */
+  private T create(final T object, final Object keyElement) throws DataStoreException {
+    lock.lock();
+    try {
+      final State state = latest.get();
+      Object keys = keyValuesMissing(keyElement) ? createSetAndGetKeys(object, false) : keyElement;
+      while (state.entities.get(keys) != null) {
+        keys = createSetAndGetKeys(object, true);
       }
-      return object;
+      InMemorySnapshot.publish(latest, state.store(keys, object));
+    } finally {
+      lock.unlock();
     }
+    return object;
+  }
+
+  /**
+   * Get the version of the entities which are visible in the snapshot of the current thread
+   * (or of the latest entities), so that it fits to the entities a request reads.
+   */
+  @Override
+  public long getVersion() {
+    return InMemorySnapshot.get(latest).version;
+  }
 
   @Override
   public T update(final T object) {
-    KeyElement keyElement = getKeys(object);
-    synchronized (dataStore) {
-      dataStore.remove(keyElement);
-      dataStore.put(keyElement, object);
+    Object keyElement = getKeys(object);
+    lock.lock();
+    try {
+      final State state = latest.get();
+      InMemorySnapshot.publish(latest, state.store(keyElement, object));
+    } finally {
+      lock.unlock();
     }
     return object;
   }
 
   @Override
   public T delete(final T object) {
-    KeyElement keyElement = getKeys(object);
-    synchronized (dataStore) {
-      return dataStore.remove(keyElement);
+    Object keyElement = getKeys(object);
+    final T removed;
+    lock.lock();
+    try {
+      final State state = latest.get();
+      removed = state.entities.get(keyElement);
+      if (removed == null) {
+        return null;
+      }
+      InMemorySnapshot.publish(latest, state.store(keyElement, null));
+    } finally {
+      lock.unlock();
     }
+    return removed;
   }
-  
+
   /**
    * Are the key values equal for both instances.
    * If all compared key values are <code>null</code> this also means equal.
@@ -157,10 +489,7 @@ public class InMemoryDataStore<T> implements DataStore<T> {
    * @return <code>true</code> if object instance have equal keys set.
    */
   private boolean isKeyEqual(final T first, final T second) {
-    KeyElement firstKeys = getKeys(first);
-    KeyElement secondKeys = getKeys(second);
-    
-    return firstKeys.equals(secondKeys);
+    return Objects.equals(getKeys(first), getKeys(second));
   }
   
   /**
@@ -190,21 +519,32 @@ public class InMemoryDataStore<T> implements DataStore<T> {
   }
 
 
-  private class KeyElement {
-    private int cachedHashCode = 42;
-    private final List<Object> keyValues;
+  /**
+   * Whether the given keys (see {@link KeyAccess#getKeys(Object)}) miss at least one key value.
+   */
+  private static boolean keyValuesMissing(final Object keys) {
+    return keys == null || keys instanceof KeyElement && ((KeyElement) keys).keyValuesMissing();
+  }
 
-    public KeyElement(final int size) {
-      keyValues = new ArrayList<>(size);
-    }
+  /**
+   * Key of an entity with a composite key (the value of a single column key is used as key directly).
+   */
+  private static final class KeyElement {
+    private final Object[] keyValues;
+    private final int cachedHashCode;
 
-    private void addValue(final Object keyValue) {
-      keyValues.add(keyValue);
-      cachedHashCode = 89 * cachedHashCode + (keyValue != null ? keyValue.hashCode() : 0);
+    KeyElement(final Object[] keyValues) {
+      this.keyValues = keyValues;
+      cachedHashCode = Arrays.hashCode(keyValues);
     }
 
     boolean keyValuesMissing() {
-      return keyValues.contains(null);
+      for (Object keyValue : keyValues) {
+        if (keyValue == null) {
+          return true;
+        }
+      }
+      return false;
     }
 
     @Override
@@ -214,28 +554,285 @@ public class InMemoryDataStore<T> implements DataStore<T> {
 
     @Override
     public boolean equals(final Object obj) {
-      if (obj == null) {
-        return false;
+      return obj instanceof KeyElement && Arrays.equals(keyValues, ((KeyElement) obj).keyValues);
+    }
+
+    @Override
+    public String toString() {
+      return "KeyElement{" + "cachedHashCode=" + cachedHashCode + ", keyValues=" + Arrays.toString(keyValues) + '}';
+    }
+  }
+
+  /**
+   * Published version of the entities (by their keys, see {@link KeyAccess#getKeys(Object)})
+   * and of the reverse navigation indexes and secondary property indexes.
+   */
+  private final class State extends InMemorySnapshot.Version<State> {
+    /** number of modifications of the store up to this version (see {@link #getVersion()}) */
+    final long version;
+    final HashTrie<Object, T> entities;
+    /** reverse navigation indexes per (to one) navigation field name */
+    final HashTrie<String, ReferenceIndex> referenceIndexes;
+    /** secondary indexes per property name */
+    final HashTrie<String, PropertyIndex> propertyIndexes;
+
+    State(final long version, final HashTrie<Object, T> entities,
+        final HashTrie<String, ReferenceIndex> referenceIndexes,
+        final HashTrie<String, PropertyIndex> propertyIndexes) {
+      this.version = version;
+      this.entities = entities;
+      this.referenceIndexes = referenceIndexes;
+      this.propertyIndexes = propertyIndexes;
+    }
+
+    /**
+     * Get the next version with the given entity stored for the given key (or removed for <code>NULL</code>).
+     */
+    State store(final Object key, final T entity) {
+      HashTrie<String, ReferenceIndex> updatedReferenceIndexes = referenceIndexes;
+      for (ReferenceIndex index : referenceIndexes.values()) {
+        updatedReferenceIndexes = updatedReferenceIndexes.put(index.field.getName(), index.update(key, entity));
       }
-      if (getClass() != obj.getClass()) {
-        return false;
+      HashTrie<String, PropertyIndex> updatedPropertyIndexes = propertyIndexes;
+      for (PropertyIndex index : propertyIndexes.values()) {
+        updatedPropertyIndexes = updatedPropertyIndexes.put(index.propertyName, index.update(key, entity));
       }
-      @SuppressWarnings("unchecked")
-      final KeyElement other = (KeyElement) obj;
-      if (this.keyValues != other.keyValues && (this.keyValues == null || !this.keyValues.equals(other.keyValues))) {
-        return false;
+      return new State(version + 1, entity == null ? entities.remove(key) : entities.put(key, entity),
+          updatedReferenceIndexes, updatedPropertyIndexes);
+    }
+
+    /**
+     * Get this version with an additional reverse navigation index.
+     */
+    State withReferenceIndex(final String fieldName, final ReferenceIndex index) {
+      return new State(version, entities, referenceIndexes.put(fieldName, index), propertyIndexes);
+    }
+
+    /**
+     * Get this version with an additional secondary property index.
+     */
+    State withPropertyIndex(final PropertyIndex index) {
+      return new State(version, entities, referenceIndexes, propertyIndexes.put(index.propertyName, index));
+    }
+  }
+
+  /**
+   * Get the index buckets with the entity of given key removed from the bucket of given index key.
+   */
+  private static <K, E> PersistentMap<K, HashTrie<Object, E>> removeFromBucket(
+      final PersistentMap<K, HashTrie<Object, E>> buckets, final K key, final Object entityKey) {
+    final HashTrie<Object, E> bucket = buckets.get(key).remove(entityKey);
+    return bucket.isEmpty() ? buckets.remove(key) : buckets.put(key, bucket);
+  }
+
+  /**
+   * Get the index buckets with the entity of given key added to the bucket of given index key.
+   */
+  private static <K, E> PersistentMap<K, HashTrie<Object, E>> addToBucket(
+      final PersistentMap<K, HashTrie<Object, E>> buckets, final K key, final Object entityKey, final E entity) {
+    final HashTrie<Object, E> bucket = buckets.get(key);
+    return buckets.put(key, (bucket == null ? HashTrie.<Object, E>empty() : bucket).put(entityKey, entity));
+  }
+
+  /**
+   * Immutable secondary index of an {@link EdmIndex} annotated field: index keys of the field values
+   * (see {@link PropertyRange#getKey(Object)}) to the entities (by their keys);
+   * a {@link SortedTree} for a {@link EdmIndex.Kind#SORTED} index, otherwise a {@link HashTrie}.
+   * Entities with a <code>NULL</code> value are not indexed (they never apply to a range).
+   */
+  private final class PropertyIndex {
+    private final String propertyName;
+    private final Field field;
+    /** range of the first lookup which defines the normalization of the index keys */
+    private final PropertyRange keyRange;
+    private final PersistentMap<Object, HashTrie<Object, T>> key2Entities;
+    /** keys of the indexed entities to their index keys */
+    private final HashTrie<Object, Object> entity2Key;
+
+    PropertyIndex(final String propertyName, final Field field, final PropertyRange keyRange) {
+      this(propertyName, field, keyRange, field.getAnnotation(EdmIndex.class).kind() == EdmIndex.Kind.SORTED ?
+          SortedTree.empty() : HashTrie.empty(), HashTrie.empty());
+    }
+
+    private PropertyIndex(final String propertyName, final Field field, final PropertyRange keyRange,
+        final PersistentMap<Object, HashTrie<Object, T>> key2Entities, final HashTrie<Object, Object> entity2Key) {
+      this.propertyName = propertyName;
+      this.field = field;
+      this.keyRange = keyRange;
+      this.key2Entities = key2Entities;
+      this.entity2Key = entity2Key;
+    }
+
+    /**
+     * Get an index with all given entities (by their keys) added.
+     */
+    PropertyIndex addAll(final HashTrie<Object, T> entities) {
+      PropertyIndex index = this;
+      for (T entity : entities.values()) {
+        index = index.update(getKeys(entity), entity);
       }
-      return true;
+      return index;
     }
 
-    @Override
-    public String toString() {
-      return "KeyElement{" + "cachedHashCode=" + cachedHashCode + ", keyValues=" + keyValues + '}';
+    /**
+     * Get an index with the given entity stored for the given key (or removed for <code>NULL</code>).
+     */
+    PropertyIndex update(final Object entityKey, final T entity) {
+      PersistentMap<Object, HashTrie<Object, T>> updatedKey2Entities = key2Entities;
+      HashTrie<Object, Object> updatedEntity2Key = entity2Key.remove(entityKey);
+      final Object previousKey = entity2Key.get(entityKey);
+      if (previousKey != null) {
+        updatedKey2Entities = removeFromBucket(updatedKey2Entities, previousKey, entityKey);
+      }
+      final Object key = entity == null ? null : keyRange.getKey(ClassHelper.getFieldValue(entity, field));
+      if (key != null) {
+        updatedEntity2Key = updatedEntity2Key.put(entityKey, key);
+        updatedKey2Entities = addToBucket(updatedKey2Entities, key, entityKey, entity);
+      }
+      return new PropertyIndex(propertyName, field, keyRange, updatedKey2Entities, updatedEntity2Key);
+    }
+
+    /**
+     * Get the entities in the given range.
+     *
+     * @return the entities or <code>NULL</code> if the range can not be looked up in this index
+     */
+    @SuppressWarnings("unchecked")
+    List<T> get(final PropertyRange range) {
+      if (range.isEmpty()) {
+        return Collections.emptyList();
+      }
+      List<T> result = new ArrayList<>();
+      if (range.isSingleValue()) {
+        final HashTrie<Object, T> entities = key2Entities.get(range.getLower());
+        if (entities != null) {
+          result.addAll(entities.values());
+        }
+      } else if (key2Entities instanceof SortedTree) {
+        ((SortedTree<Object, HashTrie<Object, T>>) key2Entities).forEachInRange(
+            range.getLower(), range.isLowerInclusive(), range.getUpper(), range.isUpperInclusive(),
+            entities -> result.addAll(entities.values()));
+      } else {
+        return null;
+      }
+      return result;
     }
   }
 
+  /**
+   * Immutable reverse index of a (to one) navigation field: key values of the referenced object to the
+   * referencing entities (by their keys).
+   * Entities which reference an object without (complete) key values (e.g. because it is not yet created)
+   * are kept apart and checked on each lookup.
+   */
+  private final class ReferenceIndex {
+    private final Field field;
+    private final PersistentMap<Map<String, Object>, HashTrie<Object, T>> key2Entities;
+    /** keys of the indexed entities to the key values of the objects they reference */
+    private final HashTrie<Object, Map<String, Object>> entity2Key;
+    private final HashTrie<Object, T> unresolved;
+
+    ReferenceIndex(final Field field) {
+      this(field, HashTrie.empty(), HashTrie.empty(), HashTrie.empty());
+    }
+
+    private ReferenceIndex(final Field field,
+        final PersistentMap<Map<String, Object>, HashTrie<Object, T>> key2Entities,
+        final HashTrie<Object, Map<String, Object>> entity2Key, final HashTrie<Object, T> unresolved) {
+      this.field = field;
+      this.key2Entities = key2Entities;
+      this.entity2Key = entity2Key;
+      this.unresolved = unresolved;
+    }
+
+    private Map<String, Object> getReferencedKey(final T entity) {
+      Object referenced = ClassHelper.getFieldValue(entity, field);
+      if (referenced == null) {
+        return null;
+      }
+      return ANNOTATION_HELPER.getValueForAnnotatedFields(referenced, EdmKey.class);
+    }
+
+    /**
+     * Get an index with all given entities (by their keys) added.
+     */
+    ReferenceIndex addAll(final HashTrie<Object, T> entities) {
+      ReferenceIndex index = this;
+      for (T entity : entities.values()) {
+        index = index.update(getKeys(entity), entity);
+      }
+      return index;
+    }
+
+    /**
+     * Get an index with the given entity stored for the given key (or removed for <code>NULL</code>).
+     */
+    ReferenceIndex update(final Object entityKey, final T entity) {
+      PersistentMap<Map<String, Object>, HashTrie<Object, T>> updatedKey2Entities = key2Entities;
+      HashTrie<Object, Map<String, Object>> updatedEntity2Key = entity2Key.remove(entityKey);
+      HashTrie<Object, T> updatedUnresolved = unresolved.remove(entityKey);
+      final Map<String, Object> previousKey = entity2Key.get(entityKey);
+      if (previousKey != null) {
+        updatedKey2Entities = removeFromBucket(updatedKey2Entities, previousKey, entityKey);
+      }
+      final Map<String, Object> key = entity == null ? null : getReferencedKey(entity);
+      if (key != null && key.containsValue(null)) {
+        updatedUnresolved = updatedUnresolved.put(entityKey, entity);
+      } else if (key != null) {
+        updatedEntity2Key = updatedEntity2Key.put(entityKey, key);
+        updatedKey2Entities = addToBucket(updatedKey2Entities, key, entityKey, entity);
+      }
+      return new ReferenceIndex(field, updatedKey2Entities, updatedEntity2Key, updatedUnresolved);
+    }
+
+    /**
+     * Get the entities which reference one of the objects with given keys by a scan of the given entities.
+     */
+    List<T> scan(final Collection<T> entities, final Set<Map<String, Object>> keys) {
+      List<T> result = new ArrayList<>();
+      for (T entity : entities) {
+        final Map<String, Object> key = getReferencedKey(entity);
+        if (key != null && keys.contains(key)) {
+          result.add(entity);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Get the entities which reference one of the objects with given keys.
+     */
+    List<T> get(final Set<Map<String, Object>> keys) {
+      List<T> result = new ArrayList<>();
+      for (Map<String, Object> key : keys) {
+        final HashTrie<Object, T> entities = key2Entities.get(key);
+        if (entities != null) {
+          for (T entity : entities.values()) {
+            // the navigation field could have been changed without an update of the entity
+            if (key.equals(getReferencedKey(entity))) {
+              result.add(entity);
+            }
+          }
+        }
+      }
+      // the referenced objects could have got their key values in the meantime
+      result.addAll(scan(unresolved.values(), keys));
+      return result;
+    }
+  }
+
+  /**
+   * Access to the key fields and the keys of the entities.
+   * The key of an entity with a single key field is the value of this field (without any wrapper object),
+   * only for composite keys a {@link KeyElement} is created.
+   * The (own) key fields are made accessible once, so that reading them needs no synchronization.
+   */
   private class KeyAccess {
     final List<Field> keyFields;
+    /** the key field of a single column key (or <code>NULL</code> for a composite key) */
+    private final Field singleKeyField;
+    /** typed order of the key values (the default order) */
+    final Sorter.ValueOrder keyOrder;
     final AtomicInteger idCounter = new AtomicInteger(1);
 
     KeyAccess(final Class<?> clazz) throws DataStoreException {
@@ -243,30 +840,78 @@ public class InMemoryDataStore<T> implements DataStore<T> {
       if (keyFields.isEmpty()) {
         throw new DataStoreException("No EdmKey annotated fields found for class " + clazz);
       }
+      for (Field field : keyFields) {
+        field.setAccessible(true);
+      }
+      singleKeyField = keyFields.size() == 1 ? keyFields.get(0) : null;
+      final EdmSimpleTypeKind[] keyTypes = new EdmSimpleTypeKind[keyFields.size()];
+      for (int i = 0; i < keyTypes.length; i++) {
+        try {
+          keyTypes[i] = ANNOTATION_HELPER.getSimpleTypeKind(keyFields.get(i));
+        } catch (UnsupportedOperationException e) {
+          // compared by the java type of the key values
+          keyTypes[i] = null;
+        }
+      }
+      keyOrder = Sorter.getValueOrder(keyTypes);
     }
 
-    KeyElement getKeyValues(final T object) {
-      KeyElement keyElement = new KeyElement(keyFields.size());
-      for (Field field : keyFields) {
-        Object keyValue = ClassHelper.getFieldValue(object, field);
-        keyElement.addValue(keyValue);
+    private Object getValue(final T object, final Field field) {
+      try {
+        return field.get(object);
+      } catch (IllegalAccessException e) {
+        throw new AnnotationRuntimeException(e);
       }
+    }
+
 
-      return keyElement;
+    /**
+     * Default order of the entities which is the typed order of the key values (see {@link #getKeyValues(Object)})
+     * as used by the processor for the key properties.
+     *
+     * @return comparator for the default order
+     */
+    Comparator<T> getDefaultOrder() {
+      return (first, second) -> keyOrder.compare(getKeyValues(first), getKeyValues(second));
     }
 
-    KeyElement createSetAndGetKeys(final T object, final boolean replaceKeys) {
-      KeyElement keyElement = new KeyElement(keyFields.size());
-        for (Field field : keyFields) {
-          Object key = ClassHelper.getFieldValue(object, field);
-          if (key == null || replaceKeys) {
-            key = createKey(field);
-            ClassHelper.setFieldValue(object, field, key);
-          }
-          keyElement.addValue(key);
-        }
+    /**
+     * Get the normalized key values of the given object (in the order of the key fields).
+     */
+    Object[] getKeyValues(final T object) {
+      final Object[] keyValues = new Object[keyFields.size()];
+      for (int i = 0; i < keyValues.length; i++) {
+        keyValues[i] = getValue(object, keyFields.get(i));
+      }
+      return keyOrder.normalize(keyValues);
+    }
 
-      return keyElement;
+    /**
+     * Get the keys of the given object: the key value for a single key field, otherwise a {@link KeyElement}.
+     */
+    Object getKeys(final T object) {
+      if (singleKeyField != null) {
+        return getValue(object, singleKeyField);
+      }
+      Object[] keyValues = new Object[keyFields.size()];
+      for (int i = 0; i < keyValues.length; i++) {
+        keyValues[i] = getValue(object, keyFields.get(i));
+      }
+      return new KeyElement(keyValues);
+    }
+
+    Object createSetAndGetKeys(final T object, final boolean replaceKeys) {
+      Object[] keyValues = new Object[keyFields.size()];
+      for (int i = 0; i < keyValues.length; i++) {
+        final Field field = keyFields.get(i);
+        Object key = getValue(object, field);
+        if (key == null || replaceKeys) {
+          key = createKey(field);
+          ClassHelper.setFieldValue(object, field, key);
+        }
+        keyValues[i] = key;
+      }
+      return singleKeyField != null ? keyValues[0] : new KeyElement(keyValues);
     }
 
     private Object createKey(final Field field) {
@@ -287,11 +932,11 @@ public class InMemoryDataStore<T> implements DataStore<T> {
     }
   }
 
-  private KeyElement getKeys(final T object) {
-    return keyAccess.getKeyValues(object);
+  private Object getKeys(final T object) {
+    return keyAccess.getKeys(object);
   }
 
-  private KeyElement createSetAndGetKeys(final T object, final boolean replaceKeys) throws DataStoreException {
+  private Object createSetAndGetKeys(final T object, final boolean replaceKeys) throws DataStoreException {
     return keyAccess.createSetAndGetKeys(object, replaceKeys);
   }
 }
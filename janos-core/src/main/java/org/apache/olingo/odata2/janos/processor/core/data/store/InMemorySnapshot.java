@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Consistent point in time snapshot of the data of all {@link InMemoryDataStore}s.
+ * Each store publishes immutable versions of its data via its own reference to the latest version.
+ * Each published version gets the next number of a global commit sequence and references the version it
+ * replaces, so a snapshot is just a number: it reads the newest version of each store which is not newer than
+ * the snapshot. Older versions are only kept as long as an open snapshot may read them.
+ * Reads use the snapshot which is opened for the current thread (see {@link #open()}) or the latest version,
+ * so they neither copy data nor block (or are blocked by) modifications.
+ *
+ * A snapshot which is opened for a request is used for all its reads, across entity sets and also for the
+ * <code>$expand</code> of navigation properties. It is advanced by each modification in the same thread,
+ * so that a request reads its own writes.
+ * Note that a snapshot isolates which entity object is stored for a key (create, update and delete),
+ * changes of the fields of a stored entity object are visible at once.
+ */
+public final class InMemorySnapshot implements AutoCloseable {
+  /** number of the latest published version (of any store) */
+  private static final AtomicLong COMMITTED = new AtomicLong();
+  /** serializes the numbering and publication of versions (of all stores) */
+  private static final Object COMMIT_LOCK = new Object();
+  private static final Set<InMemorySnapshot> OPEN = ConcurrentHashMap.newKeySet();
+  private static final ThreadLocal<InMemorySnapshot> CURRENT = new ThreadLocal<>();
+
+  /** number of the newest version which is visible in this snapshot */
+  private volatile long number;
+  private int openCount = 1;
+
+  private InMemorySnapshot() {}
+
+  /**
+   * Open a snapshot of the latest versions for the current thread, which is used by all reads of
+   * {@link InMemoryDataStore}s in this thread until it is closed.
+   * If a snapshot is already open for the current thread, this snapshot is returned (and has to be closed once more).
+   *
+   * @return the snapshot (to be closed at the end of the request)
+   */
+  public static InMemorySnapshot open() {
+    InMemorySnapshot snapshot = CURRENT.get();
+    if (snapshot != null) {
+      snapshot.openCount++;
+      return snapshot;
+    }
+    snapshot = new InMemorySnapshot();
+    long number;
+    do {
+      // the snapshot has to be registered before a version it reads could be released by a modification
+      OPEN.remove(snapshot);
+      number = COMMITTED.get();
+      snapshot.number = number;
+      OPEN.add(snapshot);
+    } while (COMMITTED.get() != number);
+    CURRENT.set(snapshot);
+    return snapshot;
+  }
+
+  @Override
+  public void close() {
+    if (--openCount == 0) {
+      OPEN.remove(this);
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * Get the version of a store which is visible in the snapshot of the current thread (or the latest version).
+   *
+   * @param latest reference to the latest version of the store
+   * @return the visible version
+   */
+  static <V extends Version<V>> V get(final AtomicReference<V> latest) {
+    V version = latest.get();
+    final InMemorySnapshot snapshot = CURRENT.get();
+    if (snapshot != null) {
+      final long number = snapshot.number;
+      while (version.number > number && version.previous != null) {
+        version = version.previous;
+      }
+    }
+    return version;
+  }
+
+  /**
+   * Publish the given version as latest version of a store (which must be the only modification of this store at
+   * a time) and advance the snapshot of the current thread to it.
+   *
+   * @param latest reference to the latest version of the store
+   * @param version the new version
+   */
+  static <V extends Version<V>> void publish(final AtomicReference<V> latest, final V version) {
+    final long number;
+    synchronized (COMMIT_LOCK) {
+      number = COMMITTED.get() + 1;
+      version.number = number;
+      version.previous = latest.get();
+      latest.set(version);
+      COMMITTED.set(number);
+    }
+    final InMemorySnapshot snapshot = CURRENT.get();
+    if (snapshot != null) {
+      snapshot.number = number;
+    }
+    release(version, number);
+  }
+
+  /**
+   * Replace the latest version of a store by a version with the same data (e.g. with an additional index),
+   * unless it was replaced by another version in the meantime.
+   *
+   * @param latest reference to the latest version of the store
+   * @param expected the version to replace
+   * @param replacement the replacing version
+   * @return <code>true</code> if the version was replaced
+   */
+  static <V extends Version<V>> boolean replace(final AtomicReference<V> latest, final V expected,
+      final V replacement) {
+    replacement.number = expected.number;
+    replacement.previous = expected.previous;
+    return latest.compareAndSet(expected, replacement);
+  }
+
+  /**
+   * Release all versions which are older than the newest version visible to the oldest open snapshot.
+   */
+  private static <V extends Version<V>> void release(final V version, final long number) {
+    long oldest = number;
+    for (InMemorySnapshot snapshot : OPEN) {
+      oldest = Math.min(oldest, snapshot.number);
+    }
+    V visible = version;
+    while (visible != null && visible.number > oldest) {
+      visible = visible.previous;
+    }
+    if (visible != null) {
+      visible.previous = null;
+    }
+  }
+
+  /**
+   * A published (immutable) version of the data of one store.
+   *
+   * @param <V> type of the versions of the store
+   */
+  abstract static class Version<V extends Version<V>> {
+    volatile long number;
+    volatile V previous;
+  }
+}
@@ -16,15 +16,22 @@
 package org.apache.olingo.odata2.janos.processor.core.data.store;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeException;
+import org.apache.olingo.odata2.janos.processor.api.data.NavigationPath;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
 import javax.persistence.*;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -35,22 +42,45 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
   public static final String PERSISTENCE_NAME = "JpaAnnotationDataStorePersistenceNameSystemProperty";
 
   private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+  /** maximal number of values in one IN list (some databases limit the number of parameters) */
+  private static final int IN_CHUNK_SIZE = 500;
 
   protected Class<T> dataTypeClass;
   protected EntityManager entityManager;
+  private final JpqlQueryBuilder queryBuilder;
+  /** version of the modifications via this data store (modifications via other entity managers are not seen) */
+  private final AtomicLong version = new AtomicLong();
+  /** whether the version is provided (only if the data is modified exclusively via this data store) */
+  private final boolean versionTracked;
 
   public static <T> DataStore<T> createInstance(Class<T> clz) {
     return createInstance(clz, DEFAULT_PERSISTENCE_NAME);
   }
 
   public static <T> DataStore<T> createInstance(Class<T> clz, String persistenceName) {
-    return new JpaAnnotationDataStore<>(clz, persistenceName);
+    return createInstance(clz, persistenceName, false);
   }
 
-  private JpaAnnotationDataStore(final Class<T> clz, String persistenceName) {
+  /**
+   * Create a data store for given JPA entity class.
+   * The modification version (see {@link #getVersion()}) only counts the modifications via this data store,
+   * hence it must only be tracked if the data is modified exclusively via this data store.
+   *
+   * @param clz JPA entity class
+   * @param persistenceName name of the persistence unit
+   * @param trackVersion whether the modification version is provided (e.g. for cached responses)
+   * @return the data store
+   */
+  public static <T> DataStore<T> createInstance(Class<T> clz, String persistenceName, boolean trackVersion) {
+    return new JpaAnnotationDataStore<>(clz, persistenceName, trackVersion);
+  }
+
+  private JpaAnnotationDataStore(final Class<T> clz, String persistenceName, boolean trackVersion) {
     EntityManagerFactory emf = Persistence.createEntityManagerFactory(persistenceName);
     entityManager = emf.createEntityManager();
     this.dataTypeClass = clz;
+    this.queryBuilder = new JpqlQueryBuilder(clz);
+    this.versionTracked = trackVersion;
   }
 
   @Override
@@ -80,6 +110,7 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
       this.entityManager.persist(object);
       this.entityManager.flush();
       t.commit();
+      version.incrementAndGet();
     } catch(Exception e) {
       if(t != null && t.isActive()) {
         t.rollback();
@@ -98,6 +129,7 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
       this.entityManager.remove(object);
       this.entityManager.flush();
       t.commit();
+      version.incrementAndGet();
 
       return object;
     } catch(Exception e) {
@@ -119,6 +151,51 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
     return this.entityManager.find(dataTypeClass, key);
   }
 
+  /**
+   * Read all entities with one of the keys of given objects via a single <code>IN</code> query
+   * per chunk of {@value #IN_CHUNK_SIZE} keys (each entity is found separately for a composite key).
+   */
+  @Override
+  public Collection<T> readAll(Collection<T> objects) throws DataStoreException {
+    String jpql = queryBuilder.buildKeyIn();
+    if(jpql == null) {
+      return DataStore.super.readAll(objects);
+    }
+    List<Object> keyValues = queryBuilder.getKeyValues(objects);
+    List<T> result = new ArrayList<>(keyValues.size());
+    for (int i = 0; i < keyValues.size(); i += IN_CHUNK_SIZE) {
+      TypedQuery<T> query = entityManager.createQuery(jpql, dataTypeClass);
+      query.setParameter(JpqlQueryBuilder.KEYS_PARAMETER,
+          keyValues.subList(i, Math.min(i + IN_CHUNK_SIZE, keyValues.size())));
+      result.addAll(query.getResultList());
+    }
+    return result;
+  }
+
+  /**
+   * Read all entities whose relation field references one of the given entities via a single <code>IN</code>
+   * query per chunk of {@value #IN_CHUNK_SIZE} entities.
+   *
+   * @return the referencing entities or <code>null</code> if the field is no relation of the persistence unit
+   */
+  @Override
+  public Collection<T> readReferencing(String fieldName, Collection<?> referencedObjects) {
+    List<?> references = new ArrayList<>(referencedObjects);
+    List<T> result = new ArrayList<>();
+    try {
+      for (int i = 0; i < references.size(); i += IN_CHUNK_SIZE) {
+        TypedQuery<T> query = entityManager.createQuery(queryBuilder.buildReferenceIn(fieldName), dataTypeClass);
+        query.setParameter(JpqlQueryBuilder.REFERENCES_PARAMETER,
+            references.subList(i, Math.min(i + IN_CHUNK_SIZE, references.size())));
+        result.addAll(query.getResultList());
+      }
+    } catch (IllegalArgumentException | PersistenceException e) {
+      // field is not mapped as relation
+      return null;
+    }
+    return result;
+  }
+
   @Override
   public Collection<T> read() {
     Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t");
@@ -126,21 +203,140 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
   }
 
   @Override
-  public ReadResult<T> read(ReadOptions readOptions) {
+  public ReadResult<T> read(ReadOptions readOptions) throws DataStoreException {
+    return read(null, readOptions);
+  }
+
+  /**
+   * Read all entities which are reached via the navigation path (and apply to the read options)
+   * with a single query which joins all navigation fields of the path (see {@link JpqlQueryBuilder}).
+   *
+   * @return the read result or <code>null</code> if a navigation field is no relation of the persistence unit
+   */
+  @Override
+  public ReadResult<T> read(NavigationPath navigationPath, ReadOptions readOptions) throws DataStoreException {
     ReadResult.Builder<T> result = ReadResult.start();
-    Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t");
-    if(readOptions.getTop() != null) {
+    JpqlQuery jpqlQuery = queryBuilder.build(navigationPath, readOptions);
+    Query query;
+    try {
+      query = jpqlQuery.createQuery(entityManager, queryBuilder.getLiteralValues(navigationPath, readOptions));
+    } catch (EdmSimpleTypeException e) {
+      throw new DataStoreException("Unable to bind filter literals for query '" + jpqlQuery + "'.", e);
+    } catch (IllegalArgumentException | PersistenceException e) {
+      if(navigationPath == null) {
+        throw e;
+      }
+      // navigation field is not mapped as relation
+      return null;
+    }
+    if(readOptions.getFilter() != null && jpqlQuery.isFilterApplied()) {
+      result.filterApplied();
+    }
+    if(readOptions.isTotalCountRequested() && jpqlQuery.isFilterApplied()) {
+      Long totalCount = count(navigationPath, readOptions);
+      if(totalCount != null) {
+        result.totalCount(totalCount);
+      }
+    }
+    if(jpqlQuery.isOrderApplied()) {
+      result.orderApplied();
+    }
+
+    // top and skip are only valid if nothing is left to be done afterwards by the processor
+    // (a skip token is only done if it is a cursor which is part of the query as seek condition)
+    boolean complete = jpqlQuery.isFilterApplied() && jpqlQuery.isOrderApplied()
+        && (readOptions.getSkipToken() == null || jpqlQuery.isCursorApplied());
+    // only the selected properties are read if nothing is left which requires other properties
+    JpqlQuery projection = null;
+    if(complete && readOptions.getSelect() != null) {
+      projection = queryBuilder.buildProjection(navigationPath, readOptions);
+      if(projection != null) {
+        try {
+          query = projection.createQuery(entityManager, queryBuilder.getLiteralValues(navigationPath, readOptions));
+        } catch (EdmSimpleTypeException | IllegalArgumentException | PersistenceException e) {
+          // e.g. a selected property is not persistent
+          projection = null;
+        }
+      }
+    }
+    if(complete && readOptions.getTop() != null) {
       query.setMaxResults(readOptions.getTop());
       result.topApplied();
     }
-    if(readOptions.getSkip() != null) {
+    if(complete && readOptions.getSkip() != null) {
       query.setFirstResult(readOptions.getSkip());
       result.skipApplied();
+    } else if(complete && jpqlQuery.isCursorApplied()) {
+      result.skipApplied();
     }
 
+    if(projection != null) {
+      return result.values(createInstances(query.getResultList(), projection.getProjection())).build();
+    }
     return result.values(query.getResultList()).build();
   }
 
+  /**
+   * Create (not managed) entity instances with only the projected fields set.
+   *
+   * @param rows result rows of a projection query
+   * @param fields the projected fields
+   * @return entity instances
+   */
+  private List<T> createInstances(List<?> rows, List<Field> fields) {
+    List<T> instances = new ArrayList<>(rows.size());
+    for (Object row : rows) {
+      Object[] values = row instanceof Object[] ? (Object[]) row : new Object[] { row };
+      T instance = createInstance();
+      for (int i = 0; i < fields.size(); i++) {
+        final Field field = fields.get(i);
+        if(values[i] != null || !field.getType().isPrimitive()) {
+          ClassHelper.setFieldValue(instance, field, values[i]);
+        }
+      }
+      instances.add(instance);
+    }
+    return instances;
+  }
+
+  /**
+   * Count all entities which apply to the filter of given read options via a <code>SELECT COUNT</code> query.
+   *
+   * @param readOptions the read options
+   * @return the number of entities or <code>null</code> if the filter can not be translated into JPQL
+   * @throws DataStoreException if the filter literals can not be bound
+   */
+  @Override
+  public Long count(ReadOptions readOptions) throws DataStoreException {
+    return count(null, readOptions);
+  }
+
+  private Long count(NavigationPath navigationPath, ReadOptions readOptions) throws DataStoreException {
+    JpqlQuery countQuery = queryBuilder.buildCount(navigationPath, readOptions);
+    if(!countQuery.isFilterApplied()) {
+      return null;
+    }
+    try {
+      final ReadOptions filterOnly = ReadOptions.start(readOptions.getFilter()).build();
+      Query query = countQuery.createQuery(entityManager, queryBuilder.getLiteralValues(navigationPath, filterOnly));
+      return ((Number) query.getSingleResult()).longValue();
+    } catch (EdmSimpleTypeException e) {
+      throw new DataStoreException("Unable to bind filter literals for query '" + countQuery + "'.", e);
+    }
+  }
+
+  /**
+   * Gets the modification version if it is tracked (see {@link #createInstance(Class, String, boolean)}).
+   * Modifications of the database via other entity managers (or other services) are not seen by this data store,
+   * hence by default modifications are not tracked.
+   *
+   * @return the modification version or <code>-1</code> if modifications are not tracked
+   */
+  @Override
+  public long getVersion() {
+    return versionTracked ? version.get() : -1;
+  }
+
   @Override
   public T update(T object) {
     EntityTransaction t = this.entityManager.getTransaction();
@@ -149,6 +345,7 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
       object = this.entityManager.merge(object);
       this.entityManager.flush();
       t.commit();
+      version.incrementAndGet();
 
       return object;
     } catch(Exception e) {
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * A JPQL query which was translated from the system query options of a read request.
+ * The query itself contains no literal values but only (named) parameters which are bound
+ * based on the literal values of the request when the query is created
+ * (see {@link #createQuery(EntityManager, List)}).
+ */
+class JpqlQuery {
+
+  static final String PARAMETER_PREFIX = "p";
+  static final char LIKE_ESCAPE = '!';
+
+  private final String jpql;
+  private final List<Binding> bindings;
+  private final boolean filterApplied;
+  private final boolean orderApplied;
+  private final boolean cursorApplied;
+  private final List<Field> projection;
+
+  JpqlQuery(String jpql, List<Binding> bindings, boolean filterApplied, boolean orderApplied,
+      boolean cursorApplied) {
+    this(jpql, bindings, filterApplied, orderApplied, cursorApplied, null);
+  }
+
+  JpqlQuery(String jpql, List<Binding> bindings, boolean filterApplied, boolean orderApplied,
+      boolean cursorApplied, List<Field> projection) {
+    this.jpql = jpql;
+    this.bindings = Collections.unmodifiableList(bindings);
+    this.filterApplied = filterApplied;
+    this.orderApplied = orderApplied;
+    this.cursorApplied = cursorApplied;
+    this.projection = projection == null ? null : Collections.unmodifiableList(projection);
+  }
+
+  /**
+   * Gets the JPQL statement.
+   *
+   * @return the JPQL statement
+   */
+  public String getJpql() {
+    return jpql;
+  }
+
+  /**
+   * Gets the bindings (in order of the parameters p0, p1, ...).
+   *
+   * @return the bindings
+   */
+  public List<Binding> getBindings() {
+    return bindings;
+  }
+
+  /**
+   * Whether the complete filter expression is part of the JPQL statement.
+   * If not only the translatable parts (conjuncts) of the filter are part of the statement and the result
+   * must be filtered afterwards.
+   *
+   * @return <code>true</code> if the complete filter is applied by the query
+   */
+  public boolean isFilterApplied() {
+    return filterApplied;
+  }
+
+  /**
+   * Whether the requested order (or if no order was requested the default key order)
+   * is part of the JPQL statement.
+   *
+   * @return <code>true</code> if the result of the query is ordered
+   */
+  public boolean isOrderApplied() {
+    return orderApplied;
+  }
+
+  /**
+   * Whether the cursor (skip token) of the request is part of the JPQL statement as seek condition
+   * (so that the result starts with the first entity after the cursor).
+   *
+   * @return <code>true</code> if the cursor is applied by the query
+   */
+  public boolean isCursorApplied() {
+    return cursorApplied;
+  }
+
+  /**
+   * Gets the fields which are selected (in this order) by a projection query.
+   *
+   * @return the selected fields or <code>null</code> if the query selects complete entities
+   */
+  public List<Field> getProjection() {
+    return projection;
+  }
+
+  /**
+   * Create the query for given entity manager and bind all parameters based on given literal values.
+   *
+   * @param entityManager the entity manager
+   * @param literalValues the literal values of the request (in order of appearance in the filter expression,
+   *                      followed by the key values of the cursor)
+   * @return the created query
+   */
+  public Query createQuery(EntityManager entityManager, List<Object> literalValues) {
+    Query query = entityManager.createQuery(jpql);
+    for (int i = 0; i < bindings.size(); i++) {
+      query.setParameter(PARAMETER_PREFIX + i, bindings.get(i).bind(literalValues));
+    }
+    return query;
+  }
+
+  @Override
+  public String toString() {
+    return jpql;
+  }
+
+  /**
+   * Kind of a binding which defines how a literal value is transformed into a parameter value.
+   */
+  enum BindingKind {
+    /** the literal value converted into the target type */
+    VALUE,
+    /** LIKE pattern which matches values which contain the literal value */
+    LIKE_CONTAINS,
+    /** LIKE pattern which matches values which start with the literal value */
+    LIKE_STARTS,
+    /** LIKE pattern which matches values which end with the literal value */
+    LIKE_ENDS,
+    /** first instant of the year given as literal value */
+    YEAR_START,
+    /** first instant of the year after the year given as literal value */
+    YEAR_END
+  }
+
+  /**
+   * Binding of a query parameter to a literal of the filter expression.
+   */
+  static class Binding {
+    private final int literalIndex;
+    private final BindingKind kind;
+    private final Class<?> targetType;
+
+    Binding(int literalIndex, BindingKind kind, Class<?> targetType) {
+      this.literalIndex = literalIndex;
+      this.kind = kind;
+      this.targetType = targetType;
+    }
+
+    Object bind(List<Object> literalValues) {
+      Object value = literalValues.get(literalIndex);
+      switch (kind) {
+      case LIKE_CONTAINS:
+        return "%" + escapeLike(value) + "%";
+      case LIKE_STARTS:
+        return escapeLike(value) + "%";
+      case LIKE_ENDS:
+        return "%" + escapeLike(value);
+      case YEAR_START:
+        return convert(startOfYear(((Number) value).intValue()), targetType);
+      case YEAR_END:
+        return convert(startOfYear(((Number) value).intValue() + 1), targetType);
+      default:
+        return convert(value, targetType);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return kind + "(" + literalIndex + (targetType == null ? "" : ", " + targetType.getSimpleName()) + ")";
+    }
+  }
+
+  private static String escapeLike(Object value) {
+    String text = String.valueOf(value);
+    StringBuilder escaped = new StringBuilder(text.length() + 8);
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+        escaped.append(LIKE_ESCAPE);
+      }
+      escaped.append(c);
+    }
+    return escaped.toString();
+  }
+
+  private static Calendar startOfYear(int year) {
+    Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+    calendar.clear();
+    calendar.set(year, Calendar.JANUARY, 1);
+    return calendar;
+  }
+
+  /**
+   * Convert the (parsed) literal value into the java type of the compared field
+   * (e.g. an Edm.Int32 literal compared with a Long field).
+   */
+  static Object convert(Object value, Class<?> targetType) {
+    if (value == null || targetType == null || targetType.isInstance(value)) {
+      return value;
+    }
+    if (value instanceof Number) {
+      Number number = (Number) value;
+      if (targetType == Integer.class) {
+        return number.intValue();
+      } else if (targetType == Long.class) {
+        return number.longValue();
+      } else if (targetType == Short.class) {
+        return number.shortValue();
+      } else if (targetType == Byte.class) {
+        return number.byteValue();
+      } else if (targetType == Double.class) {
+        return number.doubleValue();
+      } else if (targetType == Float.class) {
+        return number.floatValue();
+      } else if (targetType == BigDecimal.class) {
+        return new BigDecimal(number.toString());
+      } else if (targetType == BigInteger.class) {
+        return new BigDecimal(number.toString()).toBigInteger();
+      }
+    } else if (value instanceof Calendar) {
+      long millis = ((Calendar) value).getTimeInMillis();
+      if (targetType == java.sql.Timestamp.class) {
+        return new java.sql.Timestamp(millis);
+      } else if (targetType == java.sql.Date.class) {
+        return new java.sql.Date(millis);
+      } else if (targetType == java.sql.Time.class) {
+        return new java.sql.Time(millis);
+      } else if (targetType == Date.class) {
+        return new Date(millis);
+      } else if (targetType == Long.class) {
+        return millis;
+      }
+    } else if (value instanceof UUID && targetType == String.class) {
+      return value.toString();
+    } else if (value instanceof String) {
+      final String text = (String) value;
+      if (targetType == UUID.class) {
+        return UUID.fromString(text);
+      } else if (targetType == Character.class && text.length() == 1) {
+        return text.charAt(0);
+      } else if (targetType == Integer.class) {
+        // e.g. an Edm.String key (of a cursor) which is stored as number
+        return Integer.valueOf(text);
+      } else if (targetType == Long.class) {
+        return Long.valueOf(text);
+      } else if (targetType == Short.class) {
+        return Short.valueOf(text);
+      } else if (targetType == BigDecimal.class) {
+        return new BigDecimal(text);
+      }
+    }
+    return value;
+  }
+}
@@ -0,0 +1,1142 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeException;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmType;
+import org.apache.olingo.odata2.api.edm.EdmTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmTyped;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.expression.BinaryExpression;
+import org.apache.olingo.odata2.api.uri.expression.BinaryOperator;
+import org.apache.olingo.odata2.api.uri.expression.CommonExpression;
+import org.apache.olingo.odata2.api.uri.expression.ExpressionKind;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.LiteralExpression;
+import org.apache.olingo.odata2.api.uri.expression.MemberExpression;
+import org.apache.olingo.odata2.api.uri.expression.MethodExpression;
+import org.apache.olingo.odata2.api.uri.expression.MethodOperator;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderExpression;
+import org.apache.olingo.odata2.api.uri.expression.PropertyExpression;
+import org.apache.olingo.odata2.api.uri.expression.SortOrder;
+import org.apache.olingo.odata2.api.uri.expression.UnaryExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.NavigationPath;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.core.data.store.JpqlQuery.Binding;
+import org.apache.olingo.odata2.janos.processor.core.data.store.JpqlQuery.BindingKind;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates the system query options of a {@link ReadOptions} into a bind parameterised {@link JpqlQuery}
+ * for an annotated JPA entity class.
+ *
+ * The filter expression is split into its (top level) conjuncts and each conjunct which can be expressed
+ * in JPQL (JPA 2.0) is added to the <code>WHERE</code> clause. Conjuncts which can not be translated
+ * (e.g. <code>month(...)</code> or navigation paths) are left to the processor, in which case the query
+ * is marked as not completely filter applied.
+ * Literals of the filter are never part of the JPQL statement but bound as parameters.
+ *
+ * The order expressions (followed by the key fields) are translated into an <code>ORDER BY</code> clause.
+ * Without requested order the key fields are used as default order (so that pages are stable).
+ *
+ * A navigation path (e.g. <code>Buildings('1')/nb_Rooms('3')/nr_Employees</code>) is translated into an
+ * <code>EXISTS</code> sub query which joins the navigation fields from the start entity to the read entity.
+ */
+class JpqlQueryBuilder {
+
+  static final String ALIAS = "t";
+  static final String NAVIGATION_ALIAS = "s";
+  static final String KEYS_PARAMETER = "keys";
+  static final String REFERENCES_PARAMETER = "references";
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+
+  private static final int QUERY_CACHE_SIZE = 256;
+
+  private final Class<?> entityClass;
+  private final List<Field> keyFields;
+  private final Map<String, JpqlQuery> queryCache = Collections.synchronizedMap(
+      new LinkedHashMap<String, JpqlQuery>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JpqlQuery> eldest) {
+          return size() > QUERY_CACHE_SIZE;
+        }
+      });
+
+  JpqlQueryBuilder(Class<?> entityClass) {
+    this.entityClass = entityClass;
+    this.keyFields = ANNOTATION_HELPER.getAnnotatedFields(entityClass, EdmKey.class);
+  }
+
+  /**
+   * Build the JPQL query for given read options.
+   * Queries are cached per shape of the filter (literals are only bound as parameters)
+   * and order expressions so that the same JPQL statement is used for all requests of the same shape.
+   *
+   * @param readOptions read options of the request
+   * @return translated JPQL query
+   */
+  public JpqlQuery build(ReadOptions readOptions) {
+    return build(null, readOptions);
+  }
+
+  /**
+   * Build the JPQL query for all entities which are reached via given navigation path and apply to
+   * given read options. The query is cached per shape (like the queries of {@link #build(ReadOptions)})
+   * and navigation fields.
+   *
+   * @param navigationPath navigation path to the entities (or <code>NULL</code>)
+   * @param readOptions read options of the request
+   * @return translated JPQL query
+   */
+  public JpqlQuery build(NavigationPath navigationPath, ReadOptions readOptions) {
+    final String shape = getShape(readOptions) + getShape(navigationPath);
+    JpqlQuery query = queryCache.get(shape);
+    if (query == null) {
+      query = translate(navigationPath, readOptions);
+      queryCache.put(shape, query);
+    }
+    return query;
+  }
+
+  /**
+   * Build the JPQL query of {@link #build(NavigationPath, ReadOptions)} which selects only the fields
+   * of the selected properties of given read options (see {@link ReadOptions#getSelect()}) instead of
+   * complete entities, e.g. <code>SELECT t.id, t.name FROM Room t ...</code>.
+   *
+   * @param navigationPath navigation path to the entities (or <code>NULL</code>)
+   * @param readOptions read options of the request (with selected properties)
+   * @return translated JPQL projection query or <code>NULL</code> if a selected property is not mapped to a field
+   */
+  public JpqlQuery buildProjection(NavigationPath navigationPath, ReadOptions readOptions) {
+    if (readOptions.getSelect().isEmpty()) {
+      return null;
+    }
+    final String shape = getShape(readOptions) + getShape(navigationPath) + "|select=" + readOptions.getSelect();
+    JpqlQuery query = queryCache.get(shape);
+    if (query == null) {
+      List<Field> fields = new ArrayList<>();
+      StringBuilder selectClause = new StringBuilder();
+      for (String propertyName : readOptions.getSelect()) {
+        Field field = ANNOTATION_HELPER.getFieldForProperty(entityClass, propertyName);
+        if (field == null) {
+          return null;
+        }
+        selectClause.append(fields.isEmpty() ? "SELECT " : ", ").append(ALIAS).append('.').append(field.getName());
+        fields.add(field);
+      }
+      final JpqlQuery entityQuery = build(navigationPath, readOptions);
+      // the statement of the entity query starts with 'SELECT t'
+      query = new JpqlQuery(selectClause + entityQuery.getJpql().substring(ALIAS.length() + "SELECT ".length()),
+          entityQuery.getBindings(), entityQuery.isFilterApplied(), entityQuery.isOrderApplied(),
+          entityQuery.isCursorApplied(), fields);
+      queryCache.put(shape, query);
+    }
+    return query;
+  }
+
+  /**
+   * Build the JPQL query which counts all entities which apply to the filter of given read options
+   * (all other read options are ignored). The query is cached per shape (like the queries of {@link #build}).
+   *
+   * @param readOptions read options of the request
+   * @return translated JPQL count query
+   */
+  public JpqlQuery buildCount(ReadOptions readOptions) {
+    return buildCount(null, readOptions);
+  }
+
+  /**
+   * Build the JPQL query which counts all entities which are reached via given navigation path and apply to
+   * the filter of given read options (see {@link #buildCount(ReadOptions)}).
+   * The values for the query are {@link #getLiteralValues(NavigationPath, ReadOptions)} of the filter only.
+   *
+   * @param navigationPath navigation path to the entities (or <code>NULL</code>)
+   * @param readOptions read options of the request
+   * @return translated JPQL count query
+   */
+  public JpqlQuery buildCount(NavigationPath navigationPath, ReadOptions readOptions) {
+    final ReadOptions filterOnly = ReadOptions.start(readOptions.getFilter()).build();
+    final String shape = "COUNT|" + getShape(filterOnly) + getShape(navigationPath);
+    JpqlQuery query = queryCache.get(shape);
+    if (query == null) {
+      StringBuilder jpql = new StringBuilder("SELECT COUNT(").append(ALIAS).append(')')
+          .append(" FROM ").append(entityClass.getSimpleName()).append(' ').append(ALIAS);
+      Translation translation = new Translation(filterOnly.getFilter());
+      if (navigationPath != null) {
+        translation.appendNavigation(navigationPath, getValueCount(filterOnly), jpql);
+      }
+      boolean filterApplied = true;
+      if (filterOnly.getFilter() != null) {
+        filterApplied = translation.appendWhere(filterOnly.getFilter().getExpression(), navigationPath != null,
+            jpql);
+      }
+      query = new JpqlQuery(jpql.toString(), translation.bindings, filterApplied, false, false);
+      queryCache.put(shape, query);
+    }
+    return query;
+  }
+
+  /**
+   * Build the JPQL statement which reads all entities whose key is in the list of the
+   * parameter <code>keys</code> (only for entities with a single key field).
+   *
+   * @return JPQL statement or <code>null</code> if the entity has a composite key
+   */
+  public String buildKeyIn() {
+    if (keyFields.size() != 1) {
+      return null;
+    }
+    return "SELECT " + ALIAS + " FROM " + entityClass.getSimpleName() + ' ' + ALIAS
+        + " WHERE " + ALIAS + '.' + keyFields.get(0).getName() + " IN :" + KEYS_PARAMETER;
+  }
+
+  /**
+   * Build the JPQL statement which reads all entities whose (relation) field with given name
+   * references one of the entities of the parameter <code>references</code>.
+   *
+   * @param fieldName name of the relation field
+   * @return JPQL statement
+   */
+  public String buildReferenceIn(String fieldName) {
+    return "SELECT " + ALIAS + " FROM " + entityClass.getSimpleName() + ' ' + ALIAS
+        + " WHERE " + ALIAS + '.' + fieldName + " IN :" + REFERENCES_PARAMETER;
+  }
+
+  /**
+   * Get the key values of the given entities (only for entities with a single key field).
+   *
+   * @param entities entities with key field set
+   * @return key values
+   */
+  public List<Object> getKeyValues(Collection<?> entities) {
+    List<Object> keyValues = new ArrayList<>(entities.size());
+    for (Object entity : entities) {
+      keyValues.add(ANNOTATION_HELPER.getValueForField(entity, EdmKey.class));
+    }
+    return keyValues;
+  }
+
+  private JpqlQuery translate(NavigationPath navigationPath, ReadOptions readOptions) {
+    StringBuilder jpql = new StringBuilder("SELECT ").append(ALIAS)
+        .append(" FROM ").append(entityClass.getSimpleName()).append(' ').append(ALIAS);
+    Translation translation = new Translation(readOptions.getFilter());
+    if (navigationPath != null) {
+      translation.appendNavigation(navigationPath, getValueCount(readOptions), jpql);
+    }
+    boolean filterApplied = true;
+    if (readOptions.getFilter() != null) {
+      filterApplied = translation.appendWhere(readOptions.getFilter().getExpression(), navigationPath != null,
+          jpql);
+    }
+    boolean cursorApplied = false;
+    if (filterApplied && isSeekable(readOptions)) {
+      translation.appendSeek(readOptions.getFilter() != null || navigationPath != null, jpql);
+      cursorApplied = true;
+    }
+    boolean orderApplied = appendOrderBy(readOptions.getOrderBy(), jpql);
+    return new JpqlQuery(jpql.toString(), translation.bindings, filterApplied, orderApplied, cursorApplied);
+  }
+
+  /**
+   * A cursor is only translated into a seek condition for the default (key) order: JPA 2.0 can not define
+   * the order of <code>NULL</code> values, hence for other orders the cursor is left to the processor.
+   */
+  private boolean isSeekable(ReadOptions readOptions) {
+    final Cursor cursor = readOptions.getCursor();
+    if (cursor == null || readOptions.getOrderBy() != null || !cursor.getOrderValues().isEmpty()
+        || cursor.getKeyValues().size() != keyFields.size()) {
+      return false;
+    }
+    for (Object keyValue : cursor.getKeyValues()) {
+      if (keyValue == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Append the requested order followed by the key fields (as default order and tie breaker
+   * for a stable order over pages).
+   * JPA 2.0 only allows paths in <code>ORDER BY</code>, hence if any order expression is no
+   * (translatable) property path no order is appended at all.
+   *
+   * @return <code>true</code> if the order was appended
+   */
+  private boolean appendOrderBy(OrderByExpression orderBy, StringBuilder jpql) {
+    List<String> orderPaths = new ArrayList<>();
+    StringBuilder orderClause = new StringBuilder();
+    if (orderBy != null) {
+      try {
+        for (OrderExpression order : orderBy.getOrders()) {
+          final CommonExpression expression = order.getExpression();
+          if (expression.getKind() != ExpressionKind.PROPERTY && expression.getKind() != ExpressionKind.MEMBER) {
+            return false;
+          }
+          final String path = getPath(expression);
+          appendOrderItem(path, order.getSortOrder() == SortOrder.desc, orderClause);
+          orderPaths.add(path);
+        }
+      } catch (ODataException e) {
+        return false;
+      }
+    }
+    for (Field keyField : keyFields) {
+      final String path = ALIAS + "." + keyField.getName();
+      if (!orderPaths.contains(path)) {
+        appendOrderItem(path, false, orderClause);
+      }
+    }
+    if (orderClause.length() > 0) {
+      jpql.append(" ORDER BY ").append(orderClause);
+    }
+    return true;
+  }
+
+  private void appendOrderItem(String path, boolean descending, StringBuilder orderClause) {
+    if (orderClause.length() > 0) {
+      orderClause.append(", ");
+    }
+    orderClause.append(path).append(descending ? " DESC" : " ASC");
+  }
+
+  /**
+   * Get the shape of the filter and order expressions of given read options.
+   * The shape contains all information which is relevant for the translation but not the values
+   * of literals (except boolean literals which are folded into the statement). For a cursor it contains
+   * whether it is translated into a seek condition and the number of its key values (which shifts the
+   * parameters of the navigation keys).
+   */
+  private String getShape(ReadOptions readOptions) {
+    StringBuilder shape = new StringBuilder();
+    if (readOptions.getFilter() != null) {
+      appendShape(readOptions.getFilter().getExpression(), shape);
+    }
+    shape.append('|');
+    if (readOptions.getOrderBy() != null) {
+      shape.append(readOptions.getOrderBy().getExpressionString());
+    }
+    if (readOptions.getCursor() != null) {
+      shape.append("|cursor").append(readOptions.getCursor().getKeyValues().size())
+          .append(isSeekable(readOptions) ? "|seek" : "");
+    }
+    return shape.toString();
+  }
+
+  private static String getShape(NavigationPath navigationPath) {
+    if (navigationPath == null) {
+      return "";
+    }
+    StringBuilder shape = new StringBuilder("|").append(navigationPath.getStart().getClass().getName());
+    for (NavigationPath.Step step : navigationPath.getSteps()) {
+      shape.append('/').append(step.getFieldName());
+      if (step.getKeys() != null) {
+        shape.append('(').append(step.getKeys().getClass().getName()).append(')');
+      }
+    }
+    return shape.toString();
+  }
+
+  private static void appendShape(CommonExpression expression, StringBuilder shape) {
+    switch (expression.getKind()) {
+    case UNARY:
+      final UnaryExpression unaryExpression = (UnaryExpression) expression;
+      shape.append(unaryExpression.getOperator().toUriLiteral()).append('(');
+      appendShape(unaryExpression.getOperand(), shape);
+      shape.append(')');
+      break;
+    case BINARY:
+      final BinaryExpression binaryExpression = (BinaryExpression) expression;
+      shape.append('(');
+      appendShape(binaryExpression.getLeftOperand(), shape);
+      shape.append(' ').append(binaryExpression.getOperator().toUriLiteral()).append(' ');
+      appendShape(binaryExpression.getRightOperand(), shape);
+      shape.append(')');
+      break;
+    case METHOD:
+      final MethodExpression methodExpression = (MethodExpression) expression;
+      shape.append(methodExpression.getMethod().toUriLiteral()).append('(');
+      for (CommonExpression parameter : methodExpression.getParameters()) {
+        appendShape(parameter, shape);
+        shape.append(',');
+      }
+      shape.append(')');
+      break;
+    case MEMBER:
+      appendShape(((MemberExpression) expression).getPath(), shape);
+      shape.append('/');
+      appendShape(((MemberExpression) expression).getProperty(), shape);
+      break;
+    case PROPERTY:
+      shape.append(((PropertyExpression) expression).getPropertyName());
+      break;
+    case LITERAL:
+      final EdmType literalType = expression.getEdmType();
+      if (isSimpleType(literalType, EdmSimpleTypeKind.Boolean) || isSimpleType(literalType, EdmSimpleTypeKind.Null)) {
+        shape.append(((LiteralExpression) expression).getUriLiteral());
+      } else {
+        shape.append(isDecimal(literalType) ? "?d" : "?");
+      }
+      break;
+    default:
+      shape.append(expression.getKind());
+    }
+  }
+
+  /**
+   * Get the (parsed) values of all literals of the filter expression of given read options
+   * (in order of their appearance) followed by the key values of the cursor (if any)
+   * which are used to bind the parameters of a {@link JpqlQuery}.
+   *
+   * @param readOptions read options of the request
+   * @return list of literal values
+   * @throws EdmSimpleTypeException if a literal could not be parsed
+   */
+  public List<Object> getLiteralValues(ReadOptions readOptions) throws EdmSimpleTypeException {
+    List<Object> values = new ArrayList<>();
+    if (readOptions.getFilter() != null) {
+      for (LiteralExpression literal : collectLiterals(readOptions.getFilter())) {
+        values.add(getLiteralValue(literal));
+      }
+    }
+    if (readOptions.getCursor() != null) {
+      values.addAll(readOptions.getCursor().getKeyValues());
+    }
+    return values;
+  }
+
+  /**
+   * Get the values of {@link #getLiteralValues(ReadOptions)} followed by the key values of the start
+   * and of each step with keys of the given navigation path.
+   *
+   * @param navigationPath navigation path to the entities (or <code>NULL</code>)
+   * @param readOptions read options of the request
+   * @return list of literal and key values
+   * @throws EdmSimpleTypeException if a literal could not be parsed
+   */
+  public List<Object> getLiteralValues(NavigationPath navigationPath, ReadOptions readOptions)
+      throws EdmSimpleTypeException {
+    List<Object> values = getLiteralValues(readOptions);
+    if (navigationPath != null) {
+      addKeyValues(navigationPath.getStart(), values);
+      for (NavigationPath.Step step : navigationPath.getSteps()) {
+        if (step.getKeys() != null) {
+          addKeyValues(step.getKeys(), values);
+        }
+      }
+    }
+    return values;
+  }
+
+  private static void addKeyValues(Object keys, List<Object> values) {
+    for (Field keyField : ANNOTATION_HELPER.getAnnotatedFields(keys.getClass(), EdmKey.class)) {
+      values.add(ClassHelper.getFieldValue(keys, keyField));
+    }
+  }
+
+  /** number of values of {@link #getLiteralValues(ReadOptions)} */
+  private static int getValueCount(ReadOptions readOptions) {
+    int count = readOptions.getFilter() == null ? 0 : collectLiterals(readOptions.getFilter()).size();
+    return readOptions.getCursor() == null ? count : count + readOptions.getCursor().getKeyValues().size();
+  }
+
+  private static List<LiteralExpression> collectLiterals(FilterExpression filter) {
+    List<LiteralExpression> literals = new ArrayList<>();
+    collectLiterals(filter.getExpression(), literals);
+    return literals;
+  }
+
+  private static void collectLiterals(CommonExpression expression, List<LiteralExpression> literals) {
+    switch (expression.getKind()) {
+    case UNARY:
+      collectLiterals(((UnaryExpression) expression).getOperand(), literals);
+      break;
+    case BINARY:
+      collectLiterals(((BinaryExpression) expression).getLeftOperand(), literals);
+      collectLiterals(((BinaryExpression) expression).getRightOperand(), literals);
+      break;
+    case METHOD:
+      for (CommonExpression parameter : ((MethodExpression) expression).getParameters()) {
+        collectLiterals(parameter, literals);
+      }
+      break;
+    case LITERAL:
+      literals.add((LiteralExpression) expression);
+      break;
+    default:
+      break;
+    }
+  }
+
+  private static Object getLiteralValue(LiteralExpression literal) throws EdmSimpleTypeException {
+    final EdmSimpleType literalType = (EdmSimpleType) literal.getEdmType();
+    return literalType.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null,
+        literalType.getDefaultType());
+  }
+
+  private static boolean isSimpleType(EdmType type, EdmSimpleTypeKind kind) {
+    return type == kind.getEdmSimpleTypeInstance();
+  }
+
+  private static Class<?> wrap(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == char.class) {
+      return Character.class;
+    }
+    return type;
+  }
+
+  /**
+   * State of the translation of one filter expression (literal positions and created parameter bindings).
+   */
+  private class Translation {
+    private final Map<LiteralExpression, Integer> literalIndexes = new IdentityHashMap<>();
+    private final List<Binding> bindings = new ArrayList<>();
+
+    Translation(FilterExpression filter) {
+      if (filter != null) {
+        List<LiteralExpression> literals = collectLiterals(filter);
+        for (int i = 0; i < literals.size(); i++) {
+          literalIndexes.put(literals.get(i), i);
+        }
+      }
+    }
+
+    /**
+     * Append the seek condition for the key values of the cursor which follow the literal values,
+     * e.g. <code>(t.a > :p0 OR (t.a = :p1 AND t.b > :p2))</code> for the keys <code>a, b</code>.
+     */
+    void appendSeek(boolean hasWhere, StringBuilder jpql) {
+      final int firstKeyIndex = literalIndexes.size();
+      StringBuilder condition = new StringBuilder();
+      for (int i = 0; i < keyFields.size(); i++) {
+        if (i > 0) {
+          condition.append(" OR ");
+        }
+        condition.append('(');
+        for (int j = 0; j < i; j++) {
+          appendKeyComparison(keyFields.get(j), firstKeyIndex + j, " = ", condition);
+          condition.append(" AND ");
+        }
+        appendKeyComparison(keyFields.get(i), firstKeyIndex + i, " > ", condition);
+        condition.append(')');
+      }
+      jpql.append(hasWhere ? " AND (" : " WHERE (").append(condition).append(')');
+    }
+
+    private void appendKeyComparison(Field keyField, int literalIndex, String operator, StringBuilder condition) {
+      appendKeyComparison(ALIAS, keyField, literalIndex, operator, condition);
+    }
+
+    private void appendKeyComparison(String alias, Field keyField, int literalIndex, String operator,
+        StringBuilder condition) {
+      condition.append(alias).append('.').append(keyField.getName()).append(operator)
+          .append(':').append(JpqlQuery.PARAMETER_PREFIX).append(bindings.size());
+      bindings.add(new Binding(literalIndex, BindingKind.VALUE, wrap(keyField.getType())));
+    }
+
+    /**
+     * Append the condition that the entity is reached via the navigation path whose key values follow
+     * the other values (starting at <code>firstValueIndex</code>), e.g.
+     * <code>EXISTS (SELECT s0 FROM Building s0 JOIN s0.rooms s1 JOIN s1.employees s2
+     * WHERE s2 = t AND s0.id = :p0 AND s1.id = :p1)</code>.
+     * The sub query avoids duplicates of the entity (which a join in the main query would create
+     * for a many to many navigation).
+     */
+    void appendNavigation(NavigationPath navigationPath, int firstValueIndex, StringBuilder jpql) {
+      final List<NavigationPath.Step> steps = navigationPath.getSteps();
+      final Object start = navigationPath.getStart();
+      StringBuilder from = new StringBuilder(start.getClass().getSimpleName()).append(' ')
+          .append(NAVIGATION_ALIAS).append(0);
+      for (int i = 1; i <= steps.size(); i++) {
+        from.append(" JOIN ").append(NAVIGATION_ALIAS).append(i - 1).append('.')
+            .append(steps.get(i - 1).getFieldName()).append(' ').append(NAVIGATION_ALIAS).append(i);
+      }
+      StringBuilder condition = new StringBuilder(NAVIGATION_ALIAS).append(steps.size()).append(" = ").append(ALIAS);
+      int valueIndex = firstValueIndex;
+      for (int i = 0; i <= steps.size(); i++) {
+        final Object keys = i == 0 ? start : steps.get(i - 1).getKeys();
+        if (keys != null) {
+          for (Field keyField : ANNOTATION_HELPER.getAnnotatedFields(keys.getClass(), EdmKey.class)) {
+            condition.append(" AND ");
+            appendKeyComparison(NAVIGATION_ALIAS + i, keyField, valueIndex++, " = ", condition);
+          }
+        }
+      }
+      jpql.append(" WHERE EXISTS (SELECT ").append(NAVIGATION_ALIAS).append(0).append(" FROM ").append(from)
+          .append(" WHERE ").append(condition).append(')');
+    }
+
+    /**
+     * Append all translatable conjuncts as <code>WHERE</code> clause
+     * (or as further conditions if there is already a <code>WHERE</code> clause).
+     *
+     * @return <code>true</code> if all conjuncts were translated
+     */
+    boolean appendWhere(CommonExpression expression, boolean hasWhere, StringBuilder jpql) {
+      List<CommonExpression> conjuncts = new ArrayList<>();
+      splitConjunction(expression, conjuncts);
+
+      boolean complete = true;
+      boolean first = !hasWhere;
+      for (CommonExpression conjunct : conjuncts) {
+        int bindingCount = bindings.size();
+        StringBuilder condition = new StringBuilder();
+        try {
+          appendCondition(conjunct, condition);
+        } catch (ODataException e) {
+          // not translatable -> filtered later in memory
+          bindings.subList(bindingCount, bindings.size()).clear();
+          complete = false;
+          continue;
+        }
+        jpql.append(first ? " WHERE " : " AND ").append(condition);
+        first = false;
+      }
+      return complete;
+    }
+
+    private void splitConjunction(CommonExpression expression, List<CommonExpression> conjuncts) {
+      if (expression.getKind() == ExpressionKind.BINARY
+          && ((BinaryExpression) expression).getOperator() == BinaryOperator.AND) {
+        splitConjunction(((BinaryExpression) expression).getLeftOperand(), conjuncts);
+        splitConjunction(((BinaryExpression) expression).getRightOperand(), conjuncts);
+      } else {
+        conjuncts.add(expression);
+      }
+    }
+
+    private void appendCondition(CommonExpression expression, StringBuilder jpql) throws ODataException {
+      switch (expression.getKind()) {
+      case PROPERTY:
+      case MEMBER:
+        if (!isSimpleType(expression.getEdmType(), EdmSimpleTypeKind.Boolean)) {
+          throw new ODataNotImplementedException();
+        }
+        jpql.append(getPath(expression)).append(" = TRUE");
+        break;
+
+      case LITERAL:
+        appendBooleanConstant(isTrue((LiteralExpression) expression), jpql);
+        break;
+
+      case UNARY:
+        final UnaryExpression unaryExpression = (UnaryExpression) expression;
+        switch (unaryExpression.getOperator()) {
+        case NOT:
+          jpql.append("NOT (");
+          appendCondition(unaryExpression.getOperand(), jpql);
+          jpql.append(')');
+          break;
+        default:
+          throw new ODataNotImplementedException();
+        }
+        break;
+
+      case BINARY:
+        final BinaryExpression binaryExpression = (BinaryExpression) expression;
+        switch (binaryExpression.getOperator()) {
+        case AND:
+        case OR:
+          jpql.append('(');
+          appendCondition(binaryExpression.getLeftOperand(), jpql);
+          jpql.append(binaryExpression.getOperator() == BinaryOperator.AND ? " AND " : " OR ");
+          appendCondition(binaryExpression.getRightOperand(), jpql);
+          jpql.append(')');
+          break;
+        case EQ:
+        case NE:
+        case LT:
+        case LE:
+        case GT:
+        case GE:
+          appendComparison(binaryExpression, jpql);
+          break;
+        default:
+          throw new ODataNotImplementedException();
+        }
+        break;
+
+      case METHOD:
+        appendStringMatch((MethodExpression) expression, jpql);
+        break;
+
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private void appendComparison(BinaryExpression expression, StringBuilder jpql) throws ODataException {
+      final BinaryOperator operator = expression.getOperator();
+      final CommonExpression left = expression.getLeftOperand();
+      final CommonExpression right = expression.getRightOperand();
+
+      if (isYearMethod(left) && right.getKind() == ExpressionKind.LITERAL) {
+        appendYearRange((MethodExpression) left, operator, (LiteralExpression) right, jpql);
+      } else if (isYearMethod(right) && left.getKind() == ExpressionKind.LITERAL) {
+        appendYearRange((MethodExpression) right, mirror(operator), (LiteralExpression) left, jpql);
+      } else if (isBooleanLiteral(right) && left.getKind() != ExpressionKind.LITERAL) {
+        appendBooleanComparison(left, operator, (LiteralExpression) right, jpql);
+      } else if (isBooleanLiteral(left) && right.getKind() != ExpressionKind.LITERAL) {
+        appendBooleanComparison(right, operator, (LiteralExpression) left, jpql);
+      } else if (isNullLiteral(right) || isNullLiteral(left)) {
+        if (operator != BinaryOperator.EQ && operator != BinaryOperator.NE) {
+          throw new ODataNotImplementedException();
+        }
+        appendOperand(isNullLiteral(right) ? left : right, null, jpql);
+        jpql.append(operator == BinaryOperator.EQ ? " IS NULL" : " IS NOT NULL");
+      } else {
+        appendOperand(left, getJavaType(right), jpql);
+        jpql.append(' ').append(getComparisonOperator(operator)).append(' ');
+        appendOperand(right, getJavaType(left), jpql);
+      }
+    }
+
+    private void appendBooleanComparison(CommonExpression condition, BinaryOperator operator,
+        LiteralExpression literal, StringBuilder jpql) throws ODataException {
+      if (operator != BinaryOperator.EQ && operator != BinaryOperator.NE) {
+        throw new ODataNotImplementedException();
+      }
+      if ((operator == BinaryOperator.EQ) == isTrue(literal)) {
+        appendCondition(condition, jpql);
+      } else {
+        jpql.append("NOT (");
+        appendCondition(condition, jpql);
+        jpql.append(')');
+      }
+    }
+
+    /**
+     * <code>year(date) op literal</code> is translated into a range on <code>date</code>
+     * (JPA 2.0 has no function to extract the year and a range can use an index).
+     */
+    private void appendYearRange(MethodExpression year, BinaryOperator operator, LiteralExpression literal,
+        StringBuilder jpql) throws ODataException {
+      final CommonExpression date = year.getParameters().get(0);
+      final String path = getPath(date);
+      final Class<?> type = getJavaType(date);
+      switch (operator) {
+      case EQ:
+        jpql.append('(').append(path).append(" >= ");
+        appendParameter(literal, BindingKind.YEAR_START, type, jpql);
+        jpql.append(" AND ").append(path).append(" < ");
+        appendParameter(literal, BindingKind.YEAR_END, type, jpql);
+        jpql.append(')');
+        break;
+      case NE:
+        jpql.append('(').append(path).append(" < ");
+        appendParameter(literal, BindingKind.YEAR_START, type, jpql);
+        jpql.append(" OR ").append(path).append(" >= ");
+        appendParameter(literal, BindingKind.YEAR_END, type, jpql);
+        jpql.append(')');
+        break;
+      case LT:
+        jpql.append(path).append(" < ");
+        appendParameter(literal, BindingKind.YEAR_START, type, jpql);
+        break;
+      case LE:
+        jpql.append(path).append(" < ");
+        appendParameter(literal, BindingKind.YEAR_END, type, jpql);
+        break;
+      case GT:
+        jpql.append(path).append(" >= ");
+        appendParameter(literal, BindingKind.YEAR_END, type, jpql);
+        break;
+      case GE:
+        jpql.append(path).append(" >= ");
+        appendParameter(literal, BindingKind.YEAR_START, type, jpql);
+        break;
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private void appendStringMatch(MethodExpression method, StringBuilder jpql) throws ODataException {
+      final List<CommonExpression> parameters = method.getParameters();
+      switch (method.getMethod()) {
+      case SUBSTRINGOF:
+        // substringof(p0, p1) -> p1 contains p0
+        if (parameters.get(0).getKind() == ExpressionKind.LITERAL) {
+          appendOperand(parameters.get(1), String.class, jpql);
+          jpql.append(" LIKE ");
+          appendParameter((LiteralExpression) parameters.get(0), BindingKind.LIKE_CONTAINS, String.class, jpql);
+          appendLikeEscape(jpql);
+        } else {
+          jpql.append("LOCATE(");
+          appendOperand(parameters.get(0), String.class, jpql);
+          jpql.append(", ");
+          appendOperand(parameters.get(1), String.class, jpql);
+          jpql.append(") > 0");
+        }
+        break;
+      case STARTSWITH:
+        if (parameters.get(1).getKind() == ExpressionKind.LITERAL) {
+          appendOperand(parameters.get(0), String.class, jpql);
+          jpql.append(" LIKE ");
+          appendParameter((LiteralExpression) parameters.get(1), BindingKind.LIKE_STARTS, String.class, jpql);
+          appendLikeEscape(jpql);
+        } else {
+          jpql.append("LOCATE(");
+          appendOperand(parameters.get(1), String.class, jpql);
+          jpql.append(", ");
+          appendOperand(parameters.get(0), String.class, jpql);
+          jpql.append(") = 1");
+        }
+        break;
+      case ENDSWITH:
+        if (parameters.get(1).getKind() != ExpressionKind.LITERAL) {
+          throw new ODataNotImplementedException();
+        }
+        appendOperand(parameters.get(0), String.class, jpql);
+        jpql.append(" LIKE ");
+        appendParameter((LiteralExpression) parameters.get(1), BindingKind.LIKE_ENDS, String.class, jpql);
+        appendLikeEscape(jpql);
+        break;
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private void appendOperand(CommonExpression expression, Class<?> targetType, StringBuilder jpql)
+        throws ODataException {
+      switch (expression.getKind()) {
+      case PROPERTY:
+      case MEMBER:
+        jpql.append(getPath(expression));
+        break;
+
+      case LITERAL:
+        appendParameter((LiteralExpression) expression, BindingKind.VALUE, targetType, jpql);
+        break;
+
+      case UNARY:
+        final UnaryExpression unaryExpression = (UnaryExpression) expression;
+        switch (unaryExpression.getOperator()) {
+        case MINUS:
+          jpql.append("-(");
+          appendOperand(unaryExpression.getOperand(), targetType, jpql);
+          jpql.append(')');
+          break;
+        default:
+          throw new ODataNotImplementedException();
+        }
+        break;
+
+      case BINARY:
+        appendArithmetic((BinaryExpression) expression, jpql);
+        break;
+
+      case METHOD:
+        appendMethod((MethodExpression) expression, jpql);
+        break;
+
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private void appendArithmetic(BinaryExpression expression, StringBuilder jpql) throws ODataException {
+      final CommonExpression left = expression.getLeftOperand();
+      final CommonExpression right = expression.getRightOperand();
+      final boolean decimal = isDecimal(expression.getEdmType())
+          || isDecimal(left.getEdmType()) || isDecimal(right.getEdmType());
+      final String operator;
+      switch (expression.getOperator()) {
+      case ADD:
+        operator = " + ";
+        break;
+      case SUB:
+        operator = " - ";
+        break;
+      case MUL:
+        operator = " * ";
+        break;
+      case DIV:
+        if (!decimal) {
+          // OData division of integers is not an integer division (as in JPQL)
+          throw new ODataNotImplementedException();
+        }
+        operator = " / ";
+        break;
+      case MODULO:
+        if (decimal) {
+          throw new ODataNotImplementedException();
+        }
+        jpql.append("MOD(");
+        appendOperand(left, getJavaType(right), jpql);
+        jpql.append(", ");
+        appendOperand(right, getJavaType(left), jpql);
+        jpql.append(')');
+        return;
+      default:
+        throw new ODataNotImplementedException();
+      }
+      jpql.append('(');
+      appendOperand(left, getJavaType(right), jpql);
+      jpql.append(operator);
+      appendOperand(right, getJavaType(left), jpql);
+      jpql.append(')');
+    }
+
+    private void appendMethod(MethodExpression method, StringBuilder jpql) throws ODataException {
+      final List<CommonExpression> parameters = method.getParameters();
+      switch (method.getMethod()) {
+      case TOLOWER:
+        appendFunction("LOWER", parameters, jpql);
+        break;
+      case TOUPPER:
+        appendFunction("UPPER", parameters, jpql);
+        break;
+      case TRIM:
+        appendFunction("TRIM", parameters, jpql);
+        break;
+      case LENGTH:
+        appendFunction("LENGTH", parameters, jpql);
+        break;
+      case CONCAT:
+        appendFunction("CONCAT", parameters, jpql);
+        break;
+      case INDEXOF:
+        // indexof is zero based, LOCATE one based
+        jpql.append("(LOCATE(");
+        appendOperand(parameters.get(1), String.class, jpql);
+        jpql.append(", ");
+        appendOperand(parameters.get(0), String.class, jpql);
+        jpql.append(") - 1)");
+        break;
+      case SUBSTRING:
+        jpql.append("SUBSTRING(");
+        appendOperand(parameters.get(0), String.class, jpql);
+        jpql.append(", ");
+        appendOperand(parameters.get(1), Integer.class, jpql);
+        jpql.append(" + 1");
+        if (parameters.size() > 2) {
+          jpql.append(", ");
+          appendOperand(parameters.get(2), Integer.class, jpql);
+        }
+        jpql.append(')');
+        break;
+      default:
+        // date part and rounding functions are not available in JPQL (JPA 2.0)
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private void appendFunction(String function, List<CommonExpression> parameters, StringBuilder jpql)
+        throws ODataException {
+      jpql.append(function).append('(');
+      for (int i = 0; i < parameters.size(); i++) {
+        if (i > 0) {
+          jpql.append(", ");
+        }
+        appendOperand(parameters.get(i), String.class, jpql);
+      }
+      jpql.append(')');
+    }
+
+    private void appendParameter(LiteralExpression literal, BindingKind kind, Class<?> targetType,
+        StringBuilder jpql) {
+      jpql.append(':').append(JpqlQuery.PARAMETER_PREFIX).append(bindings.size());
+      bindings.add(new Binding(literalIndexes.get(literal), kind, targetType));
+    }
+
+    private void appendLikeEscape(StringBuilder jpql) {
+      jpql.append(" ESCAPE '").append(JpqlQuery.LIKE_ESCAPE).append('\'');
+    }
+
+    private void appendBooleanConstant(boolean value, StringBuilder jpql) {
+      jpql.append(value ? "1 = 1" : "1 = 0");
+    }
+  }
+
+  /**
+   * Get the JPQL path (based on the java field names) for a property or member expression.
+   */
+  private String getPath(CommonExpression expression) throws ODataException {
+    StringBuilder path = new StringBuilder(ALIAS);
+    Class<?> currentClass = entityClass;
+    for (EdmProperty property : getPropertyPath(expression)) {
+      Field field = ANNOTATION_HELPER.getFieldForProperty(currentClass, property.getName());
+      if (field == null) {
+        throw new ODataNotImplementedException();
+      }
+      path.append('.').append(field.getName());
+      currentClass = field.getType();
+    }
+    return path.toString();
+  }
+
+  /**
+   * Get the java type of given expression if it is known (or relevant for the binding of a literal),
+   * otherwise <code>NULL</code>.
+   */
+  private Class<?> getJavaType(CommonExpression expression) throws ODataException {
+    switch (expression.getKind()) {
+    case PROPERTY:
+    case MEMBER:
+      Class<?> currentClass = entityClass;
+      for (EdmProperty property : getPropertyPath(expression)) {
+        Field field = ANNOTATION_HELPER.getFieldForProperty(currentClass, property.getName());
+        if (field == null) {
+          throw new ODataNotImplementedException();
+        }
+        currentClass = field.getType();
+      }
+      return wrap(currentClass);
+    case METHOD:
+      switch (((MethodExpression) expression).getMethod()) {
+      case LENGTH:
+      case INDEXOF:
+        return Integer.class;
+      case TOLOWER:
+      case TOUPPER:
+      case TRIM:
+      case CONCAT:
+      case SUBSTRING:
+        return String.class;
+      default:
+        return null;
+      }
+    default:
+      return null;
+    }
+  }
+
+  private static List<EdmProperty> getPropertyPath(CommonExpression expression) throws ODataException {
+    List<EdmProperty> propertyPath = new ArrayList<>();
+    CommonExpression currentExpression = expression;
+    while (currentExpression != null) {
+      final PropertyExpression currentPropertyExpression =
+          (PropertyExpression) (currentExpression.getKind() == ExpressionKind.MEMBER ?
+              ((MemberExpression) currentExpression).getProperty() : currentExpression);
+      final EdmTyped currentProperty = currentPropertyExpression.getEdmProperty();
+      final EdmTypeKind kind = currentProperty.getType().getKind();
+      if (kind == EdmTypeKind.SIMPLE || kind == EdmTypeKind.COMPLEX) {
+        propertyPath.add(0, (EdmProperty) currentProperty);
+      } else {
+        throw new ODataNotImplementedException();
+      }
+      currentExpression =
+          currentExpression.getKind() == ExpressionKind.MEMBER ? ((MemberExpression) currentExpression).getPath()
+              : null;
+    }
+    return propertyPath;
+  }
+
+  private static boolean isYearMethod(CommonExpression expression) {
+    if (expression.getKind() != ExpressionKind.METHOD) {
+      return false;
+    }
+    MethodExpression method = (MethodExpression) expression;
+    if (method.getMethod() != MethodOperator.YEAR) {
+      return false;
+    }
+    ExpressionKind kind = method.getParameters().get(0).getKind();
+    return kind == ExpressionKind.PROPERTY || kind == ExpressionKind.MEMBER;
+  }
+
+  private static boolean isNullLiteral(CommonExpression expression) throws EdmException {
+    return expression.getKind() == ExpressionKind.LITERAL
+        && isSimpleType(expression.getEdmType(), EdmSimpleTypeKind.Null);
+  }
+
+  private static boolean isBooleanLiteral(CommonExpression expression) throws EdmException {
+    return expression.getKind() == ExpressionKind.LITERAL
+        && isSimpleType(expression.getEdmType(), EdmSimpleTypeKind.Boolean);
+  }
+
+  private static boolean isTrue(LiteralExpression literal) throws ODataException {
+    if (!isSimpleType(literal.getEdmType(), EdmSimpleTypeKind.Boolean)) {
+      throw new ODataNotImplementedException();
+    }
+    return Boolean.TRUE.equals(getLiteralValue(literal));
+  }
+
+  private static boolean isDecimal(EdmType type) {
+    return isSimpleType(type, EdmSimpleTypeKind.Decimal)
+        || isSimpleType(type, EdmSimpleTypeKind.Double)
+        || isSimpleType(type, EdmSimpleTypeKind.Single);
+  }
+
+  private static BinaryOperator mirror(BinaryOperator operator) {
+    switch (operator) {
+    case LT:
+      return BinaryOperator.GT;
+    case LE:
+      return BinaryOperator.GE;
+    case GT:
+      return BinaryOperator.LT;
+    case GE:
+      return BinaryOperator.LE;
+    default:
+      return operator;
+    }
+  }
+
+  private static String getComparisonOperator(BinaryOperator operator) throws ODataNotImplementedException {
+    switch (operator) {
+    case EQ:
+      return "=";
+    case NE:
+      return "<>";
+    case LT:
+      return "<";
+    case LE:
+      return "<=";
+    case GT:
+      return ">";
+    case GE:
+      return ">=";
+    default:
+      throw new ODataNotImplementedException();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+/**
+ * Immutable map whose modifications return a new map which shares all unmodified parts with this map
+ * (see {@link HashTrie} and {@link SortedTree}).
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+interface PersistentMap<K, V> {
+
+  V get(Object key);
+
+  /**
+   * Get a map with the given key mapped to the given value (and all other mappings of this map).
+   */
+  PersistentMap<K, V> put(K key, V value);
+
+  /**
+   * Get a map without a mapping for the given key (or this map if it has no such mapping).
+   */
+  PersistentMap<K, V> remove(Object key);
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import java.util.function.Consumer;
+
+/**
+ * Immutable sorted map as treap: a binary search tree by the (natural) order of the keys which is a heap
+ * by a priority derived from the hash of the keys, so that it is balanced (in expectation) for any insertion order.
+ * A modification returns a new map which copies only the nodes on the path to the modified entry
+ * and shares all other nodes with this map.
+ * The keys have to be mutually {@link Comparable}, <code>NULL</code> keys and values are not supported.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+final class SortedTree<K, V> implements PersistentMap<K, V> {
+  private static final SortedTree<?, ?> EMPTY = new SortedTree<>(null, 0);
+
+  private final Node root;
+  private final int size;
+
+  private SortedTree(final Node root, final int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K, V> SortedTree<K, V> empty() {
+    return (SortedTree<K, V>) EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(final Object key) {
+    Node node = root;
+    while (node != null) {
+      final int result = compare(key, node.key);
+      if (result == 0) {
+        return (V) node.value;
+      }
+      node = result < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  @Override
+  public SortedTree<K, V> put(final K key, final V value) {
+    final boolean[] added = new boolean[1];
+    final Node newRoot = put(root, key, value, priority(key), added);
+    return newRoot == root ? this : new SortedTree<>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  @Override
+  public SortedTree<K, V> remove(final Object key) {
+    final Node newRoot = remove(root, key);
+    return newRoot == root ? this : new SortedTree<>(newRoot, size - 1);
+  }
+
+  /**
+   * Pass the values of all keys in the given range to the given action (in the order of the keys).
+   *
+   * @param lower the lower bound (or <code>NULL</code> for no lower bound)
+   * @param lowerInclusive whether the lower bound is in the range
+   * @param upper the upper bound (or <code>NULL</code> for no upper bound)
+   * @param upperInclusive whether the upper bound is in the range
+   * @param action the action
+   */
+  void forEachInRange(final Object lower, final boolean lowerInclusive, final Object upper,
+      final boolean upperInclusive, final Consumer<? super V> action) {
+    forEachInRange(root, lower, lowerInclusive, upper, upperInclusive, action);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void forEachInRange(final Node node, final Object lower, final boolean lowerInclusive,
+      final Object upper, final boolean upperInclusive, final Consumer<?> action) {
+    if (node == null) {
+      return;
+    }
+    final int lowerResult = lower == null ? 1 : compare(node.key, lower);
+    final int upperResult = upper == null ? -1 : compare(node.key, upper);
+    if (lowerResult > 0) {
+      forEachInRange(node.left, lower, lowerInclusive, upper, upperInclusive, action);
+    }
+    if ((lowerResult > 0 || lowerResult == 0 && lowerInclusive)
+        && (upperResult < 0 || upperResult == 0 && upperInclusive)) {
+      ((Consumer<Object>) action).accept(node.value);
+    }
+    if (upperResult < 0) {
+      forEachInRange(node.right, lower, lowerInclusive, upper, upperInclusive, action);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(final Object first, final Object second) {
+    return ((Comparable<Object>) first).compareTo(second);
+  }
+
+  /**
+   * Priority of a key as well mixed bits of its hash (see the finalizer of MurmurHash3).
+   */
+  private static int priority(final Object key) {
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static Node put(final Node node, final Object key, final Object value, final int priority,
+      final boolean[] added) {
+    if (node == null) {
+      added[0] = true;
+      return new Node(key, value, priority, null, null);
+    }
+    final int result = compare(key, node.key);
+    if (result == 0) {
+      return node.value == value ? node : new Node(node.key, value, node.priority, node.left, node.right);
+    } else if (result < 0) {
+      final Node left = put(node.left, key, value, priority, added);
+      if (left == node.left) {
+        return node;
+      } else if (left.priority > node.priority) {
+        // rotate right
+        return new Node(left.key, left.value, left.priority, left.left,
+            new Node(node.key, node.value, node.priority, left.right, node.right));
+      }
+      return new Node(node.key, node.value, node.priority, left, node.right);
+    }
+    final Node right = put(node.right, key, value, priority, added);
+    if (right == node.right) {
+      return node;
+    } else if (right.priority > node.priority) {
+      // rotate left
+      return new Node(right.key, right.value, right.priority,
+          new Node(node.key, node.value, node.priority, node.left, right.left), right.right);
+    }
+    return new Node(node.key, node.value, node.priority, node.left, right);
+  }
+
+  private static Node remove(final Node node, final Object key) {
+    if (node == null) {
+      return null;
+    }
+    final int result = compare(key, node.key);
+    if (result == 0) {
+      return merge(node.left, node.right);
+    } else if (result < 0) {
+      final Node left = remove(node.left, key);
+      return left == node.left ? node : new Node(node.key, node.value, node.priority, left, node.right);
+    }
+    final Node right = remove(node.right, key);
+    return right == node.right ? node : new Node(node.key, node.value, node.priority, node.left, right);
+  }
+
+  /**
+   * Merge two trees of which all keys of the first are less than all keys of the second.
+   */
+  private static Node merge(final Node first, final Node second) {
+    if (first == null) {
+      return second;
+    } else if (second == null) {
+      return first;
+    } else if (first.priority > second.priority) {
+      return new Node(first.key, first.value, first.priority, first.left, merge(first.right, second));
+    }
+    return new Node(second.key, second.value, second.priority, merge(first, second.left), second.right);
+  }
+
+  private static final class Node {
+    final Object key;
+    final Object value;
+    final int priority;
+    final Node left;
+    final Node right;
+
+    Node(final Object key, final Object value, final int priority, final Node left, final Node right) {
+      this.key = key;
+      this.value = value;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+    }
+  }
+}
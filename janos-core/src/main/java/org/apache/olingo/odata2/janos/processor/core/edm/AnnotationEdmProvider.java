@@ -496,11 +496,7 @@ public class AnnotationEdmProvider extends EdmProvider {
       String entityName = ANNOTATION_HELPER.getPropertyName(field);
       sp.setName(entityName);
       //
-      EdmType type = ep.type();
-      if (type == EdmType.NULL) {
-        type = ANNOTATION_HELPER.mapType(field.getType());
-      }
-      sp.setType(ANNOTATION_HELPER.mapTypeKind(type));
+      sp.setType(ANNOTATION_HELPER.getSimpleTypeKind(field));
       sp.setFacets(createFacets(ep.facets(), field.getAnnotation(EdmConcurrencyControl.class)));
       return sp;
     }
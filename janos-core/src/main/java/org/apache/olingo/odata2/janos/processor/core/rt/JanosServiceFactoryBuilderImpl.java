@@ -21,6 +21,7 @@ package org.apache.olingo.odata2.janos.processor.core.rt;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.janos.processor.api.JanosServiceFactory;
 import org.apache.olingo.odata2.janos.processor.api.JanosServiceFactory.JanosServiceFactoryBuilder;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
@@ -32,9 +33,13 @@ import org.apache.olingo.odata2.janos.processor.core.data.source.AnnotationFunct
 import org.apache.olingo.odata2.janos.processor.core.data.store.DualDataStoreManager;
 import org.apache.olingo.odata2.janos.processor.core.edm.AnnotationEdmProvider;
 import org.apache.olingo.odata2.janos.processor.core.extension.ExtensionRegistry;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * AnnotationServiceFactoryInstance (ODataServiceFactory) implementation based on ListProcessor
@@ -42,6 +47,7 @@ import java.util.Collection;
  */
 public class JanosServiceFactoryBuilderImpl implements JanosServiceFactoryBuilder {
   private static final String DEFAULT_PERSISTENCE = Boolean.TRUE.toString();
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
   private DataSource dataSource;
   private FunctionSource functionSource;
   private ValueAccess valueAccess;
@@ -49,6 +55,10 @@ public class JanosServiceFactoryBuilderImpl implements JanosServiceFactoryBuilde
   private String modelPackage;
   private Collection<Class<?>> annotatedClasses = new ArrayList<>();
   private Collection<Class<?>> extensions = new ArrayList<>();
+  private PagingPolicy defaultPaging = PagingPolicy.DEFAULT;
+  private Map<String, PagingPolicy> entitySetPaging = new HashMap<>();
+  private long responseCacheBytes;
+  private boolean directJsonWriter;
 
   /**
    * {@inheritDoc}
@@ -88,6 +98,26 @@ public class JanosServiceFactoryBuilderImpl implements JanosServiceFactoryBuilde
     return this;
   }
 
+  public JanosServiceFactoryBuilder paging(PagingPolicy pagingPolicy) {
+    this.defaultPaging = pagingPolicy;
+    return this;
+  }
+
+  public JanosServiceFactoryBuilder paging(String entitySetName, PagingPolicy pagingPolicy) {
+    this.entitySetPaging.put(entitySetName, pagingPolicy);
+    return this;
+  }
+
+  public JanosServiceFactoryBuilder responseCache(long maxBytes) {
+    this.responseCacheBytes = maxBytes;
+    return this;
+  }
+
+  public JanosServiceFactoryBuilder directJsonWriter(boolean enabled) {
+    this.directJsonWriter = enabled;
+    return this;
+  }
+
   public JanosServiceFactoryBuilder extensions(Collection<Class<?>> extensions) {
     this.extensions = extensions;
     return this;
@@ -100,14 +130,17 @@ public class JanosServiceFactoryBuilderImpl implements JanosServiceFactoryBuilde
     }
 
     AnnotationEdmProvider edmProvider;
+    Map<String, PagingPolicy> pagingPolicies;
     if(!annotatedClasses.isEmpty()) {
       edmProvider = new AnnotationEdmProvider(annotatedClasses);
       dataSource = new AnnotationDataSource(annotatedClasses, dataStoreManager);
       functionSource = AnnotationFunctionSource.with(annotatedClasses).with(dataStoreManager).build();
+      pagingPolicies = extractPagingPolicies(annotatedClasses);
     } else if(modelPackage != null) {
       edmProvider = new AnnotationEdmProvider(modelPackage);
       dataSource = new AnnotationDataSource(modelPackage, dataStoreManager);
       functionSource = AnnotationFunctionSource.with(modelPackage).with(dataStoreManager).build();
+      pagingPolicies = extractPagingPolicies(ClassHelper.loadClasses(modelPackage, ANNOTATION_HELPER::isEdmAnnotated));
     } else {
       throw new RuntimeException("Unable to build " + JanosServiceFactory.class);
     }
@@ -118,7 +151,23 @@ public class JanosServiceFactoryBuilderImpl implements JanosServiceFactoryBuilde
 
     ExtensionRegistry registry = ExtensionRegistry.getInstance().registerExtensions(extensions);
 
-    return new JanosODataServiceFactoryFactory(edmProvider, dataSource, valueAccess, functionSource, registry);
+    // explicitly set policies take precedence over annotated policies
+    pagingPolicies.putAll(entitySetPaging);
+
+    return new JanosODataServiceFactoryFactory(edmProvider, dataSource, valueAccess, functionSource, registry,
+        defaultPaging, pagingPolicies, responseCacheBytes, directJsonWriter);
+  }
+
+  private Map<String, PagingPolicy> extractPagingPolicies(Collection<Class<?>> classes) {
+    Map<String, PagingPolicy> pagingPolicies = new HashMap<>();
+    for (Class<?> clz : classes) {
+      PagingPolicy pagingPolicy = ANNOTATION_HELPER.extractPagingPolicy(clz);
+      String entitySetName = ANNOTATION_HELPER.extractEntitySetName(clz);
+      if(pagingPolicy != null && entitySetName != null) {
+        pagingPolicies.put(entitySetName, pagingPolicy);
+      }
+    }
+    return pagingPolicies;
   }
 
 
@@ -29,6 +29,8 @@ import org.apache.olingo.odata2.api.edm.provider.Facets;
 import org.apache.olingo.odata2.api.edm.provider.FunctionImportParameter;
 import org.apache.olingo.odata2.api.edm.provider.ReturnType;
 import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.api.data.Paging;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
@@ -165,6 +167,21 @@ public class AnnotationHelper {
     return name;
   }
 
+  /**
+   * Returns <code>NULL</code> if given class is not annotated with {@link Paging}.
+   * If annotated the according paging policy is returned.
+   *
+   * @param annotatedClass
+   * @return
+   */
+  public PagingPolicy extractPagingPolicy(final Class<?> annotatedClass) {
+    Paging paging = annotatedClass.getAnnotation(Paging.class);
+    if (paging == null) {
+      return null;
+    }
+    return PagingPolicy.pageSize(paging.pageSize()).maxPageBytes(paging.maxPageBytes());
+  }
+
   public FullQualifiedName extractEntityTypeFqn(final EdmEntityType type, final Class<?> annotatedClass) {
     if (type.namespace().isEmpty()) {
       return new FullQualifiedName(generateNamespace(annotatedClass), extractEntityTypeName(annotatedClass));
@@ -501,6 +518,21 @@ public class AnnotationHelper {
     return null;
   }
 
+  /**
+   * Get the field which is mapped to the given (EDM) property name.
+   * Fields of super classes are considered too.
+   *
+   * @param clazz class which is checked
+   * @param propertyName EDM name of the property
+   * @return the mapped field or <code>NULL</code> if no field is mapped to the property name
+   */
+  public Field getFieldForProperty(final Class<?> clazz, final String propertyName) {
+    if (clazz == null) {
+      return null;
+    }
+    return getFieldForPropertyName(propertyName, clazz, true);
+  }
+
   public Class<?> getFieldTypeForProperty(final Class<?> clazz, final String propertyName)
       throws ODataAnnotationException {
     if (clazz == null) {
@@ -975,6 +1007,22 @@ public class AnnotationHelper {
     return content.substring(0, 1).toUpperCase(Locale.ENGLISH) + content.substring(1);
   }
 
+  /**
+   * Get the EDM simple type of the given (simple) property field: the type of its {@link EdmProperty} annotation
+   * or (if not set) the type mapped from the java type of the field.
+   *
+   * @param field property field
+   * @return the EDM simple type of the property
+   */
+  public EdmSimpleTypeKind getSimpleTypeKind(final Field field) {
+    final EdmProperty property = field.getAnnotation(EdmProperty.class);
+    EdmType type = property == null ? EdmType.NULL : property.type();
+    if (type == EdmType.NULL) {
+      type = mapType(field.getType());
+    }
+    return mapTypeKind(type);
+  }
+
   public EdmSimpleTypeKind mapTypeKind(final org.apache.olingo.odata2.api.annotation.edm.EdmType type) {
     switch (type) {
     case BINARY:
@@ -16,21 +16,31 @@
 package org.apache.olingo.odata2.janos.processor.core;
 
 import com.google.gson.internal.LinkedTreeMap;
+import org.apache.olingo.odata2.api.commons.HttpHeaders;
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.commons.InlineCount;
 import org.apache.olingo.odata2.api.edm.Edm;
 import org.apache.olingo.odata2.api.edm.EdmEntitySet;
+import org.apache.olingo.odata2.api.edm.EdmNavigationProperty;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
 import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.api.uri.KeyPredicate;
+import org.apache.olingo.odata2.api.uri.NavigationSegment;
 import org.apache.olingo.odata2.api.uri.PathInfo;
 import org.apache.olingo.odata2.api.uri.UriInfo;
 import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
 import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.api.uri.info.GetEntitySetCountUriInfo;
 import org.apache.olingo.odata2.api.uri.info.GetEntitySetUriInfo;
 import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.api.data.PagingPolicy;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
+import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
 import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
 import org.apache.olingo.odata2.janos.processor.core.data.access.BeanPropertyAccess;
@@ -42,11 +52,14 @@ import org.apache.olingo.odata2.testutil.helper.StringHelper;
 import org.apache.olingo.odata2.testutil.mock.EdmMock;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  *
@@ -180,8 +193,9 @@ public class DataSourceProcessorTest {
     OrderByExpression exp = UriParserImpl.parseOrderBy(edm, edm.getEntityType("RefScenario", "Room"), "Name");
     Mockito.when(uriInfo.getOrderBy()).thenReturn(exp);
 
+    // data store delivers the rooms ordered by name
     List<Room> results = createRooms(1, 10);
-    Collections.shuffle(results);
+    results.sort((r1, r2) -> r1.getName().compareTo(r2.getName()));
     ReadResult<Room> readResult = ReadResult.forResult(results).orderApplied().build();
     Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
         .thenReturn((ReadResult)readResult);
@@ -281,6 +295,267 @@ public class DataSourceProcessorTest {
     Assert.assertEquals("Room with id: 9", parsedResults.get(9).get("Name"));
   }
 
+  /**
+   * A large $skip: skip and top are applied as a window over the sorted data.
+   */
+  @Test
+  public void readLargeSkip() throws Exception {
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+
+    Mockito.when(uriInfo.getSkip()).thenReturn(90000);
+    Mockito.when(uriInfo.getTop()).thenReturn(100);
+
+    List<Room> results = createRooms(1, 100000);
+    Collections.shuffle(results, new Random(42));
+    ReadResult<Room> readResult = ReadResult.forResult(results).build();
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult)readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    // default order of the (Edm.String) keys
+    List<String> ids = new ArrayList<>();
+    for (Room room : results) {
+      ids.add(room.getId());
+    }
+    Collections.sort(ids);
+
+    StringHelper.Stream resultStream = StringHelper.toStream(result.getEntityAsStream());
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(resultStream.asString());
+    Assert.assertEquals(100, parsedResults.size());
+    Assert.assertEquals("Room with id: " + ids.get(90000), parsedResults.get(0).get("Name"));
+    Assert.assertEquals("Room with id: " + ids.get(90099), parsedResults.get(99).get("Name"));
+  }
+
+  @Test
+  public void readWithEntitySetPaging() throws Exception {
+    dataSourceProcessor = new DataSourceProcessor(mockedDataSource, mockedValueAccess,
+        Mockito.mock(FunctionSource.class), PagingPolicy.DEFAULT,
+        Collections.singletonMap("Rooms", PagingPolicy.pageSize(3)));
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+
+    ReadResult<Room> readResult = ReadResult.forResult(createRooms(1, 10)).build();
+    ArgumentCaptor<ReadOptions> readOptions = ArgumentCaptor.forClass(ReadOptions.class);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), readOptions.capture()))
+        .thenReturn((ReadResult) readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    // page and first entity of the next page are requested from the data source
+    Assert.assertEquals(Integer.valueOf(4), readOptions.getValue().getTop());
+    String content = StringHelper.toStream(result.getEntityAsStream()).asString();
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(content);
+    Assert.assertEquals(3, parsedResults.size());
+    Assert.assertEquals("Room with id: 1", parsedResults.get(0).get("Name"));
+    Assert.assertEquals("Room with id: 2", parsedResults.get(2).get("Name"));
+    Assert.assertTrue(content.contains("$skiptoken="));
+  }
+
+  @Test
+  public void readWithByteBudgetPaging() throws Exception {
+    // an entity of the test data is estimated with less than 400 bytes
+    dataSourceProcessor = new DataSourceProcessor(mockedDataSource, mockedValueAccess,
+        Mockito.mock(FunctionSource.class), PagingPolicy.pageSize(10).maxPageBytes(800),
+        Collections.<String, PagingPolicy>emptyMap());
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+
+    ReadResult<Room> readResult = ReadResult.forResult(createRooms(1, 5)).build();
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    String content = StringHelper.toStream(result.getEntityAsStream()).asString();
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(content);
+    Assert.assertEquals(2, parsedResults.size());
+    Assert.assertTrue(content.contains("$skiptoken="));
+  }
+
+  @Test
+  public void countWithDataSourceCount() throws Exception {
+    GetEntitySetCountUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getSkip()).thenReturn(2);
+    Mockito.when(mockedDataSource.countData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn(42L);
+
+    ODataResponse result = dataSourceProcessor.countEntitySet(uriInfo, "text/plain");
+
+    Assert.assertEquals("40", StringHelper.toStream(result.getEntityAsStream()).asString());
+    Mockito.verify(mockedDataSource, Mockito.never())
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+  }
+
+  @Test
+  public void readInlineCountFromDataSource() throws Exception {
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getInlineCount()).thenReturn(InlineCount.ALLPAGES);
+    Mockito.when(uriInfo.getTop()).thenReturn(2);
+
+    // data store applied top and provided the total count
+    ReadResult<Room> readResult = ReadResult.forResult(createRooms(1, 2)).orderApplied().topApplied()
+        .totalCount(1000).build();
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    String content = StringHelper.toStream(result.getEntityAsStream()).asString();
+    Assert.assertEquals(2, JsonHelper.getResults(content).size());
+    Assert.assertTrue(content.contains("\"__count\":\"1000\""));
+  }
+
+  @Test
+  public void readInlineCountOfNavigation() throws Exception {
+    // Buildings('1')/nb_Rooms?$top=2&$inlinecount=allpages
+    UriInfo uriInfo = createMockedUriInfo("Rooms");
+    EdmEntitySet buildings = EdmMock.getEntitySet(EdmMock.createMockEdm(), "Buildings");
+    KeyPredicate key = Mockito.mock(KeyPredicate.class);
+    Mockito.when(key.getProperty()).thenReturn((EdmProperty) buildings.getEntityType().getProperty("Id"));
+    Mockito.when(key.getLiteral()).thenReturn("1");
+    NavigationSegment navigationSegment = Mockito.mock(NavigationSegment.class);
+    Mockito.when(navigationSegment.getEntitySet()).thenReturn(uriInfo.getTargetEntitySet());
+    Mockito.when(navigationSegment.getNavigationProperty())
+        .thenReturn((EdmNavigationProperty) buildings.getEntityType().getProperty("nb_Rooms"));
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(buildings);
+    Mockito.when(uriInfo.getKeyPredicates()).thenReturn(Collections.singletonList(key));
+    Mockito.when(uriInfo.getNavigationSegments()).thenReturn(Collections.singletonList(navigationSegment));
+    Mockito.when(uriInfo.getInlineCount()).thenReturn(InlineCount.ALLPAGES);
+    Mockito.when(uriInfo.getTop()).thenReturn(2);
+
+    // data store read the navigation path with applied top and provided the total count
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.anyMap()))
+        .thenReturn(new Building());
+    ReadResult<Room> readResult = ReadResult.forResult(createRooms(1, 2)).orderApplied().skipApplied().topApplied()
+        .totalCount(10).build();
+    Mockito.when(mockedDataSource.readRelatedData(Mockito.any(EdmEntitySet.class), Mockito.anyMap(),
+        Mockito.anyList(), Mockito.any(ReadOptions.class))).thenReturn((ReadResult) readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    String content = StringHelper.toStream(result.getEntityAsStream()).asString();
+    Assert.assertEquals(2, JsonHelper.getResults(content).size());
+    Assert.assertTrue(content.contains("\"__count\":\"10\""));
+  }
+
+  @Test
+  public void readCachedNotModified() throws Exception {
+    dataSourceProcessor = createCachingProcessor(1024 * 1024);
+    UriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(uriInfo.getTargetEntitySet());
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(1L);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 3)).build());
+
+    ODataResponse first = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    Assert.assertEquals(HttpStatusCodes.OK, first.getStatus());
+    Assert.assertNotNull(first.getETag());
+
+    // the client already has the response
+    Mockito.when(dataSourceProcessor.getContext().getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+        .thenReturn(first.getETag());
+    ODataResponse second = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    Assert.assertEquals(HttpStatusCodes.NOT_MODIFIED, second.getStatus());
+    Assert.assertEquals(first.getETag(), second.getETag());
+    Mockito.verify(mockedDataSource, Mockito.times(1))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+  }
+
+  @Test
+  public void readCachedUntilModified() throws Exception {
+    dataSourceProcessor = createCachingProcessor(1024 * 1024);
+    UriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(uriInfo.getTargetEntitySet());
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(1L);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 3)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 4)).build());
+
+    ODataResponse first = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    ODataResponse cached = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    Assert.assertEquals(first.getETag(), cached.getETag());
+    Assert.assertEquals(3, JsonHelper.getResults(StringHelper.toStream(cached.getEntityAsStream()).asString()).size());
+    Mockito.verify(mockedDataSource, Mockito.times(1))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+
+    // a create, update or delete changes the version of the entity set
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(2L);
+    Mockito.when(dataSourceProcessor.getContext().getRequestHeader(HttpHeaders.IF_NONE_MATCH))
+        .thenReturn(first.getETag());
+    ODataResponse modified = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    Assert.assertEquals(HttpStatusCodes.OK, modified.getStatus());
+    Assert.assertFalse(first.getETag().equals(modified.getETag()));
+    Assert.assertEquals(4,
+        JsonHelper.getResults(StringHelper.toStream(modified.getEntityAsStream()).asString()).size());
+    Mockito.verify(mockedDataSource, Mockito.times(2))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+  }
+
+  @Test
+  public void readCachedEvictsLeastRecentlyUsed() throws Exception {
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(1L);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build());
+    final int size = StringHelper.toStream(dataSourceProcessor.readEntitySet(createMockedUriInfo("Rooms"),
+        "application/json").getEntityAsStream()).asString().getBytes("UTF-8").length;
+
+    // the cache has room for one response only
+    dataSourceProcessor = createCachingProcessor(size + size / 2);
+    UriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(uriInfo.getTargetEntitySet());
+    PathInfo pathInfo = dataSourceProcessor.getContext().getPathInfo();
+
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/Rooms?$top=2"));
+    dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/Rooms?$skip=0"));
+    dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    // the second response is cached
+    dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    Mockito.verify(mockedDataSource, Mockito.times(3))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+
+    // the first response was evicted
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/Rooms?$top=2"));
+    dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    Mockito.verify(mockedDataSource, Mockito.times(4))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+  }
+
+  @Test
+  public void readUncachedWithoutVersion() throws Exception {
+    dataSourceProcessor = createCachingProcessor(1024 * 1024);
+    UriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(uriInfo.getTargetEntitySet());
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build(),
+            (ReadResult) ReadResult.forResult(createRooms(1, 2)).build());
+
+    // modifications are not tracked by the data source
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(null);
+    Assert.assertNull(dataSourceProcessor.readEntitySet(uriInfo, "application/json").getETag());
+    Assert.assertNull(dataSourceProcessor.readEntitySet(uriInfo, "application/json").getETag());
+    // nor by the data store
+    Mockito.when(mockedDataSource.getVersion(Mockito.any(EdmEntitySet.class))).thenReturn(-1L);
+    Assert.assertNull(dataSourceProcessor.readEntitySet(uriInfo, "application/json").getETag());
+    Assert.assertNull(dataSourceProcessor.readEntitySet(uriInfo, "application/json").getETag());
+
+    Mockito.verify(mockedDataSource, Mockito.times(4))
+        .readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class));
+  }
+
+  private DataSourceProcessor createCachingProcessor(final long maxBytes) {
+    return new DataSourceProcessor(mockedDataSource, mockedValueAccess, Mockito.mock(FunctionSource.class),
+        PagingPolicy.DEFAULT, Collections.<String, PagingPolicy>emptyMap(), new ValueMapPlan.Cache(),
+        new ResponseCache(maxBytes), new DocumentCache(), null);
+  }
+
   private UriInfo createMockedUriInfo(String entitySetName) throws ODataException {
     Edm edm = EdmMock.createMockEdm();
     UriInfo uriInfo = Mockito.mock(UriInfo.class);
@@ -289,6 +564,8 @@ public class DataSourceProcessorTest {
     ODataContext context = Mockito.mock(ODataContext.class);
     PathInfo pathInfo = Mockito.mock(PathInfo.class);
     Mockito.when(context.getPathInfo()).thenReturn(pathInfo);
+    Mockito.when(pathInfo.getServiceRoot()).thenReturn(URI.create("http://localhost/service/"));
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(URI.create("http://localhost/service/" + entitySetName));
     dataSourceProcessor.setContext(context);
     return uriInfo;
   }
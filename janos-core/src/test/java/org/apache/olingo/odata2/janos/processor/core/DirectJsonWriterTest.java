@@ -0,0 +1,124 @@
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.InlineCount;
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntitySet;
+import org.apache.olingo.odata2.api.ep.EntityProvider;
+import org.apache.olingo.odata2.api.ep.EntityProviderWriteProperties;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+import org.apache.olingo.odata2.janos.processor.core.data.access.BeanPropertyAccess;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.helper.StringHelper;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test that the {@link DirectJsonWriter} writes the same JSON as the {@link EntityProvider}.
+ */
+public class DirectJsonWriterTest {
+  private static final URI SERVICE_ROOT = URI.create("http://localhost:80/service/");
+  private static final String CONTENT_TYPE = "application/json";
+
+  private final ValueAccess valueAccess = new BeanPropertyAccess();
+  private final ValueMapPlan.Cache valueMapPlans = new ValueMapPlan.Cache();
+  private final DirectJsonWriter writer = new DirectJsonWriter(valueMapPlans, valueAccess);
+  private EdmEntitySet rooms;
+
+  @Before
+  public void initEdm() throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    rooms = EdmMock.getEntitySet(edm, "Rooms");
+  }
+
+  @Test
+  public void feed() throws Exception {
+    List<Room> data = createRooms(3);
+    List<Map<String, Object>> values = new ArrayList<>();
+    for (Room room : data) {
+      values.add(valueMapPlans.get(rooms.getEntityType()).extract(room, valueAccess, null));
+    }
+    final ODataResponse expected = EntityProvider.writeFeed(CONTENT_TYPE, rooms, values,
+        EntityProviderWriteProperties.serviceRoot(SERVICE_ROOT).build());
+
+    Assert.assertEquals(asString(expected), asString(writer.writeFeed(rooms, data, SERVICE_ROOT, null, null,
+        CONTENT_TYPE)));
+  }
+
+  @Test
+  public void feedWithCountAndNextLink() throws Exception {
+    List<Room> data = createRooms(2);
+    List<Map<String, Object>> values = new ArrayList<>();
+    for (Room room : data) {
+      values.add(valueMapPlans.get(rooms.getEntityType()).extract(room, valueAccess, null));
+    }
+    final String nextLink = "Rooms?$orderby=Seats%20desc&$skiptoken=2";
+    final ODataResponse expected = EntityProvider.writeFeed(CONTENT_TYPE, rooms, values,
+        EntityProviderWriteProperties.serviceRoot(SERVICE_ROOT)
+            .inlineCountType(InlineCount.ALLPAGES).inlineCount(12).nextLink(nextLink).build());
+
+    Assert.assertEquals(asString(expected), asString(writer.writeFeed(rooms, data, SERVICE_ROOT, 12, nextLink,
+        CONTENT_TYPE)));
+  }
+
+  @Test
+  public void entry() throws Exception {
+    Room room = createRooms(1).get(0);
+    room.setName("\"Quoted\" name\twith\\escapes and ümlauts");
+    final ODataResponse expected = EntityProvider.writeEntry(CONTENT_TYPE, rooms,
+        valueMapPlans.get(rooms.getEntityType()).extract(room, valueAccess, null),
+        EntityProviderWriteProperties.serviceRoot(SERVICE_ROOT).build());
+
+    final ODataResponse response = writer.writeEntry(rooms, room, SERVICE_ROOT, CONTENT_TYPE);
+    Assert.assertEquals(expected.getETag(), response.getETag());
+    Assert.assertEquals(expected.getIdLiteral(), response.getIdLiteral());
+    Assert.assertEquals(asString(expected), asString(response));
+  }
+
+  @Test
+  public void notSupportedValue() throws Exception {
+    Room room = createRooms(1).get(0);
+    room.setName("control \u0001 character");
+
+    Assert.assertNull(writer.writeEntry(rooms, room, SERVICE_ROOT, CONTENT_TYPE));
+    Assert.assertNull(writer.writeFeed(rooms, createRoomsWith(room), SERVICE_ROOT, null, null, CONTENT_TYPE));
+  }
+
+  @Test
+  public void contentType() {
+    Assert.assertTrue(DirectJsonWriter.isJson("application/json"));
+    Assert.assertTrue(DirectJsonWriter.isJson("application/json; charset=utf-8"));
+    Assert.assertTrue(DirectJsonWriter.isJson("application/json;odata=verbose;charset=utf-8"));
+    Assert.assertFalse(DirectJsonWriter.isJson("application/json;odata=fullmetadata"));
+    Assert.assertFalse(DirectJsonWriter.isJson("application/atom+xml"));
+    Assert.assertFalse(DirectJsonWriter.isJson(null));
+  }
+
+  private static String asString(final ODataResponse response) throws Exception {
+    return StringHelper.toStream(response.getEntityAsStream()).asString();
+  }
+
+  private static List<Room> createRoomsWith(final Room room) {
+    List<Room> data = createRooms(2);
+    data.add(room);
+    return data;
+  }
+
+  private static List<Room> createRooms(final int amount) {
+    List<Room> data = new ArrayList<>();
+    for (int i = 1; i <= amount; i++) {
+      Room room = new Room(i, "Room with id: " + i);
+      room.setSeats(10 + i);
+      room.setVersion(100 + i);
+      data.add(room);
+    }
+    return data;
+  }
+}
@@ -0,0 +1,34 @@
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the ETags of the {@link ResponseCache}.
+ */
+public class ResponseCacheTest {
+
+  @Test
+  public void eTagOfKey() {
+    ResponseCache cache = new ResponseCache(1024);
+    final String eTag = cache.getETag("application/json\nhttp://localhost/Teams\nTeams=3");
+
+    Assert.assertEquals(eTag, cache.getETag("application/json\nhttp://localhost/Teams\nTeams=3"));
+    Assert.assertFalse(eTag.equals(cache.getETag("application/json\nhttp://localhost/Teams\nTeams=4")));
+    // other cache (e.g. after a restart)
+    Assert.assertFalse(eTag.equals(
+        new ResponseCache(1024).getETag("application/json\nhttp://localhost/Teams\nTeams=3")));
+    Assert.assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+  }
+
+  @Test
+  public void ifNoneMatch() {
+    final String eTag = "\"0123\"";
+
+    Assert.assertTrue(ResponseCache.matches(eTag, eTag));
+    Assert.assertTrue(ResponseCache.matches("\"abc\", W/\"0123\"", eTag));
+    Assert.assertTrue(ResponseCache.matches("*", eTag));
+    Assert.assertFalse(ResponseCache.matches("\"abc\"", eTag));
+    Assert.assertFalse(ResponseCache.matches(null, eTag));
+  }
+}
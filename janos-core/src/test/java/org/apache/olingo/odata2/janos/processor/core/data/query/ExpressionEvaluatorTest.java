@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.query;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ */
+public class ExpressionEvaluatorTest {
+
+  private final ExpressionEvaluator evaluator = new ExpressionEvaluator(new AnnotationValueAccess());
+
+  @Test
+  public void numericComparison() throws Exception {
+    CompiledFilter filter = compile("Version gt 105");
+
+    Assert.assertTrue(filter.appliesTo(room(1, 106)));
+    Assert.assertFalse(filter.appliesTo(room(2, 105)));
+    Assert.assertFalse(filter.appliesTo(room(3, 99)));
+  }
+
+  @Test
+  public void arithmetic() throws Exception {
+    Assert.assertTrue(compile("Seats add 1 eq 12").appliesTo(room(1, 100)));
+    Assert.assertTrue(compile("Version div 4 eq 25.25").appliesTo(room(1, 101)));
+    Assert.assertTrue(compile("Version mod 7 eq 3").appliesTo(room(1, 101)));
+    Assert.assertTrue(compile("-Seats lt 0").appliesTo(room(1, 100)));
+  }
+
+  @Test
+  public void stringKeyComparedAsString() throws Exception {
+    Assert.assertTrue(compile("Id eq '10'").appliesTo(room(10, 100)));
+    Assert.assertTrue(compile("Id lt '2'").appliesTo(room(10, 100)));
+    Assert.assertFalse(compile("Id lt '2'").appliesTo(room(3, 100)));
+  }
+
+  @Test
+  public void stringMethods() throws Exception {
+    Room room = room(7, 100);
+
+    Assert.assertTrue(compile("substringof('id: 7', Name) and startswith(Name, 'Room')").appliesTo(room));
+    Assert.assertTrue(compile("tolower(Name) eq 'room with id: 7'").appliesTo(room));
+    Assert.assertTrue(compile("length(Name) eq 15 and indexof(Name, 'id') eq 10").appliesTo(room));
+    Assert.assertTrue(compile("substring(Name, 5, 4) eq 'with'").appliesTo(room));
+    Assert.assertFalse(compile("endswith(Name, '8')").appliesTo(room));
+  }
+
+  @Test
+  public void nullValues() throws Exception {
+    Room room = new Room(1, null);
+
+    Assert.assertTrue(compile("Name eq null").appliesTo(room));
+    Assert.assertFalse(compile("Name ne null").appliesTo(room));
+    Assert.assertFalse(compile("Name gt 'A'").appliesTo(room));
+    Assert.assertFalse(compile("startswith(Name, 'Room')").appliesTo(room));
+    Assert.assertFalse(compile("Name eq null").appliesTo(null));
+
+    // three-valued logic as in SQL (and the JPQL translation): a comparison with NULL is unknown, also if negated
+    Assert.assertFalse(compile("Name ne 'x'").appliesTo(room));
+    Assert.assertFalse(compile("not (Name eq 'x')").appliesTo(room));
+    Assert.assertFalse(compile("not (Name gt 'A' and Seats ge 0)").appliesTo(room));
+    Assert.assertTrue(compile("not (Name gt 'A' and Seats lt 0)").appliesTo(room));
+    Assert.assertTrue(compile("Name eq 'x' or Name eq null").appliesTo(room));
+  }
+
+  @Test
+  public void constantFolding() throws Exception {
+    Assert.assertTrue(evaluator.compile(null).isAll());
+    Assert.assertTrue(compile("1 add 2 eq 3").isAll());
+    Assert.assertTrue(compile("1 eq 1 or Seats gt 10").isAll());
+    Assert.assertFalse(compile("1 eq 2 and Seats gt 10").appliesTo(room(1, 100)));
+    Assert.assertFalse(compile("Seats gt 10").isAll());
+  }
+
+  @Test
+  public void appliesFilter() throws Exception {
+    Room room = room(1, 110);
+
+    Assert.assertTrue(evaluator.appliesFilter(room, parse("Version ge 110 and not (Seats eq 1)")));
+    Assert.assertTrue(evaluator.appliesFilter(room, null));
+    Assert.assertFalse(evaluator.appliesFilter(null, null));
+  }
+
+  @Test
+  public void sortNumeric() throws Exception {
+    List<Room> rooms = new ArrayList<>(Arrays.asList(room(1, 100), room(2, 9), room(3, 1000), room(4, 20)));
+
+    evaluator.getSorter(parseOrderBy("Version")).sort(rooms);
+    Assert.assertEquals(Arrays.asList("2", "4", "1", "3"), ids(rooms));
+
+    evaluator.getSorter(parseOrderBy("Version desc")).sort(rooms);
+    Assert.assertEquals(Arrays.asList("3", "1", "4", "2"), ids(rooms));
+  }
+
+  @Test
+  public void sortNullValues() throws Exception {
+    List<Room> rooms = new ArrayList<>(Arrays.asList(room(1, 100), new Room(2, null), room(3, 100)));
+
+    evaluator.getSorter(parseOrderBy("Name, Version")).sort(rooms);
+    Assert.assertEquals(Arrays.asList("1", "3", "2"), ids(rooms));
+
+    evaluator.getSorter(parseOrderBy("Name desc")).sort(rooms);
+    Assert.assertEquals(Arrays.asList("2", "3", "1"), ids(rooms));
+  }
+
+  @Test
+  public void sortTopWithBoundedHeap() throws Exception {
+    List<Room> rooms = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      // versions repeat so that the selection must be stable for equal sort keys
+      rooms.add(room(i, (i * 37) % 20));
+    }
+    List<Room> sorted = new ArrayList<>(rooms);
+    Sorter sorter = evaluator.getSorter(parseOrderBy("Version desc"));
+    sorter.sort(sorted);
+
+    sorter.sortTop(rooms, 12);
+    Assert.assertEquals(ids(sorted.subList(0, 12)), ids(rooms));
+  }
+
+  @Test
+  public void sortTopWithLargeLimit() throws Exception {
+    List<Room> rooms = new ArrayList<>(Arrays.asList(room(1, 100), room(2, 9), room(3, 1000), room(4, 20)));
+
+    evaluator.getSorter(parseOrderBy("Version")).sortTop(rooms, 3);
+    Assert.assertEquals(Arrays.asList("2", "4", "1"), ids(rooms));
+
+    evaluator.getSorter(parseOrderBy("Version")).sortTop(rooms, 0);
+    Assert.assertTrue(rooms.isEmpty());
+  }
+
+  @Test
+  public void sortByKey() throws Exception {
+    List<Room> rooms = new ArrayList<>(Arrays.asList(room(2, 100), room(10, 100), room(1, 100)));
+
+    // key property "Id" is an Edm.String
+    evaluator.getSorter(null, roomType()).sort(rooms);
+    Assert.assertEquals(Arrays.asList("1", "10", "2"), ids(rooms));
+  }
+
+  private Room room(int id, int version) {
+    Room room = new Room(id, "Room with id: " + id);
+    room.setSeats(11);
+    room.setVersion(version);
+    return room;
+  }
+
+  private CompiledFilter compile(String filter) throws Exception {
+    return evaluator.compile(parse(filter));
+  }
+
+  private List<String> ids(List<Room> rooms) {
+    List<String> ids = new ArrayList<>();
+    for (Room room : rooms) {
+      ids.add(room.getId());
+    }
+    return ids;
+  }
+
+  private FilterExpression parse(String filter) throws Exception {
+    return UriParserImpl.parseFilter(EdmMock.createMockEdm(), roomType(), filter);
+  }
+
+  private OrderByExpression parseOrderBy(String orderBy) throws Exception {
+    return UriParserImpl.parseOrderBy(EdmMock.createMockEdm(), roomType(), orderBy);
+  }
+
+  private EdmEntityType roomType() throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    return edm.getEntityType("RefScenario", "Room");
+  }
+}
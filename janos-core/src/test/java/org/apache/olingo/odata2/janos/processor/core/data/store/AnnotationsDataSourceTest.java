@@ -446,6 +446,45 @@ public class AnnotationsDataSourceTest {
     }
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readRelatedDataOfAllSources() throws Exception {
+    EdmEntitySet buildingsEntitySet = createMockedEdmEntitySet("Buildings");
+    EdmEntitySet roomsEntitySet = createMockedEdmEntitySet("Rooms");
+
+    Building first = new Building();
+    first.setName("First Building");
+    Building second = new Building();
+    second.setName("Second Building");
+    List<Room> rooms = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Room room = new Room(i, "Room " + i);
+      Building building = i < 4 ? first : second;
+      room.setBuilding(building);
+      building.getRooms().add(room);
+      datasource.createData(roomsEntitySet, room);
+      rooms.add(room);
+    }
+    Room roomWithoutBuilding = new Room(6, "Room 6");
+    datasource.createData(roomsEntitySet, roomWithoutBuilding);
+    rooms.add(roomWithoutBuilding);
+    datasource.createData(buildingsEntitySet, first);
+    datasource.createData(buildingsEntitySet, second);
+
+    // execute
+    Map<Object, Object> roomsOfBuildings = datasource.readRelatedData(
+        buildingsEntitySet, Arrays.asList(first, second), roomsEntitySet);
+    Map<Object, Object> buildingsOfRooms = datasource.readRelatedData(roomsEntitySet, rooms, buildingsEntitySet);
+
+    // validate
+    Assert.assertEquals(4, ((Collection<Room>) roomsOfBuildings.get(first)).size());
+    Assert.assertEquals(2, ((Collection<Room>) roomsOfBuildings.get(second)).size());
+    Assert.assertEquals(7, buildingsOfRooms.size());
+    Assert.assertEquals("First Building", ((Building) buildingsOfRooms.get(rooms.get(0))).getName());
+    Assert.assertEquals("Second Building", ((Building) buildingsOfRooms.get(rooms.get(5))).getName());
+    Assert.assertNull(buildingsOfRooms.get(roomWithoutBuilding));
+  }
+
   @Test
   @SuppressWarnings("unchecked")
   public void readRelatedEntity() throws Exception {
@@ -868,6 +907,42 @@ public class AnnotationsDataSourceTest {
     Assert.assertEquals(readBuilding, readRoom.getBuilding());
   }
 
+  @Test
+  public void writeRelationsColumnar() throws Exception {
+    DualDataStoreManager manager = new DualDataStoreManager();
+    manager.setDefaultProperty(DataStoreManager.KEEP_PERSISTENT, Boolean.FALSE.toString());
+    manager.setDefaultProperty(DataStoreManager.STORE_TYPE + ".Rooms", DataStoreManager.COLUMNAR);
+    AnnotationDataSource columnarSource = new AnnotationDataSource(Building.class.getPackage().getName(), manager);
+    DataStore<Building> buildingStore = columnarSource.getDataStore(Building.class);
+    DataStore<Room> roomStore = columnarSource.getDataStore(Room.class);
+    Assert.assertTrue(roomStore instanceof ColumnarDataStore);
+
+    EdmEntitySet buildingsEntitySet = createMockedEdmEntitySet("Buildings");
+    EdmEntitySet roomsEntitySet = createMockedEdmEntitySet("Rooms");
+
+    Building building = new Building();
+    building.setName("Common Building");
+    Building created = buildingStore.create(building);
+    Room room = new Room(42, "Room with Number");
+    room.setSeats(123);
+    roomStore.create(room);
+
+    Map<String, Object> targetEntityKeyValues = new HashMap<>();
+    targetEntityKeyValues.put("Id", created.getId());
+
+    // execute on a read room which is a copy of the stored row
+    Room sourceRoom = roomStore.read(new Room(42, ""));
+    columnarSource.writeRelation(roomsEntitySet, sourceRoom, buildingsEntitySet, targetEntityKeyValues);
+
+    // validate
+    Room readRoom = roomStore.read(new Room(42, ""));
+    Assert.assertNotSame(sourceRoom, readRoom);
+    Assert.assertNotNull(readRoom.getBuilding());
+    Assert.assertEquals(created.getId(), readRoom.getBuilding().getId());
+    Assert.assertEquals(123, readRoom.getSeats());
+    Assert.assertEquals(1, buildingStore.read(created).getRooms().size());
+  }
+
   private EdmEntitySet createMockedEdmEntitySet(final String entitySetName) throws ODataException {
     return createMockedEdmEntitySet(edmProvider, entitySetName);
   }
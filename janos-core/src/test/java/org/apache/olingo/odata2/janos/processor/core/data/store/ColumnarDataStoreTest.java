@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
+import org.apache.olingo.odata2.janos.processor.core.model.Building;
+import org.apache.olingo.odata2.janos.processor.core.model.Photo;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ */
+public class ColumnarDataStoreTest {
+
+  private ColumnarDataStore<Room> roomStore;
+
+  @Before
+  public void prepare() throws Exception {
+    roomStore = ColumnarDataStore.createColumnar(Room.class);
+    for (int i = 1; i <= 10; i++) {
+      Room r = new Room(i, "Room with id: " + i);
+      r.setSeats(10 + i);
+      r.setVersion(100 + i);
+      roomStore.create(r);
+    }
+  }
+
+  @Test
+  public void readMaterializesCopy() throws Exception {
+    Building building = new Building();
+    building.setId("1");
+    Room room = new Room(11, "Räume   mit ümlauts");
+    room.setBuilding(building);
+    roomStore.create(room);
+
+    Room read = roomStore.read(new Room(11, null));
+    Assert.assertNotSame(room, read);
+    Assert.assertEquals("Räume   mit ümlauts", read.getName());
+    Assert.assertSame(building, read.getBuilding());
+    Assert.assertEquals(13, roomStore.read(new Room(3, null)).getSeats());
+    Assert.assertNull(roomStore.read(new Room(12, null)));
+  }
+
+  @Test
+  public void modifications() throws Exception {
+    final long created = roomStore.getVersion();
+    Room room = roomStore.read(new Room(3, null));
+    room.setSeats(42);
+    room.setName(null);
+    Assert.assertEquals(13, roomStore.read(new Room(3, null)).getSeats());
+
+    roomStore.update(room);
+    Room updated = roomStore.read(new Room(3, null));
+    Assert.assertEquals(42, updated.getSeats());
+    Assert.assertNull(updated.getName());
+    Assert.assertTrue(roomStore.getVersion() > created);
+
+    Assert.assertEquals("Room with id: 4", roomStore.delete(new Room(4, null)).getName());
+    Assert.assertNull(roomStore.read(new Room(4, null)));
+    Assert.assertNull(roomStore.delete(new Room(4, null)));
+    Assert.assertEquals(Long.valueOf(9), roomStore.count(ReadOptions.none()));
+
+    // used key is replaced by a generated one
+    Room duplicate = roomStore.create(new Room(5, "Duplicate"));
+    Assert.assertFalse("5".equals(duplicate.getId()));
+    Assert.assertEquals("Room with id: 5", roomStore.read(new Room(5, null)).getName());
+    Assert.assertEquals("Duplicate", roomStore.read(duplicate).getName());
+    Assert.assertEquals(10, roomStore.read().size());
+  }
+
+  @Test
+  public void manyRows() throws Exception {
+    ColumnarDataStore<Room> store = ColumnarDataStore.createColumnar(Room.class);
+    final int count = 40000;
+    for (int i = 0; i < count; i++) {
+      Room room = new Room(i, i % 2 == 0 ? "Even" : "Odd " + i);
+      room.setSeats(i);
+      store.create(room);
+    }
+    for (int i = 0; i < count; i += 2) {
+      store.delete(new Room(i, null));
+    }
+    for (int i = 0; i < count; i += 4) {
+      store.create(new Room(count + i, "Reused"));
+    }
+
+    Assert.assertEquals(Long.valueOf(count / 2 + count / 4), store.count(ReadOptions.none()));
+    Assert.assertNull(store.read(new Room(2000, null)));
+    Assert.assertEquals(39999, store.read(new Room(39999, null)).getSeats());
+    Assert.assertEquals("Odd 39999", store.read(new Room(39999, null)).getName());
+    Assert.assertEquals("Reused", store.read(new Room(count + 4, null)).getName());
+    Set<String> ids = new HashSet<>();
+    for (Room room : store.read()) {
+      ids.add(room.getId());
+    }
+    Assert.assertEquals(count / 2 + count / 4, ids.size());
+  }
+
+  @Test
+  public void readAllInDefaultOrder() throws Exception {
+    ReadResult<Room> result = roomStore.read(ReadOptions.none());
+
+    Assert.assertTrue(result.isOrderApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(10, ids.size());
+    Assert.assertEquals("1", ids.get(0));
+    Assert.assertEquals("10", ids.get(1));
+    Assert.assertEquals("9", ids.get(9));
+  }
+
+  @Test
+  public void readPageInDefaultOrder() throws Exception {
+    ReadResult<Room> result = roomStore.read(ReadOptions.start(null, 2).top(3).totalCount(true).build());
+
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.isTopApplied());
+    Assert.assertEquals(Long.valueOf(10), result.getTotalCount());
+    List<String> ids = ids(result);
+    Assert.assertEquals(3, ids.size());
+    Assert.assertEquals("2", ids.get(0));
+    Assert.assertEquals("4", ids.get(2));
+  }
+
+  @Test
+  public void readWithCursorInDefaultOrder() throws Exception {
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList("3"));
+    ReadResult<Room> result = roomStore.read(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+
+    Assert.assertTrue(result.isSkipApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(6, ids.size());
+    Assert.assertEquals("4", ids.get(0));
+    Assert.assertEquals("9", ids.get(5));
+  }
+
+  @Test
+  public void readInTypedDefaultOrder() throws Exception {
+    // the key of a building is an Edm.Int32 (held as string) and hence ordered numerically
+    ColumnarDataStore<Building> buildingStore = ColumnarDataStore.createColumnar(Building.class);
+    for (String id : Arrays.asList("10", "2", "1", "11", "9")) {
+      Building building = new Building();
+      building.setId(id);
+      buildingStore.create(building);
+    }
+
+    ReadResult<Building> result = buildingStore.read(ReadOptions.none());
+    List<String> ids = new ArrayList<>();
+    for (Building building : result.getResult()) {
+      ids.add(building.getId());
+    }
+    Assert.assertEquals(Arrays.asList("1", "2", "9", "10", "11"), ids);
+
+    // a cursor contains the key value as decoded for the Edm.Int32 key
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList(9L));
+    result = buildingStore.read(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+    Assert.assertTrue(result.isSkipApplied());
+    ids.clear();
+    for (Building building : result.getResult()) {
+      ids.add(building.getId());
+    }
+    Assert.assertEquals(Arrays.asList("10", "11"), ids);
+  }
+
+  @Test
+  public void readFilterOrderSkipTop() throws Exception {
+    ReadOptions readOptions = readOptions("Version gt 102", "Seats desc").skip(null, 2).top(3).build();
+    ReadResult<Room> result = roomStore.read(readOptions);
+
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertTrue(result.isOrderApplied());
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.isTopApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(3, ids.size());
+    Assert.assertEquals("8", ids.get(0));
+    Assert.assertEquals("6", ids.get(2));
+    Assert.assertEquals(Long.valueOf(3), roomStore.count(readOptions("Seats ge 12 and Seats lt 15", null).build()));
+  }
+
+  @Test
+  public void readWithCompositeKey() throws Exception {
+    ColumnarDataStore<Photo> photoStore = ColumnarDataStore.createColumnar(Photo.class);
+    photoStore.create(photo("Photo", "PNG"));
+    photoStore.create(photo("Photo", "JPEG"));
+    Photo generated = photoStore.create(photo("Photo", null));
+
+    Assert.assertEquals(3, photoStore.read().size());
+    Assert.assertEquals("JPEG", photoStore.read(photo("Photo", "JPEG")).getType());
+    Assert.assertNotNull(photoStore.read(photo("Photo", generated.getType())));
+    Assert.assertNull(photoStore.read(photo("Other", "PNG")));
+    Assert.assertTrue(photoStore.isKeyEqualChecked(photo("Photo", "PNG"), photo("Photo", "PNG")));
+  }
+
+  @Test
+  public void selectedByStoreType() throws Exception {
+    DualDataStoreManager manager = new DualDataStoreManager();
+    manager.setDefaultProperty(DataStoreManager.STORE_TYPE + ".Rooms", DataStoreManager.COLUMNAR);
+
+    Assert.assertTrue(manager.grantDataStore("Rooms", Room.class) instanceof ColumnarDataStore);
+    Assert.assertTrue(manager.grantDataStore("Buildings", Building.class) instanceof InMemoryDataStore);
+  }
+
+  private Photo photo(String name, String type) {
+    Photo photo = new Photo();
+    photo.setName(name);
+    photo.setType(type);
+    return photo;
+  }
+
+  private List<String> ids(ReadResult<Room> result) {
+    List<String> ids = new ArrayList<>();
+    for (Room room : result.getResult()) {
+      ids.add(room.getId());
+    }
+    return ids;
+  }
+
+  private ReadOptions.Builder readOptions(String filter, String orderBy) throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    EdmEntityType roomType = edm.getEntityType("RefScenario", "Room");
+    ReadOptions.Builder options = ReadOptions.start();
+    if (filter != null) {
+      options.filter(UriParserImpl.parseFilter(edm, roomType, filter));
+    }
+    if (orderBy != null) {
+      options.order(UriParserImpl.parseOrderBy(edm, roomType, orderBy));
+    }
+    return options;
+  }
+}
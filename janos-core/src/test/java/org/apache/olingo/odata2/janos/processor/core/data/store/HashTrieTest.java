@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *
+ */
+public class HashTrieTest {
+
+  @Test
+  public void putGetRemove() {
+    HashTrie<Integer, String> trie = HashTrie.empty();
+    for (int i = 0; i < 1000; i++) {
+      trie = trie.put(i, "v" + i);
+    }
+    Assert.assertEquals(1000, trie.size());
+    Assert.assertEquals("v42", trie.get(42));
+    Assert.assertNull(trie.get(1000));
+
+    HashTrie<Integer, String> removed = trie;
+    for (int i = 0; i < 1000; i += 2) {
+      removed = removed.remove(i);
+    }
+    Assert.assertEquals(500, removed.size());
+    Assert.assertNull(removed.get(42));
+    Assert.assertEquals("v43", removed.get(43));
+    // the previous version is not modified
+    Assert.assertEquals(1000, trie.size());
+    Assert.assertEquals("v42", trie.get(42));
+    Assert.assertSame(removed, removed.remove(42));
+  }
+
+  @Test
+  public void putReplacesValue() {
+    HashTrie<String, String> trie = HashTrie.<String, String>empty().put("a", "1").put("b", "2");
+    final String value = "3";
+    HashTrie<String, String> replaced = trie.put("a", value);
+    Assert.assertEquals(2, replaced.size());
+    Assert.assertEquals("3", replaced.get("a"));
+    Assert.assertEquals("1", trie.get("a"));
+    Assert.assertSame(replaced, replaced.put("a", value));
+  }
+
+  @Test
+  public void collidingKeys() {
+    HashTrie<CollidingKey, Integer> trie = HashTrie.empty();
+    for (int i = 0; i < 10; i++) {
+      trie = trie.put(new CollidingKey(i % 2, i), i);
+    }
+    Assert.assertEquals(10, trie.size());
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(Integer.valueOf(i), trie.get(new CollidingKey(i % 2, i)));
+    }
+    Assert.assertNull(trie.get(new CollidingKey(0, 1)));
+
+    for (int i = 0; i < 9; i++) {
+      trie = trie.remove(new CollidingKey(i % 2, i));
+    }
+    Assert.assertEquals(1, trie.size());
+    Assert.assertEquals(Integer.valueOf(9), trie.get(new CollidingKey(1, 9)));
+    Assert.assertEquals(Integer.valueOf(9), trie.values().iterator().next());
+  }
+
+  @Test
+  public void randomModifications() {
+    Random random = new Random(4711);
+    Map<Integer, Integer> expected = new HashMap<>();
+    HashTrie<Integer, Integer> trie = HashTrie.empty();
+    for (int i = 0; i < 20000; i++) {
+      Integer key = random.nextInt(2000) * 65536;
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        trie = trie.remove(key);
+      } else {
+        expected.put(key, i);
+        trie = trie.put(key, i);
+      }
+    }
+    Assert.assertEquals(expected.size(), trie.size());
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      Assert.assertEquals(entry.getValue(), trie.get(entry.getKey()));
+    }
+    Assert.assertEquals(new HashSet<>(expected.values()), new HashSet<>(trie.values()));
+  }
+
+  private static final class CollidingKey {
+    private final int hash;
+    private final int id;
+
+    CollidingKey(final int hash, final int id) {
+      this.hash = hash;
+      this.id = id;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof CollidingKey && ((CollidingKey) obj).id == id;
+    }
+  }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.core.model.Building;
+import org.apache.olingo.odata2.janos.processor.core.model.Photo;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class InMemoryDataStoreTest {
+
+  private InMemoryDataStore<Room> roomStore;
+
+  @Before
+  public void prepare() throws Exception {
+    roomStore = InMemoryDataStore.createInMemory(Room.class);
+    for (int i = 1; i <= 10; i++) {
+      Room r = new Room(i, "Room with id: " + i);
+      r.setSeats(10 + i);
+      r.setVersion(100 + i);
+      roomStore.create(r);
+    }
+  }
+
+  @Test
+  public void readAllInDefaultOrder() throws Exception {
+    ReadResult<Room> result = roomStore.read(ReadOptions.none());
+
+    Assert.assertTrue(result.isOrderApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(10, ids.size());
+    Assert.assertEquals("1", ids.get(0));
+    Assert.assertEquals("10", ids.get(1));
+    Assert.assertEquals("9", ids.get(9));
+  }
+
+  @Test
+  public void readFilterOrderSkipTop() throws Exception {
+    ReadOptions readOptions = readOptions("Version gt 102", "Seats desc").skip(null, 2).top(3).build();
+    ReadResult<Room> result = roomStore.read(readOptions);
+
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertTrue(result.isOrderApplied());
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.isTopApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(3, ids.size());
+    Assert.assertEquals("8", ids.get(0));
+    Assert.assertEquals("6", ids.get(2));
+  }
+
+  @Test
+  public void versionChangesOnModification() throws Exception {
+    final long created = roomStore.getVersion();
+    Room room = roomStore.read(new Room(3, null));
+    Assert.assertEquals(created, roomStore.getVersion());
+
+    roomStore.update(room);
+    final long updated = roomStore.getVersion();
+    Assert.assertTrue(updated > created);
+    roomStore.delete(room);
+    Assert.assertTrue(roomStore.getVersion() > updated);
+  }
+
+  @Test
+  public void concurrentCreateWithUsedKeys() throws Exception {
+    final int threads = 4;
+    final int perThread = 250;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < perThread; i++) {
+          // key of an existing room which is replaced by a generated key
+          roomStore.create(new Room(1, "Concurrent room"));
+          Assert.assertFalse(roomStore.read().isEmpty());
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Collection<Room> rooms = roomStore.read();
+    Assert.assertEquals(10 + threads * perThread, rooms.size());
+    Set<String> ids = new HashSet<>();
+    for (Room room : rooms) {
+      ids.add(room.getId());
+    }
+    Assert.assertEquals(rooms.size(), ids.size());
+  }
+
+  @Test
+  public void readSkipBeyondSize() throws Exception {
+    ReadResult<Room> result = roomStore.read(ReadOptions.start(null, 20).build());
+
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.getResult().isEmpty());
+  }
+
+  @Test
+  public void readWithSkipTokenLeavesSkipAndTop() throws Exception {
+    ReadOptions readOptions = readOptions("Seats lt 15", null).skip("2", 1).top(2).build();
+    ReadResult<Room> result = roomStore.read(readOptions);
+
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertTrue(result.isOrderApplied());
+    Assert.assertFalse(result.isSkipApplied());
+    Assert.assertFalse(result.isTopApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(4, ids.size());
+    Assert.assertEquals("1", ids.get(0));
+    Assert.assertEquals("4", ids.get(3));
+  }
+
+  @Test
+  public void readWithCursorSeeksPosition() throws Exception {
+    Cursor cursor = new Cursor(Collections.<Object>singletonList(15L), Collections.<Object>singletonList("5"));
+    ReadOptions readOptions = readOptions("Version gt 102", "Seats desc")
+        .skip("cursor", null).cursor(cursor).top(1).build();
+    ReadResult<Room> result = roomStore.read(readOptions);
+
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.isTopApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(1, ids.size());
+    Assert.assertEquals("4", ids.get(0));
+  }
+
+  @Test
+  public void readWithCursorInDefaultOrder() throws Exception {
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList("3"));
+    ReadResult<Room> result = roomStore.read(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+
+    Assert.assertTrue(result.isSkipApplied());
+    List<String> ids = ids(result);
+    Assert.assertEquals(6, ids.size());
+    Assert.assertEquals("4", ids.get(0));
+    Assert.assertEquals("9", ids.get(5));
+  }
+
+  @Test
+  public void readInTypedDefaultOrder() throws Exception {
+    // the key of a building is an Edm.Int32 (held as string) and hence ordered numerically
+    InMemoryDataStore<Building> buildingStore = InMemoryDataStore.createInMemory(Building.class);
+    for (String id : Arrays.asList("10", "2", "1", "11", "9")) {
+      buildingStore.create(building(id));
+    }
+
+    ReadResult<Building> result = buildingStore.read(ReadOptions.none());
+    List<String> ids = new ArrayList<>();
+    for (Building building : result.getResult()) {
+      ids.add(building.getId());
+    }
+    Assert.assertEquals(Arrays.asList("1", "2", "9", "10", "11"), ids);
+
+    // a cursor contains the key value as decoded for the Edm.Int32 key
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList(9L));
+    result = buildingStore.read(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+    Assert.assertTrue(result.isSkipApplied());
+    ids.clear();
+    for (Building building : result.getResult()) {
+      ids.add(building.getId());
+    }
+    Assert.assertEquals(Arrays.asList("10", "11"), ids);
+  }
+
+  @Test
+  public void count() throws Exception {
+    Assert.assertEquals(Long.valueOf(10), roomStore.count(ReadOptions.none()));
+    Assert.assertEquals(Long.valueOf(8), roomStore.count(readOptions("Version gt 102", null).build()));
+  }
+
+  @Test
+  public void countWithNullValues() throws Exception {
+    roomStore.create(new Room(11, null));
+
+    // a comparison with NULL never applies, also not if negated (as in the JPQL translation)
+    Assert.assertEquals(Long.valueOf(10), roomStore.count(readOptions("Name ne 'x'", null).build()));
+    Assert.assertEquals(Long.valueOf(10), roomStore.count(readOptions("not (Name eq 'x')", null).build()));
+    Assert.assertEquals(Long.valueOf(1), roomStore.count(readOptions("Name eq null", null).build()));
+  }
+
+  @Test
+  public void readWithIndexes() throws Exception {
+    // hash index (Version) and sorted index (Seats) with the remaining condition on Name
+    ReadResult<Room> result = roomStore.read(readOptions("Version eq 105 and Name ne 'x'", null).build());
+    Assert.assertEquals(Collections.singletonList("5"), ids(result));
+
+    result = roomStore.read(readOptions("Seats ge 13 and 16 gt Seats", "Seats desc").build());
+    Assert.assertEquals(Arrays.asList("5", "4", "3"), ids(result));
+    Assert.assertEquals(Long.valueOf(3), roomStore.count(readOptions("Seats ge 13 and 16 gt Seats", null).build()));
+
+    result = roomStore.read(readOptions("Seats gt 15 and Version le 107 and Seats lt 100", null).build());
+    Assert.assertEquals(Arrays.asList("6", "7"), ids(result));
+    result = roomStore.read(readOptions("Seats eq 12 and Seats eq 13", null).build());
+    Assert.assertTrue(result.getResult().isEmpty());
+
+    // indexes are maintained on update, create and delete
+    Room room = roomStore.read(new Room(5, null));
+    room.setVersion(200);
+    roomStore.update(room);
+    Room created = new Room(42, "Created room");
+    created.setSeats(14);
+    created.setVersion(200);
+    roomStore.create(created);
+    roomStore.delete(new Room(4, null));
+    result = roomStore.read(readOptions("Version eq 200", null).build());
+    Assert.assertEquals(Arrays.asList("42", "5"), ids(result));
+    result = roomStore.read(readOptions("Seats ge 13 and Seats lt 16", null).build());
+    Assert.assertEquals(Arrays.asList("3", "42", "5"), ids(result));
+  }
+
+  @Test
+  public void readTotalCount() throws Exception {
+    ReadOptions readOptions = readOptions("Version gt 102", null).top(2).totalCount(true).build();
+    ReadResult<Room> result = roomStore.read(readOptions);
+
+    Assert.assertTrue(result.isTopApplied());
+    Assert.assertEquals(2, result.getResult().size());
+    Assert.assertEquals(Long.valueOf(8), result.getTotalCount());
+  }
+
+  @Test
+  public void readReferencing() throws Exception {
+    Building first = building("1");
+    Building second = building("2");
+    for (int i = 1; i <= 4; i++) {
+      roomStore.read(new Room(i, null)).setBuilding(first);
+    }
+    roomStore.read(new Room(5, null)).setBuilding(second);
+
+    Assert.assertEquals(4, roomStore.readReferencing("building", Collections.singletonList(first)).size());
+    Assert.assertNull(roomStore.readReferencing("employees", Collections.singletonList(first)));
+
+    Room moved = roomStore.read(new Room(1, null));
+    moved.setBuilding(second);
+    roomStore.update(moved);
+    roomStore.delete(new Room(2, null));
+    Assert.assertEquals(2, roomStore.readReferencing("building", Collections.singletonList(first)).size());
+    Collection<Room> rooms = roomStore.readReferencing("building", Collections.singletonList(second));
+    Assert.assertEquals(2, rooms.size());
+    Assert.assertTrue(rooms.contains(moved));
+
+    // referenced building gets its key after the room is created
+    Building third = building(null);
+    Room created = new Room(11, "Room with id: 11");
+    created.setBuilding(third);
+    roomStore.create(created);
+    Assert.assertEquals(4, roomStore.readReferencing("building", Arrays.asList(first, second)).size());
+    third.setId("3");
+    Assert.assertEquals(Collections.singletonList(created),
+        roomStore.readReferencing("building", Collections.singletonList(third)));
+  }
+
+  @Test
+  public void readSnapshot() throws Exception {
+    InMemoryDataStore<Building> buildingStore = InMemoryDataStore.createInMemory(Building.class);
+    Building building = buildingStore.create(building("1"));
+    roomStore.read(new Room(1, null)).setBuilding(building);
+    roomStore.read(new Room(2, null)).setBuilding(building);
+    Assert.assertEquals(2, roomStore.readReferencing("building", Collections.singletonList(building)).size());
+
+    try (InMemorySnapshot ignored = InMemorySnapshot.open()) {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      executor.submit(() -> {
+        roomStore.delete(new Room(1, null));
+        roomStore.create(new Room(11, "Room with id: 11"));
+        buildingStore.create(building("2"));
+        return null;
+      }).get();
+      executor.shutdown();
+
+      // modifications of other threads are not visible in the snapshot
+      Assert.assertEquals(10, roomStore.read().size());
+      Assert.assertNotNull(roomStore.read(new Room(1, null)));
+      Assert.assertNull(roomStore.read(new Room(11, null)));
+      Assert.assertEquals(Long.valueOf(10), roomStore.count(ReadOptions.none()));
+      Assert.assertEquals(1, buildingStore.read().size());
+      Assert.assertEquals(2, roomStore.readReferencing("building", Collections.singletonList(building)).size());
+
+      // own modifications advance the snapshot
+      roomStore.create(new Room(12, "Room with id: 12"));
+      Assert.assertNull(roomStore.read(new Room(1, null)));
+      Assert.assertNotNull(roomStore.read(new Room(11, null)));
+      Assert.assertNotNull(roomStore.read(new Room(12, null)));
+      Assert.assertEquals(2, buildingStore.read().size());
+      Assert.assertEquals(1, roomStore.readReferencing("building", Collections.singletonList(building)).size());
+    }
+    Assert.assertEquals(11, roomStore.read().size());
+  }
+
+  @Test
+  public void versionOfSnapshot() throws Exception {
+    try (InMemorySnapshot ignored = InMemorySnapshot.open()) {
+      final long opened = roomStore.getVersion();
+      // a modification of another thread between the opening of the snapshot and the read of the version
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      executor.submit(() -> roomStore.create(new Room(11, "Room with id: 11"))).get();
+      executor.shutdown();
+
+      // the version fits to the entities which are read in the snapshot
+      Assert.assertEquals(opened, roomStore.getVersion());
+      Assert.assertNull(roomStore.read(new Room(11, null)));
+
+      // own modifications advance the snapshot
+      roomStore.create(new Room(12, "Room with id: 12"));
+      Assert.assertTrue(roomStore.getVersion() > opened + 1);
+    }
+    Assert.assertNotNull(roomStore.read(new Room(11, null)));
+  }
+
+  @Test
+  public void readWithCompositeKey() throws Exception {
+    InMemoryDataStore<Photo> photoStore = InMemoryDataStore.createInMemory(Photo.class);
+    photoStore.create(photo("Photo", "PNG"));
+    photoStore.create(photo("Photo", "JPEG"));
+    // missing key value is generated
+    Photo generated = photoStore.create(photo("Photo", null));
+
+    Assert.assertEquals(3, photoStore.read().size());
+    Assert.assertEquals("JPEG", photoStore.read(photo("Photo", "JPEG")).getType());
+    Assert.assertNotNull(generated.getType());
+    Assert.assertSame(generated, photoStore.read(photo("Photo", generated.getType())));
+    Assert.assertNull(photoStore.read(photo("Other", "PNG")));
+    Assert.assertTrue(photoStore.isKeyEqualChecked(photo("Photo", "PNG"), photo("Photo", "PNG")));
+    Assert.assertFalse(photoStore.isKeyEqualChecked(photo("Photo", "PNG"), photo("Photo", "JPEG")));
+
+    photoStore.delete(photo("Photo", "PNG"));
+    Assert.assertNull(photoStore.read(photo("Photo", "PNG")));
+    Assert.assertEquals(2, photoStore.read().size());
+  }
+
+  private Photo photo(String name, String type) {
+    Photo photo = new Photo();
+    photo.setName(name);
+    photo.setType(type);
+    return photo;
+  }
+
+  private Building building(String id) {
+    Building building = new Building();
+    building.setId(id);
+    return building;
+  }
+
+  private List<String> ids(ReadResult<Room> result) {
+    List<String> ids = new ArrayList<>();
+    for (Room room : result.getResult()) {
+      ids.add(room.getId());
+    }
+    return ids;
+  }
+
+  private ReadOptions.Builder readOptions(String filter, String orderBy) throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    EdmEntityType roomType = edm.getEntityType("RefScenario", "Room");
+    ReadOptions.Builder options = ReadOptions.start();
+    if (filter != null) {
+      options.filter(UriParserImpl.parseFilter(edm, roomType, filter));
+    }
+    if (orderBy != null) {
+      options.order(UriParserImpl.parseOrderBy(edm, roomType, orderBy));
+    }
+    return options;
+  }
+}
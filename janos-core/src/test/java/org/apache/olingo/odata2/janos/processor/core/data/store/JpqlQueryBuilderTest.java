@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.api.data.Cursor;
+import org.apache.olingo.odata2.janos.processor.api.data.NavigationPath;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.core.model.Building;
+import org.apache.olingo.odata2.janos.processor.core.model.Employee;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ */
+public class JpqlQueryBuilderTest {
+
+  private JpqlQueryBuilder builder = new JpqlQueryBuilder(Room.class);
+
+  @Test
+  public void noFilter() throws Exception {
+    JpqlQuery query = builder.build(ReadOptions.none());
+
+    Assert.assertEquals("SELECT t FROM Room t ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertTrue(query.getBindings().isEmpty());
+  }
+
+  @Test
+  public void comparison() throws Exception {
+    ReadOptions options = readOptions("Version gt 105");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.version > :p0 ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertEquals(Integer.valueOf(105), bind(query, options, 0));
+  }
+
+  @Test
+  public void conjunctionWithLike() throws Exception {
+    ReadOptions options = readOptions("Seats ge 10 and substringof('1%', Name)");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.seats >= :p0 AND t.name LIKE :p1 ESCAPE '!'"
+        + " ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertEquals(Integer.valueOf(10), bind(query, options, 0));
+    Assert.assertEquals("%1!%%", bind(query, options, 1));
+  }
+
+  @Test
+  public void disjunctionAndNull() throws Exception {
+    ReadOptions options = readOptions("startswith(Name, 'Room') or Name eq null");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE (t.name LIKE :p0 ESCAPE '!' OR t.name IS NULL)"
+        + " ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertEquals("Room%", bind(query, options, 0));
+  }
+
+  @Test
+  public void negationWithNull() throws Exception {
+    // rows with a NULL name do not apply (SQL three-valued logic), as for the in memory evaluation
+    ReadOptions options = readOptions("Name ne 'x' and not (Name eq 'y')");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.name <> :p0 AND NOT (t.name = :p1)"
+        + " ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+  }
+
+  @Test
+  public void stringFunctions() throws Exception {
+    ReadOptions options = readOptions("tolower(Name) eq 'room 1' and not (length(Name) lt 3)");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE LOWER(t.name) = :p0 AND NOT (LENGTH(t.name) < :p1)"
+        + " ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertEquals("room 1", bind(query, options, 0));
+    Assert.assertEquals(Integer.valueOf(3), bind(query, options, 1));
+  }
+
+  @Test
+  public void partialTranslation() throws Exception {
+    ReadOptions options = readOptions("Version div 2 eq 51 and Seats gt 12");
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.seats > :p0 ORDER BY t.id ASC", query.getJpql());
+    Assert.assertFalse(query.isFilterApplied());
+    Assert.assertEquals(Integer.valueOf(12), bind(query, options, 0));
+  }
+
+  @Test
+  public void order() throws Exception {
+    JpqlQuery query = builder.build(readOptions(null, "Name desc, Seats"));
+
+    Assert.assertEquals("SELECT t FROM Room t ORDER BY t.name DESC, t.seats ASC, t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isOrderApplied());
+  }
+
+  @Test
+  public void orderByKey() throws Exception {
+    JpqlQuery query = builder.build(readOptions("Seats gt 10", "Id desc"));
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.seats > :p0 ORDER BY t.id DESC", query.getJpql());
+    Assert.assertTrue(query.isOrderApplied());
+  }
+
+  @Test
+  public void orderByFunctionNotApplied() throws Exception {
+    JpqlQuery query = builder.build(readOptions("Seats gt 10", "tolower(Name)"));
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.seats > :p0", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertFalse(query.isOrderApplied());
+  }
+
+  @Test
+  public void seekCursorInKeyOrder() throws Exception {
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList("7"));
+    ReadOptions options = start("Seats gt 10", null).skip("cursor", null).cursor(cursor).build();
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE t.seats > :p0 AND ((t.id > :p1)) ORDER BY t.id ASC",
+        query.getJpql());
+    Assert.assertTrue(query.isCursorApplied());
+    Assert.assertEquals(Integer.valueOf(10), bind(query, options, 0));
+    Assert.assertEquals(Integer.valueOf(7), bind(query, options, 1));
+  }
+
+  @Test
+  public void cursorShapeCached() throws Exception {
+    // a cursor which can not be seeked (NULL key value) does not hide the seek query of its shape
+    Cursor nullKey = new Cursor(Collections.emptyList(), Collections.singletonList(null));
+    JpqlQuery query = builder.build(ReadOptions.start().skip("cursor", null).cursor(nullKey).build());
+    Assert.assertEquals("SELECT t FROM Room t ORDER BY t.id ASC", query.getJpql());
+    Assert.assertFalse(query.isCursorApplied());
+
+    Cursor cursor = new Cursor(Collections.emptyList(), Collections.<Object>singletonList("7"));
+    query = builder.build(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+    Assert.assertTrue(query.isCursorApplied());
+
+    // and neither does a cursor with another number of key values
+    Cursor twoKeys = new Cursor(Collections.emptyList(), Arrays.<Object>asList("7", "8"));
+    query = builder.build(ReadOptions.start().skip("cursor", null).cursor(twoKeys).build());
+    Assert.assertFalse(query.isCursorApplied());
+    query = builder.build(ReadOptions.start().skip("cursor", null).cursor(cursor).build());
+    Assert.assertTrue(query.isCursorApplied());
+  }
+
+  @Test
+  public void cursorWithOrderNotApplied() throws Exception {
+    Cursor cursor = new Cursor(Collections.<Object>singletonList("Room 1"), Collections.<Object>singletonList("7"));
+    ReadOptions options = start(null, "Name").skip("cursor", null).cursor(cursor).build();
+    JpqlQuery query = builder.build(options);
+
+    Assert.assertEquals("SELECT t FROM Room t ORDER BY t.name ASC, t.id ASC", query.getJpql());
+    Assert.assertFalse(query.isCursorApplied());
+  }
+
+  @Test
+  public void count() throws Exception {
+    ReadOptions options = readOptions("Seats gt 10", "Name");
+    JpqlQuery query = builder.buildCount(options);
+
+    Assert.assertEquals("SELECT COUNT(t) FROM Room t WHERE t.seats > :p0", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    Assert.assertEquals(Integer.valueOf(10), bind(query, options, 0));
+  }
+
+  @Test
+  public void projection() throws Exception {
+    ReadOptions options = ReadOptions.start().select(Arrays.asList("Id", "Name")).build();
+    JpqlQuery query = builder.buildProjection(null, options);
+
+    Assert.assertEquals("SELECT t.id, t.name FROM Room t ORDER BY t.id ASC", query.getJpql());
+    Assert.assertEquals(2, query.getProjection().size());
+    Assert.assertEquals("name", query.getProjection().get(1).getName());
+
+    Assert.assertNull(builder.buildProjection(null, ReadOptions.start().select(Arrays.asList("nr_Building")).build()));
+  }
+
+  @Test
+  public void navigationWithFilter() throws Exception {
+    Building building = new Building();
+    building.setId("1");
+    NavigationPath path = NavigationPath.start(building).navigate("rooms").build();
+    ReadOptions options = readOptions("Seats gt 10");
+    JpqlQuery query = builder.build(path, options);
+
+    Assert.assertEquals("SELECT t FROM Room t WHERE EXISTS (SELECT s0 FROM Building s0 JOIN s0.rooms s1"
+        + " WHERE s1 = t AND s0.id = :p0) AND t.seats > :p1 ORDER BY t.id ASC", query.getJpql());
+    Assert.assertTrue(query.isFilterApplied());
+    List<Object> values = builder.getLiteralValues(path, options);
+    Assert.assertEquals("1", query.getBindings().get(0).bind(values));
+    Assert.assertEquals(Integer.valueOf(10), query.getBindings().get(1).bind(values));
+
+    JpqlQuery countQuery = builder.buildCount(path, options);
+    Assert.assertEquals("SELECT COUNT(t) FROM Room t WHERE EXISTS (SELECT s0 FROM Building s0 JOIN s0.rooms s1"
+        + " WHERE s1 = t AND s0.id = :p0) AND t.seats > :p1", countQuery.getJpql());
+  }
+
+  @Test
+  public void navigationOverKeyedSegment() throws Exception {
+    Building building = new Building();
+    building.setId("1");
+    NavigationPath path = NavigationPath.start(building)
+        .navigate("rooms", new Room(3, null)).navigate("employees").build();
+    JpqlQueryBuilder employeeBuilder = new JpqlQueryBuilder(Employee.class);
+    JpqlQuery query = employeeBuilder.build(path, ReadOptions.none());
+
+    Assert.assertEquals("SELECT t FROM Employee t WHERE EXISTS (SELECT s0 FROM Building s0 JOIN s0.rooms s1"
+        + " JOIN s1.employees s2 WHERE s2 = t AND s0.id = :p0 AND s1.id = :p1) ORDER BY t.employeeId ASC",
+        query.getJpql());
+    List<Object> values = employeeBuilder.getLiteralValues(path, ReadOptions.none());
+    Assert.assertEquals(Integer.valueOf(3), query.getBindings().get(1).bind(values));
+  }
+
+  @Test
+  public void cachedPerShape() throws Exception {
+    ReadOptions first = readOptions("Seats gt 10 and Name eq 'Room 1'", "Name");
+    ReadOptions second = readOptions("Seats gt 12 and Name eq 'Room 2'", "Name");
+    ReadOptions otherOrder = readOptions("Seats gt 12 and Name eq 'Room 2'", "Seats");
+
+    JpqlQuery query = builder.build(first);
+    Assert.assertSame(query, builder.build(second));
+    Assert.assertNotSame(query, builder.build(otherOrder));
+    Assert.assertEquals(Integer.valueOf(12), bind(query, second, 0));
+    Assert.assertEquals("Room 2", bind(query, second, 1));
+  }
+
+  private Object bind(JpqlQuery query, ReadOptions options, int parameter) throws Exception {
+    List<Object> literalValues = builder.getLiteralValues(options);
+    return query.getBindings().get(parameter).bind(literalValues);
+  }
+
+  private ReadOptions readOptions(String filter) throws Exception {
+    return readOptions(filter, null);
+  }
+
+  private ReadOptions readOptions(String filter, String orderBy) throws Exception {
+    return start(filter, orderBy).build();
+  }
+
+  private ReadOptions.Builder start(String filter, String orderBy) throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    EdmEntityType roomType = edm.getEntityType("RefScenario", "Room");
+    ReadOptions.Builder options = ReadOptions.start();
+    if (filter != null) {
+      options.filter(UriParserImpl.parseFilter(edm, roomType, filter));
+    }
+    if (orderBy != null) {
+      options.order(UriParserImpl.parseOrderBy(edm, roomType, orderBy));
+    }
+    return options;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ *
+ */
+public class SortedTreeTest {
+
+  @Test
+  public void putGetRemove() {
+    SortedTree<Integer, String> tree = SortedTree.empty();
+    for (int i = 0; i < 1000; i++) {
+      tree = tree.put(i, "v" + i);
+    }
+    Assert.assertEquals(1000, tree.size());
+    Assert.assertEquals("v42", tree.get(42));
+    Assert.assertNull(tree.get(1000));
+
+    SortedTree<Integer, String> removed = tree.remove(42).remove(4711);
+    Assert.assertEquals(999, removed.size());
+    Assert.assertNull(removed.get(42));
+    // the previous version is not modified
+    Assert.assertEquals("v42", tree.get(42));
+    Assert.assertSame(removed, removed.remove(42));
+  }
+
+  @Test
+  public void forEachInRange() {
+    SortedTree<Integer, Integer> tree = SortedTree.empty();
+    for (int i = 10; i > 0; i--) {
+      tree = tree.put(i, i);
+    }
+    Assert.assertEquals(Arrays.asList(3, 4, 5), range(tree, 3, true, 5, true));
+    Assert.assertEquals(Arrays.asList(4), range(tree, 3, false, 5, false));
+    Assert.assertEquals(Arrays.asList(8, 9, 10), range(tree, 7, false, null, false));
+    Assert.assertEquals(Arrays.asList(1, 2), range(tree, null, false, 3, false));
+    Assert.assertEquals(Arrays.asList(), range(tree, 11, true, null, false));
+  }
+
+  @Test
+  public void randomModifications() {
+    Random random = new Random(4711);
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    SortedTree<Integer, Integer> tree = SortedTree.empty();
+    for (int i = 0; i < 20000; i++) {
+      Integer key = random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        tree = tree.remove(key);
+      } else {
+        expected.put(key, i);
+        tree = tree.put(key, i);
+      }
+    }
+    Assert.assertEquals(expected.size(), tree.size());
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      Assert.assertEquals(entry.getValue(), tree.get(entry.getKey()));
+    }
+    Assert.assertEquals(new ArrayList<>(expected.subMap(500, true, 1500, false).values()),
+        range(tree, 500, true, 1500, false));
+  }
+
+  private static List<Integer> range(final SortedTree<Integer, Integer> tree, final Integer lower,
+      final boolean lowerInclusive, final Integer upper, final boolean upperInclusive) {
+    List<Integer> values = new ArrayList<>();
+    tree.forEachInRange(lower, lowerInclusive, upper, upperInclusive, values::add);
+    return values;
+  }
+}
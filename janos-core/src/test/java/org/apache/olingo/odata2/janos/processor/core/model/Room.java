@@ -16,6 +16,7 @@
 package org.apache.olingo.odata2.janos.processor.core.model;
 
 import org.apache.olingo.odata2.api.annotation.edm.*;
+import org.apache.olingo.odata2.janos.processor.api.data.EdmIndex;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -28,9 +29,11 @@ import java.util.List;
 public class Room extends RefBase {
 
   @EdmProperty
+  @EdmIndex(kind = EdmIndex.Kind.SORTED)
   private Integer seats;
   @EdmProperty(facets = @EdmFacets(scale = 0, precision = 0))
   @EdmConcurrencyControl
+  @EdmIndex
   private Integer version;
   @EdmNavigationProperty(name = "nr_Building", association = "BuildingRooms")
   private Building building;